@@ -0,0 +1,142 @@
+package com.gerald.kafka;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.kafka.clients.consumer.RangeAssignor;
+import org.apache.kafka.clients.consumer.RoundRobinAssignor;
+import org.apache.kafka.clients.consumer.StickyAssignor;
+import org.apache.kafka.clients.consumer.internals.ConsumerProtocol;
+import org.apache.kafka.clients.consumer.internals.PartitionAssignor;
+import org.apache.kafka.clients.consumer.internals.PartitionAssignor.Assignment;
+import org.apache.kafka.clients.consumer.internals.PartitionAssignor.Subscription;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Simulates a group of 100 members consuming 10 topics with 100 partitions each, and reports for every
+ * assignor how many partitions change owner on typical membership changes, how balanced the result is and
+ * how long the leader takes to compute the assignment. Subscriptions and assignments go through
+ * {@link ConsumerProtocol} like they do on the wire, so user data is encoded and decoded as well.
+ */
+public class AssignorSimulation {
+    private static final int TOPICS = 10;
+    private static final int PARTITIONS_PER_TOPIC = 100;
+    private static final int MEMBERS = 100;
+    private static final int TIMED_ITERATIONS = 20;
+
+    private final Class<? extends PartitionAssignor> assignorClass;
+    private final Cluster cluster;
+    private final Set<String> topics;
+    private final Map<String, PartitionAssignor> members = new TreeMap<>();
+    private Map<TopicPartition, String> owners = new HashMap<>();
+    private int nextMemberId = 0;
+
+    public AssignorSimulation(Class<? extends PartitionAssignor> assignorClass, Cluster cluster) {
+        this.assignorClass = assignorClass;
+        this.cluster = cluster;
+        this.topics = cluster.topics();
+    }
+
+    public void join(int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            members.put(String.format("consumer-%04d", nextMemberId++), assignorClass.newInstance());
+        }
+    }
+
+    public void leave(int count) {
+        List<String> memberIds = new ArrayList<>(members.keySet());
+        for (int i = 0; i < count; i++) {
+            members.remove(memberIds.get((i * 7919) % memberIds.size()));
+            memberIds = new ArrayList<>(members.keySet());
+        }
+    }
+
+    public void rebalance(String label) {
+        Map<String, Subscription> subscriptions = new HashMap<>();
+        for (Map.Entry<String, PartitionAssignor> member : members.entrySet()) {
+            ByteBuffer encoded = ConsumerProtocol.serializeSubscription(member.getValue().subscription(topics));
+            subscriptions.put(member.getKey(), ConsumerProtocol.deserializeSubscription(encoded));
+        }
+
+        PartitionAssignor leader = members.values().iterator().next();
+        Map<String, Assignment> assignments = leader.assign(cluster, subscriptions);
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED_ITERATIONS; i++) {
+            leader.assign(cluster, subscriptions);
+        }
+        double avgMs = (System.nanoTime() - start) / 1e6 / TIMED_ITERATIONS;
+
+        Map<TopicPartition, String> newOwners = new HashMap<>();
+        int minLoad = Integer.MAX_VALUE;
+        int maxLoad = 0;
+        for (Map.Entry<String, Assignment> assignment : assignments.entrySet()) {
+            ByteBuffer encoded = ConsumerProtocol.serializeAssignment(assignment.getValue());
+            Assignment received = ConsumerProtocol.deserializeAssignment(encoded);
+            members.get(assignment.getKey()).onAssignment(received);
+            for (TopicPartition partition : received.partitions()) {
+                newOwners.put(partition, assignment.getKey());
+            }
+            minLoad = Math.min(minLoad, received.partitions().size());
+            maxLoad = Math.max(maxLoad, received.partitions().size());
+        }
+
+        // partitions of members which left have to move anyway, so only count the avoidable moves
+        int moved = 0;
+        for (Map.Entry<TopicPartition, String> owner : newOwners.entrySet()) {
+            String previousOwner = owners.get(owner.getKey());
+            if (previousOwner != null && members.containsKey(previousOwner) && !previousOwner.equals(owner.getValue())) {
+                moved++;
+            }
+        }
+        owners = newOwners;
+
+        System.out.println(String.format("%-12s %-22s members=%4d moved=%5d load=[%d, %d] assign=%.3f ms",
+                leader.name(), label, members.size(), moved, minLoad, maxLoad, avgMs));
+    }
+
+    public static Cluster cluster(int topics, int partitionsPerTopic) {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (int t = 0; t < topics; t++) {
+            for (int p = 0; p < partitionsPerTopic; p++) {
+                partitions.add(new PartitionInfo("topic-" + t, p, node, new Node[] {node}, new Node[] {node}));
+            }
+        }
+        return new Cluster("simulation", Collections.singletonList(node), partitions, new HashSet<String>(),
+                Collections.<String>emptySet());
+    }
+
+    public static void main(String[] args) throws Exception {
+        Cluster cluster = cluster(TOPICS, PARTITIONS_PER_TOPIC);
+        List<Class<? extends PartitionAssignor>> assignors = new ArrayList<>();
+        assignors.add(RangeAssignor.class);
+        assignors.add(RoundRobinAssignor.class);
+        assignors.add(StickyAssignor.class);
+
+        for (Class<? extends PartitionAssignor> assignor : assignors) {
+            AssignorSimulation simulation = new AssignorSimulation(assignor, cluster);
+            simulation.join(MEMBERS);
+            simulation.rebalance("initial");
+            simulation.leave(1);
+            simulation.rebalance("one member leaves");
+            simulation.join(1);
+            simulation.rebalance("one member joins");
+            simulation.join(10);
+            simulation.rebalance("ten members join");
+            simulation.leave(20);
+            simulation.rebalance("twenty members leave");
+            simulation.rebalance("no change");
+            System.out.println();
+        }
+    }
+}
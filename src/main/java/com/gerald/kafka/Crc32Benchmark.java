@@ -0,0 +1,92 @@
+package com.gerald.kafka;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.apache.kafka.common.utils.Crc32;
+
+/**
+ * Compares the pure-java {@link Crc32} with {@link java.util.zip.CRC32}, which the JVM replaces with a
+ * hardware-accelerated intrinsic, for record sized ranges of a buffer. Like Record.ensureValid(), every checksum
+ * covers a range of one large buffer. For each record size it reports the time per checksum and the throughput of
+ * the pure-java checksum, of {@link Crc32#crc32(ByteBuffer, int, int)} on a heap and on a direct buffer, and of a
+ * plain {@link java.util.zip.CRC32} over the backing array.
+ */
+public class Crc32Benchmark {
+    private static final int[] RECORD_SIZES = {64, 512, 4 * 1024, 64 * 1024};
+    private static final int BUFFER_SIZE = 16 * 1024 * 1024;
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    private final ByteBuffer heap;
+    private final ByteBuffer direct;
+    private long sink = 0;
+
+    public Crc32Benchmark() {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        new Random(42).nextBytes(bytes);
+        heap = ByteBuffer.wrap(bytes);
+        direct = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        direct.put(bytes);
+        direct.flip();
+    }
+
+    private enum Mode {
+        PURE_JAVA, HEAP_BUFFER, DIRECT_BUFFER, JDK_ARRAY
+    }
+
+    /**
+     * Checksum the whole buffer in ranges of the record size
+     */
+    private long round(Mode mode, int recordSize) {
+        long crc = 0;
+        byte[] array = heap.array();
+        for (int offset = 0; offset + recordSize <= BUFFER_SIZE; offset += recordSize) {
+            switch (mode) {
+                case PURE_JAVA:
+                    crc ^= Crc32.crc32(array, offset, recordSize);
+                    break;
+                case HEAP_BUFFER:
+                    crc ^= Crc32.crc32(heap, offset, recordSize);
+                    break;
+                case DIRECT_BUFFER:
+                    crc ^= Crc32.crc32(direct, offset, recordSize);
+                    break;
+                case JDK_ARRAY:
+                    CRC32 jdk = new CRC32();
+                    jdk.update(array, offset, recordSize);
+                    crc ^= jdk.getValue();
+                    break;
+            }
+        }
+        return crc;
+    }
+
+    public void run(Mode mode, int recordSize) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += round(mode, recordSize);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            sink += round(mode, recordSize);
+        }
+        long nanos = System.nanoTime() - start;
+
+        long checksums = (long) (BUFFER_SIZE / recordSize) * ROUNDS;
+        long bytes = checksums * recordSize;
+        System.out.println(String.format("mode=%-13s record=%-6d %8.1f ns/checksum %8.1f MB/s",
+                mode, recordSize, (double) nanos / checksums, bytes * 1e3 / nanos));
+    }
+
+    public static void main(String[] args) {
+        Crc32Benchmark benchmark = new Crc32Benchmark();
+        for (int recordSize : RECORD_SIZES) {
+            for (Mode mode : Mode.values()) {
+                benchmark.run(mode, recordSize);
+            }
+        }
+        // print the sink so that the checksums cannot be optimized away
+        System.out.println("sink=" + benchmark.sink);
+    }
+}
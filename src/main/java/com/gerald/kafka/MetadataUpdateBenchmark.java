@@ -0,0 +1,128 @@
+package com.gerald.kafka;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.kafka.clients.Metadata;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.requests.MetadataResponse;
+import org.apache.kafka.common.requests.MetadataResponse.PartitionMetadata;
+import org.apache.kafka.common.requests.MetadataResponse.TopicMetadata;
+
+/**
+ * Measures the cost of applying metadata responses of a cluster with 2000 topics of 50 partitions each, where the
+ * leaders of a few topics move between two refreshes. Every response is serialized and parsed again, so that like
+ * on the wire each refresh carries new topic name instances. For both a full rebuild of the {@link Cluster} and an
+ * update against the previous one, it reports the time and the allocation per refresh, the time the sender then
+ * spends in its first {@link Cluster#partitionsForNode(int)} lookup of every broker, and how many topics of the
+ * resulting cluster still use the topic name instances of the first refresh.
+ */
+public class MetadataUpdateBenchmark {
+    private static final int BROKERS = 12;
+    private static final int TOPICS = 2000;
+    private static final int PARTITIONS_PER_TOPIC = 50;
+    private static final int REPLICATION_FACTOR = 3;
+    private static final int CHANGED_TOPICS_PER_REFRESH = 5;
+    private static final int WARMUP_REFRESHES = 20;
+    private static final int REFRESHES = 50;
+
+    private final List<Node> brokers = new ArrayList<>();
+    private final int[] leaderShift = new int[TOPICS];
+    private int refresh = 0;
+    private long sink = 0;
+
+    public MetadataUpdateBenchmark() {
+        for (int i = 0; i < BROKERS; i++) {
+            brokers.add(new Node(i, "broker-" + i, 9092));
+        }
+    }
+
+    /**
+     * Build the next metadata response, moving the leaders of a few topics to the next replica
+     */
+    private MetadataResponse nextResponse() {
+        for (int i = 0; i < CHANGED_TOPICS_PER_REFRESH; i++) {
+            leaderShift[(refresh * CHANGED_TOPICS_PER_REFRESH + i) * 7919 % TOPICS]++;
+        }
+        refresh++;
+
+        List<TopicMetadata> topics = new ArrayList<>(TOPICS);
+        for (int t = 0; t < TOPICS; t++) {
+            List<PartitionMetadata> partitions = new ArrayList<>(PARTITIONS_PER_TOPIC);
+            for (int p = 0; p < PARTITIONS_PER_TOPIC; p++) {
+                List<Node> replicas = new ArrayList<>(REPLICATION_FACTOR);
+                for (int r = 0; r < REPLICATION_FACTOR; r++) {
+                    replicas.add(brokers.get((t + p + r) % BROKERS));
+                }
+                Node leader = replicas.get(leaderShift[t] % REPLICATION_FACTOR);
+                partitions.add(new PartitionMetadata(Errors.NONE, p, leader, replicas, replicas));
+            }
+            topics.add(new TopicMetadata(Errors.NONE, "topic-" + t, false, partitions));
+        }
+        MetadataResponse response = new MetadataResponse(brokers, "cluster", 0, topics);
+
+        ByteBuffer buffer = ByteBuffer.allocate(response.sizeOf());
+        response.writeTo(buffer);
+        buffer.flip();
+        return MetadataResponse.parse(buffer);
+    }
+
+    public void run(boolean incremental) {
+        Metadata metadata = new Metadata();
+        metadata.needMetadataForAllTopics(true);
+        Cluster first = null;
+        long nanos = 0;
+        long bytes = 0;
+        long lookupNanos = 0;
+        for (int i = 0; i < WARMUP_REFRESHES + REFRESHES; i++) {
+            MetadataResponse response = nextResponse();
+            long startBytes = allocatedBytes();
+            long start = System.nanoTime();
+            Cluster cluster = incremental ? response.cluster(metadata.fetchReceived()) : response.cluster();
+            metadata.update(cluster, System.currentTimeMillis());
+            long updated = System.nanoTime();
+            long updatedBytes = allocatedBytes();
+            // like RecordAccumulator.drain() on the next sender loop
+            for (Node broker : brokers) {
+                sink += cluster.partitionsForNode(broker.id()).size();
+            }
+            if (i >= WARMUP_REFRESHES) {
+                nanos += updated - start;
+                lookupNanos += System.nanoTime() - updated;
+                bytes += updatedBytes - startBytes;
+            }
+            if (first == null) {
+                first = cluster;
+            }
+        }
+
+        Cluster last = metadata.fetchReceived();
+        int sharedNames = 0;
+        for (String topic : first.topics()) {
+            if (first.partitionsForTopic(topic).get(0).topic() == last.partitionsForTopic(topic).get(0).topic()) {
+                sharedNames++;
+            }
+        }
+
+        System.out.println(String.format("incremental=%-5s partitions=%d update=%.3f ms partitionsForNode=%.3f ms allocated=%d KB shared topic names=%d/%d sink=%d",
+                incremental, TOPICS * PARTITIONS_PER_TOPIC, nanos / 1e6 / REFRESHES, lookupNanos / 1e6 / REFRESHES,
+                bytes / 1024 / REFRESHES, sharedNames, TOPICS, sink));
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String[] args) {
+        for (boolean incremental : Arrays.asList(false, true, false, true)) {
+            new MetadataUpdateBenchmark().run(incremental);
+        }
+    }
+}
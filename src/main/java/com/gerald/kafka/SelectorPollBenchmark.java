@@ -0,0 +1,168 @@
+package com.gerald.kafka;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.network.NetworkReceive;
+import org.apache.kafka.common.network.NetworkSend;
+import org.apache.kafka.common.network.PlaintextChannelBuilder;
+import org.apache.kafka.common.network.Selectable;
+import org.apache.kafka.common.network.Selector;
+import org.apache.kafka.common.utils.Time;
+
+/**
+ * Measures {@link Selector#poll(long)} with 1000 connections over loopback, of which only 10 are busy: each of them
+ * always has one small request in flight, which the server echoes back. This is the shape of a client talking to a
+ * large cluster, where most connections only carry the occasional metadata or heartbeat request. Per-connection
+ * metrics and idle expiry are enabled like in the network client.
+ *
+ * It reports the polls per second, the cpu time per poll and the bytes allocated by the polling thread per poll.
+ */
+public class SelectorPollBenchmark {
+    private static final int CONNECTIONS = 1000;
+    private static final int BUSY_CONNECTIONS = 10;
+    private static final int REQUEST_SIZE = 100;
+    private static final int WARMUP_SECONDS = 5;
+    private static final int SECONDS = 10;
+
+    private final ServerSocketChannel serverChannel;
+
+    public SelectorPollBenchmark() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("localhost", 0), CONNECTIONS);
+        serverChannel.configureBlocking(false);
+        Thread server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    serve();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "benchmark-server");
+        server.setDaemon(true);
+        server.start();
+    }
+
+    /**
+     * Accept all connections and echo whatever they send, which is a valid size-delimited response
+     */
+    private void serve() throws IOException {
+        java.nio.channels.Selector selector = java.nio.channels.Selector.open();
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        while (true) {
+            selector.select();
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (key.isAcceptable()) {
+                    SocketChannel channel = serverChannel.accept();
+                    if (channel != null) {
+                        channel.configureBlocking(false);
+                        channel.socket().setTcpNoDelay(true);
+                        channel.register(selector, SelectionKey.OP_READ);
+                    }
+                } else if (key.isReadable()) {
+                    SocketChannel channel = (SocketChannel) key.channel();
+                    buffer.clear();
+                    if (channel.read(buffer) < 0) {
+                        key.cancel();
+                        channel.close();
+                        continue;
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining())
+                        channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    public void run() throws IOException {
+        Selector selector = new Selector(NetworkReceive.UNLIMITED, TimeUnit.MINUTES.toMillis(9), new Metrics(),
+                Time.SYSTEM, "benchmark", Collections.<String, String>emptyMap(), true, channelBuilder());
+        InetSocketAddress address = new InetSocketAddress("localhost", serverChannel.socket().getLocalPort());
+        for (int i = 0; i < CONNECTIONS; i++)
+            selector.connect(String.valueOf(i), address, Selectable.USE_DEFAULT_BUFFER_SIZE, Selectable.USE_DEFAULT_BUFFER_SIZE);
+        int connected = 0;
+        while (connected < CONNECTIONS) {
+            selector.poll(100);
+            connected += selector.connected().size();
+        }
+
+        String[] busy = new String[BUSY_CONNECTIONS];
+        for (int i = 0; i < BUSY_CONNECTIONS; i++) {
+            busy[i] = String.valueOf(i * (CONNECTIONS / BUSY_CONNECTIONS));
+            selector.send(request(busy[i]));
+        }
+
+        long polls = 0;
+        long responses = 0;
+        long startCpu = 0;
+        long startBytes = 0;
+        long measureStart = System.nanoTime() + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(SECONDS);
+        boolean measuring = false;
+        long now = System.nanoTime();
+        while (now < end) {
+            if (!measuring && now >= measureStart) {
+                measuring = true;
+                polls = 0;
+                responses = 0;
+                startCpu = cpuTime();
+                startBytes = allocatedBytes();
+            }
+            selector.poll(1);
+            polls++;
+            for (NetworkReceive receive : selector.completedReceives()) {
+                responses++;
+                selector.send(request(receive.source()));
+            }
+            now = System.nanoTime();
+        }
+        long cpuNanos = cpuTime() - startCpu;
+        long bytes = allocatedBytes() - startBytes;
+        selector.close();
+
+        System.out.println(String.format("connections=%d busy=%d polls/s=%d responses/s=%d cpu/poll=%.2f us allocated/poll=%d B",
+                CONNECTIONS, BUSY_CONNECTIONS, polls / SECONDS, responses / SECONDS, cpuNanos / 1e3 / Math.max(1, polls),
+                bytes / Math.max(1, polls)));
+    }
+
+    private static NetworkSend request(String node) {
+        return new NetworkSend(node, ByteBuffer.allocate(REQUEST_SIZE));
+    }
+
+    private static PlaintextChannelBuilder channelBuilder() {
+        PlaintextChannelBuilder channelBuilder = new PlaintextChannelBuilder();
+        channelBuilder.configure(Collections.<String, Object>emptyMap());
+        return channelBuilder;
+    }
+
+    private static long cpuTime() {
+        return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String[] args) throws IOException {
+        SelectorPollBenchmark benchmark = new SelectorPollBenchmark();
+        benchmark.run();
+        benchmark.run();
+    }
+}
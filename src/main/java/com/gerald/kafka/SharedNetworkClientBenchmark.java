@@ -0,0 +1,186 @@
+package com.gerald.kafka;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+
+/**
+ * Runs a number of consumers in one process, first with a network client per consumer and then with
+ * <code>network.client.shared</code> enabled. With <code>assign</code> every consumer reads one partition of a topic;
+ * with <code>subscribe</code> the consumers join one group subscribed to the topic, so each of them also keeps its
+ * own connection to the group coordinator. The consumers start at the end of the partitions, so that both runs
+ * consume the same records when a producer writes to the topic meanwhile, and measure idle consumers otherwise.
+ * For every run it reports the number of open sockets, the process cpu time and the number of records consumed.
+ *
+ * Usage: SharedNetworkClientBenchmark &lt;bootstrap servers&gt; &lt;topic&gt; [consumers] [seconds] [assign|subscribe]
+ */
+public class SharedNetworkClientBenchmark {
+    private static final int DEFAULT_CONSUMERS = 200;
+    private static final int DEFAULT_SECONDS = 30;
+
+    private final String bootstrapServers;
+    private final String topic;
+    private final int consumers;
+    private final int seconds;
+
+    public SharedNetworkClientBenchmark(String bootstrapServers, String topic, int consumers, int seconds) {
+        this.bootstrapServers = bootstrapServers;
+        this.topic = topic;
+        this.consumers = consumers;
+        this.seconds = seconds;
+    }
+
+    public void run(final boolean subscribe, final boolean shared) throws Exception {
+        final List<PartitionInfo> partitions = partitions();
+        final String groupId = "shared-network-client-benchmark-" + System.currentTimeMillis();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicLong records = new AtomicLong();
+        final CountDownLatch started = new CountDownLatch(consumers);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < consumers; i++) {
+            final PartitionInfo partition = partitions.get(i % partitions.size());
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    KafkaConsumer<byte[], byte[]> consumer = new KafkaConsumer<>(
+                            properties(shared, subscribe ? groupId : null),
+                            new ByteArrayDeserializer(), new ByteArrayDeserializer());
+                    try {
+                        if (subscribe) {
+                            consumer.subscribe(Collections.singletonList(topic), new ConsumerRebalanceListener() {
+                                private boolean assigned = false;
+
+                                @Override
+                                public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                                }
+
+                                @Override
+                                public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+                                    if (!assigned) {
+                                        assigned = true;
+                                        started.countDown();
+                                    }
+                                }
+                            });
+                        } else {
+                            TopicPartition tp = new TopicPartition(partition.topic(), partition.partition());
+                            consumer.assign(Collections.singletonList(tp));
+                            consumer.seekToEnd(Collections.singletonList(tp));
+                            started.countDown();
+                        }
+                        while (running.get()) {
+                            ConsumerRecords<byte[], byte[]> polled = consumer.poll(100);
+                            records.addAndGet(polled.count());
+                        }
+                    } finally {
+                        consumer.close();
+                    }
+                }
+            }, "benchmark-consumer-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+
+        started.await();
+        long startCpu = processCpuTime();
+        long startRecords = records.get();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+        int sockets = openSockets();
+        long cpuMs = TimeUnit.NANOSECONDS.toMillis(processCpuTime() - startCpu);
+        long consumed = records.get() - startRecords;
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.println(String.format("mode=%-9s shared=%-5s consumers=%d sockets=%d cpu=%d ms (%.2f cores) records=%d (%d records/s)",
+                subscribe ? "subscribe" : "assign", shared, consumers, sockets, cpuMs, (double) cpuMs / (seconds * 1000),
+                consumed, consumed / seconds));
+    }
+
+    private List<PartitionInfo> partitions() {
+        KafkaConsumer<byte[], byte[]> consumer = new KafkaConsumer<>(properties(false, null),
+                new ByteArrayDeserializer(), new ByteArrayDeserializer());
+        try {
+            List<PartitionInfo> partitions = consumer.partitionsFor(topic);
+            if (partitions == null || partitions.isEmpty()) {
+                throw new IllegalArgumentException("Topic " + topic + " does not exist");
+            }
+            return partitions;
+        } finally {
+            consumer.close();
+        }
+    }
+
+    private Properties properties(boolean shared, String groupId) {
+        Properties props = new Properties();
+        props.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        if (groupId != null) {
+            props.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+            props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        }
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        props.put(ConsumerConfig.SHARED_NETWORK_CLIENT_CONFIG, String.valueOf(shared));
+        return props;
+    }
+
+    private static long processCpuTime() {
+        return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+    }
+
+    /**
+     * Count the sockets of this process, -1 if /proc is not available
+     */
+    private static int openSockets() throws IOException {
+        File[] fds = new File("/proc/self/fd").listFiles();
+        if (fds == null) {
+            return -1;
+        }
+        int sockets = 0;
+        for (File fd : fds) {
+            try {
+                if (Files.readSymbolicLink(fd.toPath()).toString().startsWith("socket:")) {
+                    sockets++;
+                }
+            } catch (IOException e) {
+                // closed while listing
+            }
+        }
+        return sockets;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: SharedNetworkClientBenchmark <bootstrap servers> <topic> [consumers] [seconds] [assign|subscribe]");
+            System.exit(1);
+        }
+        int consumers = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_CONSUMERS;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_SECONDS;
+        List<String> modes = args.length > 4 ? Collections.singletonList(args[4]) : Arrays.asList("assign", "subscribe");
+        SharedNetworkClientBenchmark benchmark = new SharedNetworkClientBenchmark(args[0], args[1], consumers, seconds);
+        for (String mode : modes) {
+            boolean subscribe = "subscribe".equals(mode);
+            benchmark.run(subscribe, false);
+            benchmark.run(subscribe, true);
+        }
+    }
+}
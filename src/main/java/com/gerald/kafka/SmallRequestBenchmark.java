@@ -0,0 +1,156 @@
+package com.gerald.kafka;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.network.NetworkReceive;
+import org.apache.kafka.common.network.NetworkSend;
+import org.apache.kafka.common.network.PlaintextChannelBuilder;
+import org.apache.kafka.common.network.Selectable;
+import org.apache.kafka.common.network.Selector;
+import org.apache.kafka.common.utils.Time;
+
+/**
+ * Measures the throughput of small requests over loopback through a {@link Selector}. The client issues bursts of 5
+ * requests, like a consumer whose heartbeat, offset commit and fetches become due together, and waits for all
+ * responses before the next burst. Without queueing, a request is only handed to the selector once the previous send
+ * was completed, as the network client did before sends could be queued per channel. With queueing, the whole burst
+ * is handed over at once and written with a single gathering write.
+ *
+ * For both modes it reports the requests per second, the client cpu time per request and the average number of
+ * requests completed by a poll which wrote to the socket.
+ */
+public class SmallRequestBenchmark {
+    private static final int REQUEST_SIZE = 64;
+    private static final int RESPONSE_SIZE = 16;
+    private static final int BURST = 5;
+    private static final int WARMUP_SECONDS = 3;
+    private static final int SECONDS = 10;
+    private static final String NODE = "0";
+
+    private final ServerSocket serverSocket;
+
+    public SmallRequestBenchmark() throws IOException {
+        serverSocket = new ServerSocket(0);
+        Thread server = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "benchmark-server");
+        server.setDaemon(true);
+        server.start();
+    }
+
+    private void serve() {
+        while (true) {
+            try (Socket socket = serverSocket.accept()) {
+                socket.setTcpNoDelay(true);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                byte[] request = new byte[REQUEST_SIZE];
+                byte[] response = new byte[RESPONSE_SIZE];
+                while (true) {
+                    int size = in.readInt();
+                    in.readFully(request, 0, size);
+                    out.writeInt(response.length);
+                    out.write(response);
+                    // answer every request which has arrived before flushing, like a broker handling a pipeline
+                    if (in.available() == 0)
+                        out.flush();
+                }
+            } catch (EOFException e) {
+                // the client closed the connection
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    public void run(boolean queued) throws IOException {
+        Selector selector = new Selector(NetworkReceive.UNLIMITED, 60000, new Metrics(), Time.SYSTEM, "benchmark",
+                Collections.<String, String>emptyMap(), false, channelBuilder());
+        selector.connect(NODE, new InetSocketAddress("localhost", serverSocket.getLocalPort()),
+                Selectable.USE_DEFAULT_BUFFER_SIZE, Selectable.USE_DEFAULT_BUFFER_SIZE);
+        while (!selector.isChannelReady(NODE))
+            selector.poll(100);
+
+        int unsent = 0;
+        int inFlight = 0;
+        boolean sendInProgress = false;
+        long requests = 0;
+        long writingPolls = 0;
+        long sentInWritingPolls = 0;
+        long startCpu = 0;
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        long end = measureStart + TimeUnit.SECONDS.toNanos(SECONDS);
+        boolean measuring = false;
+        long now = start;
+        while (now < end) {
+            if (!measuring && now >= measureStart) {
+                measuring = true;
+                requests = 0;
+                writingPolls = 0;
+                sentInWritingPolls = 0;
+                startCpu = cpuTime();
+            }
+            if (inFlight == 0)
+                unsent = BURST;
+            while (unsent > 0 && (queued || !sendInProgress)) {
+                selector.send(new NetworkSend(NODE, ByteBuffer.allocate(REQUEST_SIZE)));
+                unsent--;
+                inFlight++;
+                sendInProgress = true;
+            }
+            selector.poll(100);
+            int sent = selector.completedSends().size();
+            if (sent > 0) {
+                sendInProgress = false;
+                writingPolls++;
+                sentInWritingPolls += sent;
+            }
+            for (NetworkReceive receive : selector.completedReceives()) {
+                inFlight--;
+                requests++;
+            }
+            now = System.nanoTime();
+        }
+        long cpuNanos = cpuTime() - startCpu;
+        selector.close();
+
+        System.out.println(String.format("queued=%-5s requests/s=%d cpu/request=%.2f us requests/writing poll=%.2f",
+                queued, requests / SECONDS, cpuNanos / 1e3 / Math.max(1, requests),
+                (double) sentInWritingPolls / Math.max(1, writingPolls)));
+    }
+
+    private static PlaintextChannelBuilder channelBuilder() {
+        PlaintextChannelBuilder channelBuilder = new PlaintextChannelBuilder();
+        channelBuilder.configure(Collections.<String, Object>emptyMap());
+        return channelBuilder;
+    }
+
+    private static long cpuTime() {
+        return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+    }
+
+    public static void main(String[] args) throws IOException {
+        SmallRequestBenchmark benchmark = new SmallRequestBenchmark();
+        benchmark.run(false);
+        benchmark.run(true);
+        benchmark.run(false);
+        benchmark.run(true);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.kafka.common.Node;
+
+/**
+ * The API versions of the brokers, shared by all network clients of the process. A connection to a broker whose
+ * versions are cached becomes ready as soon as it is established, without the round trip of an ApiVersionsRequest.
+ *
+ * The versions are kept per node id and endpoint, so that a broker which moves or an id which is reused by another
+ * broker is asked again. Each client only uses versions younger than its own <code>metadata.max.age.ms</code>, so that
+ * a rolling upgrade of the cluster is picked up about as fast as its new metadata. The network client invalidates the
+ * versions when the broker turns out not to support them.
+ *
+ * This class is thread-safe.
+ */
+final class ApiVersionsCache {
+    private static final ConcurrentMap<Endpoint, CachedVersions> CACHE = new ConcurrentHashMap<>();
+
+    private ApiVersionsCache() {
+    }
+
+    /**
+     * @param maxAgeMs The maximum age of the versions, i.e. the <code>metadata.max.age.ms</code> of the client
+     * @return The cached versions of the node, or null if there are none younger than the maximum age
+     */
+    static NodeApiVersions get(Node node, long now, long maxAgeMs) {
+        CachedVersions cached = CACHE.get(new Endpoint(node));
+        return cached != null && now - cached.fetchedMs < maxAgeMs ? cached.versions : null;
+    }
+
+    static void put(Node node, NodeApiVersions versions, long now) {
+        CACHE.put(new Endpoint(node), new CachedVersions(versions, now));
+    }
+
+    /**
+     * Remove the versions of the node, if they are the given ones
+     */
+    static void invalidate(Node node, NodeApiVersions versions) {
+        Endpoint endpoint = new Endpoint(node);
+        CachedVersions cached = CACHE.get(endpoint);
+        if (cached != null && cached.versions == versions)
+            CACHE.remove(endpoint, cached);
+    }
+
+    private static class Endpoint {
+        private final int id;
+        private final String host;
+        private final int port;
+
+        private Endpoint(Node node) {
+            this.id = node.id();
+            this.host = node.host();
+            this.port = node.port();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            Endpoint that = (Endpoint) o;
+            return id == that.id && port == that.port && host.equals(that.host);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * id + host.hashCode()) + port;
+        }
+    }
+
+    private static class CachedVersions {
+        private final NodeApiVersions versions;
+        private final long fetchedMs;
+
+        private CachedVersions(NodeApiVersions versions, long fetchedMs) {
+            this.versions = versions;
+            this.fetchedMs = fetchedMs;
+        }
+    }
+}
@@ -12,6 +12,7 @@
  */
 package org.apache.kafka.clients;
 
+import org.apache.kafka.common.network.NetworkReceive;
 import org.apache.kafka.common.requests.AbstractResponse;
 import org.apache.kafka.common.requests.RequestHeader;
 
@@ -29,6 +30,7 @@ public class ClientResponse {
     private final boolean disconnected;
     private final RuntimeException versionMismatch;
     private final AbstractResponse responseBody;
+    private final NetworkReceive receive;
 
     /**
      * @param requestHeader The header of the corresponding request
@@ -49,6 +51,23 @@ public class ClientResponse {
                           boolean disconnected,
                           RuntimeException versionMismatch,
                           AbstractResponse responseBody) {
+        this(requestHeader, callback, destination, createdTimeMs, receivedTimeMs, disconnected, versionMismatch,
+                responseBody, null);
+    }
+
+    /**
+     * @param receive The receive the response body was parsed from, whose buffer is returned to its memory pool
+     *                by {@link #releaseBuffer()}
+     */
+    public ClientResponse(RequestHeader requestHeader,
+                          RequestCompletionHandler callback,
+                          String destination,
+                          long createdTimeMs,
+                          long receivedTimeMs,
+                          boolean disconnected,
+                          RuntimeException versionMismatch,
+                          AbstractResponse responseBody,
+                          NetworkReceive receive) {
         this.requestHeader = requestHeader;
         this.callback = callback;
         this.destination = destination;
@@ -57,6 +76,7 @@ public class ClientResponse {
         this.disconnected = disconnected;
         this.versionMismatch = versionMismatch;
         this.responseBody = responseBody;
+        this.receive = receive;
     }
 
     public long receivedTimeMs() {
@@ -91,6 +111,30 @@ public class ClientResponse {
         return latencyMs;
     }
 
+    public NetworkReceive receive() {
+        return receive;
+    }
+
+    /**
+     * Return the buffer the response was read into to the memory pool of the selector. Parts of the response body,
+     * like the records of a fetch response, are views of this buffer, so this may only be called once the body
+     * is no longer accessed. Buffers which are neither released nor detached are reclaimed by the pool once they
+     * are garbage collected.
+     */
+    public void releaseBuffer() {
+        if (receive != null)
+            receive.release();
+    }
+
+    /**
+     * Stop counting the buffer the response was read into against the memory pool of the selector, for a response
+     * whose body stays referenced for an unknown time.
+     */
+    public void detachBuffer() {
+        if (receive != null)
+            receive.detach();
+    }
+
     public void onComplete() {
         if (callback != null)
             callback.onComplete(this);
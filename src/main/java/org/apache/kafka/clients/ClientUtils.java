@@ -13,6 +13,7 @@
 package org.apache.kafka.clients;
 
 import java.io.Closeable;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.List;
@@ -34,8 +35,15 @@ import static org.apache.kafka.common.utils.Utils.getPort;
 public class ClientUtils {
     private static final Logger log = LoggerFactory.getLogger(ClientUtils.class);
 
+    /**
+     * Parse the bootstrap urls and resolve their hosts, which are looked up in parallel and cached for the process,
+     * see {@link HostResolver}
+     * @return The addresses of the urls whose hosts could be resolved
+     */
     public static List<InetSocketAddress> parseAndValidateAddresses(List<String> urls) {
-        List<InetSocketAddress> addresses = new ArrayList<>();
+        List<String> validUrls = new ArrayList<>();
+        List<InetSocketAddress> unresolved = new ArrayList<>();
+        List<String> hosts = new ArrayList<>();
         for (String url : urls) {
             if (url != null && !url.isEmpty()) {
                 try {
@@ -44,18 +52,23 @@ public class ClientUtils {
                     if (host == null || port == null)
                         throw new ConfigException("Invalid url in " + CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG + ": " + url);
 
-                    InetSocketAddress address = new InetSocketAddress(host, port);
-
-                    if (address.isUnresolved()) {
-                        log.warn("Removing server {} from {} as DNS resolution failed for {}", url, CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG, host);
-                    } else {
-                        addresses.add(address);
-                    }
+                    unresolved.add(InetSocketAddress.createUnresolved(host, port));
+                    validUrls.add(url);
+                    hosts.add(host);
                 } catch (IllegalArgumentException e) {
                     throw new ConfigException("Invalid port in " + CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG + ": " + url);
                 }
             }
         }
+
+        List<InetAddress> resolved = HostResolver.resolveAll(hosts);
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        for (int i = 0; i < unresolved.size(); i++) {
+            if (resolved.get(i) == null)
+                log.warn("Removing server {} from {} as DNS resolution failed for {}", validUrls.get(i), CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG, hosts.get(i));
+            else
+                addresses.add(new InetSocketAddress(resolved.get(i), unresolved.get(i).getPort()));
+        }
         if (addresses.isEmpty())
             throw new ConfigException("No resolvable bootstrap urls given in " + CommonClientConfigs.BOOTSTRAP_SERVERS_CONFIG);
         return addresses;
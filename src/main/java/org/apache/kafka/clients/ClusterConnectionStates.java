@@ -93,6 +93,15 @@ final class ClusterConnectionStates {
         return state != null && state.state == ConnectionState.CONNECTING;
     }
 
+    /**
+     * Return true if a connection has been initiated and not been disconnected since
+     * @param id The id of the node to check
+     */
+    public boolean isConnectingOrConnected(String id) {
+        NodeConnectionState state = nodeState.get(id);
+        return state != null && state.state != ConnectionState.DISCONNECTED;
+    }
+
     /**
      * Enter the connecting state for the given connection.
      * @param id the id of the connection
@@ -82,6 +82,19 @@ public class CommonClientConfigs {
                                                          + "elapses the client will resend the request if necessary or fail the request if "
                                                          + "retries are exhausted.";
 
+    public static final String HANDSHAKE_EXECUTOR_THREADS_CONFIG = "handshake.executor.threads";
+    public static final String HANDSHAKE_EXECUTOR_THREADS_DOC = "The number of threads which run the CPU intensive work of SSL handshakes "
+                                                                + "and SASL authentication, such as certificate validation, key exchange and SCRAM key derivation. "
+                                                                + "A connection waiting for such work stops reading and writing until it completes, while the "
+                                                                + "other connections keep being served. When 0, the work runs on the network thread.";
+
+    public static final String CONNECTIONS_PER_BROKER_CONFIG = "connections.per.broker";
+    public static final String CONNECTIONS_PER_BROKER_DOC = "The number of connections the client opens to each broker for produce and fetch requests. "
+                                                            + "The partitions led by a broker are spread over its connections, and the requests for a partition "
+                                                            + "are always sent on the same connection, which keeps their order. Together with <code>max.in.flight.requests.per.connection</code> "
+                                                            + "this bounds the requests in flight to a broker, so more connections let bulk clients use more bandwidth "
+                                                            + "on links with a high round trip time.";
+
     private static List<String> nonTestingSecurityProtocolNames() {
         List<String> names = new ArrayList<>();
         for (SecurityProtocol protocol : SecurityProtocol.nonTestingValues())
@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.utils.Utils;
+
+/**
+ * Spreads the partitions led by a broker over several connections to it, see
+ * {@link CommonClientConfigs#CONNECTIONS_PER_BROKER_CONFIG}.
+ *
+ * Every partition is assigned to a fixed stripe of its leader, so requests for a partition are always sent on the
+ * same connection and keep their order. Stripe 0 is the broker node itself, the other stripes are aliases of the
+ * broker: nodes with the same host and port but an id of their own, which the network client uses as connection id,
+ * like the alias of the group coordinator.
+ *
+ * This class is not thread safe.
+ */
+public final class ConnectionStripes {
+    public static final int MAX_CONNECTIONS_PER_BROKER = 64;
+
+    // the ids of aliases are negative and below the ids of bootstrap nodes: -(stripe * ALIAS_ID_RANGE + brokerId + 1)
+    private static final int ALIAS_ID_RANGE = 1 << 24;
+
+    private final int connectionsPerBroker;
+    private final Map<Integer, Node[]> stripes;
+
+    public ConnectionStripes(int connectionsPerBroker) {
+        if (connectionsPerBroker < 1 || connectionsPerBroker > MAX_CONNECTIONS_PER_BROKER)
+            throw new IllegalArgumentException("The number of connections per broker must be between 1 and "
+                    + MAX_CONNECTIONS_PER_BROKER + ", but was " + connectionsPerBroker);
+        this.connectionsPerBroker = connectionsPerBroker;
+        this.stripes = new HashMap<>();
+    }
+
+    /**
+     * The node to send requests for the given partition to
+     * @param leader The leader of the partition
+     * @param partition The partition
+     * @return The leader itself or one of its aliases
+     */
+    public Node node(Node leader, TopicPartition partition) {
+        if (connectionsPerBroker == 1 || leader.id() < 0 || leader.id() >= ALIAS_ID_RANGE)
+            return leader;
+        int stripe = stripe(partition);
+        if (stripe == 0)
+            return leader;
+
+        Node[] nodes = stripes.get(leader.id());
+        if (nodes == null || !nodes[0].host().equals(leader.host()) || nodes[0].port() != leader.port()) {
+            nodes = new Node[connectionsPerBroker];
+            nodes[0] = leader;
+            stripes.put(leader.id(), nodes);
+        }
+        Node alias = nodes[stripe];
+        if (alias == null) {
+            alias = new Node(-(stripe * ALIAS_ID_RANGE + leader.id() + 1), leader.host(), leader.port(), leader.rack());
+            nodes[stripe] = alias;
+        }
+        return alias;
+    }
+
+    /**
+     * Returns true if requests for the given partition, which is led by the broker of the node, are sent to the node
+     */
+    public boolean owns(Node node, TopicPartition partition) {
+        return connectionsPerBroker == 1 || stripe(node) == stripe(partition);
+    }
+
+    /**
+     * The id of the broker the node with the given id connects to
+     */
+    public static int brokerId(int nodeId) {
+        return isAlias(nodeId) ? (-nodeId - 1) % ALIAS_ID_RANGE : nodeId;
+    }
+
+    private static int stripe(Node node) {
+        return isAlias(node.id()) ? (-node.id() - 1) / ALIAS_ID_RANGE : 0;
+    }
+
+    private static boolean isAlias(int nodeId) {
+        return nodeId < -ALIAS_ID_RANGE && nodeId >= -(MAX_CONNECTIONS_PER_BROKER * ALIAS_ID_RANGE);
+    }
+
+    private int stripe(TopicPartition partition) {
+        return Utils.toPositive(partition.hashCode()) % connectionsPerBroker;
+    }
+}
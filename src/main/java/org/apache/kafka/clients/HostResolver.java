@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.utils.KafkaThread;
+import org.apache.kafka.common.utils.Time;
+
+/**
+ * Resolves the hosts of the bootstrap servers. The hosts are looked up in parallel, so that the construction of a
+ * client with several bootstrap servers behind a slow DNS takes as long as the slowest lookup rather than the sum of
+ * all of them. The addresses are cached for the whole process, so that the clients created after the first one do not
+ * wait for the DNS again. Like the positive cache of {@link InetAddress}, they are kept for
+ * <code>networkaddress.cache.ttl</code> seconds, or <code>sun.net.inetaddr.ttl</code> if that security property is not
+ * set, and for 30 seconds if neither is set. Failed lookups are not cached.
+ *
+ * This class is thread-safe.
+ */
+final class HostResolver {
+    // the default of the positive cache of InetAddress if no ttl is configured
+    private static final long DEFAULT_CACHE_TTL_MS = 30 * 1000;
+
+    // the ttl of the positive cache of InetAddress, so addresses are not kept any longer than by it
+    private static final long CACHE_TTL_MS = cacheTtlMs();
+
+    private static final ConcurrentMap<String, CachedAddress> CACHE = new ConcurrentHashMap<>();
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger threadId = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new KafkaThread("kafka-host-resolver-" + threadId.getAndIncrement(), runnable, true);
+        }
+    });
+
+    private HostResolver() {
+    }
+
+    /**
+     * Resolve the given hosts
+     * @param hosts The hosts
+     * @return The address of every host, in the same order, or null for the hosts which could not be resolved
+     */
+    static List<InetAddress> resolveAll(List<String> hosts) {
+        long now = Time.SYSTEM.milliseconds();
+        removeExpired(now);
+
+        List<InetAddress> addresses = new ArrayList<>(hosts.size());
+        List<Future<InetAddress>> lookups = new ArrayList<>(hosts.size());
+        int uncached = 0;
+        for (String host : hosts) {
+            CachedAddress cached = CACHE.get(host);
+            InetAddress address = cached != null && cached.expiryMs > now ? cached.address : null;
+            addresses.add(address);
+            if (address == null)
+                uncached++;
+        }
+
+        // a single lookup is done on the calling thread
+        for (int i = 0; i < hosts.size(); i++) {
+            Future<InetAddress> lookup = null;
+            if (addresses.get(i) == null && uncached > 1)
+                lookup = EXECUTOR.submit(new Lookup(hosts.get(i)));
+            lookups.add(lookup);
+        }
+
+        try {
+            for (int i = 0; i < hosts.size(); i++) {
+                if (addresses.get(i) != null)
+                    continue;
+                Future<InetAddress> lookup = lookups.get(i);
+                addresses.set(i, lookup == null ? lookup(hosts.get(i)) : lookup.get());
+            }
+        } catch (InterruptedException e) {
+            for (Future<InetAddress> lookup : lookups)
+                if (lookup != null)
+                    lookup.cancel(true);
+            throw new InterruptException(e);
+        } catch (ExecutionException e) {
+            // a lookup only throws unchecked exceptions, which are rethrown like on the calling thread
+            if (e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw (RuntimeException) e.getCause();
+        }
+        return addresses;
+    }
+
+    private static InetAddress lookup(String host) {
+        try {
+            InetAddress address = InetAddress.getByName(host);
+            if (CACHE_TTL_MS != 0) {
+                long expiryMs = CACHE_TTL_MS < 0 ? Long.MAX_VALUE : Time.SYSTEM.milliseconds() + CACHE_TTL_MS;
+                CACHE.put(host, new CachedAddress(address, expiryMs));
+            }
+            return address;
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static void removeExpired(long now) {
+        Iterator<CachedAddress> iter = CACHE.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().expiryMs <= now)
+                iter.remove();
+        }
+    }
+
+    /**
+     * Get the ttl of the positive cache of InetAddress in ms, 0 if addresses are not cached and negative if they are
+     * cached forever
+     */
+    private static long cacheTtlMs() {
+        String ttl = Security.getProperty("networkaddress.cache.ttl");
+        if (ttl == null)
+            ttl = System.getProperty("sun.net.inetaddr.ttl");
+        if (ttl == null)
+            return DEFAULT_CACHE_TTL_MS;
+        try {
+            long ttlSeconds = Long.parseLong(ttl.trim());
+            return ttlSeconds < 0 ? -1 : ttlSeconds * 1000;
+        } catch (NumberFormatException e) {
+            return DEFAULT_CACHE_TTL_MS;
+        }
+    }
+
+    private static class Lookup implements Callable<InetAddress> {
+        private final String host;
+
+        private Lookup(String host) {
+            this.host = host;
+        }
+
+        @Override
+        public InetAddress call() {
+            return lookup(host);
+        }
+    }
+
+    private static class CachedAddress {
+        private final InetAddress address;
+        private final long expiryMs;
+
+        private CachedAddress(InetAddress address, long expiryMs) {
+            this.address = address;
+            this.expiryMs = expiryMs;
+        }
+    }
+}
@@ -20,10 +20,12 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.kafka.common.network.Send;
+
 /**
  * <p>
- *   维护每个Node的发送请求队列。对于一个Node，队首的{@link InFlightRequest}是尚未写到socket write buffer的请求，
- *   这样的请求只会存在一个，因为只要存在一个{@link #canSendMore(String)}就会返回false
+ *   维护每个Node的发送请求队列。对于一个Node，队首的若干{@link InFlightRequest}可能尚未写到socket write buffer，
+ *   它们在channel中排队，按照加入的顺序写出
  * </p>
  * 
  * The set of requests which have been sent or are being sent but haven't yet received a response
@@ -50,6 +52,24 @@ final class InFlightRequests {
         reqs.addFirst(request);
     }
 
+    /**
+     * Add the given request to the queue for the connection it was directed to, ahead of the given number of the
+     * requests added last, as its send was queued ahead of theirs
+     */
+    public void add(NetworkClient.InFlightRequest request, int ahead) {
+        if (ahead == 0) {
+            add(request);
+            return;
+        }
+        Deque<NetworkClient.InFlightRequest> reqs = requestQueue(request.destination);
+        NetworkClient.InFlightRequest[] newer = new NetworkClient.InFlightRequest[ahead];
+        for (int i = 0; i < ahead; i++)
+            newer[i] = reqs.pollFirst();
+        reqs.addFirst(request);
+        for (int i = ahead - 1; i >= 0; i--)
+            reqs.addFirst(newer[i]);
+    }
+
     /**
      * Get the request queue for the given node
      */
@@ -84,24 +104,42 @@ final class InFlightRequests {
         return requestQueue(node).pollFirst();
     }
 
+    /**
+     * Get the request whose send to the given node was completed (but don't remove it from the queue). Sends to a
+     * node are queued in the channel and complete in order, so this need not be the last request sent.
+     * @param node The node id
+     * @param send The completed send
+     */
+    public NetworkClient.InFlightRequest sentRequest(String node, Send send) {
+        for (NetworkClient.InFlightRequest request : requestQueue(node)) {
+            if (request.send == send)
+                return request;
+        }
+        throw new IllegalStateException("Completed send to node " + node + " for which there is no in-flight request.");
+    }
+
+    /**
+     * Remove the given request from the queue of the node it was sent to
+     * @param request The request, which need not be the oldest or the last one sent
+     */
+    public void remove(NetworkClient.InFlightRequest request) {
+        requestQueue(request.destination).remove(request);
+    }
+
     /**
      * <p>
-     *   满足下面两个条件之一，可以发送
-     *   <ol>
-     *     <li> 队列为空
-     *     <li> 队首请求已经发送完成(写入socket write buffer)，并且队列长度小于maxInFlightRequestsPerConnection
-     *   </ol>
+     *   队列长度小于maxInFlightRequestsPerConnection时可以发送。尚未写完的请求在channel中排队，
+     *   与后续请求一起通过一次gathering write写出
      * </p>
      * 
      * Can we send more requests to this node?
      *
      * @param node Node in question
-     * @return true iff we have no requests still being sent to the given node
+     * @return true iff the number of requests in flight to the given node is below the maximum
      */
     public boolean canSendMore(String node) {
         Deque<NetworkClient.InFlightRequest> queue = requests.get(node);
-        return queue == null || queue.isEmpty() ||
-               (queue.peekFirst().send.completed() && queue.size() < this.maxInFlightRequestsPerConnection);
+        return queue == null || queue.size() < this.maxInFlightRequestsPerConnection;
     }
 
     /**
@@ -14,15 +14,12 @@ package org.apache.kafka.clients;
 
 import org.apache.kafka.common.Cluster;
 import org.apache.kafka.common.internals.ClusterResourceListeners;
-import org.apache.kafka.common.Node;
-import org.apache.kafka.common.PartitionInfo;
 import org.apache.kafka.common.errors.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -56,6 +53,8 @@ public final class Metadata {
     private long lastRefreshMs;
     private long lastSuccessfulRefreshMs;
     private Cluster cluster;
+    /* the cluster of the last update before it was restricted to the topics we maintain */
+    private Cluster receivedCluster;
     /**
      * 表示元数据已经失效，需要被淘汰。
      */
@@ -94,6 +93,7 @@ public final class Metadata {
         this.lastSuccessfulRefreshMs = 0L;
         this.version = 0;
         this.cluster = Cluster.empty();
+        this.receivedCluster = this.cluster;
         this.needUpdate = false;
         this.topics = new HashMap<>();
         this.listeners = new ArrayList<>();
@@ -108,6 +108,15 @@ public final class Metadata {
         return this.cluster;
     }
 
+    /**
+     * Get the cluster of the last update, including the topics which are not maintained when metadata for all
+     * topics is fetched. The next metadata response is applied to it as a difference, see
+     * {@link org.apache.kafka.common.requests.MetadataResponse#cluster(Cluster)}.
+     */
+    public synchronized Cluster fetchReceived() {
+        return this.receivedCluster;
+    }
+
     /**
      * Add the topic to maintain in the metadata. If topic expiry is enabled, expiry time
      * will be reset on the next update.
@@ -238,6 +247,7 @@ public final class Metadata {
             listener.onMetadataUpdate(cluster);
 
         String previousClusterId = cluster.clusterResource().clusterId();
+        this.receivedCluster = cluster;
 
         if (this.needMetadataForAllTopics) {
             // the listener may change the interested topics, which could cause another metadata refresh.
@@ -328,25 +338,6 @@ public final class Metadata {
     }
 
     private Cluster getClusterForCurrentTopics(Cluster cluster) {
-        Set<String> unauthorizedTopics = new HashSet<>();
-        Collection<PartitionInfo> partitionInfos = new ArrayList<>();
-        List<Node> nodes = Collections.emptyList();
-        Set<String> internalTopics = Collections.emptySet();
-        String clusterId = null;
-        if (cluster != null) {
-            clusterId = cluster.clusterResource().clusterId();
-            internalTopics = cluster.internalTopics();
-            unauthorizedTopics.addAll(cluster.unauthorizedTopics());
-            unauthorizedTopics.retainAll(this.topics.keySet());
-
-            for (String topic : this.topics.keySet()) {
-                List<PartitionInfo> partitionInfoList = cluster.partitionsForTopic(topic);
-                if (partitionInfoList != null) {
-                    partitionInfos.addAll(partitionInfoList);
-                }
-            }
-            nodes = cluster.nodes();
-        }
-        return new Cluster(clusterId, nodes, partitionInfos, unauthorizedTopics, internalTopics);
+        return cluster.withTopics(this.topics.keySet());
     }
 }
@@ -16,6 +16,8 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -28,6 +30,10 @@ import java.util.Set;
 import org.apache.kafka.common.Cluster;
 import org.apache.kafka.common.Node;
 import org.apache.kafka.common.errors.UnsupportedVersionException;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.Max;
 import org.apache.kafka.common.network.NetworkReceive;
 import org.apache.kafka.common.network.Selectable;
 import org.apache.kafka.common.network.Selector;
@@ -59,6 +65,13 @@ public class NetworkClient implements KafkaClient {
 
     private static final Logger log = LoggerFactory.getLogger(NetworkClient.class);
 
+    /* time in ms after which another bootstrap node is connected to if no connection has completed yet, as recommended
+     * for the connection attempt delay of happy eyeballs (RFC 8305) */
+    private static final long BOOTSTRAP_CONNECT_ATTEMPT_DELAY_MS = 250;
+
+    /* the default of metadata.max.age.ms, used as the maximum age of shared API versions if none is given */
+    private static final long DEFAULT_API_VERSIONS_MAX_AGE_MS = 5 * 60 * 1000;
+
     /* the selector used to perform network i/o */
     private final Selectable selector;
 
@@ -101,12 +114,31 @@ public class NetworkClient implements KafkaClient {
 
     private final Set<String> nodesNeedingApiVersionsFetch = new HashSet<>();
 
+    /* the node each connection was initiated to, which identifies the broker in the ApiVersionsCache */
+    private final Map<String, Node> connectionNodes = new HashMap<>();
+
+    /* the connections which became ready with versions from the ApiVersionsCache rather than from the broker */
+    private final Set<String> nodesWithCachedApiVersions = new HashSet<>();
+
+    /* the connections with cached versions which did not receive a response yet. A broker which does not support the
+     * versions closes the connection instead of responding, so a disconnect now takes the place of a failed
+     * ApiVersions exchange */
+    private final Set<String> nodesVerifyingCachedApiVersions = new HashSet<>();
+
+    /* the maximum age of the versions taken from the ApiVersionsCache, i.e. metadata.max.age.ms */
+    private final long apiVersionsMaxAgeMs;
+
     /**
      * 给废弃的发送请求存储的响应。这个响应由NetworkClient构造，例如在{@link #doSend(ClientRequest, boolean, long)}
      * 中发现api version不匹配，就会丢弃请求
      * */
     private final List<ClientResponse> abortedSends = new LinkedList<>();
 
+    /* the metrics the queue time of the requests is recorded with, null if it is not recorded */
+    private final Metrics metrics;
+    private final String metricGrpName;
+    private final Map<ApiKeys, Sensor> queueTimeSensors = new EnumMap<>(ApiKeys.class);
+
     public NetworkClient(Selectable selector,
                          Metadata metadata,
                          String clientId,
@@ -117,8 +149,33 @@ public class NetworkClient implements KafkaClient {
                          int requestTimeoutMs,
                          Time time,
                          boolean discoverBrokerVersions) {
-        this(null, metadata, selector, clientId, maxInFlightRequestsPerConnection,
-                reconnectBackoffMs, socketSendBuffer, socketReceiveBuffer, requestTimeoutMs, time, discoverBrokerVersions);
+        this(selector, metadata, clientId, maxInFlightRequestsPerConnection, reconnectBackoffMs, socketSendBuffer,
+                socketReceiveBuffer, requestTimeoutMs, time, discoverBrokerVersions, DEFAULT_API_VERSIONS_MAX_AGE_MS,
+                null, null);
+    }
+
+    /**
+     * Create a network client which records the time its requests are queued for each API
+     * @param apiVersionsMaxAgeMs The maximum age of API versions shared by other clients, i.e. <code>metadata.max.age.ms</code>
+     * @param metrics The metrics to record the queue time with
+     * @param metricGrpPrefix The prefix of the metric group, like the one of the selector
+     */
+    public NetworkClient(Selectable selector,
+                         Metadata metadata,
+                         String clientId,
+                         int maxInFlightRequestsPerConnection,
+                         long reconnectBackoffMs,
+                         int socketSendBuffer,
+                         int socketReceiveBuffer,
+                         int requestTimeoutMs,
+                         Time time,
+                         boolean discoverBrokerVersions,
+                         long apiVersionsMaxAgeMs,
+                         Metrics metrics,
+                         String metricGrpPrefix) {
+        this(null, metadata, selector, clientId, maxInFlightRequestsPerConnection, reconnectBackoffMs,
+                socketSendBuffer, socketReceiveBuffer, requestTimeoutMs, time, discoverBrokerVersions,
+                apiVersionsMaxAgeMs, metrics, metricGrpPrefix);
     }
 
     public NetworkClient(Selectable selector,
@@ -132,7 +189,8 @@ public class NetworkClient implements KafkaClient {
                          Time time,
                          boolean discoverBrokerVersions) {
         this(metadataUpdater, null, selector, clientId, maxInFlightRequestsPerConnection, reconnectBackoffMs,
-                socketSendBuffer, socketReceiveBuffer, requestTimeoutMs, time, discoverBrokerVersions);
+                socketSendBuffer, socketReceiveBuffer, requestTimeoutMs, time, discoverBrokerVersions,
+                DEFAULT_API_VERSIONS_MAX_AGE_MS, null, null);
     }
 
     private NetworkClient(MetadataUpdater metadataUpdater,
@@ -145,7 +203,10 @@ public class NetworkClient implements KafkaClient {
                           int socketReceiveBuffer,
                           int requestTimeoutMs,
                           Time time,
-                          boolean discoverBrokerVersions) {
+                          boolean discoverBrokerVersions,
+                          long apiVersionsMaxAgeMs,
+                          Metrics metrics,
+                          String metricGrpPrefix) {
         /* It would be better if we could pass `DefaultMetadataUpdater` from the public constructor, but it's not
          * possible because `DefaultMetadataUpdater` is an inner class and it can only be instantiated after the
          * super constructor is invoked.
@@ -169,6 +230,9 @@ public class NetworkClient implements KafkaClient {
         this.reconnectBackoffMs = reconnectBackoffMs;
         this.time = time;
         this.discoverBrokerVersions = discoverBrokerVersions;
+        this.apiVersionsMaxAgeMs = apiVersionsMaxAgeMs;
+        this.metrics = metrics;
+        this.metricGrpName = metricGrpPrefix + "-metrics";
     }
 
     /**
@@ -333,6 +397,18 @@ public class NetworkClient implements KafkaClient {
             // fields that cannot be represented in the chosen version.
             request = builder.build();
         } catch (UnsupportedVersionException e) {
+            if (nodesWithCachedApiVersions.contains(nodeId)) {
+                // The cached versions may be stale. Drop them together with the connection, and let the request
+                // fail as disconnected, so that it is retried on a new connection which asks the broker.
+                log.debug("Version mismatch with the cached API versions of node {} when attempting to send {}. " +
+                        "Disconnecting.", nodeId, clientRequest, e);
+                invalidateCachedApiVersions(nodeId);
+                abortedSends.add(new ClientResponse(clientRequest.makeHeader(), clientRequest.callback(),
+                        clientRequest.destination(), now, now, true, null, null));
+                this.selector.close(nodeId);
+                processDisconnection(abortedSends, nodeId, now);
+                return;
+            }
             // If the version is not supported, skip sending the request over the wire.
             // Instead, simply add it to the local queue of aborted requests.
             log.debug("Version mismatch when attempting to send {} to {}",
@@ -369,11 +445,17 @@ public class NetworkClient implements KafkaClient {
                 isInternalRequest,
                 send,
                 now);
-        this.inFlightRequests.add(inFlightRequest);
         /*
          * 异步发送Selector会将Send记录到对应KafkaChannel，然后注册OP_WRITE，等待调用poll
          * */
-        selector.send(inFlightRequest.send);
+        if (RequestPriority.forApiKey(clientRequest.apiKey()) == RequestPriority.CONTROL) {
+            // the broker answers in the order of the sends, which the in-flight requests must follow
+            int ahead = selector.sendAhead(inFlightRequest.send);
+            this.inFlightRequests.add(inFlightRequest, ahead);
+        } else {
+            this.inFlightRequests.add(inFlightRequest);
+            selector.send(inFlightRequest.send);
+        }
     }
 
     /**
@@ -430,7 +512,7 @@ public class NetworkClient implements KafkaClient {
         /*
          * 更新连接状态
          * */
-        handleConnections();
+        handleConnections(updatedNow);
         handleInitiateApiVersionRequests(updatedNow);
         /*
          * 处理请求发送超时。如果请求发送超时，NetworkClient会认为连接断开，直接关闭连接
@@ -479,6 +561,10 @@ public class NetworkClient implements KafkaClient {
     @Override
     public void close() {
         this.selector.close();
+        if (metrics != null) {
+            for (ApiKeys apiKey : queueTimeSensors.keySet())
+                metrics.removeSensor(queueTimeSensorName(apiKey));
+        }
     }
 
     /**
@@ -491,6 +577,12 @@ public class NetworkClient implements KafkaClient {
      * connection if all existing connections are in use. This method will never choose a node for which there is no
      * existing connection and from which we have disconnected within the reconnect backoff period.
      *
+     * A ready node which can take another request is preferred to a node whose connection is still being established,
+     * which is preferred to a node we are not connected to, so that a request is not sent to a bootstrap node which
+     * may never accept the connection while another one is ready. If none of these is found, the ready node with the
+     * fewest in-flight requests is still returned even though it cannot take another request right now, since the
+     * request can be sent to it as soon as one of its requests completes.
+     *
      * @return The node with the fewest in-flight requests.
      */
     @Override
@@ -498,26 +590,47 @@ public class NetworkClient implements KafkaClient {
         List<Node> nodes = this.metadataUpdater.fetchNodes();
         int inflight = Integer.MAX_VALUE;
         Node found = null;
+        Node foundConnecting = null;
+        Node foundCanConnect = null;
+        int busyInflight = Integer.MAX_VALUE;
+        Node foundBusy = null;
 
         int offset = this.randOffset.nextInt(nodes.size());
         for (int i = 0; i < nodes.size(); i++) {
             int idx = (offset + i) % nodes.size();
             Node node = nodes.get(idx);
-            int currInflight = this.inFlightRequests.inFlightRequestCount(node.idString());
-            if (currInflight == 0 && this.connectionStates.isReady(node.idString())) {
-                // if we find an established connection with no in-flight requests we can stop right away
-                log.trace("Found least loaded node {} connected with no in-flight requests", node);
-                return node;
-            } else if (!this.connectionStates.isBlackedOut(node.idString(), now) && currInflight < inflight) {
-                // otherwise if this is the best we have found so far, record that
-                inflight = currInflight;
-                found = node;
+            String nodeId = node.idString();
+            int currInflight = this.inFlightRequests.inFlightRequestCount(nodeId);
+            if (canSendRequest(nodeId)) {
+                if (currInflight == 0) {
+                    // if we find an established connection with no in-flight requests we can stop right away
+                    log.trace("Found least loaded node {} connected with no in-flight requests", node);
+                    return node;
+                } else if (currInflight < inflight) {
+                    // otherwise if this is the best we have found so far, record that
+                    inflight = currInflight;
+                    found = node;
+                }
+            } else if (this.connectionStates.isReady(nodeId)) {
+                // ready, but at the in-flight limit or still writing, so only used if nothing else is available
+                if (currInflight < busyInflight) {
+                    busyInflight = currInflight;
+                    foundBusy = node;
+                }
+            } else if (this.connectionStates.isConnectingOrConnected(nodeId)) {
+                foundConnecting = node;
+            } else if (this.connectionStates.canConnect(nodeId, now)) {
+                foundCanConnect = node;
             } else if (log.isTraceEnabled()) {
                 log.trace("Removing node {} from least loaded node selection: is-blacked-out: {}, in-flight-requests: {}",
-                        node, this.connectionStates.isBlackedOut(node.idString(), now), currInflight);
+                        node, this.connectionStates.isBlackedOut(nodeId, now), currInflight);
             }
         }
 
+        if (found == null)
+            found = foundConnecting != null ? foundConnecting : foundCanConnect;
+        if (found == null)
+            found = foundBusy;
         if (found != null)
             log.trace("Found least loaded node {}", found);
         else
@@ -545,6 +658,11 @@ public class NetworkClient implements KafkaClient {
      */
     private void processDisconnection(List<ClientResponse> responses, String nodeId, long now) {
         connectionStates.disconnected(nodeId, now);
+        // a broker which does not support the cached versions closes the connection rather than respond. Later
+        // disconnects, like a request timeout or a broker restart, say nothing about the versions
+        if (nodesVerifyingCachedApiVersions.remove(nodeId) && this.inFlightRequests.inFlightRequestCount(nodeId) > 0)
+            invalidateCachedApiVersions(nodeId);
+        nodesWithCachedApiVersions.remove(nodeId);
         nodeApiVersions.remove(nodeId);
         nodesNeedingApiVersionsFetch.remove(nodeId);
         for (InFlightRequest request : this.inFlightRequests.clearAll(nodeId)) {
@@ -600,12 +718,13 @@ public class NetworkClient implements KafkaClient {
     private void handleCompletedSends(List<ClientResponse> responses, long now) {
         // if no response is expected then when the send is completed, return it
         for (Send send : this.selector.completedSends()) {
-            InFlightRequest request = this.inFlightRequests.lastSent(send.destination());
+            InFlightRequest request = this.inFlightRequests.sentRequest(send.destination(), send);
+            recordQueueTime(request, now);
             if (!request.expectResponse) {
                 /*
                  * 如果不需要响应，直接从inflightRequests出队
                  * */
-                this.inFlightRequests.completeLastSent(send.destination());
+                this.inFlightRequests.remove(request);
                 /*
                  * 等待回调处理
                  * */
@@ -614,6 +733,33 @@ public class NetworkClient implements KafkaClient {
         }
     }
 
+    /**
+     * Record the time from the creation of the request until it was written, which it spent queued by the caller of
+     * the client and behind other sends to the same connection
+     */
+    private void recordQueueTime(InFlightRequest request, long now) {
+        if (metrics == null)
+            return;
+        ApiKeys apiKey = ApiKeys.forId(request.header.apiKey());
+        Sensor queueTime = queueTimeSensors.get(apiKey);
+        if (queueTime == null) {
+            queueTime = metrics.sensor(queueTimeSensorName(apiKey));
+            Map<String, String> metricTags = Collections.singletonMap("api", apiKey.name);
+            queueTime.add(metrics.metricName("request-queue-time-avg", metricGrpName,
+                    "The average time in ms requests of the API waited before they were written to the socket.",
+                    metricTags), new Avg());
+            queueTime.add(metrics.metricName("request-queue-time-max", metricGrpName,
+                    "The maximum time in ms a request of the API waited before it was written to the socket.",
+                    metricTags), new Max());
+            queueTimeSensors.put(apiKey, queueTime);
+        }
+        queueTime.record(now - request.createdTimeMs, now);
+    }
+
+    private static String queueTimeSensorName(ApiKeys apiKey) {
+        return "api." + apiKey.name + ".request-queue-time";
+    }
+
     /**
      * Handle any completed receives and update the response list with the responses received.
      *
@@ -626,6 +772,7 @@ public class NetworkClient implements KafkaClient {
              * source表示NodeId
              * */
             String source = receive.source();
+            nodesVerifyingCachedApiVersions.remove(source);
             /*
              * 始终从最老的请求开始处理响应。因此broker必须保证发送的顺序性。正如NetworkClient可以使用InFlightRequest
              * 队列保证发送顺序性一样，只要连接不断开，上层也可以。
@@ -636,12 +783,15 @@ public class NetworkClient implements KafkaClient {
             InFlightRequest req = inFlightRequests.completeNext(source);
             AbstractResponse body = parseResponse(receive.payload(), req.header);
             log.trace("Completed receive from node {}, for key {}, received {}", req.destination, req.header.apiKey(), body);
-            if (req.isInternalRequest && body instanceof MetadataResponse)
+            // internal responses are fully copied when parsed, so their buffers can be released right away
+            if (req.isInternalRequest && body instanceof MetadataResponse) {
                 metadataUpdater.handleCompletedMetadataResponse(req.header, now, (MetadataResponse) body);
-            else if (req.isInternalRequest && body instanceof ApiVersionsResponse)
+                receive.release();
+            } else if (req.isInternalRequest && body instanceof ApiVersionsResponse) {
                 handleApiVersionsResponse(responses, req, now, (ApiVersionsResponse) body);
-            else
-                responses.add(req.completed(body, now));
+                receive.release();
+            } else
+                responses.add(req.completed(body, receive, now));
         }
     }
 
@@ -657,6 +807,9 @@ public class NetworkClient implements KafkaClient {
         }
         NodeApiVersions nodeVersionInfo = new NodeApiVersions(apiVersionsResponse.apiVersions());
         nodeApiVersions.put(node, nodeVersionInfo);
+        Node connectionNode = connectionNodes.get(node);
+        if (connectionNode != null)
+            ApiVersionsCache.put(connectionNode, nodeVersionInfo, now);
         this.connectionStates.ready(node);
         if (log.isDebugEnabled()) {
             log.debug("Recorded API versions for node {}: {}", node, nodeVersionInfo);
@@ -680,15 +833,27 @@ public class NetworkClient implements KafkaClient {
     }
 
     /**
-     * Record any newly completed connections
+     * Record any newly completed connections. A connection to a broker whose API versions are cached is ready right
+     * away, other connections fetch the versions first.
      */
-    private void handleConnections() {
+    private void handleConnections(long now) {
         for (String node : this.selector.connected()) {
             // We are now connected.  Node that we might not still be able to send requests. For instance,
             // if SSL is enabled, the SSL handshake happens after the connection is established.
             // Therefore, it is still necessary to check isChannelReady before attempting to send on this
             // connection.
-            if (discoverBrokerVersions) {
+            Node connectionNode = connectionNodes.get(node);
+            NodeApiVersions cachedVersions = discoverBrokerVersions && connectionNode != null
+                    ? ApiVersionsCache.get(connectionNode, now, apiVersionsMaxAgeMs) : null;
+            if (cachedVersions != null) {
+                nodeApiVersions.put(node, cachedVersions);
+                nodesWithCachedApiVersions.add(node);
+                nodesVerifyingCachedApiVersions.add(node);
+                this.connectionStates.ready(node);
+                log.debug("Completed connection to node {}.  Ready with cached API versions.", node);
+            } else if (discoverBrokerVersions) {
+                nodesWithCachedApiVersions.remove(node);
+                nodesVerifyingCachedApiVersions.remove(node);
                 this.connectionStates.checkingApiVersions(node);
                 nodesNeedingApiVersionsFetch.add(node);
                 log.debug("Completed connection to node {}.  Fetching API versions.", node);
@@ -722,6 +887,18 @@ public class NetworkClient implements KafkaClient {
                     + ") does not match request (" + requestHeader.correlationId() + "), request header: " + requestHeader);
     }
 
+    /**
+     * Remove the versions a connection uses from the ApiVersionsCache, unless they have been replaced already
+     */
+    private void invalidateCachedApiVersions(String nodeId) {
+        Node node = connectionNodes.get(nodeId);
+        NodeApiVersions versions = nodeApiVersions.get(nodeId);
+        if (node != null && versions != null) {
+            log.debug("Invalidating the cached API versions of node {}", nodeId);
+            ApiVersionsCache.invalidate(node, versions);
+        }
+    }
+
     /**
      * Initiate a connection to the given node
      */
@@ -730,6 +907,7 @@ public class NetworkClient implements KafkaClient {
         try {
             log.debug("Initiating connection to node {} at {}:{}.", node.id(), node.host(), node.port());
             this.connectionStates.connecting(nodeConnectionId, now);
+            connectionNodes.put(nodeConnectionId, node);
             selector.connect(nodeConnectionId,
                              new InetSocketAddress(node.host(), node.port()),
                              this.socketSendBuffer,
@@ -751,6 +929,9 @@ public class NetworkClient implements KafkaClient {
         /* true iff there is a metadata request that has been sent and for which we have not yet received a response */
         private boolean metadataFetchInProgress;
 
+        /* the time of the last connection initiated for a metadata request */
+        private long lastConnectAttemptMs;
+
         DefaultMetadataUpdater(Metadata metadata) {
             this.metadata = metadata;
             this.metadataFetchInProgress = false;
@@ -807,7 +988,7 @@ public class NetworkClient implements KafkaClient {
         @Override
         public void handleCompletedMetadataResponse(RequestHeader requestHeader, long now, MetadataResponse response) {
             this.metadataFetchInProgress = false;
-            Cluster cluster = response.cluster();
+            Cluster cluster = response.cluster(metadata.fetchReceived());
             // check if any topics metadata failed to get updated
             Map<String, Errors> errors = response.errors();
             if (!errors.isEmpty())
@@ -840,6 +1021,50 @@ public class NetworkClient implements KafkaClient {
             return false;
         }
 
+        /**
+         * Connect to the next bootstrap node we are not connecting to yet, if the connection attempt delay has passed
+         * since the last connection was initiated
+         * @return The time until another bootstrap node may be connected to
+         */
+        private long maybeConnectToAnotherBootstrapNode(long now) {
+            long waitMs = lastConnectAttemptMs + BOOTSTRAP_CONNECT_ATTEMPT_DELAY_MS - now;
+            if (waitMs > 0)
+                return waitMs;
+            for (Node node : fetchNodes()) {
+                if (connectionStates.canConnect(node.idString(), now)) {
+                    log.debug("Initialize connection to bootstrap node {} as no connection completed within {} ms",
+                            node.id(), BOOTSTRAP_CONNECT_ATTEMPT_DELAY_MS);
+                    initiateConnect(node, now);
+                    lastConnectAttemptMs = now;
+                    return BOOTSTRAP_CONNECT_ATTEMPT_DELAY_MS;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * Close the connections to the other bootstrap nodes, which lost the race to the given one. A ready connection
+         * with requests in flight is kept, as they would not be completed otherwise. The closed connections are marked
+         * disconnected, so that requests still waiting to be sent to them fail and are retried elsewhere.
+         */
+        private void closeOtherBootstrapConnections(String nodeConnectionId, long now) {
+            for (Node node : fetchNodes()) {
+                String id = node.idString();
+                if (!id.equals(nodeConnectionId) && connectionStates.isConnectingOrConnected(id)
+                        && (!connectionStates.isReady(id) || inFlightRequests.inFlightRequestCount(id) == 0)) {
+                    log.debug("Closing connection to bootstrap node {} as node {} was ready first", id, nodeConnectionId);
+                    selector.close(id);
+                    // at most the internal api versions request is in flight
+                    inFlightRequests.clearAll(id);
+                    connectionStates.disconnected(id, now);
+                    nodeApiVersions.remove(id);
+                    nodesNeedingApiVersionsFetch.remove(id);
+                    nodesWithCachedApiVersions.remove(id);
+                    nodesVerifyingCachedApiVersions.remove(id);
+                }
+            }
+        }
+
         /**
          * Add a metadata request to the list of sends if we can make one
          */
@@ -847,6 +1072,8 @@ public class NetworkClient implements KafkaClient {
             String nodeConnectionId = node.idString();
 
             if (canSendRequest(nodeConnectionId)) {
+                if (metadata.fetch().isBootstrapConfigured())
+                    closeOtherBootstrapConnections(nodeConnectionId, now);
                 this.metadataFetchInProgress = true;
                 MetadataRequest.Builder metadataRequest;
                 if (metadata.needMetadataForAllTopics())
@@ -863,9 +1090,13 @@ public class NetworkClient implements KafkaClient {
             // If there's any connection establishment underway, wait until it completes. This prevents
             // the client from unnecessarily connecting to additional nodes while a previous connection
             // attempt has not been completed.
+            // While bootstrapping, another bootstrap node is connected to whenever no connection has completed
+            // within the connection attempt delay, and the first node which becomes ready is used.
             if (isAnyNodeConnecting()) {
                 // Strictly the timeout we should return here is "connect timeout", but as we don't
                 // have such application level configuration, using reconnect backoff instead.
+                if (metadata.fetch().isBootstrapConfigured())
+                    return Math.min(maybeConnectToAnotherBootstrapNode(now), reconnectBackoffMs);
                 return reconnectBackoffMs;
             }
 
@@ -873,6 +1104,7 @@ public class NetworkClient implements KafkaClient {
                 // we don't have a connection to this node right now, make one
                 log.debug("Initialize connection to node {} for sending metadata request", node.id());
                 initiateConnect(node, now);
+                lastConnectAttemptMs = now;
                 return reconnectBackoffMs;
             }
 
@@ -926,7 +1158,12 @@ public class NetworkClient implements KafkaClient {
         }
 
         public ClientResponse completed(AbstractResponse response, long timeMs) {
-            return new ClientResponse(header, callback, destination, createdTimeMs, timeMs, false, null, response);
+            return completed(response, null, timeMs);
+        }
+
+        public ClientResponse completed(AbstractResponse response, NetworkReceive receive, long timeMs) {
+            return new ClientResponse(header, callback, destination, createdTimeMs, timeMs, false, null, response,
+                    receive);
         }
 
         public ClientResponse disconnected(long timeMs) {
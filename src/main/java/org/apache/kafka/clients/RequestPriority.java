@@ -0,0 +1,33 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients;
+
+import org.apache.kafka.common.protocol.ApiKeys;
+
+/**
+ * The priority classes of outgoing requests. Data requests, produce and fetch requests, may be large and many are
+ * queued for a broker under load. Control requests, such as heartbeats, offset commits and metadata requests, are
+ * small, but the group membership and the metadata of the client depend on them arriving in time. A control request
+ * is therefore sent ahead of the data requests which are queued for the same connection and have not started to be
+ * written, while the requests of each class keep their order.
+ *
+ * Requests which have been written are answered by the broker in the order they were written, so a control request
+ * still waits for the responses of the data requests written before it.
+ */
+public enum RequestPriority {
+    CONTROL, DATA;
+
+    public static RequestPriority forApiKey(ApiKeys apiKey) {
+        return apiKey == ApiKeys.PRODUCE || apiKey == ApiKeys.FETCH ? DATA : CONTROL;
+    }
+}
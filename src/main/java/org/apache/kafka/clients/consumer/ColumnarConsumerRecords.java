@@ -0,0 +1,52 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of a {@link Consumer#poll(long)} operation when <code>poll.columnar.records.enable</code> is set. The
+ * records of each partition are held in a {@link ConsumerRecordColumns}, which keeps the offsets, timestamps and raw
+ * bytes in flat arrays and only deserializes a record when it is accessed. All methods of {@link ConsumerRecords}
+ * remain available and materialize the records they return.
+ */
+public class ColumnarConsumerRecords<K, V> extends ConsumerRecords<K, V> {
+
+    private final Map<TopicPartition, ConsumerRecordColumns<K, V>> columns;
+
+    /**
+     * @param records The fetched records per partition. Every list must be a {@link ConsumerRecordColumns}.
+     */
+    @SuppressWarnings("unchecked")
+    public ColumnarConsumerRecords(Map<TopicPartition, List<ConsumerRecord<K, V>>> records) {
+        super(records);
+        for (Map.Entry<TopicPartition, List<ConsumerRecord<K, V>>> entry : records.entrySet()) {
+            if (!(entry.getValue() instanceof ConsumerRecordColumns))
+                throw new IllegalArgumentException("Records of partition " + entry.getKey() + " are not columnar");
+        }
+        this.columns = (Map<TopicPartition, ConsumerRecordColumns<K, V>>) (Map<?, ?>) records;
+    }
+
+    /**
+     * Get the columns of the records for the given partition
+     *
+     * @param partition The partition to get records for
+     * @return The columns, or null if no records were returned for the partition
+     */
+    public ConsumerRecordColumns<K, V> columns(TopicPartition partition) {
+        return columns.get(partition);
+    }
+}
@@ -13,6 +13,7 @@
 package org.apache.kafka.clients.consumer;
 
 import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.clients.ConnectionStripes;
 import org.apache.kafka.common.config.AbstractConfig;
 import org.apache.kafka.common.config.ConfigDef;
 import org.apache.kafka.common.config.ConfigDef.Importance;
@@ -27,6 +28,7 @@ import java.util.Properties;
 import java.util.Set;
 
 import static org.apache.kafka.common.config.ConfigDef.Range.atLeast;
+import static org.apache.kafka.common.config.ConfigDef.Range.between;
 import static org.apache.kafka.common.config.ConfigDef.ValidString.in;
 
 /**
@@ -50,6 +52,27 @@ public class ConsumerConfig extends AbstractConfig {
     public static final String MAX_POLL_RECORDS_CONFIG = "max.poll.records";
     private static final String MAX_POLL_RECORDS_DOC = "The maximum number of records returned in a single call to poll().";
 
+    /** <code>max.poll.records.per.partition</code> */
+    public static final String MAX_POLL_RECORDS_PER_PARTITION_CONFIG = "max.poll.records.per.partition";
+    private static final String MAX_POLL_RECORDS_PER_PARTITION_DOC = "The maximum number of records returned for a single " +
+            "partition in a single call to poll(). When this is lower than " + MAX_POLL_RECORDS_CONFIG + ", poll() rotates " +
+            "across the partitions with fetched data so that one deep partition cannot monopolize consecutive polls. " +
+            "Records of each partition are still returned in order.";
+
+    /** <code>poll.columnar.records.enable</code> */
+    public static final String COLUMNAR_RECORDS_CONFIG = "poll.columnar.records.enable";
+    private static final String COLUMNAR_RECORDS_DOC = "When set to true poll() returns a <code>ColumnarConsumerRecords</code> " +
+            "which keeps the offsets, timestamps and raw key/value bytes of each partition in flat arrays. Keys and values " +
+            "are only deserialized when a record is accessed, so consumers which only look at a subset of the records or " +
+            "process the raw bytes directly avoid most per-record allocation.";
+
+    /** <code>poll.record.cursor.enable</code> */
+    public static final String CURSOR_RECORDS_CONFIG = "poll.record.cursor.enable";
+    private static final String CURSOR_RECORDS_DOC = "When set to true poll() returns a <code>CursorConsumerRecords</code> " +
+            "which leaves the records in the fetched log entries and exposes them through a reusable cursor. Iterating the " +
+            "cursor reads the offset, timestamp and raw key/value of each record in place without allocating a record " +
+            "object. Cannot be combined with <code>" + COLUMNAR_RECORDS_CONFIG + "</code>.";
+
     /** <code>max.poll.interval.ms</code> */
     public static final String MAX_POLL_INTERVAL_MS_CONFIG = "max.poll.interval.ms";
     private static final String MAX_POLL_INTERVAL_MS_DOC = "The maximum delay between invocations of poll() when using " +
@@ -78,6 +101,13 @@ public class ConsumerConfig extends AbstractConfig {
             "The value must be set lower than <code>session.timeout.ms</code>, but typically should be set no higher " +
             "than 1/3 of that value. It can be adjusted even lower to control the expected time for normal rebalances.";
 
+    /** <code>heartbeat.scheduler.shared</code> */
+    public static final String SHARED_HEARTBEAT_SCHEDULER_CONFIG = "heartbeat.scheduler.shared";
+    private static final String SHARED_HEARTBEAT_SCHEDULER_DOC = "When set to true the heartbeats of this consumer are sent " +
+            "by a scheduler shared by all consumers in the process which enable it, instead of a dedicated heartbeat thread " +
+            "per consumer. The scheduler keeps a single timer thread and only adds worker threads while a consumer blocks " +
+            "its heartbeat, so applications running many consumers use far fewer threads.";
+
     /**
      * <code>bootstrap.servers</code>
      */
@@ -95,12 +125,29 @@ public class ConsumerConfig extends AbstractConfig {
     public static final String AUTO_COMMIT_INTERVAL_MS_CONFIG = "auto.commit.interval.ms";
     private static final String AUTO_COMMIT_INTERVAL_MS_DOC = "The frequency in milliseconds that the consumer offsets are auto-committed to Kafka if <code>enable.auto.commit</code> is set to <code>true</code>.";
 
+    /** <code>commit.async.coalesce.enable</code> */
+    public static final String COALESCE_ASYNC_COMMITS_CONFIG = "commit.async.coalesce.enable";
+    private static final String COALESCE_ASYNC_COMMITS_DOC = "When set to true, asynchronous offset commits which are issued " +
+            "while another asynchronous commit is in flight are merged into a single pending commit, keeping the latest offset " +
+            "of each partition. The merged commit is sent by the next poll or commit after the in-flight commit completed, and " +
+            "before any synchronous commit, rebalance or close. The callbacks of the merged commits are completed with its " +
+            "result, in their original order. This sends far fewer commit requests when commitAsync is called after every " +
+            "batch, at the cost of later callbacks: a merged commit is only sent, and its callbacks only run, after the " +
+            "in-flight commit completed and the consumer is polled or committed again. A failure of the merged commit is " +
+            "reported to every merged callback. Disabled by default, so that commitAsync sends one request per call.";
+
     /**
      * <code>partition.assignment.strategy</code>
      */
     public static final String PARTITION_ASSIGNMENT_STRATEGY_CONFIG = "partition.assignment.strategy";
     private static final String PARTITION_ASSIGNMENT_STRATEGY_DOC = "The class name of the partition assignment strategy that the client will use to distribute partition ownership amongst consumer instances when group management is used";
 
+    /** <code>partition.assignment.weight.provider</code> */
+    public static final String PARTITION_WEIGHT_PROVIDER_CONFIG = "partition.assignment.weight.provider";
+    private static final String PARTITION_WEIGHT_PROVIDER_DOC = "The class name of the provider that <code>ThroughputWeightedAssignor</code> " +
+            "uses on the group leader to look up the weight of partitions whose byte rate was not reported by any member, " +
+            "implementing the <code>PartitionWeightProvider</code> interface.";
+
     /**
      * <code>auto.offset.reset</code>
      */
@@ -133,6 +180,14 @@ public class ConsumerConfig extends AbstractConfig {
     /** <code>metadata.max.age.ms</code> */
     public static final String METADATA_MAX_AGE_CONFIG = CommonClientConfigs.METADATA_MAX_AGE_CONFIG;
 
+    /** <code>list.offsets.cache.ttl.ms</code> */
+    public static final String LIST_OFFSETS_CACHE_TTL_MS_CONFIG = "list.offsets.cache.ttl.ms";
+    private static final String LIST_OFFSETS_CACHE_TTL_MS_DOC = "The maximum age of a cached beginning or end offset of " +
+            "a partition. When greater than zero, <code>beginningOffsets()</code>, <code>endOffsets()</code> and offset resets " +
+            "are answered from offsets looked up or fetched within this time instead of sending a ListOffsetRequest. The end " +
+            "offsets of fetched partitions are also kept up to date from the high watermark returned with every fetch. Set to 0 " +
+            "to always ask the broker.";
+
     /**
      * <code>max.partition.fetch.bytes</code>
      */
@@ -144,6 +199,33 @@ public class ConsumerConfig extends AbstractConfig {
             "<code>max.message.bytes</code> (topic config). See " + FETCH_MAX_BYTES_CONFIG + " for limiting the consumer request size.";
     public static final int DEFAULT_MAX_PARTITION_FETCH_BYTES = 1 * 1024 * 1024;
 
+    /**
+     * <code>fetch.adaptive.partition.bytes.enable</code>
+     */
+    public static final String ADAPTIVE_PARTITION_FETCH_BYTES_CONFIG = "fetch.adaptive.partition.bytes.enable";
+    private static final String ADAPTIVE_PARTITION_FETCH_BYTES_DOC = "When set to true the consumer sizes the fetch of each " +
+            "partition from the bytes it returned in recent fetches and its current lag, instead of always requesting " +
+            "<code>" + MAX_PARTITION_FETCH_BYTES_CONFIG + "</code>. Lagging partitions which fill their fetch are given a larger " +
+            "share and cold partitions are shrunk, while the total of each request stays within <code>" + FETCH_MAX_BYTES_CONFIG + "</code>.";
+
+    /**
+     * <code>fetch.scheduling.policy</code>
+     */
+    public static final String FETCH_SCHEDULING_POLICY_CONFIG = "fetch.scheduling.policy";
+    private static final String FETCH_SCHEDULING_POLICY_DOC = "The class name of the policy that orders partitions when " +
+            "fetch requests are built and when fetched records are returned from poll, implementing the " +
+            "<code>FetchSchedulingPolicy</code> interface. Options include <code>LagWeightedFetchPolicy</code>, " +
+            "<code>TopicPriorityFetchPolicy</code> and <code>DeadlineFetchPolicy</code>. By default partitions are " +
+            "served in round-robin order.";
+
+    /**
+     * <code>fetch.scheduling.topic.priorities</code>
+     */
+    public static final String FETCH_SCHEDULING_TOPIC_PRIORITIES_CONFIG = "fetch.scheduling.topic.priorities";
+    private static final String FETCH_SCHEDULING_TOPIC_PRIORITIES_DOC = "A list of <code>topic:priority</code> pairs used " +
+            "by <code>TopicPriorityFetchPolicy</code>. Partitions of topics with a higher priority are fetched and returned " +
+            "first, unlisted topics have priority 0.";
+
     /** <code>send.buffer.bytes</code> */
     public static final String SEND_BUFFER_CONFIG = CommonClientConfigs.SEND_BUFFER_CONFIG;
 
@@ -191,6 +273,15 @@ public class ConsumerConfig extends AbstractConfig {
     public static final String CHECK_CRCS_CONFIG = "check.crcs";
     private static final String CHECK_CRCS_DOC = "Automatically check the CRC32 of the records consumed. This ensures no on-the-wire or on-disk corruption to the messages occurred. This check adds some overhead, so it may be disabled in cases seeking extreme performance.";
 
+    /**
+     * <code>check.crcs.shallow</code>
+     */
+    public static final String CHECK_CRCS_SHALLOW_CONFIG = "check.crcs.shallow";
+    private static final String CHECK_CRCS_SHALLOW_DOC = "When " + CHECK_CRCS_CONFIG + " is enabled, only check the CRC32 of the " +
+            "wrapper message of compressed message sets instead of every record inside them. The wrapper checksum covers " +
+            "the compressed payload, so corruption is still detected at a fraction of the cost. Uncompressed records are " +
+            "always checked individually.";
+
     /** <code>key.deserializer</code> */
     public static final String KEY_DESERIALIZER_CLASS_CONFIG = "key.deserializer";
     public static final String KEY_DESERIALIZER_CLASS_DOC = "Deserializer class for key that implements the <code>Deserializer</code> interface.";
@@ -202,6 +293,29 @@ public class ConsumerConfig extends AbstractConfig {
     /** <code>connections.max.idle.ms</code> */
     public static final String CONNECTIONS_MAX_IDLE_MS_CONFIG = CommonClientConfigs.CONNECTIONS_MAX_IDLE_MS_CONFIG;
 
+    /** <code>network.client.shared</code> */
+    public static final String SHARED_NETWORK_CLIENT_CONFIG = "network.client.shared";
+    private static final String SHARED_NETWORK_CLIENT_DOC = "When set to true this consumer shares its broker connections " +
+            "and metadata refreshes with the other consumers in the process which enable it and have the same bootstrap " +
+            "servers, security and connection settings. Fetches of these consumers to the same broker are merged into one " +
+            "request, which may delay a fetch by up to <code>" + FETCH_MAX_WAIT_MS_CONFIG + "</code>, while the connections " +
+            "to the group coordinator remain private to each consumer. This reduces the number of sockets and metadata " +
+            "requests of applications running many consumers.";
+
+    /** <code>receive.memory.pool.bytes</code> */
+    public static final String RECEIVE_MEMORY_POOL_BYTES_CONFIG = "receive.memory.pool.bytes";
+    private static final String RECEIVE_MEMORY_POOL_BYTES_DOC = "The maximum number of bytes held by the buffers which " +
+            "fetch responses are read into. The buffers are returned to the pool and reused once the records were parsed. " +
+            "When the pool is exhausted, the consumer stops reading from the connections whose response cannot be allocated " +
+            "until memory is released. A single response larger than the pool is still read when no other buffer is in use. " +
+            "Records polled with <code>" + CURSOR_RECORDS_CONFIG + "</code> keep referring to their buffer, which is then " +
+            "no longer counted and left to the garbage collector. A value of 0 allocates a new buffer for every response.";
+
+    /** <code>receive.memory.pool.direct</code> */
+    public static final String RECEIVE_MEMORY_POOL_DIRECT_CONFIG = "receive.memory.pool.direct";
+    private static final String RECEIVE_MEMORY_POOL_DIRECT_DOC = "When set to true the buffers of <code>" +
+            RECEIVE_MEMORY_POOL_BYTES_CONFIG + "</code> are allocated outside of the heap.";
+
     /** <code>request.timeout.ms</code> */
     public static final String REQUEST_TIMEOUT_MS_CONFIG = CommonClientConfigs.REQUEST_TIMEOUT_MS_CONFIG;
     private static final String REQUEST_TIMEOUT_MS_DOC = CommonClientConfigs.REQUEST_TIMEOUT_MS_DOC;
@@ -235,17 +349,33 @@ public class ConsumerConfig extends AbstractConfig {
                                         3000,
                                         Importance.HIGH,
                                         HEARTBEAT_INTERVAL_MS_DOC)
+                                .define(SHARED_HEARTBEAT_SCHEDULER_CONFIG,
+                                        Type.BOOLEAN,
+                                        false,
+                                        Importance.LOW,
+                                        SHARED_HEARTBEAT_SCHEDULER_DOC)
                                 .define(PARTITION_ASSIGNMENT_STRATEGY_CONFIG,
                                         Type.LIST,
                                         Collections.singletonList(RangeAssignor.class),
                                         Importance.MEDIUM,
                                         PARTITION_ASSIGNMENT_STRATEGY_DOC)
+                                .define(PARTITION_WEIGHT_PROVIDER_CONFIG,
+                                        Type.CLASS,
+                                        null,
+                                        Importance.LOW,
+                                        PARTITION_WEIGHT_PROVIDER_DOC)
                                 .define(METADATA_MAX_AGE_CONFIG,
                                         Type.LONG,
                                         5 * 60 * 1000,
                                         atLeast(0),
                                         Importance.LOW,
                                         CommonClientConfigs.METADATA_MAX_AGE_DOC)
+                                .define(LIST_OFFSETS_CACHE_TTL_MS_CONFIG,
+                                        Type.LONG,
+                                        0,
+                                        atLeast(0),
+                                        Importance.LOW,
+                                        LIST_OFFSETS_CACHE_TTL_MS_DOC)
                                 .define(ENABLE_AUTO_COMMIT_CONFIG,
                                         Type.BOOLEAN,
                                         true,
@@ -257,6 +387,11 @@ public class ConsumerConfig extends AbstractConfig {
                                         atLeast(0),
                                         Importance.LOW,
                                         AUTO_COMMIT_INTERVAL_MS_DOC)
+                                .define(COALESCE_ASYNC_COMMITS_CONFIG,
+                                        Type.BOOLEAN,
+                                        false,
+                                        Importance.LOW,
+                                        COALESCE_ASYNC_COMMITS_DOC)
                                 .define(CLIENT_ID_CONFIG,
                                         Type.STRING,
                                         "",
@@ -268,6 +403,21 @@ public class ConsumerConfig extends AbstractConfig {
                                         atLeast(0),
                                         Importance.HIGH,
                                         MAX_PARTITION_FETCH_BYTES_DOC)
+                                .define(ADAPTIVE_PARTITION_FETCH_BYTES_CONFIG,
+                                        Type.BOOLEAN,
+                                        false,
+                                        Importance.LOW,
+                                        ADAPTIVE_PARTITION_FETCH_BYTES_DOC)
+                                .define(FETCH_SCHEDULING_POLICY_CONFIG,
+                                        Type.CLASS,
+                                        null,
+                                        Importance.LOW,
+                                        FETCH_SCHEDULING_POLICY_DOC)
+                                .define(FETCH_SCHEDULING_TOPIC_PRIORITIES_CONFIG,
+                                        Type.LIST,
+                                        "",
+                                        Importance.LOW,
+                                        FETCH_SCHEDULING_TOPIC_PRIORITIES_DOC)
                                 .define(SEND_BUFFER_CONFIG,
                                         Type.INT,
                                         128 * 1024,
@@ -321,6 +471,11 @@ public class ConsumerConfig extends AbstractConfig {
                                         true,
                                         Importance.LOW,
                                         CHECK_CRCS_DOC)
+                                .define(CHECK_CRCS_SHALLOW_CONFIG,
+                                        Type.BOOLEAN,
+                                        false,
+                                        Importance.LOW,
+                                        CHECK_CRCS_SHALLOW_DOC)
                                 .define(METRICS_SAMPLE_WINDOW_MS_CONFIG,
                                         Type.LONG,
                                         30000,
@@ -364,6 +519,22 @@ public class ConsumerConfig extends AbstractConfig {
                                         9 * 60 * 1000,
                                         Importance.MEDIUM,
                                         CommonClientConfigs.CONNECTIONS_MAX_IDLE_MS_DOC)
+                                .define(SHARED_NETWORK_CLIENT_CONFIG,
+                                        Type.BOOLEAN,
+                                        false,
+                                        Importance.LOW,
+                                        SHARED_NETWORK_CLIENT_DOC)
+                                .define(RECEIVE_MEMORY_POOL_BYTES_CONFIG,
+                                        Type.LONG,
+                                        0L,
+                                        atLeast(0),
+                                        Importance.LOW,
+                                        RECEIVE_MEMORY_POOL_BYTES_DOC)
+                                .define(RECEIVE_MEMORY_POOL_DIRECT_CONFIG,
+                                        Type.BOOLEAN,
+                                        false,
+                                        Importance.LOW,
+                                        RECEIVE_MEMORY_POOL_DIRECT_DOC)
                                 .define(INTERCEPTOR_CLASSES_CONFIG,
                                         Type.LIST,
                                         null,
@@ -375,6 +546,22 @@ public class ConsumerConfig extends AbstractConfig {
                                         atLeast(1),
                                         Importance.MEDIUM,
                                         MAX_POLL_RECORDS_DOC)
+                                .define(MAX_POLL_RECORDS_PER_PARTITION_CONFIG,
+                                        Type.INT,
+                                        Integer.MAX_VALUE,
+                                        atLeast(1),
+                                        Importance.LOW,
+                                        MAX_POLL_RECORDS_PER_PARTITION_DOC)
+                                .define(COLUMNAR_RECORDS_CONFIG,
+                                        Type.BOOLEAN,
+                                        false,
+                                        Importance.LOW,
+                                        COLUMNAR_RECORDS_DOC)
+                                .define(CURSOR_RECORDS_CONFIG,
+                                        Type.BOOLEAN,
+                                        false,
+                                        Importance.LOW,
+                                        CURSOR_RECORDS_DOC)
                                 .define(MAX_POLL_INTERVAL_MS_CONFIG,
                                         Type.INT,
                                         300000,
@@ -393,6 +580,18 @@ public class ConsumerConfig extends AbstractConfig {
                                         CommonClientConfigs.DEFAULT_SECURITY_PROTOCOL,
                                         Importance.MEDIUM,
                                         CommonClientConfigs.SECURITY_PROTOCOL_DOC)
+                                .define(CommonClientConfigs.HANDSHAKE_EXECUTOR_THREADS_CONFIG,
+                                        Type.INT,
+                                        0,
+                                        atLeast(0),
+                                        Importance.LOW,
+                                        CommonClientConfigs.HANDSHAKE_EXECUTOR_THREADS_DOC)
+                                .define(CommonClientConfigs.CONNECTIONS_PER_BROKER_CONFIG,
+                                        Type.INT,
+                                        1,
+                                        between(1, ConnectionStripes.MAX_CONNECTIONS_PER_BROKER),
+                                        Importance.LOW,
+                                        CommonClientConfigs.CONNECTIONS_PER_BROKER_DOC)
                                 .withClientSslSupport()
                                 .withClientSaslSupport();
 
@@ -0,0 +1,277 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The records fetched for a single partition, stored column by column. Offsets, timestamps and checksums are kept
+ * in primitive arrays and the raw keys and values of all records share one byte array, addressed by the offset and
+ * length arrays. A length of -1 denotes a null key or value.
+ * <p>
+ * The columns are exposed directly, starting at index {@link #start()} and spanning {@link #size()} records, so that
+ * views of a partially returned fetch can share the arrays without copying. The arrays must not be modified.
+ * <p>
+ * As a {@link List} of {@link ConsumerRecord}, every call to {@link #get(int)} deserializes the key and value of the
+ * record and materializes a new {@link ConsumerRecord}. Callers which access a record several times should keep the
+ * returned instance.
+ */
+public class ConsumerRecordColumns<K, V> extends AbstractList<ConsumerRecord<K, V>> implements RandomAccess {
+
+    private final TopicPartition partition;
+    private final Deserializer<K> keyDeserializer;
+    private final Deserializer<V> valueDeserializer;
+    private final long[] offsets;
+    private final long[] timestamps;
+    private final TimestampType[] timestampTypes;
+    private final long[] checksums;
+    private final int[] keyOffsets;
+    private final int[] keyLengths;
+    private final int[] valueOffsets;
+    private final int[] valueLengths;
+    private final byte[] buffer;
+    private final int start;
+    private final int size;
+
+    public ConsumerRecordColumns(TopicPartition partition,
+                                 Deserializer<K> keyDeserializer,
+                                 Deserializer<V> valueDeserializer,
+                                 long[] offsets,
+                                 long[] timestamps,
+                                 TimestampType[] timestampTypes,
+                                 long[] checksums,
+                                 int[] keyOffsets,
+                                 int[] keyLengths,
+                                 int[] valueOffsets,
+                                 int[] valueLengths,
+                                 byte[] buffer,
+                                 int start,
+                                 int size) {
+        if (start < 0 || size < 0 || start + size > offsets.length)
+            throw new IndexOutOfBoundsException("Invalid view [" + start + ", " + (start + size) + ") of " +
+                    offsets.length + " records");
+        this.partition = partition;
+        this.keyDeserializer = keyDeserializer;
+        this.valueDeserializer = valueDeserializer;
+        this.offsets = offsets;
+        this.timestamps = timestamps;
+        this.timestampTypes = timestampTypes;
+        this.checksums = checksums;
+        this.keyOffsets = keyOffsets;
+        this.keyLengths = keyLengths;
+        this.valueOffsets = valueOffsets;
+        this.valueLengths = valueLengths;
+        this.buffer = buffer;
+        this.start = start;
+        this.size = size;
+    }
+
+    /**
+     * The partition the records were fetched from
+     */
+    public TopicPartition partition() {
+        return partition;
+    }
+
+    /**
+     * The index of the first record of this view in the column arrays
+     */
+    public int start() {
+        return start;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public long[] offsets() {
+        return offsets;
+    }
+
+    public long[] timestamps() {
+        return timestamps;
+    }
+
+    public TimestampType[] timestampTypes() {
+        return timestampTypes;
+    }
+
+    public long[] checksums() {
+        return checksums;
+    }
+
+    public int[] keyOffsets() {
+        return keyOffsets;
+    }
+
+    public int[] keyLengths() {
+        return keyLengths;
+    }
+
+    public int[] valueOffsets() {
+        return valueOffsets;
+    }
+
+    public int[] valueLengths() {
+        return valueLengths;
+    }
+
+    /**
+     * The buffer holding the raw keys and values of all records
+     */
+    public byte[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * The offset of the i-th record of this view
+     */
+    public long offset(int i) {
+        return offsets[index(i)];
+    }
+
+    /**
+     * The timestamp of the i-th record of this view
+     */
+    public long timestamp(int i) {
+        return timestamps[index(i)];
+    }
+
+    /**
+     * The raw key of the i-th record of this view, or null if the key is null. The returned buffer is a read-only
+     * view of the shared buffer.
+     */
+    public ByteBuffer key(int i) {
+        int index = index(i);
+        return slice(keyOffsets[index], keyLengths[index]);
+    }
+
+    /**
+     * The raw value of the i-th record of this view, or null if the value is null. The returned buffer is a read-only
+     * view of the shared buffer.
+     */
+    public ByteBuffer value(int i) {
+        int index = index(i);
+        return slice(valueOffsets[index], valueLengths[index]);
+    }
+
+    /**
+     * Deserialize the i-th record of this view
+     */
+    @Override
+    public ConsumerRecord<K, V> get(int i) {
+        int index = index(i);
+        try {
+            byte[] keyBytes = copy(keyOffsets[index], keyLengths[index]);
+            K key = keyBytes == null ? null : keyDeserializer.deserialize(partition.topic(), keyBytes);
+            byte[] valueBytes = copy(valueOffsets[index], valueLengths[index]);
+            V value = valueBytes == null ? null : valueDeserializer.deserialize(partition.topic(), valueBytes);
+            return new ConsumerRecord<>(partition.topic(), partition.partition(), offsets[index],
+                    timestamps[index], timestampTypes[index], checksums[index],
+                    keyBytes == null ? ConsumerRecord.NULL_SIZE : keyBytes.length,
+                    valueBytes == null ? ConsumerRecord.NULL_SIZE : valueBytes.length,
+                    key, value);
+        } catch (RuntimeException e) {
+            throw new SerializationException("Error deserializing key/value for partition " + partition +
+                    " at offset " + offsets[index], e);
+        }
+    }
+
+    /**
+     * Get a view of a range of this view. The returned view shares the column arrays with this one.
+     */
+    @Override
+    public ConsumerRecordColumns<K, V> subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("Invalid range [" + fromIndex + ", " + toIndex + ") of " + size + " records");
+        return new ConsumerRecordColumns<>(partition, keyDeserializer, valueDeserializer, offsets, timestamps,
+                timestampTypes, checksums, keyOffsets, keyLengths, valueOffsets, valueLengths, buffer,
+                start + fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * Append the records of another view of the same partition to the records of this one. Unlike {@link #subList(int, int)}
+     * this copies the columns of both views.
+     */
+    public ConsumerRecordColumns<K, V> concat(ConsumerRecordColumns<K, V> other) {
+        int total = size + other.size;
+        long[] newOffsets = new long[total];
+        long[] newTimestamps = new long[total];
+        TimestampType[] newTimestampTypes = new TimestampType[total];
+        long[] newChecksums = new long[total];
+        int[] newKeyOffsets = new int[total];
+        int[] newKeyLengths = new int[total];
+        int[] newValueOffsets = new int[total];
+        int[] newValueLengths = new int[total];
+
+        int bufferSize = 0;
+        for (ConsumerRecordColumns<K, V> columns : Arrays.asList(this, other))
+            for (int i = columns.start; i < columns.start + columns.size; i++)
+                bufferSize += Math.max(0, columns.keyLengths[i]) + Math.max(0, columns.valueLengths[i]);
+        byte[] newBuffer = new byte[bufferSize];
+
+        int index = 0;
+        int position = 0;
+        for (ConsumerRecordColumns<K, V> columns : Arrays.asList(this, other)) {
+            System.arraycopy(columns.offsets, columns.start, newOffsets, index, columns.size);
+            System.arraycopy(columns.timestamps, columns.start, newTimestamps, index, columns.size);
+            System.arraycopy(columns.timestampTypes, columns.start, newTimestampTypes, index, columns.size);
+            System.arraycopy(columns.checksums, columns.start, newChecksums, index, columns.size);
+            for (int i = columns.start; i < columns.start + columns.size; i++, index++) {
+                newKeyOffsets[index] = position;
+                newKeyLengths[index] = columns.keyLengths[i];
+                if (columns.keyLengths[i] > 0) {
+                    System.arraycopy(columns.buffer, columns.keyOffsets[i], newBuffer, position, columns.keyLengths[i]);
+                    position += columns.keyLengths[i];
+                }
+                newValueOffsets[index] = position;
+                newValueLengths[index] = columns.valueLengths[i];
+                if (columns.valueLengths[i] > 0) {
+                    System.arraycopy(columns.buffer, columns.valueOffsets[i], newBuffer, position, columns.valueLengths[i]);
+                    position += columns.valueLengths[i];
+                }
+            }
+        }
+        return new ConsumerRecordColumns<>(partition, keyDeserializer, valueDeserializer, newOffsets, newTimestamps,
+                newTimestampTypes, newChecksums, newKeyOffsets, newKeyLengths, newValueOffsets, newValueLengths,
+                newBuffer, 0, total);
+    }
+
+    private int index(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + " is out of range for " + size + " records");
+        return start + i;
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        if (length < 0)
+            return null;
+        return ByteBuffer.wrap(buffer, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    private byte[] copy(int offset, int length) {
+        if (length < 0)
+            return null;
+        return Arrays.copyOfRange(buffer, offset, offset + length);
+    }
+}
@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.LogEntryCursor;
+import org.apache.kafka.common.record.TimestampType;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A flyweight over the records returned by one {@link Consumer#poll(long)} in cursor mode. The cursor points at one
+ * record at a time and reads its fields in place from the fetched log entries, so iterating the records allocates
+ * nothing unless keys or values are deserialized. For example, a filter which only looks at the raw values:
+ * <pre>
+ * ConsumerRecordCursor&lt;byte[], byte[]&gt; cursor = ((CursorConsumerRecords&lt;byte[], byte[]&gt;) consumer.poll(100)).cursor();
+ * while (cursor.next()) {
+ *     ByteBuffer value = cursor.valueBuffer();
+ *     if (value != null &amp;&amp; value.remaining() &gt; 0 &amp;&amp; value.get(value.position()) == '{')
+ *         matches++;
+ * }
+ * </pre>
+ * The partitions are visited one after the other and the records of each partition in offset order. The values
+ * returned by the accessors, including the buffers, are only valid until the cursor is moved.
+ */
+public class ConsumerRecordCursor<K, V> {
+
+    private final List<ConsumerRecordEntries<K, V>> partitions;
+    private ConsumerRecordEntries<K, V> current = null;
+    private int partitionIndex = -1;
+    private int recordIndex = -1;
+
+    ConsumerRecordCursor(Map<TopicPartition, List<ConsumerRecord<K, V>>> records) {
+        this.partitions = new ArrayList<>(records.size());
+        for (Map.Entry<TopicPartition, List<ConsumerRecord<K, V>>> entry : records.entrySet())
+            partitions.add(ConsumerRecordEntries.of(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Move to the next record
+     * @return false if there are no more records
+     */
+    public boolean next() {
+        while (current == null || recordIndex + 1 >= current.size()) {
+            if (partitionIndex + 1 >= partitions.size()) {
+                current = null;
+                return false;
+            }
+            current = partitions.get(++partitionIndex);
+            recordIndex = -1;
+        }
+        recordIndex++;
+        return true;
+    }
+
+    /**
+     * Move back before the first record, so that the records can be iterated again
+     */
+    public void rewind() {
+        current = null;
+        partitionIndex = -1;
+        recordIndex = -1;
+    }
+
+    public TopicPartition topicPartition() {
+        return records().partition();
+    }
+
+    public String topic() {
+        return topicPartition().topic();
+    }
+
+    public int partition() {
+        return topicPartition().partition();
+    }
+
+    public long offset() {
+        return entry().offset();
+    }
+
+    public long timestamp() {
+        return entry().timestamp();
+    }
+
+    public TimestampType timestampType() {
+        return entry().timestampType();
+    }
+
+    public long checksum() {
+        return entry().checksum();
+    }
+
+    /**
+     * The size of the serialized key, or {@link ConsumerRecord#NULL_SIZE} if the key is null
+     */
+    public int serializedKeySize() {
+        return Math.max(ConsumerRecord.NULL_SIZE, entry().keySize());
+    }
+
+    /**
+     * The size of the serialized value, or {@link ConsumerRecord#NULL_SIZE} if the value is null
+     */
+    public int serializedValueSize() {
+        return Math.max(ConsumerRecord.NULL_SIZE, entry().valueSize());
+    }
+
+    /**
+     * A read-only view of the serialized key, or null if the key is null. The same buffer instance is reused for
+     * every record.
+     */
+    public ByteBuffer keyBuffer() {
+        return entry().key();
+    }
+
+    /**
+     * A read-only view of the serialized value, or null if the value is null. The same buffer instance is reused for
+     * every record.
+     */
+    public ByteBuffer valueBuffer() {
+        return entry().value();
+    }
+
+    /**
+     * Deserialize the key of the current record
+     */
+    public K key() {
+        ByteBuffer bytes = keyBuffer();
+        return bytes == null ? null : records().keyDeserializer().deserialize(topic(), ConsumerRecordEntries.toArray(bytes));
+    }
+
+    /**
+     * Deserialize the value of the current record
+     */
+    public V value() {
+        ByteBuffer bytes = valueBuffer();
+        return bytes == null ? null : records().valueDeserializer().deserialize(topic(), ConsumerRecordEntries.toArray(bytes));
+    }
+
+    /**
+     * Materialize the current record
+     */
+    public ConsumerRecord<K, V> record() {
+        return records().get(recordIndex);
+    }
+
+    private ConsumerRecordEntries<K, V> records() {
+        if (current == null || recordIndex < 0)
+            throw new IllegalStateException("The cursor is not positioned at a record");
+        return current;
+    }
+
+    private LogEntryCursor entry() {
+        // the entry is positioned on every access since the records may have been accessed through the list as well
+        return records().entry(recordIndex);
+    }
+}
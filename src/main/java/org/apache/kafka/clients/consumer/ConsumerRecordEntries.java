@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.SerializationException;
+import org.apache.kafka.common.record.ByteBufferOutputStream;
+import org.apache.kafka.common.record.LogEntryCursor;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The records fetched for a single partition, left in place as uncompressed log entries in the buffer of the fetch
+ * response. Only the position of each entry is recorded; offsets, timestamps, keys and values are read from the
+ * entries by a {@link LogEntryCursor} when they are accessed. Compressed message sets are decompressed into a
+ * separate buffer when the fetch is parsed.
+ * <p>
+ * Like {@link ConsumerRecordColumns}, every call to {@link #get(int)} deserializes the key and value of the record and
+ * materializes a new {@link ConsumerRecord}. The records are meant to be read through a {@link ConsumerRecordCursor}
+ * instead, see {@link CursorConsumerRecords}.
+ */
+public class ConsumerRecordEntries<K, V> extends AbstractList<ConsumerRecord<K, V>> implements RandomAccess {
+
+    private final TopicPartition partition;
+    private final Deserializer<K> keyDeserializer;
+    private final Deserializer<V> valueDeserializer;
+    private final ByteBuffer entries;
+    private final int[] positions;
+    private final int start;
+    private final int size;
+    private LogEntryCursor cursor;
+
+    /**
+     * @param entries The buffer holding the log entries. It is not modified and must not be modified while the records
+     *                are in use.
+     * @param positions The positions of the entries of the records in the buffer, in offset order
+     */
+    public ConsumerRecordEntries(TopicPartition partition,
+                                 Deserializer<K> keyDeserializer,
+                                 Deserializer<V> valueDeserializer,
+                                 ByteBuffer entries,
+                                 int[] positions,
+                                 int start,
+                                 int size) {
+        if (start < 0 || size < 0 || start + size > positions.length)
+            throw new IndexOutOfBoundsException("Invalid view [" + start + ", " + (start + size) + ") of " +
+                    positions.length + " records");
+        this.partition = partition;
+        this.keyDeserializer = keyDeserializer;
+        this.valueDeserializer = valueDeserializer;
+        this.entries = entries;
+        this.positions = positions;
+        this.start = start;
+        this.size = size;
+    }
+
+    /**
+     * The partition the records were fetched from
+     */
+    public TopicPartition partition() {
+        return partition;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The offset of the i-th record of this view
+     */
+    public long offset(int i) {
+        return entry(i).offset();
+    }
+
+    /**
+     * The timestamp of the i-th record of this view
+     */
+    public long timestamp(int i) {
+        return entry(i).timestamp();
+    }
+
+    /**
+     * Deserialize the i-th record of this view
+     */
+    @Override
+    public ConsumerRecord<K, V> get(int i) {
+        LogEntryCursor entry = entry(i);
+        try {
+            ByteBuffer keyBytes = entry.key();
+            byte[] keyByteArray = keyBytes == null ? null : toArray(keyBytes);
+            K key = keyByteArray == null ? null : keyDeserializer.deserialize(partition.topic(), keyByteArray);
+            ByteBuffer valueBytes = entry.value();
+            byte[] valueByteArray = valueBytes == null ? null : toArray(valueBytes);
+            V value = valueByteArray == null ? null : valueDeserializer.deserialize(partition.topic(), valueByteArray);
+            return new ConsumerRecord<>(partition.topic(), partition.partition(), entry.offset(),
+                    entry.timestamp(), entry.timestampType(), entry.checksum(),
+                    keyByteArray == null ? ConsumerRecord.NULL_SIZE : keyByteArray.length,
+                    valueByteArray == null ? ConsumerRecord.NULL_SIZE : valueByteArray.length,
+                    key, value);
+        } catch (RuntimeException e) {
+            throw new SerializationException("Error deserializing key/value for partition " + partition +
+                    " at offset " + entry.offset(), e);
+        }
+    }
+
+    /**
+     * Get a view of a range of this view. The returned view shares the buffer and positions with this one.
+     */
+    @Override
+    public ConsumerRecordEntries<K, V> subList(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("Invalid range [" + fromIndex + ", " + toIndex + ") of " + size + " records");
+        return new ConsumerRecordEntries<>(partition, keyDeserializer, valueDeserializer, entries, positions,
+                start + fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * Append the records of another view of the same partition to the records of this one. Unlike {@link #subList(int, int)}
+     * this copies the entries of both views.
+     */
+    public ConsumerRecordEntries<K, V> concat(ConsumerRecordEntries<K, V> other) {
+        int bufferSize = 0;
+        for (ConsumerRecordEntries<K, V> view : Arrays.asList(this, other))
+            for (int i = 0; i < view.size; i++)
+                bufferSize += view.entry(i).sizeInBytes();
+
+        ByteBufferOutputStream out = new ByteBufferOutputStream(ByteBuffer.allocate(bufferSize));
+        int[] newPositions = new int[size + other.size];
+        int index = 0;
+        for (ConsumerRecordEntries<K, V> view : Arrays.asList(this, other)) {
+            for (int i = 0; i < view.size; i++) {
+                newPositions[index++] = out.buffer().position();
+                view.entry(i).writeTo(out);
+            }
+        }
+        ByteBuffer newEntries = out.buffer();
+        newEntries.flip();
+        return new ConsumerRecordEntries<>(partition, keyDeserializer, valueDeserializer, newEntries, newPositions,
+                0, newPositions.length);
+    }
+
+    /**
+     * Get a cursor positioned at the i-th record of this view. The cursor is shared by all callers of this view, so
+     * it must be positioned again after any other access to the records.
+     */
+    LogEntryCursor entry(int i) {
+        if (i < 0 || i >= size)
+            throw new IndexOutOfBoundsException("Index " + i + " is out of range for " + size + " records");
+        if (cursor == null)
+            cursor = new LogEntryCursor(entries);
+        cursor.moveTo(positions[start + i]);
+        return cursor;
+    }
+
+    /**
+     * Copy the remaining bytes of a view returned by the cursor
+     */
+    static byte[] toArray(ByteBuffer bytes) {
+        byte[] array = new byte[bytes.remaining()];
+        bytes.duplicate().get(array);
+        return array;
+    }
+
+    Deserializer<K> keyDeserializer() {
+        return keyDeserializer;
+    }
+
+    Deserializer<V> valueDeserializer() {
+        return valueDeserializer;
+    }
+
+    /**
+     * Return the records of the list as entries
+     * @throws IllegalArgumentException If the list was not created in cursor mode
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> ConsumerRecordEntries<K, V> of(TopicPartition partition, List<ConsumerRecord<K, V>> records) {
+        if (!(records instanceof ConsumerRecordEntries))
+            throw new IllegalArgumentException("Records of partition " + partition + " are not log entries");
+        return (ConsumerRecordEntries<K, V>) records;
+    }
+}
@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of a {@link Consumer#poll(long)} operation when <code>poll.record.cursor.enable</code> is set. The
+ * records of each partition are held in a {@link ConsumerRecordEntries}, which leaves them in the fetched log entries,
+ * and are read through the {@link ConsumerRecordCursor} returned by {@link #cursor()} without allocating a
+ * {@link ConsumerRecord} per record. All methods of {@link ConsumerRecords} remain available and materialize the
+ * records they return.
+ */
+public class CursorConsumerRecords<K, V> extends ConsumerRecords<K, V> {
+
+    private final ConsumerRecordCursor<K, V> cursor;
+
+    /**
+     * @param records The fetched records per partition. Every list must be a {@link ConsumerRecordEntries}.
+     */
+    public CursorConsumerRecords(Map<TopicPartition, List<ConsumerRecord<K, V>>> records) {
+        super(records);
+        this.cursor = new ConsumerRecordCursor<>(records);
+    }
+
+    /**
+     * Get the cursor over the records, positioned before the first record. The same cursor instance is returned on
+     * every call.
+     */
+    public ConsumerRecordCursor<K, V> cursor() {
+        cursor.rewind();
+        return cursor;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import org.apache.kafka.clients.consumer.internals.FetchSchedulingPolicy;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * A fetch scheduling policy which serves the oldest data first. Partitions are ordered by the timestamp of their
+ * oldest pending record, so a partition whose next record has been waiting the longest is fetched and returned
+ * before partitions holding more recent records. Partitions without a known timestamp are scheduled first.
+ */
+public class DeadlineFetchPolicy implements FetchSchedulingPolicy {
+
+    @Override
+    public double priority(TopicPartition partition, long lag, long timestamp) {
+        return timestamp < 0 ? Double.MAX_VALUE : -timestamp;
+    }
+
+    @Override
+    public String name() {
+        return "deadline";
+    }
+
+}
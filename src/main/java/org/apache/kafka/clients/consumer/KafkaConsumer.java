@@ -13,15 +13,21 @@
 package org.apache.kafka.clients.consumer;
 
 import org.apache.kafka.clients.ClientUtils;
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.clients.ConnectionStripes;
+import org.apache.kafka.clients.KafkaClient;
 import org.apache.kafka.clients.Metadata;
 import org.apache.kafka.clients.NetworkClient;
 import org.apache.kafka.clients.consumer.internals.ConsumerCoordinator;
 import org.apache.kafka.clients.consumer.internals.ConsumerInterceptors;
 import org.apache.kafka.clients.consumer.internals.ConsumerNetworkClient;
 import org.apache.kafka.clients.consumer.internals.ConsumerNetworkClient.PollCondition;
+import org.apache.kafka.clients.consumer.internals.FetchSchedulingPolicy;
+import org.apache.kafka.clients.consumer.internals.FetchThroughputTracker;
 import org.apache.kafka.clients.consumer.internals.Fetcher;
 import org.apache.kafka.clients.consumer.internals.NoOpConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.internals.PartitionAssignor;
+import org.apache.kafka.clients.consumer.internals.SharedNetworkClient;
 import org.apache.kafka.clients.consumer.internals.SubscriptionState;
 import org.apache.kafka.common.Cluster;
 import org.apache.kafka.common.KafkaException;
@@ -32,6 +38,8 @@ import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.config.ConfigException;
 import org.apache.kafka.common.errors.InterruptException;
 import org.apache.kafka.common.internals.ClusterResourceListeners;
+import org.apache.kafka.common.memory.MemoryPool;
+import org.apache.kafka.common.memory.PooledMemoryPool;
 import org.apache.kafka.common.metrics.JmxReporter;
 import org.apache.kafka.common.metrics.MetricConfig;
 import org.apache.kafka.common.metrics.Metrics;
@@ -610,6 +618,8 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
             int fetchMaxWaitMs = config.getInt(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG);
             if (this.requestTimeoutMs <= sessionTimeOutMs || this.requestTimeoutMs <= fetchMaxWaitMs)
                 throw new ConfigException(ConsumerConfig.REQUEST_TIMEOUT_MS_CONFIG + " should be greater than " + ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG + " and " + ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG);
+            if (config.getBoolean(ConsumerConfig.COLUMNAR_RECORDS_CONFIG) && config.getBoolean(ConsumerConfig.CURSOR_RECORDS_CONFIG))
+                throw new ConfigException(ConsumerConfig.COLUMNAR_RECORDS_CONFIG + " and " + ConsumerConfig.CURSOR_RECORDS_CONFIG + " cannot both be enabled");
             this.time = Time.SYSTEM;
 
             String clientId = config.getString(ConsumerConfig.CLIENT_ID_CONFIG);
@@ -654,18 +664,30 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
             List<InetSocketAddress> addresses = ClientUtils.parseAndValidateAddresses(config.getList(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG));
             this.metadata.update(Cluster.bootstrap(addresses), 0);
             String metricGrpPrefix = "consumer";
-            ChannelBuilder channelBuilder = ClientUtils.createChannelBuilder(config.values());
-            NetworkClient netClient = new NetworkClient(
-                    new Selector(config.getLong(ConsumerConfig.CONNECTIONS_MAX_IDLE_MS_CONFIG), metrics, time, metricGrpPrefix, channelBuilder),
-                    this.metadata,
-                    clientId,
-                    100, // a fixed large enough value will suffice
-                    config.getLong(ConsumerConfig.RECONNECT_BACKOFF_MS_CONFIG),
-                    config.getInt(ConsumerConfig.SEND_BUFFER_CONFIG),
-                    config.getInt(ConsumerConfig.RECEIVE_BUFFER_CONFIG),
-                    config.getInt(ConsumerConfig.REQUEST_TIMEOUT_MS_CONFIG),
-                    time,
-                    true);
+            KafkaClient netClient;
+            if (config.getBoolean(ConsumerConfig.SHARED_NETWORK_CLIENT_CONFIG)) {
+                netClient = SharedNetworkClient.register(config, this.metadata, clientId, time);
+            } else {
+                ChannelBuilder channelBuilder = ClientUtils.createChannelBuilder(config.values());
+                long memoryPoolBytes = config.getLong(ConsumerConfig.RECEIVE_MEMORY_POOL_BYTES_CONFIG);
+                MemoryPool memoryPool = memoryPoolBytes > 0
+                        ? new PooledMemoryPool(memoryPoolBytes, config.getBoolean(ConsumerConfig.RECEIVE_MEMORY_POOL_DIRECT_CONFIG))
+                        : MemoryPool.NONE;
+                netClient = new NetworkClient(
+                        new Selector(config.getLong(ConsumerConfig.CONNECTIONS_MAX_IDLE_MS_CONFIG), metrics, time, metricGrpPrefix, channelBuilder, memoryPool),
+                        this.metadata,
+                        clientId,
+                        100, // a fixed large enough value will suffice
+                        config.getLong(ConsumerConfig.RECONNECT_BACKOFF_MS_CONFIG),
+                        config.getInt(ConsumerConfig.SEND_BUFFER_CONFIG),
+                        config.getInt(ConsumerConfig.RECEIVE_BUFFER_CONFIG),
+                        config.getInt(ConsumerConfig.REQUEST_TIMEOUT_MS_CONFIG),
+                        time,
+                        true,
+                        config.getLong(ConsumerConfig.METADATA_MAX_AGE_CONFIG),
+                        metrics,
+                        metricGrpPrefix);
+            }
             this.client = new ConsumerNetworkClient(netClient, metadata, time, retryBackoffMs,
                     config.getInt(ConsumerConfig.REQUEST_TIMEOUT_MS_CONFIG));
             OffsetResetStrategy offsetResetStrategy = OffsetResetStrategy.valueOf(config.getString(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG).toUpperCase(Locale.ROOT));
@@ -673,6 +695,15 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
             List<PartitionAssignor> assignors = config.getConfiguredInstances(
                     ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG,
                     PartitionAssignor.class);
+            // only measure the partition byte rates when an assignor reports them to the group leader
+            FetchThroughputTracker throughputTracker = null;
+            for (PartitionAssignor assignor : assignors) {
+                if (assignor instanceof ThroughputWeightedAssignor) {
+                    if (throughputTracker == null)
+                        throughputTracker = new FetchThroughputTracker();
+                    ((ThroughputWeightedAssignor) assignor).setLocalWeights(throughputTracker);
+                }
+            }
             this.coordinator = new ConsumerCoordinator(this.client,
                     config.getString(ConsumerConfig.GROUP_ID_CONFIG),
                     config.getInt(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG),
@@ -688,14 +719,25 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
                     config.getBoolean(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG),
                     config.getInt(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG),
                     this.interceptors,
-                    config.getBoolean(ConsumerConfig.EXCLUDE_INTERNAL_TOPICS_CONFIG));
+                    config.getBoolean(ConsumerConfig.EXCLUDE_INTERNAL_TOPICS_CONFIG),
+                    config.getBoolean(ConsumerConfig.COALESCE_ASYNC_COMMITS_CONFIG),
+                    config.getBoolean(ConsumerConfig.SHARED_HEARTBEAT_SCHEDULER_CONFIG));
             this.fetcher = new Fetcher<>(this.client,
                     config.getInt(ConsumerConfig.FETCH_MIN_BYTES_CONFIG),
                     config.getInt(ConsumerConfig.FETCH_MAX_BYTES_CONFIG),
                     config.getInt(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG),
                     config.getInt(ConsumerConfig.MAX_PARTITION_FETCH_BYTES_CONFIG),
                     config.getInt(ConsumerConfig.MAX_POLL_RECORDS_CONFIG),
+                    config.getInt(ConsumerConfig.MAX_POLL_RECORDS_PER_PARTITION_CONFIG),
                     config.getBoolean(ConsumerConfig.CHECK_CRCS_CONFIG),
+                    config.getBoolean(ConsumerConfig.CHECK_CRCS_SHALLOW_CONFIG),
+                    config.getBoolean(ConsumerConfig.ADAPTIVE_PARTITION_FETCH_BYTES_CONFIG),
+                    config.getBoolean(ConsumerConfig.COLUMNAR_RECORDS_CONFIG),
+                    config.getBoolean(ConsumerConfig.CURSOR_RECORDS_CONFIG),
+                    config.getLong(ConsumerConfig.LIST_OFFSETS_CACHE_TTL_MS_CONFIG),
+                    config.getConfiguredInstance(ConsumerConfig.FETCH_SCHEDULING_POLICY_CONFIG, FetchSchedulingPolicy.class),
+                    throughputTracker,
+                    new ConnectionStripes(config.getInt(CommonClientConfigs.CONNECTIONS_PER_BROKER_CONFIG)),
                     this.keyDeserializer,
                     this.valueDeserializer,
                     this.metadata,
@@ -957,7 +999,11 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
      * On each poll, consumer will try to use the last consumed offset as the starting offset and fetch sequentially. The last
      * consumed offset can be manually set through {@link #seek(TopicPartition, long)} or automatically set as the last committed
      * offset for the subscribed list of partitions
-     *
+     * <p>
+     * If <code>poll.columnar.records.enable</code> is set, the returned records are a {@link ColumnarConsumerRecords}
+     * which only deserializes a record when it is accessed. Interceptors receive the columnar records as well, but the
+     * records they return are passed on unchanged. Likewise, if <code>poll.record.cursor.enable</code> is set, the
+     * returned records are a {@link CursorConsumerRecords} whose cursor reads the records without allocating them.
      *
      * @param timeout The time, in milliseconds, spent waiting in poll if data is not available in the buffer.
      *            If 0, returns immediately with any records that are available currently in the buffer, else returns empty.
@@ -1004,10 +1050,17 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
                         client.pollNoWakeup();
                     }
 
+                    ConsumerRecords<K, V> consumerRecords;
+                    if (fetcher.isColumnar())
+                        consumerRecords = new ColumnarConsumerRecords<>(records);
+                    else if (fetcher.isCursor())
+                        consumerRecords = new CursorConsumerRecords<>(records);
+                    else
+                        consumerRecords = new ConsumerRecords<>(records);
                     if (this.interceptors == null)
-                        return new ConsumerRecords<>(records);
+                        return consumerRecords;
                     else
-                        return this.interceptors.onConsume(new ConsumerRecords<>(records));
+                        return this.interceptors.onConsume(consumerRecords);
                 }
 
                 long elapsed = time.milliseconds() - start;
@@ -1169,6 +1222,10 @@ public class KafkaConsumer<K, V> implements Consumer<K, V> {
      * <p>
      * This is an asynchronous call and will not block. Any errors encountered are either passed to the callback
      * (if provided) or discarded.
+     * <p>
+     * With <code>commit.async.coalesce.enable</code>, a commit issued while another asynchronous commit is in flight
+     * is merged with the other commits issued in the meantime. The merged commit is sent by the first call to
+     * {@link #poll(long)} or to a commit method after the in-flight commit completed.
      *
      * @param offsets A map of offsets by partition with associate metadata. This map will be copied internally, so it
      *                is safe to mutate the map after returning.
@@ -0,0 +1,36 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import org.apache.kafka.clients.consumer.internals.FetchSchedulingPolicy;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * A fetch scheduling policy which favors the partitions that are furthest behind their high watermark. When a
+ * consumer owns many partitions with uneven lag, the most-behind partitions are placed first in each fetch request
+ * and their fetched records are returned first from poll, so they catch up before partitions which are nearly
+ * up to date. Partitions whose lag is not known yet (e.g. before their first fetch) are scheduled first.
+ */
+public class LagWeightedFetchPolicy implements FetchSchedulingPolicy {
+
+    @Override
+    public double priority(TopicPartition partition, long lag, long timestamp) {
+        return lag < 0 ? Double.MAX_VALUE : lag;
+    }
+
+    @Override
+    public String name() {
+        return "lag-weighted";
+    }
+
+}
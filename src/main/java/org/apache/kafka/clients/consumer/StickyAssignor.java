@@ -0,0 +1,232 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import org.apache.kafka.clients.consumer.internals.AbstractPartitionAssignor;
+import org.apache.kafka.clients.consumer.internals.ConsumerProtocol;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.protocol.types.SchemaException;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The sticky assignor produces an assignment which is as balanced as the round robin assignor while moving as few
+ * partitions as possible between rebalances. Each member sends the partitions it currently owns in the user data of
+ * its subscription, encoded with the assignment schema of {@link ConsumerProtocol}, and the leader starts from these
+ * assignments:
+ * <ol>
+ * <li>every member keeps the partitions it owned, as long as it is still subscribed to their topic and no other
+ *     member claimed them first;</li>
+ * <li>the remaining partitions are given to the least loaded members which are subscribed to their topic, starting
+ *     with the partitions which have the fewest candidate members;</li>
+ * <li>partitions are moved from the most loaded members to the least loaded ones until no move can reduce the
+ *     difference between them. The partitions assigned most recently are moved first.</li>
+ * </ol>
+ *
+ * For example, suppose there are three consumers C0, C1 and C2, and a topic t0 with 6 partitions. The first
+ * assignment is the same as the round robin one:
+ * C0: [t0p0, t0p3]
+ * C1: [t0p1, t0p4]
+ * C2: [t0p2, t0p5]
+ *
+ * If C1 leaves the group, only its partitions are reassigned:
+ * C0: [t0p0, t0p3, t0p1]
+ * C2: [t0p2, t0p5, t0p4]
+ *
+ * whereas the round robin assignor would also have moved t0p2 and t0p3.
+ */
+public class StickyAssignor extends AbstractPartitionAssignor {
+    private static final Logger log = LoggerFactory.getLogger(StickyAssignor.class);
+
+    /* the partitions owned by this member, reported in its next subscription */
+    private List<TopicPartition> memberAssignment = null;
+
+    @Override
+    public Subscription subscription(Set<String> topics) {
+        if (memberAssignment == null)
+            return new Subscription(new ArrayList<>(topics));
+        return new Subscription(new ArrayList<>(topics),
+                ConsumerProtocol.serializeAssignment(new Assignment(memberAssignment)));
+    }
+
+    @Override
+    public void onAssignment(Assignment assignment) {
+        memberAssignment = assignment.partitions();
+    }
+
+    @Override
+    public Map<String, Assignment> assign(Cluster metadata, Map<String, Subscription> subscriptions) {
+        Map<String, List<String>> topicSubscriptions = topicSubscriptions(subscriptions);
+        Map<String, Integer> partitionsPerTopic = partitionsPerTopic(metadata, topicSubscriptions);
+
+        Map<String, List<TopicPartition>> previousAssignment = new HashMap<>();
+        for (Map.Entry<String, Subscription> subscriptionEntry : subscriptions.entrySet()) {
+            Subscription subscription = subscriptionEntry.getValue();
+            if (subscription.userData() == null || !subscription.userData().hasRemaining())
+                continue;
+            try {
+                previousAssignment.put(subscriptionEntry.getKey(),
+                        ConsumerProtocol.deserializeAssignment(subscription.userData().duplicate()).partitions());
+            } catch (SchemaException e) {
+                log.warn("Ignoring the previous assignment of member {} since its user data could not be parsed: {}",
+                        subscriptionEntry.getKey(), e.getMessage());
+            }
+        }
+
+        Map<String, List<TopicPartition>> rawAssignments = assign(partitionsPerTopic, topicSubscriptions, previousAssignment);
+
+        Map<String, Assignment> assignments = new HashMap<>();
+        for (Map.Entry<String, List<TopicPartition>> assignmentEntry : rawAssignments.entrySet())
+            assignments.put(assignmentEntry.getKey(), new Assignment(assignmentEntry.getValue()));
+        return assignments;
+    }
+
+    @Override
+    public Map<String, List<TopicPartition>> assign(Map<String, Integer> partitionsPerTopic,
+                                                    Map<String, List<String>> subscriptions) {
+        return assign(partitionsPerTopic, subscriptions, Collections.<String, List<TopicPartition>>emptyMap());
+    }
+
+    /**
+     * Perform the group assignment starting from the previous assignment of the members
+     * @param partitionsPerTopic The number of partitions for each subscribed topic
+     * @param subscriptions Map from the memberId to their respective topic subscription
+     * @param previousAssignment Map from the memberId to the partitions it owned before the rebalance. Members
+     *                           without a previous assignment may be missing.
+     * @return Map from each member to the list of partitions assigned to them.
+     */
+    public Map<String, List<TopicPartition>> assign(Map<String, Integer> partitionsPerTopic,
+                                                    Map<String, List<String>> subscriptions,
+                                                    Map<String, List<TopicPartition>> previousAssignment) {
+        final Map<String, List<TopicPartition>> assignment = new HashMap<>();
+        Map<String, List<String>> consumersPerTopic = new HashMap<>();
+        List<String> members = Utils.sorted(subscriptions.keySet());
+        for (String memberId : members) {
+            assignment.put(memberId, new ArrayList<TopicPartition>());
+            for (String topic : subscriptions.get(memberId)) {
+                if (partitionsPerTopic.containsKey(topic))
+                    put(consumersPerTopic, topic, memberId);
+            }
+        }
+
+        // keep the partitions which are still valid where they were
+        Set<TopicPartition> assigned = new HashSet<>();
+        for (String memberId : members) {
+            List<TopicPartition> previous = previousAssignment.get(memberId);
+            if (previous == null)
+                continue;
+            List<String> topics = subscriptions.get(memberId);
+            for (TopicPartition partition : previous) {
+                Integer numPartitions = partitionsPerTopic.get(partition.topic());
+                if (numPartitions != null && partition.partition() < numPartitions
+                        && topics.contains(partition.topic()) && assigned.add(partition))
+                    assignment.get(memberId).add(partition);
+            }
+        }
+
+        // give the remaining partitions to the least loaded candidates, most constrained partitions first
+        List<TopicPartition> unassigned = new ArrayList<>();
+        for (Map.Entry<String, List<String>> topicEntry : consumersPerTopic.entrySet()) {
+            for (TopicPartition partition : partitions(topicEntry.getKey(), partitionsPerTopic.get(topicEntry.getKey()))) {
+                if (!assigned.contains(partition))
+                    unassigned.add(partition);
+            }
+        }
+        final Map<String, List<String>> candidates = consumersPerTopic;
+        Collections.sort(unassigned, new Comparator<TopicPartition>() {
+            @Override
+            public int compare(TopicPartition tp1, TopicPartition tp2) {
+                int cmp = Integer.compare(candidates.get(tp1.topic()).size(), candidates.get(tp2.topic()).size());
+                if (cmp != 0)
+                    return cmp;
+                cmp = tp1.topic().compareTo(tp2.topic());
+                return cmp != 0 ? cmp : Integer.compare(tp1.partition(), tp2.partition());
+            }
+        });
+        for (TopicPartition partition : unassigned)
+            assignment.get(leastLoaded(candidates.get(partition.topic()), assignment)).add(partition);
+
+        balance(members, candidates, assignment);
+        return assignment;
+    }
+
+    /**
+     * Move partitions from the most loaded members to less loaded candidates until every possible move would
+     * leave the target at least as loaded as the source. Every move strictly reduces the sum of the squared
+     * member loads, so this terminates.
+     */
+    private void balance(List<String> members,
+                         Map<String, List<String>> consumersPerTopic,
+                         final Map<String, List<TopicPartition>> assignment) {
+        List<String> byLoad = new ArrayList<>(members);
+        Comparator<String> mostLoadedFirst = new Comparator<String>() {
+            @Override
+            public int compare(String member1, String member2) {
+                int cmp = Integer.compare(assignment.get(member2).size(), assignment.get(member1).size());
+                return cmp != 0 ? cmp : member1.compareTo(member2);
+            }
+        };
+
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            Collections.sort(byLoad, mostLoadedFirst);
+            for (String from : byLoad) {
+                List<TopicPartition> partitions = assignment.get(from);
+                // partitions at the end of the list were assigned in this rebalance, so prefer moving them
+                for (int i = partitions.size() - 1; i >= 0; i--) {
+                    TopicPartition partition = partitions.get(i);
+                    String to = leastLoaded(consumersPerTopic.get(partition.topic()), assignment);
+                    if (assignment.get(to).size() < partitions.size() - 1) {
+                        partitions.remove(i);
+                        assignment.get(to).add(partition);
+                        moved = true;
+                        break;
+                    }
+                }
+                if (moved)
+                    break;
+            }
+        }
+    }
+
+    private static String leastLoaded(List<String> candidates, Map<String, List<TopicPartition>> assignment) {
+        String leastLoaded = null;
+        int minLoad = Integer.MAX_VALUE;
+        for (String memberId : candidates) {
+            int load = assignment.get(memberId).size();
+            if (load < minLoad) {
+                leastLoaded = memberId;
+                minLoad = load;
+            }
+        }
+        return leastLoaded;
+    }
+
+    @Override
+    public String name() {
+        return "sticky";
+    }
+
+}
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import org.apache.kafka.clients.consumer.internals.AbstractPartitionAssignor;
+import org.apache.kafka.clients.consumer.internals.ConsumerProtocol;
+import org.apache.kafka.clients.consumer.internals.PartitionWeightProvider;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Configurable;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.protocol.types.SchemaException;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The throughput weighted assignor balances the load of the members rather than their partition counts. Every
+ * partition has a weight, usually its byte rate, which is taken from the first of these sources that knows it:
+ * <ol>
+ * <li>the byte rate measured by the member which owned the partition, sent in the user data of its subscription
+ *     encoded as <code>PartitionWeights</code> of {@link ConsumerProtocol};</li>
+ * <li>the {@link PartitionWeightProvider} configured through <code>partition.assignment.weight.provider</code>
+ *     on the group leader;</li>
+ * <li>the average weight of the partitions with a known weight.</li>
+ * </ol>
+ *
+ * Since an idle partition still has to be fetched and committed, every partition weighs at least a tenth of the
+ * average weight. The partitions are then packed by decreasing weight, each one going to the subscribed member with
+ * the lowest total weight so far. Placing the hot partitions first spreads them across the members, and the many
+ * light partitions which follow even out the remaining differences.
+ *
+ * For example, suppose there are two consumers C0 and C1 and a topic t0 with 4 partitions, where t0p0 carries
+ * 10 MB/s and the other partitions 1 MB/s each. The assignment will be:
+ * C0: [t0p0]
+ * C1: [t0p1, t0p2, t0p3]
+ *
+ * whereas the round robin assignor would have given C0 12 MB/s and C1 2 MB/s.
+ */
+public class ThroughputWeightedAssignor extends AbstractPartitionAssignor implements Configurable {
+    private static final Logger log = LoggerFactory.getLogger(ThroughputWeightedAssignor.class);
+
+    /* the smallest weight of a partition, relative to the average weight */
+    private static final double MIN_WEIGHT_RATIO = 0.1;
+
+    private PartitionWeightProvider weightProvider = null;
+    private PartitionWeightProvider localWeights = null;
+    private List<TopicPartition> memberAssignment = Collections.emptyList();
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object provider = configs.get(ConsumerConfig.PARTITION_WEIGHT_PROVIDER_CONFIG);
+        if (provider == null)
+            return;
+        try {
+            if (provider instanceof Class<?>)
+                weightProvider = (PartitionWeightProvider) Utils.newInstance((Class<?>) provider);
+            else
+                weightProvider = Utils.newInstance(provider.toString(), PartitionWeightProvider.class);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new KafkaException("Invalid " + ConsumerConfig.PARTITION_WEIGHT_PROVIDER_CONFIG + " " + provider, e);
+        }
+        if (weightProvider instanceof Configurable)
+            ((Configurable) weightProvider).configure(configs);
+    }
+
+    /**
+     * Set the source of the weights which this member reports for the partitions it owns. The consumer sets this
+     * to the byte rates measured by its fetcher.
+     */
+    public void setLocalWeights(PartitionWeightProvider localWeights) {
+        this.localWeights = localWeights;
+    }
+
+    @Override
+    public Subscription subscription(Set<String> topics) {
+        Map<TopicPartition, Long> weights = new HashMap<>();
+        if (localWeights != null) {
+            for (TopicPartition partition : memberAssignment) {
+                long weight = localWeights.weight(partition);
+                if (weight >= 0)
+                    weights.put(partition, weight);
+            }
+        }
+        if (weights.isEmpty())
+            return new Subscription(new ArrayList<>(topics));
+        return new Subscription(new ArrayList<>(topics), ConsumerProtocol.serializePartitionWeights(weights));
+    }
+
+    @Override
+    public void onAssignment(Assignment assignment) {
+        memberAssignment = assignment.partitions();
+    }
+
+    @Override
+    public Map<String, Assignment> assign(Cluster metadata, Map<String, Subscription> subscriptions) {
+        Map<String, List<String>> topicSubscriptions = topicSubscriptions(subscriptions);
+        Map<String, Integer> partitionsPerTopic = partitionsPerTopic(metadata, topicSubscriptions);
+
+        Map<TopicPartition, Long> reportedWeights = new HashMap<>();
+        for (Map.Entry<String, Subscription> subscriptionEntry : subscriptions.entrySet()) {
+            Subscription subscription = subscriptionEntry.getValue();
+            if (subscription.userData() == null || !subscription.userData().hasRemaining())
+                continue;
+            try {
+                for (Map.Entry<TopicPartition, Long> weightEntry :
+                        ConsumerProtocol.deserializePartitionWeights(subscription.userData().duplicate()).entrySet()) {
+                    // after a failed rebalance two members may report the same partition, so trust the busier one
+                    Long current = reportedWeights.get(weightEntry.getKey());
+                    if (current == null || current < weightEntry.getValue())
+                        reportedWeights.put(weightEntry.getKey(), weightEntry.getValue());
+                }
+            } catch (SchemaException e) {
+                log.warn("Ignoring the partition weights of member {} since its user data could not be parsed: {}",
+                        subscriptionEntry.getKey(), e.getMessage());
+            }
+        }
+
+        Map<String, List<TopicPartition>> rawAssignments = assign(partitionsPerTopic, topicSubscriptions, reportedWeights);
+
+        Map<String, Assignment> assignments = new HashMap<>();
+        for (Map.Entry<String, List<TopicPartition>> assignmentEntry : rawAssignments.entrySet())
+            assignments.put(assignmentEntry.getKey(), new Assignment(assignmentEntry.getValue()));
+        return assignments;
+    }
+
+    @Override
+    public Map<String, List<TopicPartition>> assign(Map<String, Integer> partitionsPerTopic,
+                                                    Map<String, List<String>> subscriptions) {
+        return assign(partitionsPerTopic, subscriptions, Collections.<TopicPartition, Long>emptyMap());
+    }
+
+    /**
+     * Perform the group assignment given the partition counts, member subscriptions and reported partition weights
+     * @param partitionsPerTopic The number of partitions for each subscribed topic
+     * @param subscriptions Map from the memberId to their respective topic subscription
+     * @param reportedWeights The weights reported by the members; partitions may be missing
+     * @return Map from each member to the list of partitions assigned to them.
+     */
+    public Map<String, List<TopicPartition>> assign(Map<String, Integer> partitionsPerTopic,
+                                                    Map<String, List<String>> subscriptions,
+                                                    Map<TopicPartition, Long> reportedWeights) {
+        Map<String, List<TopicPartition>> assignment = new HashMap<>();
+        Map<String, List<String>> consumersPerTopic = new HashMap<>();
+        for (String memberId : Utils.sorted(subscriptions.keySet())) {
+            assignment.put(memberId, new ArrayList<TopicPartition>());
+            for (String topic : subscriptions.get(memberId)) {
+                if (partitionsPerTopic.containsKey(topic))
+                    put(consumersPerTopic, topic, memberId);
+            }
+        }
+
+        List<TopicPartition> partitions = new ArrayList<>();
+        final Map<TopicPartition, Long> weights = new HashMap<>();
+        long totalKnown = 0;
+        for (String topic : consumersPerTopic.keySet()) {
+            for (TopicPartition partition : partitions(topic, partitionsPerTopic.get(topic))) {
+                partitions.add(partition);
+                Long weight = reportedWeights.get(partition);
+                if ((weight == null || weight < 0) && weightProvider != null)
+                    weight = weightProvider.weight(partition);
+                if (weight != null && weight >= 0) {
+                    weights.put(partition, weight);
+                    totalKnown += weight;
+                }
+            }
+        }
+
+        long averageWeight = weights.isEmpty() ? 1 : Math.max(1, totalKnown / weights.size());
+        long minWeight = Math.max(1, (long) (averageWeight * MIN_WEIGHT_RATIO));
+        for (TopicPartition partition : partitions) {
+            Long weight = weights.get(partition);
+            weights.put(partition, weight == null ? averageWeight : Math.max(minWeight, weight));
+        }
+
+        Collections.sort(partitions, new Comparator<TopicPartition>() {
+            @Override
+            public int compare(TopicPartition tp1, TopicPartition tp2) {
+                int cmp = Long.compare(weights.get(tp2), weights.get(tp1));
+                if (cmp != 0)
+                    return cmp;
+                cmp = tp1.topic().compareTo(tp2.topic());
+                return cmp != 0 ? cmp : Integer.compare(tp1.partition(), tp2.partition());
+            }
+        });
+
+        Map<String, Long> loads = new HashMap<>();
+        for (String memberId : assignment.keySet())
+            loads.put(memberId, 0L);
+        for (TopicPartition partition : partitions) {
+            String target = null;
+            for (String memberId : consumersPerTopic.get(partition.topic())) {
+                if (target == null || loads.get(memberId) < loads.get(target)
+                        || (loads.get(memberId).equals(loads.get(target))
+                            && assignment.get(memberId).size() < assignment.get(target).size()))
+                    target = memberId;
+            }
+            assignment.get(target).add(partition);
+            loads.put(target, loads.get(target) + weights.get(partition));
+        }
+        return assignment;
+    }
+
+    @Override
+    public String name() {
+        return "throughput-weighted";
+    }
+
+}
@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer;
+
+import org.apache.kafka.clients.consumer.internals.FetchSchedulingPolicy;
+import org.apache.kafka.common.Configurable;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.config.ConfigException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fetch scheduling policy which orders partitions by a fixed priority per topic, taken from
+ * <code>fetch.scheduling.topic.priorities</code> as a list of <code>topic:priority</code> pairs. Topics which
+ * are not listed have priority 0. Within a topic, the lag of the partitions is used to break ties.
+ *
+ * For example, with <code>fetch.scheduling.topic.priorities=orders:10,audit:-1</code> the partitions of
+ * <code>orders</code> are fetched and returned before all others, and <code>audit</code> comes last.
+ */
+public class TopicPriorityFetchPolicy implements FetchSchedulingPolicy, Configurable {
+
+    /* the lag is folded into the fractional part so it never outweighs a difference in topic priority */
+    private static final double LAG_WEIGHT = 1e-12;
+
+    private final Map<String, Integer> priorities = new HashMap<>();
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Object value = configs.get(ConsumerConfig.FETCH_SCHEDULING_TOPIC_PRIORITIES_CONFIG);
+        if (value == null)
+            return;
+
+        Iterable<?> entries = value instanceof List ? (List<?>) value : Arrays.asList(value.toString().split(","));
+        for (Object entry : entries) {
+            String pair = entry.toString().trim();
+            if (pair.isEmpty())
+                continue;
+            int separator = pair.lastIndexOf(':');
+            if (separator <= 0)
+                throw new ConfigException(ConsumerConfig.FETCH_SCHEDULING_TOPIC_PRIORITIES_CONFIG, value,
+                        "Expected entries of the form topic:priority");
+            try {
+                priorities.put(pair.substring(0, separator).trim(), Integer.parseInt(pair.substring(separator + 1).trim()));
+            } catch (NumberFormatException e) {
+                throw new ConfigException(ConsumerConfig.FETCH_SCHEDULING_TOPIC_PRIORITIES_CONFIG, value,
+                        "Invalid priority for " + pair);
+            }
+        }
+    }
+
+    @Override
+    public double priority(TopicPartition partition, long lag, long timestamp) {
+        Integer priority = priorities.get(partition.topic());
+        double base = priority == null ? 0 : priority;
+        return base + Math.max(lag, 0) * LAG_WEIGHT;
+    }
+
+    @Override
+    public String name() {
+        return "topic-priority";
+    }
+
+}
@@ -105,7 +105,8 @@ public abstract class AbstractCoordinator implements Closeable {
     protected final Time time;
     protected final long retryBackoffMs;
 
-    private HeartbeatThread heartbeatThread = null;
+    private final boolean sharedHeartbeatScheduler;
+    private HeartbeatDriver heartbeatThread = null;
     private boolean rejoinNeeded = true;
     private boolean needsJoinPrepare = true;
     private MemberState state = MemberState.UNJOINED;
@@ -126,7 +127,8 @@ public abstract class AbstractCoordinator implements Closeable {
                                Metrics metrics,
                                String metricGrpPrefix,
                                Time time,
-                               long retryBackoffMs) {
+                               long retryBackoffMs,
+                               boolean sharedHeartbeatScheduler) {
         this.client = client;
         this.time = time;
         this.groupId = groupId;
@@ -135,6 +137,7 @@ public abstract class AbstractCoordinator implements Closeable {
         this.heartbeat = new Heartbeat(sessionTimeoutMs, heartbeatIntervalMs, rebalanceTimeoutMs, retryBackoffMs);
         this.sensors = new GroupCoordinatorMetrics(metrics, metricGrpPrefix);
         this.retryBackoffMs = retryBackoffMs;
+        this.sharedHeartbeatScheduler = sharedHeartbeatScheduler;
     }
 
     /**
@@ -305,7 +308,7 @@ public abstract class AbstractCoordinator implements Closeable {
 
     private synchronized void startHeartbeatThreadIfNeeded() {
         if (heartbeatThread == null) {
-            heartbeatThread = new HeartbeatThread();
+            heartbeatThread = sharedHeartbeatScheduler ? new ScheduledHeartbeat() : new HeartbeatThread();
             heartbeatThread.start();
         }
     }
@@ -823,21 +826,28 @@ public abstract class AbstractCoordinator implements Closeable {
         }
     }
 
-    private class HeartbeatThread extends KafkaThread {
-        private boolean enabled = false;
-        private boolean closed = false;
-        private AtomicReference<RuntimeException> failed = new AtomicReference<>(null);
+    /**
+     * Drives the heartbeats of this coordinator once it has joined the group, either from a dedicated
+     * {@link HeartbeatThread} or from the shared {@link HeartbeatScheduler}.
+     */
+    private abstract class HeartbeatDriver {
+        protected boolean enabled = false;
+        protected boolean closed = false;
+        protected AtomicReference<RuntimeException> failed = new AtomicReference<>(null);
 
-        private HeartbeatThread() {
-            super("kafka-coordinator-heartbeat-thread" + (groupId.isEmpty() ? "" : " | " + groupId), true);
-        }
+        public abstract void start();
+
+        /**
+         * Make the driver run again immediately. Must be called while holding the coordinator's monitor.
+         */
+        protected abstract void wakeup();
 
         public void enable() {
             synchronized (AbstractCoordinator.this) {
                 log.trace("Enabling heartbeat thread for group {}", groupId);
                 this.enabled = true;
                 heartbeat.resetTimeouts(time.milliseconds());
-                AbstractCoordinator.this.notify();
+                wakeup();
             }
         }
 
@@ -851,7 +861,7 @@ public abstract class AbstractCoordinator implements Closeable {
         public void close() {
             synchronized (AbstractCoordinator.this) {
                 this.closed = true;
-                AbstractCoordinator.this.notify();
+                wakeup();
             }
         }
 
@@ -863,6 +873,96 @@ public abstract class AbstractCoordinator implements Closeable {
             return failed.get();
         }
 
+        /**
+         * Run one iteration of the heartbeat loop. Must be called while holding the coordinator's monitor.
+         * @return the time to wait in milliseconds before the next iteration, or -1 to wait until woken up
+         */
+        protected long runOnce() {
+            if (!enabled)
+                return -1;
+
+            if (state != MemberState.STABLE) {
+                // the group is not stable (perhaps because we left the group or because the coordinator
+                // kicked us out), so disable heartbeats and wait for the main thread to rejoin.
+                disable();
+                return 0;
+            }
+
+            client.pollNoWakeup();
+            long now = time.milliseconds();
+
+            if (coordinatorUnknown()) {
+                if (findCoordinatorFuture == null) {
+                    lookupCoordinator();
+                    return 0;
+                }
+                return retryBackoffMs;
+            } else if (heartbeat.sessionTimeoutExpired(now)) {
+                // the session timeout has expired without seeing a successful heartbeat, so we should
+                // probably make sure the coordinator is still healthy.
+                coordinatorDead();
+                return 0;
+            } else if (heartbeat.pollTimeoutExpired(now)) {
+                // the poll timeout has expired, which means that the foreground thread has stalled
+                // in between calls to poll(), so we explicitly leave the group.
+                maybeLeaveGroup();
+                return 0;
+            } else if (!heartbeat.shouldHeartbeat(now)) {
+                // poll again after waiting for the retry backoff in case the heartbeat failed or the
+                // coordinator disconnected
+                return retryBackoffMs;
+            }
+
+            heartbeat.sentHeartbeat(now);
+
+            sendHeartbeatRequest().addListener(new RequestFutureListener<Void>() {
+                @Override
+                public void onSuccess(Void value) {
+                    synchronized (AbstractCoordinator.this) {
+                        heartbeat.receiveHeartbeat(time.milliseconds());
+                    }
+                }
+
+                @Override
+                public void onFailure(RuntimeException e) {
+                    synchronized (AbstractCoordinator.this) {
+                        if (e instanceof RebalanceInProgressException) {
+                            // it is valid to continue heartbeating while the group is rebalancing. This
+                            // ensures that the coordinator keeps the member in the group for as long
+                            // as the duration of the rebalance timeout. If we stop sending heartbeats,
+                            // however, then the session timeout may expire before we can rejoin.
+                            heartbeat.receiveHeartbeat(time.milliseconds());
+                        } else {
+                            heartbeat.failHeartbeat();
+
+                            // wake up the thread if it's sleeping to reschedule the heartbeat
+                            wakeup();
+                        }
+                    }
+                }
+            });
+            return 0;
+        }
+    }
+
+    private class HeartbeatThread extends HeartbeatDriver implements Runnable {
+        private final KafkaThread thread;
+
+        private HeartbeatThread() {
+            this.thread = new KafkaThread("kafka-coordinator-heartbeat-thread" + (groupId.isEmpty() ? "" : " | " + groupId),
+                    this, true);
+        }
+
+        @Override
+        public void start() {
+            thread.start();
+        }
+
+        @Override
+        protected void wakeup() {
+            AbstractCoordinator.this.notify();
+        }
+
         @Override
         public void run() {
             try {
@@ -872,68 +972,11 @@ public abstract class AbstractCoordinator implements Closeable {
                         if (closed)
                             return;
 
-                        if (!enabled) {
+                        long waitMs = runOnce();
+                        if (waitMs < 0)
                             AbstractCoordinator.this.wait();
-                            continue;
-                        }
-
-                        if (state != MemberState.STABLE) {
-                            // the group is not stable (perhaps because we left the group or because the coordinator
-                            // kicked us out), so disable heartbeats and wait for the main thread to rejoin.
-                            disable();
-                            continue;
-                        }
-
-                        client.pollNoWakeup();
-                        long now = time.milliseconds();
-
-                        if (coordinatorUnknown()) {
-                            if (findCoordinatorFuture == null)
-                                lookupCoordinator();
-                            else
-                                AbstractCoordinator.this.wait(retryBackoffMs);
-                        } else if (heartbeat.sessionTimeoutExpired(now)) {
-                            // the session timeout has expired without seeing a successful heartbeat, so we should
-                            // probably make sure the coordinator is still healthy.
-                            coordinatorDead();
-                        } else if (heartbeat.pollTimeoutExpired(now)) {
-                            // the poll timeout has expired, which means that the foreground thread has stalled
-                            // in between calls to poll(), so we explicitly leave the group.
-                            maybeLeaveGroup();
-                        } else if (!heartbeat.shouldHeartbeat(now)) {
-                            // poll again after waiting for the retry backoff in case the heartbeat failed or the
-                            // coordinator disconnected
-                            AbstractCoordinator.this.wait(retryBackoffMs);
-                        } else {
-                            heartbeat.sentHeartbeat(now);
-
-                            sendHeartbeatRequest().addListener(new RequestFutureListener<Void>() {
-                                @Override
-                                public void onSuccess(Void value) {
-                                    synchronized (AbstractCoordinator.this) {
-                                        heartbeat.receiveHeartbeat(time.milliseconds());
-                                    }
-                                }
-
-                                @Override
-                                public void onFailure(RuntimeException e) {
-                                    synchronized (AbstractCoordinator.this) {
-                                        if (e instanceof RebalanceInProgressException) {
-                                            // it is valid to continue heartbeating while the group is rebalancing. This
-                                            // ensures that the coordinator keeps the member in the group for as long
-                                            // as the duration of the rebalance timeout. If we stop sending heartbeats,
-                                            // however, then the session timeout may expire before we can rejoin.
-                                            heartbeat.receiveHeartbeat(time.milliseconds());
-                                        } else {
-                                            heartbeat.failHeartbeat();
-
-                                            // wake up the thread if it's sleeping to reschedule the heartbeat
-                                            AbstractCoordinator.this.notify();
-                                        }
-                                    }
-                                }
-                            });
-                        }
+                        else if (waitMs > 0)
+                            AbstractCoordinator.this.wait(waitMs);
                     }
                 }
             } catch (InterruptedException | InterruptException e) {
@@ -947,7 +990,57 @@ public abstract class AbstractCoordinator implements Closeable {
                 log.debug("Heartbeat thread for group {} has closed", groupId);
             }
         }
+    }
+
+    /**
+     * Runs the heartbeat loop as a task of the shared {@link HeartbeatScheduler}. The task never waits: instead of
+     * sleeping on the coordinator's monitor it returns the time until it wants to run again.
+     */
+    private class ScheduledHeartbeat extends HeartbeatDriver implements HeartbeatScheduler.Task {
+        private HeartbeatScheduler scheduler = null;
+        private HeartbeatScheduler.Handle handle = null;
 
+        @Override
+        public void start() {
+            synchronized (AbstractCoordinator.this) {
+                log.debug("Scheduling heartbeats for group {} on the shared heartbeat scheduler", groupId);
+                scheduler = HeartbeatScheduler.acquire();
+                handle = scheduler.schedule(this);
+            }
+        }
+
+        @Override
+        protected void wakeup() {
+            if (handle != null) {
+                if (closed)
+                    stop();
+                else
+                    handle.wakeup();
+            }
+        }
+
+        @Override
+        public long run() {
+            synchronized (AbstractCoordinator.this) {
+                if (closed || handle == null)
+                    return -1;
+                try {
+                    return runOnce();
+                } catch (RuntimeException e) {
+                    log.error("Heartbeat task for group {} failed due to unexpected error" , groupId, e);
+                    this.failed.set(e);
+                    stop();
+                    return -1;
+                }
+            }
+        }
+
+        private void stop() {
+            handle.cancel();
+            handle = null;
+            scheduler.release();
+            log.debug("Heartbeats for group {} are no longer scheduled", groupId);
+        }
     }
 
     protected static class Generation {
@@ -48,22 +48,8 @@ public abstract class AbstractPartitionAssignor implements PartitionAssignor {
 
     @Override
     public Map<String, Assignment> assign(Cluster metadata, Map<String, Subscription> subscriptions) {
-        Set<String> allSubscribedTopics = new HashSet<>();
-        Map<String, List<String>> topicSubscriptions = new HashMap<>();
-        for (Map.Entry<String, Subscription> subscriptionEntry : subscriptions.entrySet()) {
-            List<String> topics = subscriptionEntry.getValue().topics();
-            allSubscribedTopics.addAll(topics);
-            topicSubscriptions.put(subscriptionEntry.getKey(), topics);
-        }
-
-        Map<String, Integer> partitionsPerTopic = new HashMap<>();
-        for (String topic : allSubscribedTopics) {
-            Integer numPartitions = metadata.partitionCountForTopic(topic);
-            if (numPartitions != null && numPartitions > 0)
-                partitionsPerTopic.put(topic, numPartitions);
-            else
-                log.debug("Skipping assignment for topic {} since no metadata is available", topic);
-        }
+        Map<String, List<String>> topicSubscriptions = topicSubscriptions(subscriptions);
+        Map<String, Integer> partitionsPerTopic = partitionsPerTopic(metadata, topicSubscriptions);
 
         Map<String, List<TopicPartition>> rawAssignments = assign(partitionsPerTopic, topicSubscriptions);
 
@@ -79,6 +65,35 @@ public abstract class AbstractPartitionAssignor implements PartitionAssignor {
         // this assignor maintains no internal state, so nothing to do
     }
 
+    /**
+     * Get the subscribed topics of each member
+     */
+    protected static Map<String, List<String>> topicSubscriptions(Map<String, Subscription> subscriptions) {
+        Map<String, List<String>> topicSubscriptions = new HashMap<>();
+        for (Map.Entry<String, Subscription> subscriptionEntry : subscriptions.entrySet())
+            topicSubscriptions.put(subscriptionEntry.getKey(), subscriptionEntry.getValue().topics());
+        return topicSubscriptions;
+    }
+
+    /**
+     * Get the partition counts of all subscribed topics, skipping the topics which are not in the metadata
+     */
+    protected static Map<String, Integer> partitionsPerTopic(Cluster metadata, Map<String, List<String>> topicSubscriptions) {
+        Set<String> allSubscribedTopics = new HashSet<>();
+        for (List<String> topics : topicSubscriptions.values())
+            allSubscribedTopics.addAll(topics);
+
+        Map<String, Integer> partitionsPerTopic = new HashMap<>();
+        for (String topic : allSubscribedTopics) {
+            Integer numPartitions = metadata.partitionCountForTopic(topic);
+            if (numPartitions != null && numPartitions > 0)
+                partitionsPerTopic.put(topic, numPartitions);
+            else
+                log.debug("Skipping assignment for topic {} since no metadata is available", topic);
+        }
+        return partitionsPerTopic;
+    }
+
     protected static <K, V> void put(Map<K, List<V>> map, K key, V value) {
         List<V> list = map.get(key);
         if (list == null) {
@@ -74,12 +74,24 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
     private final ConsumerInterceptors<?, ?> interceptors;
     private final boolean excludeInternalTopics;
     private final AtomicInteger pendingAsyncCommits;
+    private final boolean coalesceAsyncCommits;
+    private final Object asyncCommitLock = new Object();
+    private final Object patternMatcherLock = new Object();
+
+    // the number of async commits waiting for the coordinator or their response, guarded by asyncCommitLock
+    private int asyncCommitsInFlight = 0;
+
+    // the async commits requested while another one was in flight, merged into one, guarded by asyncCommitLock.
+    // it is only sent from the polling thread, by the next poll or commit after the in-flight commits completed
+    private AsyncCommit coalescedCommit = null;
 
     // this collection must be thread-safe because it is modified from the response handler
     // of offset commit requests, which may be invoked from the heartbeat thread
     private final ConcurrentLinkedQueue<OffsetCommitCompletion> completedOffsetCommits;
 
     private boolean isLeader = false;
+    /* matches the subscribed pattern against the topics added since the previous metadata update */
+    private TopicPatternMatcher patternMatcher = null;
     private Set<String> joinedSubscription;
     private MetadataSnapshot metadataSnapshot;
     private MetadataSnapshot assignmentSnapshot;
@@ -103,7 +115,9 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
                                boolean autoCommitEnabled,
                                int autoCommitIntervalMs,
                                ConsumerInterceptors<?, ?> interceptors,
-                               boolean excludeInternalTopics) {
+                               boolean excludeInternalTopics,
+                               boolean coalesceAsyncCommits,
+                               boolean sharedHeartbeatScheduler) {
         super(client,
                 groupId,
                 rebalanceTimeoutMs,
@@ -112,7 +126,8 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
                 metrics,
                 metricGrpPrefix,
                 time,
-                retryBackoffMs);
+                retryBackoffMs,
+                sharedHeartbeatScheduler);
         this.metadata = metadata;
         this.metadataSnapshot = new MetadataSnapshot(subscriptions, metadata.fetch());
         this.subscriptions = subscriptions;
@@ -125,6 +140,7 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
         this.interceptors = interceptors;
         this.excludeInternalTopics = excludeInternalTopics;
         this.pendingAsyncCommits = new AtomicInteger();
+        this.coalesceAsyncCommits = coalesceAsyncCommits;
 
         if (autoCommitEnabled)
             this.nextAutoCommitDeadline = time.milliseconds() + autoCommitIntervalMs;
@@ -153,10 +169,16 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
     public void updatePatternSubscription(Cluster cluster) {
         final Set<String> topicsToSubscribe = new HashSet<>();
 
-        for (String topic : cluster.topics())
-            if (subscriptions.subscribedPattern().matcher(topic).matches() &&
-                    !(excludeInternalTopics && cluster.internalTopics().contains(topic)))
-                topicsToSubscribe.add(topic);
+        // the metadata listener may run on the heartbeat thread while subscribe() runs on the user's thread
+        synchronized (patternMatcherLock) {
+            if (patternMatcher == null || patternMatcher.pattern() != subscriptions.subscribedPattern())
+                patternMatcher = new TopicPatternMatcher(subscriptions.subscribedPattern());
+            patternMatcher.update(cluster.topics());
+
+            for (String topic : patternMatcher.matchedTopics())
+                if (!(excludeInternalTopics && cluster.internalTopics().contains(topic)))
+                    topicsToSubscribe.add(topic);
+        }
 
         subscriptions.subscribeFromPattern(topicsToSubscribe);
 
@@ -270,6 +292,7 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
      */
     public void poll(long now) {
         invokeCompletedOffsetCommitCallbacks();
+        maybeSendCoalescedCommit();
 
         if (subscriptions.partitionsAutoAssigned() && coordinatorUnknown()) {
             ensureCoordinatorReady();
@@ -385,6 +408,9 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
 
     @Override
     protected void onJoinPrepare(int generation, String memberId) {
+        // send the coalesced async commit while its generation is still current
+        flushCoalescedCommit();
+
         // commit offsets prior to rebalance if auto-commit enabled
         maybeAutoCommitOffsetsSync(rebalanceTimeoutMs);
 
@@ -467,6 +493,7 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
         long now = time.milliseconds();
         long endTimeMs = now + timeoutMs;
         try {
+            flushCoalescedCommit();
             maybeAutoCommitOffsetsSync(timeoutMs);
             now = time.milliseconds();
             if (pendingAsyncCommits.get() > 0 && endTimeMs > now) {
@@ -476,6 +503,9 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
         } finally {
             super.close(Math.max(0, endTimeMs - now));
         }
+
+        // run the callbacks of the async commits which completed while closing
+        invokeCompletedOffsetCommitCallbacks();
     }
 
     // visible for testing
@@ -488,11 +518,53 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
         }
     }
 
+    /**
+     * Commit offsets asynchronously. If coalescing is enabled and another async commit is still in flight, the
+     * offsets are merged into a single pending commit instead, which is sent by the first poll or commit after the
+     * in-flight commits completed. Newer offsets of a partition replace older ones, and the callbacks of all merged
+     * commits are completed with the result of the merged commit, in the order the commits were requested. Only
+     * commits requested in the same generation are merged, and the commit is sent with that generation.
+     */
     public void commitOffsetsAsync(final Map<TopicPartition, OffsetAndMetadata> offsets, final OffsetCommitCallback callback) {
         invokeCompletedOffsetCommitCallbacks();
 
+        Generation generation = commitGeneration();
+        AsyncCommit commit = null;
+        if (coalesceAsyncCommits) {
+            AsyncCommit previous = null;
+            synchronized (asyncCommitLock) {
+                if (coalescedCommit != null && coalescedCommit.generation != generation)
+                    previous = takeCoalescedCommit();
+
+                if (coalescedCommit == null) {
+                    coalescedCommit = new AsyncCommit(generation);
+                } else {
+                    sensors.coalescedCommits.record();
+                }
+                coalescedCommit.add(offsets, callback);
+
+                if (asyncCommitsInFlight == 0)
+                    commit = takeCoalescedCommit();
+            }
+            if (previous != null)
+                sendAsyncCommit(previous);
+        } else {
+            commit = new AsyncCommit(generation);
+            commit.add(offsets, callback);
+        }
+
+        if (commit != null)
+            sendAsyncCommit(commit);
+
+        // ensure the commit has a chance to be transmitted (without blocking on its completion).
+        // Note that commits are treated as heartbeats by the coordinator, so there is no need to
+        // explicitly allow heartbeats through delayed task execution.
+        client.pollNoWakeup();
+    }
+
+    private void sendAsyncCommit(final AsyncCommit commit) {
         if (!coordinatorUnknown()) {
-            doCommitOffsetsAsync(offsets, callback);
+            doCommitOffsetsAsync(commit);
         } else {
             // we don't know the current coordinator, so try to find it and then send the commit
             // or fail (we don't want recursive retries which can cause offset commits to arrive
@@ -505,34 +577,28 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
                 @Override
                 public void onSuccess(Void value) {
                     pendingAsyncCommits.decrementAndGet();
-                    doCommitOffsetsAsync(offsets, callback);
+                    doCommitOffsetsAsync(commit);
                 }
 
                 @Override
                 public void onFailure(RuntimeException e) {
                     pendingAsyncCommits.decrementAndGet();
-                    completedOffsetCommits.add(new OffsetCommitCompletion(callback, offsets, new RetriableCommitFailedException(e)));
+                    completeAsyncCommit(commit, new RetriableCommitFailedException(e));
                 }
             });
         }
-
-        // ensure the commit has a chance to be transmitted (without blocking on its completion).
-        // Note that commits are treated as heartbeats by the coordinator, so there is no need to
-        // explicitly allow heartbeats through delayed task execution.
-        client.pollNoWakeup();
     }
 
-    private void doCommitOffsetsAsync(final Map<TopicPartition, OffsetAndMetadata> offsets, final OffsetCommitCallback callback) {
+    private void doCommitOffsetsAsync(final AsyncCommit commit) {
         this.subscriptions.needRefreshCommits();
-        RequestFuture<Void> future = sendOffsetCommitRequest(offsets);
-        final OffsetCommitCallback cb = callback == null ? defaultOffsetCommitCallback : callback;
+        RequestFuture<Void> future = sendOffsetCommitRequest(commit.offsets, commit.generation);
         future.addListener(new RequestFutureListener<Void>() {
             @Override
             public void onSuccess(Void value) {
                 if (interceptors != null)
-                    interceptors.onCommit(offsets);
+                    interceptors.onCommit(commit.offsets);
 
-                completedOffsetCommits.add(new OffsetCommitCompletion(cb, offsets, null));
+                completeAsyncCommit(commit, null);
             }
 
             @Override
@@ -542,11 +608,71 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
                 if (e instanceof RetriableException)
                     commitException = new RetriableCommitFailedException(e);
 
-                completedOffsetCommits.add(new OffsetCommitCompletion(cb, offsets, commitException));
+                completeAsyncCommit(commit, commitException);
             }
         });
     }
 
+    /**
+     * Queue the callbacks of a completed async commit. The commits which were coalesced in the meantime are left
+     * for the polling thread to send. This may be called from the heartbeat thread.
+     */
+    private void completeAsyncCommit(AsyncCommit commit, Exception exception) {
+        for (int i = 0; i < commit.callbacks.size(); i++) {
+            OffsetCommitCallback callback = commit.callbacks.get(i);
+            completedOffsetCommits.add(new OffsetCommitCompletion(callback == null ? defaultOffsetCommitCallback : callback,
+                    commit.requestedOffsets.get(i), exception));
+        }
+
+        if (coalesceAsyncCommits) {
+            synchronized (asyncCommitLock) {
+                asyncCommitsInFlight--;
+            }
+        }
+    }
+
+    /**
+     * Send the coalesced async commit if no other async commit is in flight anymore.
+     */
+    private void maybeSendCoalescedCommit() {
+        AsyncCommit commit = null;
+        synchronized (asyncCommitLock) {
+            if (asyncCommitsInFlight == 0)
+                commit = takeCoalescedCommit();
+        }
+        if (commit != null) {
+            log.trace("Sending {} coalesced asynchronous offset commits for group {}", commit.callbacks.size(), groupId);
+            sendAsyncCommit(commit);
+        }
+    }
+
+    /**
+     * Send the coalesced async commit right away, even if other async commits are still in flight. This is done
+     * before anything that must not be overtaken by it, i.e. a sync commit, a rebalance or closing the consumer.
+     * Requests to the coordinator are sent in order, so it still completes after the commits sent before it.
+     */
+    private void flushCoalescedCommit() {
+        AsyncCommit commit;
+        synchronized (asyncCommitLock) {
+            commit = takeCoalescedCommit();
+        }
+        if (commit != null) {
+            log.trace("Flushing {} coalesced asynchronous offset commits for group {}", commit.callbacks.size(), groupId);
+            sendAsyncCommit(commit);
+        }
+    }
+
+    /**
+     * Remove the coalesced commit so that it can be sent, counting it as in flight. Must hold asyncCommitLock.
+     */
+    private AsyncCommit takeCoalescedCommit() {
+        AsyncCommit commit = coalescedCommit;
+        coalescedCommit = null;
+        if (commit != null)
+            asyncCommitsInFlight++;
+        return commit;
+    }
+
     /**
      * Commit offsets synchronously. This method will retry until the commit completes successfully
      * or an unrecoverable error is encountered.
@@ -560,6 +686,9 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
     public boolean commitOffsetsSync(Map<TopicPartition, OffsetAndMetadata> offsets, long timeoutMs) {
         invokeCompletedOffsetCommitCallbacks();
 
+        // a coalesced async commit must not be sent after this commit, or it could move the offsets backwards
+        flushCoalescedCommit();
+
         if (offsets.isEmpty())
             return true;
 
@@ -668,6 +797,18 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
      * @return A request future whose value indicates whether the commit was successful or not
      */
     private RequestFuture<Void> sendOffsetCommitRequest(final Map<TopicPartition, OffsetAndMetadata> offsets) {
+        return sendOffsetCommitRequest(offsets, commitGeneration());
+    }
+
+    /**
+     * Commit offsets with the given generation, which is the generation of the group when the commit was requested.
+     *
+     * @param offsets The list of offsets per partition that should be committed.
+     * @param generation The generation to commit with, null if the group was not stable
+     * @return A request future whose value indicates whether the commit was successful or not
+     */
+    private RequestFuture<Void> sendOffsetCommitRequest(final Map<TopicPartition, OffsetAndMetadata> offsets,
+                                                        final Generation generation) {
         if (offsets.isEmpty())
             return RequestFuture.voidSuccess();
 
@@ -686,12 +827,6 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
                     offsetAndMetadata.offset(), offsetAndMetadata.metadata()));
         }
 
-        final Generation generation;
-        if (subscriptions.partitionsAutoAssigned())
-            generation = generation();
-        else
-            generation = Generation.NO_GENERATION;
-
         // if the generation is null, we are not part of an active group (and we expect to be).
         // the only thing we can do is fail the commit and let the user rejoin the group in poll()
         if (generation == null)
@@ -709,6 +844,15 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
                 .compose(new OffsetCommitResponseHandler(offsets));
     }
 
+    /**
+     * Get the generation to commit offsets with, null if the group is not stable
+     */
+    private Generation commitGeneration() {
+        if (subscriptions.partitionsAutoAssigned())
+            return generation();
+        return Generation.NO_GENERATION;
+    }
+
     private class OffsetCommitResponseHandler extends CoordinatorResponseHandler<OffsetCommitResponse, Void> {
 
         private final Map<TopicPartition, OffsetAndMetadata> offsets;
@@ -859,6 +1003,7 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
     private class ConsumerCoordinatorMetrics {
         private final String metricGrpName;
         private final Sensor commitLatency;
+        private final Sensor coalescedCommits;
 
         private ConsumerCoordinatorMetrics(Metrics metrics, String metricGrpPrefix) {
             this.metricGrpName = metricGrpPrefix + "-coordinator-metrics";
@@ -874,6 +1019,11 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
                 this.metricGrpName,
                 "The number of commit calls per second"), new Rate(new Count()));
 
+            this.coalescedCommits = metrics.sensor("commit-coalesced");
+            this.coalescedCommits.add(metrics.metricName("commit-coalesced-rate",
+                this.metricGrpName,
+                "The number of asynchronous commits per second which were merged into a pending commit"), new Rate(new Count()));
+
             Measurable numParts =
                 new Measurable() {
                     public double measure(MetricConfig config, long now) {
@@ -910,6 +1060,27 @@ public final class ConsumerCoordinator extends AbstractCoordinator {
         }
     }
 
+    /**
+     * One or more async commits which are sent in a single request. The offsets of later commits replace those of
+     * earlier ones, while the offsets each commit asked for are kept for its callback.
+     */
+    private static class AsyncCommit {
+        private final Generation generation;
+        private final Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        private final List<Map<TopicPartition, OffsetAndMetadata>> requestedOffsets = new ArrayList<>();
+        private final List<OffsetCommitCallback> callbacks = new ArrayList<>();
+
+        private AsyncCommit(Generation generation) {
+            this.generation = generation;
+        }
+
+        private void add(Map<TopicPartition, OffsetAndMetadata> offsets, OffsetCommitCallback callback) {
+            this.offsets.putAll(offsets);
+            this.requestedOffsets.add(offsets);
+            this.callbacks.add(callback);
+        }
+    }
+
     private static class OffsetCommitCompletion {
         private final OffsetCommitCallback callback;
         private final Map<TopicPartition, OffsetAndMetadata> offsets;
@@ -17,6 +17,7 @@ import org.apache.kafka.clients.ClientResponse;
 import org.apache.kafka.clients.KafkaClient;
 import org.apache.kafka.clients.Metadata;
 import org.apache.kafka.clients.RequestCompletionHandler;
+import org.apache.kafka.clients.RequestPriority;
 import org.apache.kafka.common.Node;
 import org.apache.kafka.common.errors.DisconnectException;
 import org.apache.kafka.common.errors.TimeoutException;
@@ -102,6 +103,10 @@ public class ConsumerNetworkClient implements Closeable {
         return completionHandler.future;
     }
 
+    /**
+     * Queue a request for the node. Control requests are queued ahead of the data requests, see
+     * {@link RequestPriority}.
+     */
     private void put(Node node, ClientRequest request) {
         synchronized (this) {
             List<ClientRequest> nodeUnsent = unsent.get(node);
@@ -109,7 +114,15 @@ public class ConsumerNetworkClient implements Closeable {
                 nodeUnsent = new ArrayList<>();
                 unsent.put(node, nodeUnsent);
             }
-            nodeUnsent.add(request);
+            if (RequestPriority.forApiKey(request.apiKey()) == RequestPriority.CONTROL) {
+                int index = 0;
+                while (index < nodeUnsent.size()
+                        && RequestPriority.forApiKey(nodeUnsent.get(index).apiKey()) == RequestPriority.CONTROL)
+                    index++;
+                nodeUnsent.add(index, request);
+            } else {
+                nodeUnsent.add(request);
+            }
         }
     }
 
@@ -48,6 +48,18 @@ import java.util.Map;
  *     Partitions    => [int32]
  * </pre>
  *
+ * Assignors may also use the following formats for their user data:
+ *
+ * <pre>
+ * PartitionWeights => Version TopicWeights
+ *   Version         => int16
+ *   TopicWeights    => [Topic PartitionWeights]
+ *     Topic         => String
+ *     PartitionWeights => [Partition Weight]
+ *       Partition   => int32
+ *       Weight      => int64
+ * </pre>
+ *
  * The current implementation assumes that future versions will not break compatibility. When
  * it encounters a newer version, it parses it using the current format. This basically means
  * that new versions cannot remove or reorder any of the existing fields.
@@ -62,6 +74,10 @@ public class ConsumerProtocol {
     public static final String PARTITIONS_KEY_NAME = "partitions";
     public static final String TOPIC_PARTITIONS_KEY_NAME = "topic_partitions";
     public static final String USER_DATA_KEY_NAME = "user_data";
+    public static final String TOPIC_WEIGHTS_KEY_NAME = "topic_weights";
+    public static final String PARTITION_WEIGHTS_KEY_NAME = "partition_weights";
+    public static final String PARTITION_KEY_NAME = "partition";
+    public static final String WEIGHT_KEY_NAME = "weight";
 
     public static final short CONSUMER_PROTOCOL_V0 = 0;
     public static final Schema CONSUMER_PROTOCOL_HEADER_SCHEMA = new Schema(
@@ -78,6 +94,14 @@ public class ConsumerProtocol {
     public static final Schema ASSIGNMENT_V0 = new Schema(
             new Field(TOPIC_PARTITIONS_KEY_NAME, new ArrayOf(TOPIC_ASSIGNMENT_V0)),
             new Field(USER_DATA_KEY_NAME, Type.NULLABLE_BYTES));
+    public static final Schema PARTITION_WEIGHT_V0 = new Schema(
+            new Field(PARTITION_KEY_NAME, Type.INT32),
+            new Field(WEIGHT_KEY_NAME, Type.INT64));
+    public static final Schema TOPIC_WEIGHTS_V0 = new Schema(
+            new Field(TOPIC_KEY_NAME, Type.STRING),
+            new Field(PARTITION_WEIGHTS_KEY_NAME, new ArrayOf(PARTITION_WEIGHT_V0)));
+    public static final Schema PARTITION_WEIGHTS_V0 = new Schema(
+            new Field(TOPIC_WEIGHTS_KEY_NAME, new ArrayOf(TOPIC_WEIGHTS_V0)));
 
     public static ByteBuffer serializeSubscription(PartitionAssignor.Subscription subscription) {
         Struct struct = new Struct(SUBSCRIPTION_V0);
@@ -138,6 +162,55 @@ public class ConsumerProtocol {
         return buffer;
     }
 
+    public static ByteBuffer serializePartitionWeights(Map<TopicPartition, Long> weights) {
+        Map<String, List<Struct>> weightsByTopic = new HashMap<>();
+        for (Map.Entry<TopicPartition, Long> weightEntry : weights.entrySet()) {
+            String topic = weightEntry.getKey().topic();
+            List<Struct> topicWeights = weightsByTopic.get(topic);
+            if (topicWeights == null) {
+                topicWeights = new ArrayList<>();
+                weightsByTopic.put(topic, topicWeights);
+            }
+            Struct partitionWeight = new Struct(PARTITION_WEIGHT_V0);
+            partitionWeight.set(PARTITION_KEY_NAME, weightEntry.getKey().partition());
+            partitionWeight.set(WEIGHT_KEY_NAME, weightEntry.getValue());
+            topicWeights.add(partitionWeight);
+        }
+
+        List<Struct> topicWeightStructs = new ArrayList<>();
+        for (Map.Entry<String, List<Struct>> topicEntry : weightsByTopic.entrySet()) {
+            Struct topicWeights = new Struct(TOPIC_WEIGHTS_V0);
+            topicWeights.set(TOPIC_KEY_NAME, topicEntry.getKey());
+            topicWeights.set(PARTITION_WEIGHTS_KEY_NAME, topicEntry.getValue().toArray());
+            topicWeightStructs.add(topicWeights);
+        }
+        Struct struct = new Struct(PARTITION_WEIGHTS_V0);
+        struct.set(TOPIC_WEIGHTS_KEY_NAME, topicWeightStructs.toArray());
+        ByteBuffer buffer = ByteBuffer.allocate(CONSUMER_PROTOCOL_HEADER_V0.sizeOf() + PARTITION_WEIGHTS_V0.sizeOf(struct));
+        CONSUMER_PROTOCOL_HEADER_V0.writeTo(buffer);
+        PARTITION_WEIGHTS_V0.write(buffer, struct);
+        buffer.flip();
+        return buffer;
+    }
+
+    public static Map<TopicPartition, Long> deserializePartitionWeights(ByteBuffer buffer) {
+        Struct header = CONSUMER_PROTOCOL_HEADER_SCHEMA.read(buffer);
+        Short version = header.getShort(VERSION_KEY_NAME);
+        checkVersionCompatibility(version);
+        Struct struct = PARTITION_WEIGHTS_V0.read(buffer);
+        Map<TopicPartition, Long> weights = new HashMap<>();
+        for (Object topicObj : struct.getArray(TOPIC_WEIGHTS_KEY_NAME)) {
+            Struct topicWeights = (Struct) topicObj;
+            String topic = topicWeights.getString(TOPIC_KEY_NAME);
+            for (Object partitionObj : topicWeights.getArray(PARTITION_WEIGHTS_KEY_NAME)) {
+                Struct partitionWeight = (Struct) partitionObj;
+                weights.put(new TopicPartition(topic, partitionWeight.getInt(PARTITION_KEY_NAME)),
+                        partitionWeight.getLong(WEIGHT_KEY_NAME));
+            }
+        }
+        return weights;
+    }
+
     private static void checkVersionCompatibility(short version) {
         // check for invalid versions
         if (version < CONSUMER_PROTOCOL_V0)
@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer.internals;
+
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * This interface is used to define the order in which {@link Fetcher} schedules partitions. The policy is
+ * consulted twice: when the fetchable partitions are laid out into the next {@link org.apache.kafka.common.requests.FetchRequest}s,
+ * and when the completed fetches are drained into the records returned from
+ * {@link org.apache.kafka.clients.consumer.KafkaConsumer#poll(long)}. In both cases partitions with a higher
+ * priority come first, and partitions with equal priority keep the default round-robin order.
+ *
+ * Implementations are instantiated through <code>fetch.scheduling.policy</code> and may implement
+ * {@link org.apache.kafka.common.Configurable} to read the consumer configuration. The policy is only called from
+ * the consumer's polling thread.
+ */
+public interface FetchSchedulingPolicy {
+
+    /**
+     * Compute the scheduling priority of a partition. This is called for every fetchable partition when fetch
+     * requests are created and for every completed fetch when records are drained, so it should be cheap.
+     *
+     * @param partition The partition to prioritize
+     * @param lag The number of records the partition is behind its high watermark, or -1 if it is not known yet
+     * @param timestamp The timestamp of the oldest record which is pending for the partition, i.e. the first record of
+     *                  a completed fetch or the last record returned to the user when creating fetches, or -1 if it is
+     *                  not known
+     * @return The priority of the partition, higher values are scheduled first
+     */
+    double priority(TopicPartition partition, long lag, long timestamp);
+
+    /**
+     * Unique name for this policy (e.g. "lag-weighted" or "deadline")
+     * @return non-null unique name
+     */
+    String name();
+
+}
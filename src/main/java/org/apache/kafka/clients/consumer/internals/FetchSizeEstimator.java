@@ -0,0 +1,222 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer.internals;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.requests.FetchRequest;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks the recent fetch history of each partition and uses it to size the per-partition <code>maxBytes</code>
+ * of the next fetch. Partitions which keep filling their fetch while lagging behind the high watermark are
+ * given a larger share of the request, while partitions which return little data are shrunk so that they do
+ * not reserve broker work they never use. The sizes of all partitions sent to one node are then fitted into
+ * the <code>fetch.max.bytes</code> budget of the request.
+ *
+ * This class is not thread-safe. {@link Fetcher} sizes the partitions when it creates fetch requests and records the
+ * results when it parses completed fetches, both on the thread which currently holds the consumer. The fetch
+ * response handlers, which may run on the heartbeat thread, only queue the completed fetches and never touch it.
+ */
+public class FetchSizeEstimator {
+    /* the smallest size we will ever request for a partition */
+    static final int MIN_PARTITION_FETCH_BYTES = 64 * 1024;
+
+    /* the smallest share of a budget too small for all partitions of a request; larger records grow it on retry */
+    static final int MIN_SHARED_PARTITION_FETCH_BYTES = 1024;
+
+    /* weight of the most recent fetch in the moving average of fetched bytes */
+    private static final double AVG_WEIGHT = 0.3;
+
+    /* a fetch returning at least this ratio of the requested bytes is considered to be saturated */
+    private static final double SATURATION_RATIO = 0.9;
+
+    /* extra room given on top of the average so that a steady partition does not saturate its fetch */
+    private static final double HEADROOM = 2.0;
+
+    private final int defaultSize;
+    private final int minSize;
+    private final int maxSize;
+    private final Map<TopicPartition, PartitionFetchStats> stats = new HashMap<>();
+
+    /**
+     * @param defaultSize The size used for partitions without any history, i.e. <code>max.partition.fetch.bytes</code>
+     * @param maxSize The upper bound for a single partition, i.e. <code>fetch.max.bytes</code>
+     */
+    public FetchSizeEstimator(int defaultSize, int maxSize) {
+        this.defaultSize = defaultSize;
+        this.maxSize = Math.max(defaultSize, maxSize);
+        this.minSize = Math.min(defaultSize, MIN_PARTITION_FETCH_BYTES);
+    }
+
+    /**
+     * Record the result of a completed fetch for the partition.
+     * @param tp The fetched partition
+     * @param requestedBytes The <code>maxBytes</code> which was sent for the partition
+     * @param fetchedBytes The number of bytes the broker returned for the partition
+     */
+    public void record(TopicPartition tp, int requestedBytes, int fetchedBytes) {
+        PartitionFetchStats partitionStats = stats.get(tp);
+        if (partitionStats == null) {
+            partitionStats = new PartitionFetchStats(fetchedBytes);
+            stats.put(tp, partitionStats);
+        } else {
+            partitionStats.avgBytes = AVG_WEIGHT * fetchedBytes + (1 - AVG_WEIGHT) * partitionStats.avgBytes;
+        }
+        partitionStats.lastRequestedBytes = requestedBytes;
+        partitionStats.lastFetchedBytes = fetchedBytes;
+    }
+
+    /**
+     * Record that the fetch for the partition was too small to contain a single complete record. Since the partition
+     * evidently holds large records, it will not be sized below the default size again while it stays assigned.
+     * @param tp The fetched partition
+     * @param requestedBytes The <code>maxBytes</code> which was sent for the partition
+     */
+    public void recordTooSmall(TopicPartition tp, int requestedBytes) {
+        PartitionFetchStats partitionStats = stats.get(tp);
+        if (partitionStats == null) {
+            partitionStats = new PartitionFetchStats(0);
+            stats.put(tp, partitionStats);
+        }
+        partitionStats.floorBytes = Math.min(maxSize, Math.max(defaultSize, 2 * (long) requestedBytes));
+        partitionStats.lastRequestedBytes = requestedBytes;
+        partitionStats.lastFetchedBytes = 0;
+    }
+
+    /**
+     * Check whether a fetch of the given size was shrunk below the default size, in which
+     * case a fetch returning no complete record is expected and should simply be retried with a larger size.
+     */
+    public boolean isShrunk(int requestedBytes) {
+        return requestedBytes < defaultSize;
+    }
+
+    /**
+     * Get the size we would like to request for the partition, before fitting it into the request budget.
+     * @param tp The partition to fetch
+     * @param lag The current lag of the partition, or null if it is not known yet
+     * @return The desired <code>maxBytes</code> for the partition
+     */
+    public int targetSize(TopicPartition tp, Long lag) {
+        PartitionFetchStats partitionStats = stats.get(tp);
+        if (partitionStats == null)
+            return defaultSize;
+
+        long target;
+        boolean saturated = partitionStats.lastFetchedBytes >= partitionStats.lastRequestedBytes * SATURATION_RATIO;
+        if (saturated && lag != null && lag > 0)
+            // the partition is behind and used all of its last fetch, so let it catch up faster
+            target = 2 * (long) partitionStats.lastRequestedBytes;
+        else
+            target = (long) (partitionStats.avgBytes * HEADROOM);
+
+        target = Math.max(target, partitionStats.floorBytes);
+        return (int) Math.max(minSize, Math.min(maxSize, target));
+    }
+
+    /**
+     * Scale down the partition sizes of a single fetch request so that their sum does not exceed the budget. Only the
+     * share above <code>max.partition.fetch.bytes</code> is scaled, so a partition is never fetched with less than the
+     * fixed sizing would have used unless its own history asked for less. The remaining budget is shared in proportion
+     * to the target sizes so that lagging partitions retain their larger share.
+     *
+     * If the partitions do not fit even at <code>max.partition.fetch.bytes</code>, the budget itself is shared in
+     * proportion to those sizes. Partitions which were found to hold records larger than a shrunk fetch keep the size
+     * recorded by {@link #recordTooSmall}, so that they are not shrunk again, and the others share what is left of the
+     * budget. Every partition gets at least {@link #MIN_SHARED_PARTITION_FETCH_BYTES}, so the request can exceed the
+     * budget by those minimums and by the sizes kept for large records, but no partition is fetched with zero bytes.
+     * @param fetchData The partitions of the request, updated in place
+     * @param budget The maximum total bytes of the request, i.e. <code>fetch.max.bytes</code>
+     */
+    public void fitToBudget(Map<TopicPartition, FetchRequest.PartitionData> fetchData, int budget) {
+        long total = 0;
+        long reserved = 0;
+        for (FetchRequest.PartitionData data : fetchData.values()) {
+            total += data.maxBytes;
+            reserved += Math.min(data.maxBytes, defaultSize);
+        }
+        if (total <= budget)
+            return;
+
+        if (reserved >= budget) {
+            shareBudget(fetchData, budget);
+            return;
+        }
+
+        double scale = (double) (budget - reserved) / (total - reserved);
+        for (Map.Entry<TopicPartition, FetchRequest.PartitionData> entry : fetchData.entrySet()) {
+            FetchRequest.PartitionData data = entry.getValue();
+            int floor = Math.min(data.maxBytes, defaultSize);
+            int size = floor + (int) ((data.maxBytes - floor) * scale);
+            entry.setValue(new FetchRequest.PartitionData(data.offset, size));
+        }
+    }
+
+    private void shareBudget(Map<TopicPartition, FetchRequest.PartitionData> fetchData, int budget) {
+        long kept = 0;
+        long shared = 0;
+        for (Map.Entry<TopicPartition, FetchRequest.PartitionData> entry : fetchData.entrySet()) {
+            int maxBytes = entry.getValue().maxBytes;
+            long floorBytes = floorBytes(entry.getKey());
+            if (floorBytes > 0)
+                kept += Math.min(maxBytes, floorBytes);
+            else
+                shared += Math.min(maxBytes, defaultSize);
+        }
+
+        long available = Math.max(0, budget - kept);
+        for (Map.Entry<TopicPartition, FetchRequest.PartitionData> entry : fetchData.entrySet()) {
+            FetchRequest.PartitionData data = entry.getValue();
+            long floorBytes = floorBytes(entry.getKey());
+            long size;
+            if (floorBytes > 0) {
+                size = Math.min(data.maxBytes, floorBytes);
+            } else {
+                int floor = Math.min(data.maxBytes, defaultSize);
+                size = Math.max(Math.min(floor, MIN_SHARED_PARTITION_FETCH_BYTES), floor * available / shared);
+            }
+            entry.setValue(new FetchRequest.PartitionData(data.offset, (int) size));
+        }
+    }
+
+    private long floorBytes(TopicPartition tp) {
+        PartitionFetchStats partitionStats = stats.get(tp);
+        return partitionStats == null ? 0 : partitionStats.floorBytes;
+    }
+
+    /**
+     * Drop the history of partitions which are no longer assigned.
+     */
+    public void retainAll(Set<TopicPartition> assignment) {
+        Iterator<TopicPartition> iter = stats.keySet().iterator();
+        while (iter.hasNext()) {
+            if (!assignment.contains(iter.next()))
+                iter.remove();
+        }
+    }
+
+    private static class PartitionFetchStats {
+        private double avgBytes;
+        private int lastRequestedBytes;
+        private int lastFetchedBytes;
+        private long floorBytes;
+
+        private PartitionFetchStats(int fetchedBytes) {
+            this.avgBytes = fetchedBytes;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer.internals;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures the rate at which {@link Fetcher} consumes bytes from each assigned partition, so that the member can
+ * report the load of its partitions to the group leader. The rate of each partition is a moving average over
+ * windows of {@link #WINDOW_MS}; until the first window is complete the rate of the partial window is used.
+ *
+ * This class is not thread-safe. {@link Fetcher} records the fetched bytes when it parses a completed fetch, and the
+ * assignor reads the rates when the member builds its subscription for a join group request. Both happen on the
+ * thread which currently holds the consumer, never on the heartbeat thread.
+ */
+public class FetchThroughputTracker implements PartitionWeightProvider {
+    static final long WINDOW_MS = 10000;
+
+    /* weight of the most recent window in the moving average */
+    private static final double AVG_WEIGHT = 0.5;
+
+    private final Map<TopicPartition, PartitionThroughput> throughput = new HashMap<>();
+
+    /**
+     * Record the bytes returned by a completed fetch for the partition. Fetches which return no data must be
+     * recorded as well, so that idle partitions are measured.
+     */
+    public void record(TopicPartition tp, int bytes, long now) {
+        PartitionThroughput partitionThroughput = throughput.get(tp);
+        if (partitionThroughput == null) {
+            partitionThroughput = new PartitionThroughput(now);
+            throughput.put(tp, partitionThroughput);
+        }
+        partitionThroughput.windowBytes += bytes;
+        partitionThroughput.lastRecordMs = now;
+
+        long elapsed = now - partitionThroughput.windowStartMs;
+        if (elapsed >= WINDOW_MS) {
+            double rate = partitionThroughput.windowBytes * 1000.0 / elapsed;
+            partitionThroughput.bytesPerSec = partitionThroughput.bytesPerSec < 0 ? rate :
+                    AVG_WEIGHT * rate + (1 - AVG_WEIGHT) * partitionThroughput.bytesPerSec;
+            partitionThroughput.windowStartMs = now;
+            partitionThroughput.windowBytes = 0;
+        }
+    }
+
+    /**
+     * Get the measured byte rate of the partition in bytes per second, or -1 if it has not been measured yet
+     */
+    @Override
+    public long weight(TopicPartition tp) {
+        PartitionThroughput partitionThroughput = throughput.get(tp);
+        if (partitionThroughput == null)
+            return -1;
+        if (partitionThroughput.bytesPerSec >= 0)
+            return (long) Math.ceil(partitionThroughput.bytesPerSec);
+
+        long elapsed = partitionThroughput.lastRecordMs - partitionThroughput.windowStartMs;
+        if (elapsed <= 0)
+            return -1;
+        return (long) Math.ceil(partitionThroughput.windowBytes * 1000.0 / elapsed);
+    }
+
+    /**
+     * Drop the measurements of partitions which are no longer assigned.
+     */
+    public void retainAll(Set<TopicPartition> assignment) {
+        Iterator<TopicPartition> iter = throughput.keySet().iterator();
+        while (iter.hasNext()) {
+            if (!assignment.contains(iter.next()))
+                iter.remove();
+        }
+    }
+
+    private static class PartitionThroughput {
+        private long windowStartMs;
+        private long lastRecordMs;
+        private long windowBytes = 0;
+        private double bytesPerSec = -1;
+
+        private PartitionThroughput(long now) {
+            this.windowStartMs = now;
+            this.lastRecordMs = now;
+        }
+    }
+}
@@ -14,9 +14,12 @@
 package org.apache.kafka.clients.consumer.internals;
 
 import org.apache.kafka.clients.ClientResponse;
+import org.apache.kafka.clients.ConnectionStripes;
 import org.apache.kafka.clients.Metadata;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecordColumns;
+import org.apache.kafka.clients.consumer.ConsumerRecordEntries;
 import org.apache.kafka.clients.consumer.NoOffsetForPartitionException;
 import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
 import org.apache.kafka.clients.consumer.OffsetOutOfRangeException;
@@ -41,8 +44,11 @@ import org.apache.kafka.common.metrics.stats.Max;
 import org.apache.kafka.common.metrics.stats.Rate;
 import org.apache.kafka.common.metrics.stats.Value;
 import org.apache.kafka.common.protocol.Errors;
+import org.apache.kafka.common.record.ByteBufferOutputStream;
 import org.apache.kafka.common.record.InvalidRecordException;
 import org.apache.kafka.common.record.LogEntry;
+import org.apache.kafka.common.record.LogEntryCursor;
+import org.apache.kafka.common.record.MemoryRecords;
 import org.apache.kafka.common.record.Record;
 import org.apache.kafka.common.record.TimestampType;
 import org.apache.kafka.common.requests.FetchRequest;
@@ -58,18 +64,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class manage the fetching process with the brokers.
@@ -86,23 +98,46 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
     private final int fetchSize;
     private final long retryBackoffMs;
     private final int maxPollRecords;
+    private final int maxPollRecordsPerPartition;
     private final boolean checkCrcs;
+    private final boolean checkShallowCrcs;
+    private final boolean columnarRecords;
+    private final boolean cursorRecords;
     private final Metadata metadata;
     private final FetchManagerMetrics sensors;
     private final SubscriptionState subscriptions;
     private final ConcurrentLinkedQueue<CompletedFetch> completedFetches;
     private final Deserializer<K> keyDeserializer;
     private final Deserializer<V> valueDeserializer;
+    private final FetchSizeEstimator fetchSizeEstimator;
+    private final FetchSchedulingPolicy schedulingPolicy;
+    private final FetchThroughputTracker throughputTracker;
+    private final ConnectionStripes stripes;
+    private final PriorityQueue<CompletedFetch> prioritizedFetches;
+    private final Map<TopicPartition, Long> lastReturnedTimestamps;
+    private final ListOffsetsCache offsetsCache;
 
     private PartitionRecords<K, V> nextInLineRecords = null;
 
+    /* partially drained records which take turns in poll() when the records per partition are capped */
+    private final ArrayDeque<PartitionRecords<K, V>> rotatingRecords;
+
     public Fetcher(ConsumerNetworkClient client,
                    int minBytes,
                    int maxBytes,
                    int maxWaitMs,
                    int fetchSize,
                    int maxPollRecords,
+                   int maxPollRecordsPerPartition,
                    boolean checkCrcs,
+                   boolean checkShallowCrcs,
+                   boolean adaptiveFetchSizing,
+                   boolean columnarRecords,
+                   boolean cursorRecords,
+                   long listOffsetsCacheTtlMs,
+                   FetchSchedulingPolicy schedulingPolicy,
+                   FetchThroughputTracker throughputTracker,
+                   ConnectionStripes stripes,
                    Deserializer<K> keyDeserializer,
                    Deserializer<V> valueDeserializer,
                    Metadata metadata,
@@ -120,10 +155,22 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
         this.maxWaitMs = maxWaitMs;
         this.fetchSize = fetchSize;
         this.maxPollRecords = maxPollRecords;
+        this.maxPollRecordsPerPartition = maxPollRecordsPerPartition;
+        this.rotatingRecords = maxPollRecordsPerPartition < maxPollRecords ? new ArrayDeque<PartitionRecords<K, V>>() : null;
         this.checkCrcs = checkCrcs;
+        this.checkShallowCrcs = checkShallowCrcs;
+        this.columnarRecords = columnarRecords;
+        this.cursorRecords = cursorRecords;
         this.keyDeserializer = keyDeserializer;
         this.valueDeserializer = valueDeserializer;
         this.completedFetches = new ConcurrentLinkedQueue<>();
+        this.fetchSizeEstimator = adaptiveFetchSizing ? new FetchSizeEstimator(fetchSize, maxBytes) : null;
+        this.schedulingPolicy = schedulingPolicy;
+        this.throughputTracker = throughputTracker;
+        this.stripes = stripes;
+        this.prioritizedFetches = schedulingPolicy == null ? null : new PriorityQueue<>(11, COMPLETED_FETCH_PRIORITY);
+        this.lastReturnedTimestamps = schedulingPolicy == null ? null : new HashMap<TopicPartition, Long>();
+        this.offsetsCache = listOffsetsCacheTtlMs > 0 ? new ListOffsetsCache(listOffsetsCacheTtlMs) : null;
         this.sensors = new FetchManagerMetrics(metrics, metricGrpPrefix);
         this.retryBackoffMs = retryBackoffMs;
 
@@ -152,12 +199,27 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
         }
     }
 
+    /**
+     * Return whether the fetched records are returned as {@link ConsumerRecordColumns}.
+     */
+    public boolean isColumnar() {
+        return columnarRecords;
+    }
+
+    /**
+     * Return whether the fetched records are returned as {@link ConsumerRecordEntries}.
+     */
+    public boolean isCursor() {
+        return cursorRecords;
+    }
+
     /**
      * Return whether we have any completed fetches pending return to the user. This method is thread-safe.
      * @return true if there are completed fetches, false otherwise
      */
     public boolean hasCompletedFetches() {
-        return !completedFetches.isEmpty();
+        return !completedFetches.isEmpty() || (prioritizedFetches != null && !prioritizedFetches.isEmpty())
+                || (rotatingRecords != null && !rotatingRecords.isEmpty());
     }
 
     private boolean matchesRequestedPartitions(FetchRequest.Builder request, FetchResponse response) {
@@ -189,18 +251,27 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
                                 log.warn("Ignoring fetch response containing partitions {} since it does not match " +
                                         "the requested partitions {}", response.responseData().keySet(),
                                         request.fetchData().keySet());
+                                resp.releaseBuffer();
                                 return;
                             }
 
                             Set<TopicPartition> partitions = new HashSet<>(response.responseData().keySet());
                             FetchResponseMetricAggregator metricAggregator = new FetchResponseMetricAggregator(sensors, partitions);
+                            // records returned as cursors point into the response, which is left to the garbage collector
+                            FetchResponseBuffer responseBuffer = null;
+                            if (response.responseData().isEmpty())
+                                resp.releaseBuffer();
+                            else if (cursorRecords)
+                                resp.detachBuffer();
+                            else
+                                responseBuffer = new FetchResponseBuffer(resp, response.responseData().size());
 
                             for (Map.Entry<TopicPartition, FetchResponse.PartitionData> entry : response.responseData().entrySet()) {
                                 TopicPartition partition = entry.getKey();
-                                long fetchOffset = request.fetchData().get(partition).offset;
+                                FetchRequest.PartitionData requestData = request.fetchData().get(partition);
                                 FetchResponse.PartitionData fetchData = entry.getValue();
-                                completedFetches.add(new CompletedFetch(partition, fetchOffset, fetchData, metricAggregator,
-                                        request.version()));
+                                completedFetches.add(new CompletedFetch(partition, requestData.offset, requestData.maxBytes,
+                                        fetchData, metricAggregator, responseBuffer, request.version()));
                             }
 
                             sensors.fetchLatency.record(resp.requestLatencyMs());
@@ -221,11 +292,12 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
      * @param partitions the partitions to reset
      */
     public void resetOffsetsIfNeeded(Set<TopicPartition> partitions) {
+        List<TopicPartition> needReset = new ArrayList<>();
         for (TopicPartition tp : partitions) {
-            // TODO: If there are several offsets to reset, we could submit offset requests in parallel
             if (subscriptions.isAssigned(tp) && subscriptions.isOffsetResetNeeded(tp))
-                resetOffset(tp);
+                needReset.add(tp);
         }
+        resetOffsets(needReset);
     }
 
     /**
@@ -235,22 +307,24 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
      */
     public void updateFetchPositions(Set<TopicPartition> partitions) {
         // reset the fetch position to the committed position
+        List<TopicPartition> needReset = new ArrayList<>();
         for (TopicPartition tp : partitions) {
             if (!subscriptions.isAssigned(tp) || subscriptions.hasValidPosition(tp))
                 continue;
 
             if (subscriptions.isOffsetResetNeeded(tp)) {
-                resetOffset(tp);
+                needReset.add(tp);
             } else if (subscriptions.committed(tp) == null) {
                 // there's no committed position, so we need to reset with the default strategy
                 subscriptions.needOffsetReset(tp);
-                resetOffset(tp);
+                needReset.add(tp);
             } else {
                 long committed = subscriptions.committed(tp).offset();
                 log.debug("Resetting offset for partition {} to the committed offset {}", tp, committed);
                 subscriptions.seek(tp, committed);
             }
         }
+        resetOffsets(needReset);
     }
 
     /**
@@ -352,30 +426,75 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
     }
 
     /**
-     * Reset offsets for the given partition using the offset reset strategy.
+     * Reset offsets for the given partitions using the offset reset strategy. The offsets of all partitions are
+     * looked up together, with one request per broker.
      *
-     * @param partition The given partition that needs reset offset
+     * @param partitions The given partitions that need reset offset
      * @throws org.apache.kafka.clients.consumer.NoOffsetForPartitionException If no offset reset strategy is defined
      */
-    private void resetOffset(TopicPartition partition) {
-        OffsetResetStrategy strategy = subscriptions.resetStrategy(partition);
-        log.debug("Resetting offset for partition {} to {} offset.", partition, strategy.name().toLowerCase(Locale.ROOT));
-        final long timestamp;
-        if (strategy == OffsetResetStrategy.EARLIEST)
-            timestamp = ListOffsetRequest.EARLIEST_TIMESTAMP;
-        else if (strategy == OffsetResetStrategy.LATEST)
-            timestamp = ListOffsetRequest.LATEST_TIMESTAMP;
-        else
-            throw new NoOffsetForPartitionException(partition);
-        Map<TopicPartition, OffsetData> offsetsByTimes = retrieveOffsetsByTimes(
-                Collections.singletonMap(partition, timestamp), Long.MAX_VALUE, false);
-        OffsetData offsetData = offsetsByTimes.get(partition);
-        if (offsetData == null)
-            throw new NoOffsetForPartitionException(partition);
-        long offset = offsetData.offset;
-        // we might lose the assignment while fetching the offset, so check it is still active
-        if (subscriptions.isAssigned(partition))
-            this.subscriptions.seek(partition, offset);
+    private void resetOffsets(Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty())
+            return;
+
+        Map<TopicPartition, Long> timestampsToSearch = new HashMap<>();
+        TopicPartition noResetStrategy = null;
+        for (TopicPartition partition : partitions) {
+            OffsetResetStrategy strategy = subscriptions.resetStrategy(partition);
+            log.debug("Resetting offset for partition {} to {} offset.", partition, strategy.name().toLowerCase(Locale.ROOT));
+            if (strategy == OffsetResetStrategy.EARLIEST)
+                timestampsToSearch.put(partition, ListOffsetRequest.EARLIEST_TIMESTAMP);
+            else if (strategy == OffsetResetStrategy.LATEST)
+                timestampsToSearch.put(partition, ListOffsetRequest.LATEST_TIMESTAMP);
+            else if (noResetStrategy == null)
+                noResetStrategy = partition;
+        }
+
+        Map<TopicPartition, OffsetData> offsetsByTimes = lookupOffsets(timestampsToSearch, Long.MAX_VALUE);
+        for (TopicPartition partition : timestampsToSearch.keySet()) {
+            OffsetData offsetData = offsetsByTimes.get(partition);
+            if (offsetData == null)
+                throw new NoOffsetForPartitionException(partition);
+            long offset = offsetData.offset;
+            // we might lose the assignment while fetching the offset, so check it is still active
+            if (subscriptions.isAssigned(partition))
+                this.subscriptions.seek(partition, offset);
+        }
+        if (noResetStrategy != null)
+            throw new NoOffsetForPartitionException(noResetStrategy);
+    }
+
+    /**
+     * Look up the beginning or end offsets of partitions, answering from the offsets cache where it holds an offset
+     * younger than <code>list.offsets.cache.ttl.ms</code> and caching what the brokers return.
+     *
+     * @param timestampsToSearch The partitions mapped to {@link ListOffsetRequest#EARLIEST_TIMESTAMP} or
+     *                           {@link ListOffsetRequest#LATEST_TIMESTAMP}
+     */
+    private Map<TopicPartition, OffsetData> lookupOffsets(Map<TopicPartition, Long> timestampsToSearch, long timeout) {
+        if (offsetsCache == null)
+            return retrieveOffsetsByTimes(timestampsToSearch, timeout, false);
+
+        long now = time.milliseconds();
+        Map<TopicPartition, OffsetData> result = new HashMap<>();
+        Map<TopicPartition, Long> remaining = new HashMap<>();
+        for (Map.Entry<TopicPartition, Long> entry : timestampsToSearch.entrySet()) {
+            Long offset = offsetsCache.get(entry.getKey(), entry.getValue(), now);
+            if (offset != null)
+                result.put(entry.getKey(), new OffsetData(offset, null));
+            else
+                remaining.put(entry.getKey(), entry.getValue());
+        }
+        if (remaining.isEmpty())
+            return result;
+
+        Map<TopicPartition, OffsetData> retrieved = retrieveOffsetsByTimes(remaining, timeout, false);
+        now = time.milliseconds();
+        for (Map.Entry<TopicPartition, OffsetData> entry : retrieved.entrySet()) {
+            if (entry.getValue() != null)
+                offsetsCache.update(entry.getKey(), remaining.get(entry.getKey()), entry.getValue().offset, now);
+        }
+        result.putAll(retrieved);
+        return result;
     }
 
     public Map<TopicPartition, OffsetAndTimestamp> getOffsetsByTimes(Map<TopicPartition, Long> timestampsToSearch,
@@ -444,8 +563,7 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
         for (TopicPartition tp : partitions)
             timestampsToSearch.put(tp, timestamp);
         Map<TopicPartition, Long> result = new HashMap<>();
-        for (Map.Entry<TopicPartition, OffsetData> entry :
-                retrieveOffsetsByTimes(timestampsToSearch, timeout, false).entrySet()) {
+        for (Map.Entry<TopicPartition, OffsetData> entry : lookupOffsets(timestampsToSearch, timeout).entrySet()) {
             result.put(entry.getKey(), entry.getValue().offset);
         }
         return result;
@@ -461,12 +579,15 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
      *         the defaultResetPolicy is NONE
      */
     public Map<TopicPartition, List<ConsumerRecord<K, V>>> fetchedRecords() {
+        if (rotatingRecords != null)
+            return fairFetchedRecords();
+
         Map<TopicPartition, List<ConsumerRecord<K, V>>> drained = new HashMap<>();
         int recordsRemaining = maxPollRecords;
 
         while (recordsRemaining > 0) {
             if (nextInLineRecords == null || nextInLineRecords.isDrained()) {
-                CompletedFetch completedFetch = completedFetches.poll();
+                CompletedFetch completedFetch = nextCompletedFetch();
                 if (completedFetch == null)
                     break;
 
@@ -475,18 +596,7 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
                 TopicPartition partition = nextInLineRecords.partition;
                 List<ConsumerRecord<K, V>> records = drainRecords(nextInLineRecords, recordsRemaining);
                 if (!records.isEmpty()) {
-                    List<ConsumerRecord<K, V>> currentRecords = drained.get(partition);
-                    if (currentRecords == null) {
-                        drained.put(partition, records);
-                    } else {
-                        // this case shouldn't usually happen because we only send one fetch at a time per partition,
-                        // but it might conceivably happen in some rare cases (such as partition leader changes).
-                        // we have to copy to a new list because the old one may be immutable
-                        List<ConsumerRecord<K, V>> newRecords = new ArrayList<>(records.size() + currentRecords.size());
-                        newRecords.addAll(currentRecords);
-                        newRecords.addAll(records);
-                        drained.put(partition, newRecords);
-                    }
+                    addDrainedRecords(drained, partition, records);
                     recordsRemaining -= records.size();
                 }
             }
@@ -495,6 +605,111 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
         return drained;
     }
 
+    /**
+     * Variant of {@link #fetchedRecords()} used when <code>max.poll.records.per.partition</code> caps the records
+     * of each partition. Every partition with fetched data takes at most one turn per poll: the partially drained
+     * partitions left over from the previous poll go first, followed by newly completed fetches. A partition which
+     * still has records after its turn goes to the back of the rotation, so its records stay in order.
+     */
+    private Map<TopicPartition, List<ConsumerRecord<K, V>>> fairFetchedRecords() {
+        Map<TopicPartition, List<ConsumerRecord<K, V>>> drained = new HashMap<>();
+        int recordsRemaining = maxPollRecords;
+        int carriedOver = rotatingRecords.size();
+
+        while (recordsRemaining > 0) {
+            PartitionRecords<K, V> partitionRecords;
+            if (carriedOver > 0) {
+                partitionRecords = rotatingRecords.pollFirst();
+                carriedOver--;
+            } else {
+                CompletedFetch completedFetch = nextCompletedFetch();
+                if (completedFetch == null)
+                    break;
+                partitionRecords = parseCompletedFetch(completedFetch);
+                if (partitionRecords == null)
+                    continue;
+            }
+
+            int maxRecords = Math.min(recordsRemaining, maxPollRecordsPerPartition);
+            List<ConsumerRecord<K, V>> records = drainRecords(partitionRecords, maxRecords);
+            if (!records.isEmpty()) {
+                addDrainedRecords(drained, partitionRecords.partition, records);
+                recordsRemaining -= records.size();
+            }
+            if (!partitionRecords.isDrained())
+                rotatingRecords.addLast(partitionRecords);
+        }
+
+        return drained;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addDrainedRecords(Map<TopicPartition, List<ConsumerRecord<K, V>>> drained,
+                                   TopicPartition partition,
+                                   List<ConsumerRecord<K, V>> records) {
+        List<ConsumerRecord<K, V>> currentRecords = drained.get(partition);
+        if (currentRecords == null) {
+            drained.put(partition, records);
+        } else if (currentRecords instanceof ConsumerRecordColumns) {
+            drained.put(partition, ((ConsumerRecordColumns<K, V>) currentRecords).concat((ConsumerRecordColumns<K, V>) records));
+        } else if (currentRecords instanceof ConsumerRecordEntries) {
+            drained.put(partition, ((ConsumerRecordEntries<K, V>) currentRecords).concat((ConsumerRecordEntries<K, V>) records));
+        } else {
+            // this case shouldn't usually happen because we only send one fetch at a time per partition,
+            // but it might conceivably happen in some rare cases (such as partition leader changes).
+            // we have to copy to a new list because the old one may be immutable
+            List<ConsumerRecord<K, V>> newRecords = new ArrayList<>(records.size() + currentRecords.size());
+            newRecords.addAll(currentRecords);
+            newRecords.addAll(records);
+            drained.put(partition, newRecords);
+        }
+    }
+
+    /**
+     * Get the next completed fetch to parse. Without a scheduling policy this is simply the oldest completed
+     * fetch; otherwise all completed fetches are moved into a priority queue which is only accessed from the
+     * polling thread, and the most urgent one is returned.
+     */
+    private CompletedFetch nextCompletedFetch() {
+        if (schedulingPolicy == null)
+            return completedFetches.poll();
+
+        CompletedFetch completedFetch;
+        while ((completedFetch = completedFetches.poll()) != null) {
+            FetchResponse.PartitionData partitionData = completedFetch.partitionData;
+            long lag = partitionData.highWatermark < 0 ? -1 : Math.max(0, partitionData.highWatermark - completedFetch.fetchedOffset);
+            long timestamp = Record.NO_TIMESTAMP;
+            if (partitionData.records != null) {
+                Iterator<? extends LogEntry> entries = partitionData.records.shallowEntries().iterator();
+                if (entries.hasNext())
+                    timestamp = entries.next().record().timestamp();
+            }
+            completedFetch.priority = schedulingPolicy.priority(completedFetch.partition, lag, timestamp);
+            prioritizedFetches.add(completedFetch);
+        }
+        return prioritizedFetches.poll();
+    }
+
+    /**
+     * Order the fetchable partitions by the scheduling policy, most urgent first. The sort is stable so that
+     * partitions with equal priority keep their round-robin order from the subscription state.
+     */
+    private void schedule(List<TopicPartition> partitions) {
+        final Map<TopicPartition, Double> priorities = new HashMap<>(partitions.size());
+        for (TopicPartition partition : partitions) {
+            Long lag = subscriptions.partitionLag(partition);
+            Long timestamp = lastReturnedTimestamps.get(partition);
+            priorities.put(partition, schedulingPolicy.priority(partition, lag == null ? -1 : lag,
+                    timestamp == null ? Record.NO_TIMESTAMP : timestamp));
+        }
+        Collections.sort(partitions, new Comparator<TopicPartition>() {
+            @Override
+            public int compare(TopicPartition tp1, TopicPartition tp2) {
+                return Double.compare(priorities.get(tp2), priorities.get(tp1));
+            }
+        });
+    }
+
     private List<ConsumerRecord<K, V>> drainRecords(PartitionRecords<K, V> partitionRecords, int maxRecords) {
         if (!subscriptions.isAssigned(partitionRecords.partition)) {
             // this can happen when a rebalance happened before fetched records are returned to the consumer's poll call
@@ -508,11 +723,14 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
             } else if (partitionRecords.fetchOffset == position) {
                 List<ConsumerRecord<K, V>> partRecords = partitionRecords.drainRecords(maxRecords);
                 if (!partRecords.isEmpty()) {
-                    long nextOffset = partRecords.get(partRecords.size() - 1).offset() + 1;
+                    // read the last offset through the partition records so that columnar records stay unmaterialized
+                    long nextOffset = partitionRecords.lastDrainedOffset() + 1;
                     log.trace("Returning fetched records at offset {} for assigned partition {} and update " +
                             "position to {}", position, partitionRecords.partition, nextOffset);
 
                     subscriptions.position(partitionRecords.partition, nextOffset);
+                    if (lastReturnedTimestamps != null)
+                        lastReturnedTimestamps.put(partitionRecords.partition, partitionRecords.lastDrainedTimestamp());
                 }
 
                 Long partitionLag = subscriptions.partitionLag(partitionRecords.partition);
@@ -694,10 +912,20 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
         if (nextInLineRecords != null && !nextInLineRecords.isDrained()) {
             exclude.add(nextInLineRecords.partition);
         }
+        if (rotatingRecords != null) {
+            for (PartitionRecords<K, V> partitionRecords : rotatingRecords)
+                exclude.add(partitionRecords.partition);
+        }
         for (CompletedFetch completedFetch : completedFetches) {
             exclude.add(completedFetch.partition);
         }
+        if (prioritizedFetches != null) {
+            for (CompletedFetch completedFetch : prioritizedFetches)
+                exclude.add(completedFetch.partition);
+        }
         fetchable.removeAll(exclude);
+        if (schedulingPolicy != null)
+            schedule(fetchable);
         return fetchable;
     }
 
@@ -713,7 +941,11 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
             Node node = cluster.leaderFor(partition);
             if (node == null) {
                 metadata.requestUpdate();
-            } else if (this.client.pendingRequestCount(node) == 0) {
+                continue;
+            }
+            // the fetch for the partition is sent on its connection to the leader
+            node = stripes.node(node, partition);
+            if (this.client.pendingRequestCount(node) == 0) {
                 // if there is a leader and no in-flight requests, issue a new fetch
                 LinkedHashMap<TopicPartition, FetchRequest.PartitionData> fetch = fetchable.get(node);
                 if (fetch == null) {
@@ -722,8 +954,12 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
                 }
 
                 long position = this.subscriptions.position(partition);
-                fetch.put(partition, new FetchRequest.PartitionData(position, this.fetchSize));
-                log.trace("Added fetch request for partition {} at offset {} to node {}", partition, position, node);
+                int partitionFetchSize = this.fetchSize;
+                if (fetchSizeEstimator != null)
+                    partitionFetchSize = fetchSizeEstimator.targetSize(partition, subscriptions.partitionLag(partition));
+                fetch.put(partition, new FetchRequest.PartitionData(position, partitionFetchSize));
+                log.trace("Added fetch request for partition {} at offset {} with max bytes {} to node {}", partition,
+                        position, partitionFetchSize, node);
             } else {
                 log.trace("Skipping fetch for partition {} because there is an in-flight request to {}", partition, node);
             }
@@ -733,6 +969,8 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
         Map<Node, FetchRequest.Builder> requests = new HashMap<>();
         for (Map.Entry<Node, LinkedHashMap<TopicPartition, FetchRequest.PartitionData>> entry : fetchable.entrySet()) {
             Node node = entry.getKey();
+            if (fetchSizeEstimator != null)
+                fetchSizeEstimator.fitToBudget(entry.getValue(), this.maxBytes);
             FetchRequest.Builder fetch = new FetchRequest.Builder(this.maxWaitMs, this.minBytes, entry.getValue()).
                     setMaxBytes(this.maxBytes);
             requests.put(node, fetch);
@@ -769,22 +1007,57 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
 
                 List<ConsumerRecord<K, V>> parsed = new ArrayList<>();
                 boolean skippedRecords = false;
-                for (LogEntry logEntry : partition.records.deepEntries()) {
-                    // Skip the messages earlier than current position.
-                    if (logEntry.offset() >= position) {
-                        parsed.add(parseRecord(tp, logEntry));
-                        bytes += logEntry.sizeInBytes();
-                    } else
-                        skippedRecords = true;
-                }
+                if (cursorRecords) {
+                    EntriesBuilder entries = new EntriesBuilder(tp, (MemoryRecords) partition.records, position);
+                    parsed = entries.build(tp);
+                    bytes = entries.bytes;
+                    skippedRecords = entries.skippedRecords;
+                } else {
+                    ColumnsBuilder columns = columnarRecords ? new ColumnsBuilder(partition.records.sizeInBytes()) : null;
+                    for (LogEntry shallowEntry : partition.records.shallowEntries()) {
+                        // a valid wrapper checksum covers the compressed payload, so the inner records need no check
+                        boolean checkDeepCrcs = this.checkCrcs;
+                        if (this.checkCrcs && this.checkShallowCrcs && shallowEntry.isCompressed()) {
+                            ensureValid(tp, shallowEntry);
+                            checkDeepCrcs = false;
+                        }
+
+                        for (LogEntry logEntry : shallowEntry) {
+                            // Skip the messages earlier than current position.
+                            if (logEntry.offset() >= position) {
+                                if (columns != null) {
+                                    if (checkDeepCrcs)
+                                        ensureValid(tp, logEntry);
+                                    columns.append(logEntry);
+                                } else {
+                                    parsed.add(parseRecord(tp, logEntry, checkDeepCrcs));
+                                }
+                                bytes += logEntry.sizeInBytes();
+                            } else
+                                skippedRecords = true;
+                        }
+                    }
 
+                    if (columns != null)
+                        parsed = columns.build(tp);
+                }
                 recordsCount = parsed.size();
+                if (fetchSizeEstimator != null)
+                    fetchSizeEstimator.record(tp, completedFetch.fetchSize, partition.records.sizeInBytes());
+                if (throughputTracker != null)
+                    throughputTracker.record(tp, bytes, time.milliseconds());
 
                 log.trace("Adding fetched record for partition {} with offset {} to buffered record list", tp, position);
                 parsedRecords = new PartitionRecords<>(fetchOffset, tp, parsed);
 
                 if (parsed.isEmpty() && !skippedRecords && (partition.records.sizeInBytes() > 0)) {
-                    if (completedFetch.responseVersion < 3) {
+                    if (fetchSizeEstimator != null && fetchSizeEstimator.isShrunk(completedFetch.fetchSize)) {
+                        // the adaptive size was below max.partition.fetch.bytes, so retry with a larger fetch
+                        // before concluding that the record can never be returned
+                        log.debug("Fetch of {} bytes for partition {} at offset {} returned no complete record, " +
+                                "growing the fetch size", completedFetch.fetchSize, tp, fetchOffset);
+                        fetchSizeEstimator.recordTooSmall(tp, completedFetch.fetchSize);
+                    } else if (completedFetch.responseVersion < 3) {
                         // Implement the pre KIP-74 behavior of throwing a RecordTooLargeException.
                         Map<TopicPartition, Long> recordTooLargePartitions = Collections.singletonMap(tp, fetchOffset);
                         throw new RecordTooLargeException("There are some messages at [Partition=Offset]: " +
@@ -804,6 +1077,8 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
                 if (partition.highWatermark >= 0) {
                     log.trace("Received {} records in fetch response for partition {} with offset {}", parsed.size(), tp, position);
                     subscriptions.updateHighWatermark(tp, partition.highWatermark);
+                    if (offsetsCache != null)
+                        offsetsCache.updateHighWatermark(tp, partition.highWatermark, time.milliseconds());
                 }
             } else if (error == Errors.NOT_LEADER_FOR_PARTITION) {
                 log.debug("Error in fetch for partition {}: {}", tp, error.exceptionName());
@@ -818,6 +1093,9 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
                             "does not match the current offset {}", tp, fetchOffset, subscriptions.position(tp));
                 } else if (subscriptions.hasDefaultOffsetResetPolicy()) {
                     log.info("Fetch offset {} is out of range for partition {}, resetting offset", fetchOffset, tp);
+                    // the log was truncated or deleted, so the cached offsets are of no use for the reset
+                    if (offsetsCache != null)
+                        offsetsCache.invalidate(tp);
                     subscriptions.needOffsetReset(tp);
                 } else {
                     throw new OffsetOutOfRangeException(Collections.singletonMap(tp, fetchOffset));
@@ -832,6 +1110,8 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
             }
         } finally {
             completedFetch.metricAggregator.record(tp, bytes, recordsCount);
+            if (completedFetch.responseBuffer != null)
+                completedFetch.responseBuffer.onPartitionParsed();
         }
 
         // we move the partition to the end if we received some bytes or if there was an error. This way, it's more
@@ -845,17 +1125,11 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
     /**
      * Parse the record entry, deserializing the key / value fields if necessary
      */
-    private ConsumerRecord<K, V> parseRecord(TopicPartition partition, LogEntry logEntry) {
+    private ConsumerRecord<K, V> parseRecord(TopicPartition partition, LogEntry logEntry, boolean checkCrc) {
         Record record = logEntry.record();
 
-        if (this.checkCrcs) {
-            try {
-                record.ensureValid();
-            } catch (InvalidRecordException e) {
-                throw new KafkaException("Record for partition " + partition + " at offset " + logEntry.offset()
-                        + " is invalid, cause: " + e.getMessage());
-            }
-        }
+        if (checkCrc)
+            ensureValid(partition, logEntry);
 
         try {
             long offset = logEntry.offset();
@@ -879,21 +1153,70 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
         }
     }
 
+    private void ensureValid(TopicPartition partition, LogEntry logEntry) {
+        try {
+            logEntry.record().ensureValid();
+        } catch (InvalidRecordException e) {
+            throw new KafkaException("Record for partition " + partition + " at offset " + logEntry.offset()
+                    + " is invalid, cause: " + e.getMessage());
+        }
+    }
+
+    private void ensureValid(TopicPartition partition, LogEntryCursor entry) {
+        try {
+            entry.ensureValid();
+        } catch (InvalidRecordException e) {
+            throw new KafkaException("Record for partition " + partition + " at offset " + entry.offset()
+                    + " is invalid, cause: " + e.getMessage());
+        }
+    }
+
     @Override
     public void onAssignment(Set<TopicPartition> assignment) {
         sensors.updatePartitionLagSensors(assignment);
+        if (fetchSizeEstimator != null)
+            fetchSizeEstimator.retainAll(assignment);
+        if (throughputTracker != null)
+            throughputTracker.retainAll(assignment);
+        if (lastReturnedTimestamps != null)
+            lastReturnedTimestamps.keySet().retainAll(assignment);
     }
 
     private static class PartitionRecords<K, V> {
         private long fetchOffset;
         private TopicPartition partition;
         private List<ConsumerRecord<K, V>> records;
+        private final ConsumerRecordColumns<K, V> columns;
+        private final ConsumerRecordEntries<K, V> entries;
         private int position = 0;
 
+        @SuppressWarnings("unchecked")
         private PartitionRecords(long fetchOffset, TopicPartition partition, List<ConsumerRecord<K, V>> records) {
             this.fetchOffset = fetchOffset;
             this.partition = partition;
             this.records = records;
+            this.columns = records instanceof ConsumerRecordColumns ? (ConsumerRecordColumns<K, V>) records : null;
+            this.entries = records instanceof ConsumerRecordEntries ? (ConsumerRecordEntries<K, V>) records : null;
+        }
+
+        private long offset(int index) {
+            if (columns != null)
+                return columns.offset(index);
+            if (entries != null)
+                return entries.offset(index);
+            return records.get(index).offset();
+        }
+
+        private long lastDrainedOffset() {
+            return offset(position - 1);
+        }
+
+        private long lastDrainedTimestamp() {
+            if (columns != null)
+                return columns.timestamp(position - 1);
+            if (entries != null)
+                return entries.timestamp(position - 1);
+            return records.get(position - 1).timestamp();
         }
 
         private boolean isDrained() {
@@ -913,36 +1236,214 @@ public class Fetcher<K, V> implements SubscriptionState.Listener {
             // using a sublist avoids a potentially expensive list copy (depending on the size of the records
             // and the maximum we can return from poll). The cost is that we cannot mutate the returned sublist.
             int limit = Math.min(records.size(), position + n);
-            List<ConsumerRecord<K, V>> res = Collections.unmodifiableList(records.subList(position, limit));
+            List<ConsumerRecord<K, V>> res;
+            if (columns != null)
+                res = columns.subList(position, limit);
+            else if (entries != null)
+                res = entries.subList(position, limit);
+            else
+                res = Collections.unmodifiableList(records.subList(position, limit));
 
             position = limit;
             if (position < records.size())
-                fetchOffset = records.get(position).offset();
+                fetchOffset = offset(position);
 
             return res;
         }
     }
 
+    /**
+     * Collects the fetched records of a partition into the column arrays of a {@link ConsumerRecordColumns}. The raw
+     * keys and values are copied into a single buffer which starts at the size of the fetched data and only grows
+     * for decompressed message sets.
+     */
+    private class ColumnsBuilder {
+        private long[] offsets = new long[16];
+        private long[] timestamps = new long[16];
+        private TimestampType[] timestampTypes = new TimestampType[16];
+        private long[] checksums = new long[16];
+        private int[] keyOffsets = new int[16];
+        private int[] keyLengths = new int[16];
+        private int[] valueOffsets = new int[16];
+        private int[] valueLengths = new int[16];
+        private byte[] buffer;
+        private int bufferPosition = 0;
+        private int size = 0;
+
+        private ColumnsBuilder(int sizeInBytes) {
+            this.buffer = new byte[sizeInBytes];
+        }
+
+        private void append(LogEntry logEntry) {
+            if (size == offsets.length)
+                growColumns();
+            Record record = logEntry.record();
+            offsets[size] = logEntry.offset();
+            timestamps[size] = record.timestamp();
+            timestampTypes[size] = record.timestampType();
+            checksums[size] = record.checksum();
+            keyOffsets[size] = bufferPosition;
+            keyLengths[size] = copy(record.key());
+            valueOffsets[size] = bufferPosition;
+            valueLengths[size] = copy(record.value());
+            size++;
+        }
+
+        private int copy(ByteBuffer bytes) {
+            if (bytes == null)
+                return -1;
+            int length = bytes.remaining();
+            if (bufferPosition + length > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(bufferPosition + length, 2 * buffer.length));
+            bytes.duplicate().get(buffer, bufferPosition, length);
+            bufferPosition += length;
+            return length;
+        }
+
+        private void growColumns() {
+            int capacity = 2 * offsets.length;
+            offsets = Arrays.copyOf(offsets, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            timestampTypes = Arrays.copyOf(timestampTypes, capacity);
+            checksums = Arrays.copyOf(checksums, capacity);
+            keyOffsets = Arrays.copyOf(keyOffsets, capacity);
+            keyLengths = Arrays.copyOf(keyLengths, capacity);
+            valueOffsets = Arrays.copyOf(valueOffsets, capacity);
+            valueLengths = Arrays.copyOf(valueLengths, capacity);
+        }
+
+        private ConsumerRecordColumns<K, V> build(TopicPartition partition) {
+            return new ConsumerRecordColumns<>(partition, keyDeserializer, valueDeserializer, offsets, timestamps,
+                    timestampTypes, checksums, keyOffsets, keyLengths, valueOffsets, valueLengths, buffer, 0, size);
+        }
+    }
+
+    /**
+     * Collects the positions of the fetched log entries of a partition for a {@link ConsumerRecordEntries}. If the
+     * fetch holds no compressed message sets, the entries stay in the buffer of the fetch response. Otherwise the
+     * entries are written to a new buffer, with the inner entries of the compressed sets decompressed, so that the
+     * records can be read in place from a single buffer of uncompressed entries.
+     */
+    private class EntriesBuilder {
+        private final ByteBuffer entries;
+        private int[] positions = new int[16];
+        private int size = 0;
+        private int bytes = 0;
+        private boolean skippedRecords = false;
+
+        private EntriesBuilder(TopicPartition tp, MemoryRecords records, long fetchPosition) {
+            ByteBuffer buffer = records.buffer();
+            LogEntryCursor entry = new LogEntryCursor(buffer);
+            boolean compressed = false;
+            while (!compressed && entry.next())
+                compressed = entry.isCompressed();
+            entry.moveTo(-1);
+
+            if (compressed) {
+                ByteBufferOutputStream out = new ByteBufferOutputStream(ByteBuffer.allocate(2 * buffer.remaining()));
+                while (entry.next()) {
+                    if (!entry.isCompressed()) {
+                        if (checkCrcs && entry.offset() >= fetchPosition)
+                            ensureValid(tp, entry);
+                        entry.writeTo(out);
+                        continue;
+                    }
+                    // a valid wrapper checksum covers the compressed payload, so the inner records need no check
+                    boolean checkDeepCrcs = checkCrcs;
+                    if (checkCrcs && checkShallowCrcs) {
+                        ensureValid(tp, entry);
+                        checkDeepCrcs = false;
+                    }
+                    try {
+                        entry.decompressTo(out, false, checkDeepCrcs);
+                    } catch (InvalidRecordException e) {
+                        throw new KafkaException("Compressed records for partition " + tp + " at offset " +
+                                entry.offset() + " are invalid, cause: " + e.getMessage());
+                    }
+                }
+                buffer = out.buffer();
+                buffer.flip();
+                entry = new LogEntryCursor(buffer);
+            }
+            this.entries = buffer;
+
+            while (entry.next()) {
+                // Skip the messages earlier than current position.
+                if (entry.offset() >= fetchPosition) {
+                    if (checkCrcs && !compressed)
+                        ensureValid(tp, entry);
+                    if (size == positions.length)
+                        positions = Arrays.copyOf(positions, 2 * size);
+                    positions[size++] = entry.position();
+                    bytes += entry.sizeInBytes();
+                } else
+                    skippedRecords = true;
+            }
+        }
+
+        private ConsumerRecordEntries<K, V> build(TopicPartition partition) {
+            return new ConsumerRecordEntries<>(partition, keyDeserializer, valueDeserializer, entries, positions, 0, size);
+        }
+    }
+
+    private static final AtomicLong COMPLETED_FETCH_SEQUENCE = new AtomicLong();
+
+    /* orders completed fetches by descending priority, falling back to arrival order */
+    private static final Comparator<CompletedFetch> COMPLETED_FETCH_PRIORITY = new Comparator<CompletedFetch>() {
+        @Override
+        public int compare(CompletedFetch fetch1, CompletedFetch fetch2) {
+            int result = Double.compare(fetch2.priority, fetch1.priority);
+            return result != 0 ? result : Long.compare(fetch1.sequence, fetch2.sequence);
+        }
+    };
+
     private static class CompletedFetch {
         private final TopicPartition partition;
         private final long fetchedOffset;
+        private final int fetchSize;
         private final FetchResponse.PartitionData partitionData;
         private final FetchResponseMetricAggregator metricAggregator;
+        private final FetchResponseBuffer responseBuffer;
         private final short responseVersion;
+        private final long sequence = COMPLETED_FETCH_SEQUENCE.getAndIncrement();
+        private double priority;
 
         private CompletedFetch(TopicPartition partition,
                                long fetchedOffset,
+                               int fetchSize,
                                FetchResponse.PartitionData partitionData,
                                FetchResponseMetricAggregator metricAggregator,
+                               FetchResponseBuffer responseBuffer,
                                short responseVersion) {
             this.partition = partition;
             this.fetchedOffset = fetchedOffset;
+            this.fetchSize = fetchSize;
             this.partitionData = partitionData;
             this.metricAggregator = metricAggregator;
+            this.responseBuffer = responseBuffer;
             this.responseVersion = responseVersion;
         }
     }
 
+    /**
+     * Releases the buffer a fetch response was read into once all of its partitions were parsed. Parsing copies
+     * the records out of the buffer, so nothing refers to it afterwards.
+     */
+    private static class FetchResponseBuffer {
+        private final ClientResponse response;
+        private int unparsedPartitions;
+
+        private FetchResponseBuffer(ClientResponse response, int partitions) {
+            this.response = response;
+            this.unparsedPartitions = partitions;
+        }
+
+        private void onPartitionParsed() {
+            if (--unparsedPartitions == 0)
+                response.releaseBuffer();
+        }
+    }
+
     /**
      * Since we parse the message data for each partition from each fetch response lazily, fetch-level
      * metrics need to be aggregated as the messages from each partition are parsed. This class is used
@@ -0,0 +1,247 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer.internals;
+
+import org.apache.kafka.common.utils.KafkaThread;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A process-wide scheduler which drives the heartbeats of many coordinators instead of one heartbeat thread per
+ * coordinator. A single timer thread keeps the tasks in a deadline queue and hands every due task to a small pool of
+ * worker threads. A task only takes a few microseconds, so {@link #MIN_WORKERS} threads are normally enough. A task
+ * may however block on a coordinator whose lock is held by its foreground thread; the timer therefore checks for
+ * stalled tasks and adds one worker per stalled task, so that one stalled coordinator cannot delay the heartbeats of
+ * the others. A task never runs concurrently with itself.
+ *
+ * The scheduler is reference counted: coordinators obtain it with {@link #acquire()} and return it with
+ * {@link #release()}, and its threads are stopped when the last coordinator is closed.
+ */
+public class HeartbeatScheduler {
+    private static final Logger log = LoggerFactory.getLogger(HeartbeatScheduler.class);
+
+    static final int MIN_WORKERS = 2;
+
+    /* a task running for longer than this is considered to be blocked */
+    private static final long STALL_MS = 50;
+
+    /* idle worker threads above the core size are stopped after this time */
+    private static final long WORKER_KEEP_ALIVE_MS = 60000;
+
+    private static HeartbeatScheduler shared = null;
+    private static int references = 0;
+
+    private final ScheduledThreadPoolExecutor timer;
+    private final ThreadPoolExecutor workers;
+    private final ConcurrentHashMap<Handle, Long> runningSince = new ConcurrentHashMap<>();
+
+    /**
+     * The body of a scheduled task.
+     */
+    public interface Task {
+        /**
+         * Run the task once.
+         * @return the time in milliseconds until the task should run again, or -1 to wait until {@link Handle#wakeup()}
+         */
+        long run();
+    }
+
+    private HeartbeatScheduler() {
+        this.timer = new ScheduledThreadPoolExecutor(1, threadFactory("kafka-coordinator-heartbeat-scheduler"));
+        this.timer.setRemoveOnCancelPolicy(true);
+        this.workers = new ThreadPoolExecutor(MIN_WORKERS, MIN_WORKERS, WORKER_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), threadFactory("kafka-coordinator-heartbeat-worker"));
+        this.timer.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                resizeWorkers();
+            }
+        }, STALL_MS, STALL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Keep one worker for every stalled task on top of the minimum, so that queued tasks can still run.
+     */
+    private void resizeWorkers() {
+        long now = System.currentTimeMillis();
+        int stalled = 0;
+        for (Long startMs : runningSince.values()) {
+            if (now - startMs >= STALL_MS)
+                stalled++;
+        }
+        int size = MIN_WORKERS + stalled;
+        if (size > workers.getMaximumPoolSize()) {
+            log.debug("Growing the heartbeat worker pool to {} threads since {} tasks are blocked", size, stalled);
+            workers.setMaximumPoolSize(size);
+            workers.setCorePoolSize(size);
+        } else if (size < workers.getCorePoolSize()) {
+            workers.setCorePoolSize(size);
+            workers.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * Get the shared scheduler, starting it if needed. Every call must be paired with a call to {@link #release()}.
+     */
+    public static synchronized HeartbeatScheduler acquire() {
+        if (shared == null)
+            shared = new HeartbeatScheduler();
+        references++;
+        return shared;
+    }
+
+    /**
+     * Return a reference obtained from {@link #acquire()}, stopping the scheduler when it is no longer used.
+     */
+    public void release() {
+        synchronized (HeartbeatScheduler.class) {
+            if (shared != this)
+                return;
+            if (--references > 0)
+                return;
+            shared = null;
+        }
+        log.debug("Stopping shared heartbeat scheduler");
+        timer.shutdownNow();
+        workers.shutdown();
+    }
+
+    /**
+     * Schedule a task to run as soon as possible.
+     */
+    public Handle schedule(Task task) {
+        Handle handle = new Handle(task);
+        handle.wakeup();
+        return handle;
+    }
+
+    private static ThreadFactory threadFactory(final String name) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new KafkaThread(name + "-" + threadCount.incrementAndGet(), runnable, true);
+            }
+        };
+    }
+
+    /**
+     * A task registered with the scheduler.
+     */
+    public class Handle {
+        private final Task task;
+        private final Runnable dispatch;
+        private final Runnable execution;
+        private ScheduledFuture<?> scheduled = null;
+        private boolean running = false;
+        private boolean wakeupPending = false;
+        private boolean cancelled = false;
+
+        private Handle(Task task) {
+            this.task = task;
+            this.execution = new Runnable() {
+                @Override
+                public void run() {
+                    execute();
+                }
+            };
+            this.dispatch = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        workers.execute(execution);
+                    } catch (RejectedExecutionException e) {
+                        log.debug("Dropping heartbeat task since the scheduler was stopped");
+                    }
+                }
+            };
+        }
+
+        /**
+         * Run the task as soon as possible, or right after its current run if it is running.
+         */
+        public synchronized void wakeup() {
+            if (cancelled)
+                return;
+            if (running) {
+                wakeupPending = true;
+                return;
+            }
+            schedule(0);
+        }
+
+        /**
+         * Stop scheduling the task. A run which is already in progress completes.
+         */
+        public synchronized void cancel() {
+            cancelled = true;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+        }
+
+        private void schedule(long delayMs) {
+            if (scheduled != null)
+                scheduled.cancel(false);
+            try {
+                scheduled = timer.schedule(dispatch, delayMs, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // the scheduler was stopped after the last coordinator was closed
+                scheduled = null;
+            }
+        }
+
+        private void execute() {
+            synchronized (this) {
+                if (cancelled || running)
+                    return;
+                running = true;
+                wakeupPending = false;
+                scheduled = null;
+            }
+
+            long delayMs = -1;
+            runningSince.put(this, System.currentTimeMillis());
+            try {
+                delayMs = task.run();
+            } catch (Throwable t) {
+                log.error("Unexpected error in scheduled heartbeat task", t);
+                synchronized (this) {
+                    cancelled = true;
+                }
+            } finally {
+                runningSince.remove(this);
+                synchronized (this) {
+                    running = false;
+                    if (!cancelled) {
+                        if (wakeupPending)
+                            schedule(0);
+                        else if (delayMs >= 0)
+                            schedule(delayMs);
+                    }
+                }
+            }
+        }
+    }
+}
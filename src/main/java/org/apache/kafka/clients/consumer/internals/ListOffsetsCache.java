@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer.internals;
+
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.requests.ListOffsetRequest;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Keeps the beginning and end offsets of partitions for a bounded time, so that repeated lookups of the same
+ * partitions by {@link Fetcher#beginningOffsets}, {@link Fetcher#endOffsets} and offset resets are answered without
+ * a <code>ListOffsetRequest</code>. Besides the results of these requests, the end offsets are refreshed from the
+ * high watermark of every fetch response, which is what a consumer's <code>ListOffsetRequest</code> for the latest
+ * offset returns, so the end offsets of the fetched partitions rarely need a request at all.
+ *
+ * This class is not thread-safe. It is only used by {@link Fetcher} on the thread which currently holds the
+ * consumer: offset lookups update it after their requests completed, and fetch responses update it when their records
+ * are parsed. Request completion handlers, which may run on the heartbeat thread, never touch it.
+ */
+public class ListOffsetsCache {
+    private final long ttlMs;
+    private final Map<TopicPartition, CachedOffset> beginningOffsets = new HashMap<>();
+    private final Map<TopicPartition, CachedOffset> endOffsets = new HashMap<>();
+    private long lastExpirationMs = 0;
+
+    /**
+     * @param ttlMs The maximum age of an offset returned from the cache
+     */
+    public ListOffsetsCache(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    /**
+     * Get the cached offset of the partition for the target timestamp
+     * @return The offset, or null if it is not cached or older than the ttl
+     */
+    public Long get(TopicPartition tp, long timestamp, long now) {
+        Map<TopicPartition, CachedOffset> offsets = offsets(timestamp);
+        CachedOffset cached = offsets.get(tp);
+        if (cached == null)
+            return null;
+        if (now - cached.updateMs > ttlMs) {
+            offsets.remove(tp);
+            return null;
+        }
+        return cached.offset;
+    }
+
+    /**
+     * Record the offset of the partition for the target timestamp, as returned by the broker.
+     */
+    public void update(TopicPartition tp, long timestamp, long offset, long now) {
+        maybeExpire(now);
+        CachedOffset cached = offsets(timestamp).get(tp);
+        if (cached == null)
+            offsets(timestamp).put(tp, new CachedOffset(offset, now));
+        else if (now >= cached.updateMs) {
+            cached.offset = offset;
+            cached.updateMs = now;
+        }
+    }
+
+    /**
+     * Record the high watermark of the partition returned in a fetch response.
+     */
+    public void updateHighWatermark(TopicPartition tp, long highWatermark, long now) {
+        update(tp, ListOffsetRequest.LATEST_TIMESTAMP, highWatermark, now);
+    }
+
+    /**
+     * Forget the offsets of the partition, e.g. because a fetch was out of range, which means that the log has been
+     * truncated or deleted since they were looked up.
+     */
+    public void invalidate(TopicPartition tp) {
+        beginningOffsets.remove(tp);
+        endOffsets.remove(tp);
+    }
+
+    private Map<TopicPartition, CachedOffset> offsets(long timestamp) {
+        if (timestamp == ListOffsetRequest.EARLIEST_TIMESTAMP)
+            return beginningOffsets;
+        if (timestamp == ListOffsetRequest.LATEST_TIMESTAMP)
+            return endOffsets;
+        throw new IllegalArgumentException("Offsets for timestamp " + timestamp + " are not cached");
+    }
+
+    /**
+     * Drop the expired offsets of partitions which are no longer looked up, at most once per ttl.
+     */
+    private void maybeExpire(long now) {
+        if (now - lastExpirationMs < ttlMs)
+            return;
+        lastExpirationMs = now;
+        expire(beginningOffsets, now);
+        expire(endOffsets, now);
+    }
+
+    private void expire(Map<TopicPartition, CachedOffset> offsets, long now) {
+        Iterator<CachedOffset> iterator = offsets.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().updateMs > ttlMs)
+                iterator.remove();
+        }
+    }
+
+    private static class CachedOffset {
+        private long offset;
+        private long updateMs;
+
+        private CachedOffset(long offset, long updateMs) {
+            this.offset = offset;
+            this.updateMs = updateMs;
+        }
+    }
+}
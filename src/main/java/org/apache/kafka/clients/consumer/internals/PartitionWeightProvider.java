@@ -0,0 +1,34 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer.internals;
+
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * This interface is used by {@link org.apache.kafka.clients.consumer.ThroughputWeightedAssignor} to look up the
+ * relative load of a partition, e.g. its byte rate. The group leader consults the provider configured through
+ * <code>partition.assignment.weight.provider</code> for every partition whose weight was not reported by the
+ * members. Implementations may implement {@link org.apache.kafka.common.Configurable} to read the consumer
+ * configuration.
+ */
+public interface PartitionWeightProvider {
+
+    /**
+     * Get the weight of a partition. Weights only need to be comparable with each other.
+     *
+     * @param partition The partition to look up
+     * @return The weight of the partition, or -1 if it is not known
+     */
+    long weight(TopicPartition partition);
+
+}
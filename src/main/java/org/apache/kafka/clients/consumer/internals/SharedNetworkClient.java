@@ -0,0 +1,793 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer.internals;
+
+import org.apache.kafka.clients.ClientRequest;
+import org.apache.kafka.clients.ClientResponse;
+import org.apache.kafka.clients.ClientUtils;
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.clients.ConnectionStripes;
+import org.apache.kafka.clients.KafkaClient;
+import org.apache.kafka.clients.Metadata;
+import org.apache.kafka.clients.NetworkClient;
+import org.apache.kafka.clients.RequestCompletionHandler;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.InterruptException;
+import org.apache.kafka.common.internals.ClusterResourceListeners;
+import org.apache.kafka.common.memory.MemoryPool;
+import org.apache.kafka.common.memory.PooledMemoryPool;
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.MetricsReporter;
+import org.apache.kafka.common.network.NetworkReceive;
+import org.apache.kafka.common.network.Selector;
+import org.apache.kafka.common.protocol.ApiKeys;
+import org.apache.kafka.common.requests.AbstractRequest;
+import org.apache.kafka.common.requests.AbstractResponse;
+import org.apache.kafka.common.requests.FetchRequest;
+import org.apache.kafka.common.requests.FetchResponse;
+import org.apache.kafka.common.utils.Time;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A network client shared by the consumers of a process which connect to the same cluster with the same network
+ * settings. Instead of one {@link NetworkClient}, {@link Selector} and {@link Metadata} refresh per consumer, the
+ * consumers registered with {@link #register(ConsumerConfig, Metadata, String, Time)} share one connection per broker
+ * and one metadata refresh for the union of their topics. Every consumer keeps its own {@link ConsumerNetworkClient},
+ * {@link Metadata}, {@link SubscriptionState} and coordinator; the {@link KafkaClient} returned to it routes its
+ * requests through the shared client and hands it back only its own responses.
+ * <p>
+ * The broker handles the requests of one connection one at a time, so two kinds of requests which may wait at the
+ * broker are treated specially:
+ * <ul>
+ * <li>fetches of different consumers to the same broker are merged into a single fetch request, which is split again
+ *     when the response arrives. Only one merged fetch is in flight per broker and fetches issued meanwhile are merged
+ *     into the next one. Once fetches had to queue behind a fetch to a broker, the fetches to it wait at most
+ *     {@link #CONTENDED_FETCH_MAX_WAIT_MS} at the broker for a while, so that consumers with data available are not
+ *     held up by the fetches of idle consumers;</li>
+ * <li>connections to the group coordinator, which carry join group requests blocking for up to the rebalance
+ *     timeout, remain private to each consumer.</li>
+ * </ul>
+ * There is no I/O thread: the consumer which polls first performs the I/O for all of them, and the others wait until
+ * it delivers their responses or gives up the I/O to one of them.
+ */
+public class SharedNetworkClient {
+    private static final Logger log = LoggerFactory.getLogger(SharedNetworkClient.class);
+    private static final String JMX_PREFIX = "kafka.consumer";
+    private static final String METRIC_GROUP_PREFIX = "consumer-shared";
+
+    /* the maximum time a fetch waits at the broker while other fetches to the broker queue behind it */
+    static final int CONTENDED_FETCH_MAX_WAIT_MS = 10;
+
+    /* the settings which must be equal for consumers to share their connections */
+    private static final Set<String> NETWORK_CONFIGS = Utils.mkSet(
+            ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG,
+            ConsumerConfig.METADATA_MAX_AGE_CONFIG,
+            ConsumerConfig.SEND_BUFFER_CONFIG,
+            ConsumerConfig.RECEIVE_BUFFER_CONFIG,
+            ConsumerConfig.RECONNECT_BACKOFF_MS_CONFIG,
+            ConsumerConfig.RETRY_BACKOFF_MS_CONFIG,
+            ConsumerConfig.REQUEST_TIMEOUT_MS_CONFIG,
+            ConsumerConfig.CONNECTIONS_MAX_IDLE_MS_CONFIG,
+            ConsumerConfig.RECEIVE_MEMORY_POOL_BYTES_CONFIG,
+            ConsumerConfig.RECEIVE_MEMORY_POOL_DIRECT_CONFIG,
+            CommonClientConfigs.SECURITY_PROTOCOL_CONFIG);
+
+    private static final Map<Map<String, Object>, SharedNetworkClient> CLIENTS = new HashMap<>();
+    private static final AtomicInteger CLIENT_ID_SEQUENCE = new AtomicInteger(1);
+
+    /* ids of the connections which are private to a member, chosen far away from the bootstrap node ids */
+    private static final AtomicInteger PRIVATE_NODE_ID_SEQUENCE = new AtomicInteger(Integer.MIN_VALUE);
+
+    private final Map<String, Object> key;
+    private final String clientId;
+    private final Time time;
+    private final int requestTimeoutMs;
+    private final Metrics metrics;
+    private final Metadata metadata;
+    private final NetworkClient client;
+    private final AtomicInteger correlation = new AtomicInteger();
+    private final List<Member> members = new CopyOnWriteArrayList<>();
+
+    // the network client and the request queues below are protected by this lock. It is fair so that a member
+    // waiting to send a request is not starved by a member which keeps polling.
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Map<Node, List<ClientRequest>> unsent = new HashMap<>();
+    private final Set<Node> fetchesInFlight = new HashSet<>();
+    /* the last time a fetch was queued behind the fetch in flight to a node */
+    private final Map<Node, Long> lastFetchContentionMs = new HashMap<>();
+
+    /* the member currently polling the network client, if any */
+    private volatile Member pollingMember = null;
+
+    /* members waiting for the lock holder to deliver their responses or to hand the i/o over to them */
+    private final ConcurrentLinkedDeque<Member> waiters = new ConcurrentLinkedDeque<>();
+
+    private SharedNetworkClient(Map<String, Object> key, ConsumerConfig config, String clientId, Time time) {
+        this.key = key;
+        this.clientId = clientId;
+        this.time = time;
+        this.requestTimeoutMs = config.getInt(ConsumerConfig.REQUEST_TIMEOUT_MS_CONFIG);
+        MetricConfig metricConfig = new MetricConfig().samples(config.getInt(ConsumerConfig.METRICS_NUM_SAMPLES_CONFIG))
+                .timeWindow(config.getLong(ConsumerConfig.METRICS_SAMPLE_WINDOW_MS_CONFIG), TimeUnit.MILLISECONDS)
+                .tags(Collections.singletonMap("client-id", clientId));
+        this.metrics = new Metrics(metricConfig,
+                Collections.<MetricsReporter>singletonList(new JmxReporter(JMX_PREFIX)), time);
+        this.metadata = new Metadata(config.getLong(ConsumerConfig.RETRY_BACKOFF_MS_CONFIG),
+                config.getLong(ConsumerConfig.METADATA_MAX_AGE_CONFIG), false, new ClusterResourceListeners());
+        this.metadata.update(Cluster.bootstrap(ClientUtils.parseAndValidateAddresses(
+                config.getList(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG))), 0);
+        // when fetching all topics, keep all of them rather than only the union of the explicitly requested ones
+        this.metadata.addListener(new Metadata.Listener() {
+            @Override
+            public void onMetadataUpdate(Cluster cluster) {
+                if (metadata.needMetadataForAllTopics())
+                    metadata.setTopics(cluster.topics());
+            }
+        });
+        long memoryPoolBytes = config.getLong(ConsumerConfig.RECEIVE_MEMORY_POOL_BYTES_CONFIG);
+        MemoryPool memoryPool = memoryPoolBytes > 0
+                ? new PooledMemoryPool(memoryPoolBytes, config.getBoolean(ConsumerConfig.RECEIVE_MEMORY_POOL_DIRECT_CONFIG))
+                : MemoryPool.NONE;
+        this.client = new NetworkClient(
+                new Selector(config.getLong(ConsumerConfig.CONNECTIONS_MAX_IDLE_MS_CONFIG), metrics, time,
+                        METRIC_GROUP_PREFIX, ClientUtils.createChannelBuilder(config.values()), memoryPool),
+                this.metadata,
+                clientId,
+                100, // a fixed large enough value will suffice
+                config.getLong(ConsumerConfig.RECONNECT_BACKOFF_MS_CONFIG),
+                config.getInt(ConsumerConfig.SEND_BUFFER_CONFIG),
+                config.getInt(ConsumerConfig.RECEIVE_BUFFER_CONFIG),
+                this.requestTimeoutMs,
+                time,
+                true,
+                config.getLong(ConsumerConfig.METADATA_MAX_AGE_CONFIG),
+                metrics,
+                METRIC_GROUP_PREFIX);
+    }
+
+    /**
+     * Register a consumer with the shared client for its network settings, creating the shared client if needed. The
+     * returned client must be closed when the consumer is closed; the shared client is closed with its last member.
+     *
+     * @param config The configuration of the consumer
+     * @param metadata The metadata of the consumer, which is updated from the shared metadata
+     * @param clientId The client id of the consumer
+     * @param time The time implementation
+     * @return The client to be used by the consumer
+     */
+    public static KafkaClient register(ConsumerConfig config, Metadata metadata, String clientId, Time time) {
+        Map<String, Object> key = new HashMap<>();
+        for (Map.Entry<String, ?> entry : config.values().entrySet()) {
+            if (NETWORK_CONFIGS.contains(entry.getKey()) || entry.getKey().startsWith("ssl.")
+                    || entry.getKey().startsWith("sasl."))
+                key.put(entry.getKey(), entry.getValue());
+        }
+
+        SharedNetworkClient shared;
+        synchronized (SharedNetworkClient.class) {
+            shared = CLIENTS.get(key);
+            if (shared == null) {
+                String sharedClientId = "consumer-shared-" + CLIENT_ID_SEQUENCE.getAndIncrement();
+                log.debug("Starting shared network client {}", sharedClientId);
+                shared = new SharedNetworkClient(key, config, sharedClientId, time);
+                CLIENTS.put(key, shared);
+            }
+            Member member = shared.new Member(metadata, clientId);
+            shared.members.add(member);
+            log.debug("Registered consumer {} with shared network client {}", clientId, shared.clientId);
+            return member;
+        }
+    }
+
+    private void deregister(Member member) {
+        synchronized (SharedNetworkClient.class) {
+            members.remove(member);
+            if (!members.isEmpty())
+                return;
+            CLIENTS.remove(key);
+        }
+        log.debug("Closing shared network client {}", clientId);
+        lock();
+        try {
+            client.close();
+            metrics.close();
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Acquire the lock, waking up the polling member if it is held so that it gives up the lock quickly.
+     */
+    private void lock() {
+        if (!lock.tryLock()) {
+            client.wakeup();
+            lock.lock();
+        }
+    }
+
+    private boolean tryLock() {
+        try {
+            // unlike tryLock(), this respects the fairness of the lock
+            return lock.tryLock(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new InterruptException(e);
+        }
+    }
+
+    /**
+     * Release the lock and hand the i/o over to a member waiting for it, if any.
+     */
+    private void unlock() {
+        lock.unlock();
+        Member next = waiters.poll();
+        if (next != null) {
+            next.handoff = true;
+            next.signal();
+        }
+    }
+
+    /**
+     * Poll the network client on behalf of all members. Must be called with the lock held, which is released.
+     */
+    private void pollAndUnlock(Member member, long timeout, long now) {
+        pollingMember = member;
+        try {
+            // members which queued for the lock before now have already used up their wakeup of the selector
+            if (member.wakeupPending || lock.hasQueuedThreads())
+                timeout = 0;
+            member.wakeupPending = false;
+            int metadataVersion = metadata.version();
+            sendUnsent(now);
+            client.poll(timeout, now);
+            sendUnsent(time.milliseconds());
+
+            boolean metadataUpdated = metadata.version() != metadataVersion;
+            for (Member m : members) {
+                if (metadataUpdated || m.awaitingConnection) {
+                    m.awaitingConnection = false;
+                    m.signal();
+                }
+            }
+        } finally {
+            pollingMember = null;
+            unlock();
+        }
+    }
+
+    /**
+     * Send the queued requests the connections are ready for. Fetches to the same broker are merged into one request
+     * unless a fetch to the broker is in flight.
+     */
+    private void sendUnsent(long now) {
+        Iterator<Map.Entry<Node, List<ClientRequest>>> iterator = unsent.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Node, List<ClientRequest>> requestEntry = iterator.next();
+            Node node = requestEntry.getKey();
+            List<ClientRequest> requests = requestEntry.getValue();
+            if (client.connectionFailed(node)) {
+                for (ClientRequest request : requests)
+                    complete(request, now, true, null, null, null);
+                iterator.remove();
+                continue;
+            }
+
+            List<ClientRequest> fetches = new ArrayList<>();
+            Iterator<ClientRequest> requestIterator = requests.iterator();
+            while (requestIterator.hasNext()) {
+                ClientRequest request = requestIterator.next();
+                if (request.createdTimeMs() < now - requestTimeoutMs) {
+                    log.debug("Failing {} since it could not be sent within {} ms", request, requestTimeoutMs);
+                    complete(request, now, true, null, null, null);
+                    requestIterator.remove();
+                } else if (request.apiKey() == ApiKeys.FETCH) {
+                    if (!fetchesInFlight.contains(node))
+                        fetches.add(request);
+                } else if (client.ready(node, now)) {
+                    client.send(request, now);
+                    requestIterator.remove();
+                }
+            }
+
+            if (!fetches.isEmpty() && client.ready(node, now)) {
+                List<ClientRequest> merged = sendFetch(node, fetches, now);
+                requests.removeAll(merged);
+            }
+            if (requests.isEmpty())
+                iterator.remove();
+        }
+    }
+
+    private List<ClientRequest> sendFetch(Node node, List<ClientRequest> fetches, long now) {
+        // a partition may only appear once in a request, so partitions fetched by several members wait for the next one
+        List<ClientRequest> merged = new ArrayList<>();
+        LinkedHashMap<TopicPartition, FetchRequest.PartitionData> fetchData = new LinkedHashMap<>();
+        int maxWait = Integer.MAX_VALUE;
+        int minBytes = Integer.MAX_VALUE;
+        long maxBytes = 0;
+        for (ClientRequest fetch : fetches) {
+            FetchRequest.Builder builder = (FetchRequest.Builder) fetch.requestBuilder();
+            if (!Collections.disjoint(fetchData.keySet(), builder.fetchData().keySet()))
+                continue;
+            fetchData.putAll(builder.fetchData());
+            maxWait = Math.min(maxWait, builder.maxWait());
+            minBytes = Math.min(minBytes, builder.minBytes());
+            maxBytes += builder.maxBytes();
+            merged.add(fetch);
+        }
+
+        Long lastContentionMs = lastFetchContentionMs.get(node);
+        if (lastContentionMs != null && now - lastContentionMs < maxWait)
+            maxWait = Math.min(maxWait, CONTENDED_FETCH_MAX_WAIT_MS);
+
+        FetchRequest.Builder builder = new FetchRequest.Builder(maxWait, minBytes, fetchData)
+                .setMaxBytes((int) Math.min(maxBytes, Integer.MAX_VALUE));
+        ClientRequest request = new ClientRequest(node.idString(), builder, correlation.getAndIncrement(), clientId,
+                now, true, new MergedFetchHandler(node, builder, merged));
+        log.trace("Sending fetch for {} members to node {}", merged.size(), node);
+        client.send(request, now);
+        fetchesInFlight.add(node);
+        return merged;
+    }
+
+    private static void complete(ClientRequest request, long receivedTimeMs, boolean disconnected,
+                                 RuntimeException versionMismatch, AbstractResponse body, NetworkReceive receive) {
+        new ClientResponse(request.makeHeader(), request.callback(), request.destination(), request.createdTimeMs(),
+                receivedTimeMs, disconnected, versionMismatch, body, receive).onComplete();
+    }
+
+    /**
+     * Splits the response to a merged fetch into the responses to the fetches of the members.
+     */
+    private class MergedFetchHandler implements RequestCompletionHandler {
+        private final Node node;
+        private final FetchRequest.Builder builder;
+        private final List<ClientRequest> fetches;
+
+        MergedFetchHandler(Node node, FetchRequest.Builder builder, List<ClientRequest> fetches) {
+            this.node = node;
+            this.builder = builder;
+            this.fetches = fetches;
+        }
+
+        @Override
+        public void onComplete(ClientResponse response) {
+            fetchesInFlight.remove(node);
+            List<ClientRequest> queued = unsent.get(node);
+            if (queued != null) {
+                for (ClientRequest request : queued) {
+                    if (request.apiKey() == ApiKeys.FETCH) {
+                        lastFetchContentionMs.put(node, response.receivedTimeMs());
+                        break;
+                    }
+                }
+            }
+            FetchResponse mergedResponse = (FetchResponse) response.responseBody();
+            // the fetchers of several members cannot tell when the last of them is done with the buffer
+            NetworkReceive receive = response.receive();
+            if (fetches.size() > 1) {
+                response.detachBuffer();
+                receive = null;
+            }
+            for (ClientRequest fetch : fetches) {
+                FetchRequest.Builder memberBuilder = (FetchRequest.Builder) fetch.requestBuilder();
+                // the fetcher parses the records according to the version of its request
+                memberBuilder.setVersion(builder.version());
+                AbstractResponse body = null;
+                if (mergedResponse != null && fetches.size() == 1) {
+                    body = mergedResponse;
+                } else if (mergedResponse != null) {
+                    LinkedHashMap<TopicPartition, FetchResponse.PartitionData> responseData = new LinkedHashMap<>();
+                    for (TopicPartition partition : memberBuilder.fetchData().keySet()) {
+                        FetchResponse.PartitionData partitionData = mergedResponse.responseData().get(partition);
+                        if (partitionData != null)
+                            responseData.put(partition, partitionData);
+                    }
+                    body = new FetchResponse(builder.version(), responseData, mergedResponse.getThrottleTime());
+                }
+                complete(fetch, response.receivedTimeMs(), response.wasDisconnected(), response.versionMismatch(), body,
+                        receive);
+            }
+        }
+    }
+
+    /**
+     * The client of a single consumer. Its methods may be called by the consumer's foreground and heartbeat threads,
+     * while its responses are delivered by the thread of whichever member is polling.
+     */
+    private class Member implements KafkaClient {
+        private final Metadata memberMetadata;
+        private final String memberClientId;
+        private final Map<String, Node> privateNodes = new ConcurrentHashMap<>();
+        /* bootstrap nodes handed to the member, which may be sent to after the shared metadata replaced them */
+        private final Map<String, Node> bootstrapNodes = new ConcurrentHashMap<>();
+        private final Map<String, AtomicInteger> inFlightRequests = new ConcurrentHashMap<>();
+        private final AtomicInteger inFlightRequestCount = new AtomicInteger();
+        private final ConcurrentLinkedQueue<ClientResponse> responses = new ConcurrentLinkedQueue<>();
+
+        /* set when ready() failed, so that the member is signalled when connections are established */
+        private volatile boolean awaitingConnection = false;
+        private volatile boolean wakeupPending = false;
+        /* set when the lock holder handed the i/o over to this member */
+        private volatile boolean handoff = false;
+
+        // the metadata state reported to the shared client
+        private volatile Set<String> topics = Collections.emptySet();
+        private volatile boolean needMetadataForAllTopics = false;
+        private volatile int metadataVersion = -1;
+
+        // protected by the signal monitor
+        private final Object signalMonitor = new Object();
+        private boolean signalled = false;
+
+        Member(Metadata memberMetadata, String memberClientId) {
+            this.memberMetadata = memberMetadata;
+            this.memberClientId = memberClientId;
+        }
+
+        void signal() {
+            synchronized (signalMonitor) {
+                signalled = true;
+                signalMonitor.notifyAll();
+            }
+        }
+
+        private void await(long timeoutMs) {
+            long deadlineMs = time.milliseconds() + timeoutMs;
+            synchronized (signalMonitor) {
+                try {
+                    long remainingMs = timeoutMs;
+                    while (!signalled && remainingMs > 0) {
+                        signalMonitor.wait(remainingMs);
+                        remainingMs = deadlineMs - time.milliseconds();
+                    }
+                } catch (InterruptedException e) {
+                    // the consumer network client raises the interrupt after the poll
+                    Thread.currentThread().interrupt();
+                }
+                signalled = false;
+            }
+        }
+
+        /**
+         * Connections to nodes which are not brokers of the shared metadata, i.e. the group coordinator, are
+         * private to the member and are given an alias which is unique in the shared client.
+         */
+        private Node route(Node node) {
+            if (node.id() < 0) {
+                bootstrapNodes.put(node.idString(), node);
+                return node;
+            }
+            if (metadata.fetch().nodeById(node.id()) != null)
+                return node;
+            Node alias = privateNodes.get(node.idString());
+            if (alias == null || !alias.host().equals(node.host()) || alias.port() != node.port()) {
+                alias = new Node(PRIVATE_NODE_ID_SEQUENCE.getAndIncrement(), node.host(), node.port(), node.rack());
+                privateNodes.put(node.idString(), alias);
+            }
+            return alias;
+        }
+
+        private Node route(String nodeId) {
+            Node alias = privateNodes.get(nodeId);
+            if (alias != null)
+                return alias;
+            int id = Integer.parseInt(nodeId);
+            Node node = metadata.fetch().nodeById(ConnectionStripes.brokerId(id));
+            if (node != null) {
+                // an alias for another connection to the broker, see ConnectionStripes
+                return node.id() == id ? node : new Node(id, node.host(), node.port(), node.rack());
+            }
+            // a bootstrap node, which another member's poll may have replaced with the brokers since the member
+            // checked that it is ready
+            return bootstrapNodes.get(nodeId);
+        }
+
+        /**
+         * Report changes of the topics of the member to the shared metadata.
+         */
+        private void maybeUpdateTopics() {
+            Set<String> currentTopics = memberMetadata.topics();
+            boolean currentNeedMetadataForAllTopics = memberMetadata.needMetadataForAllTopics();
+            // an update is only needed if the member has received every update of the shared metadata
+            boolean updateRequested = memberMetadata.updateRequested() && metadataVersion == metadata.version();
+            if (!updateRequested && currentNeedMetadataForAllTopics == needMetadataForAllTopics
+                    && currentTopics.equals(topics))
+                return;
+
+            topics = currentTopics;
+            needMetadataForAllTopics = currentNeedMetadataForAllTopics;
+            lock();
+            try {
+                Set<String> allTopics = new HashSet<>();
+                boolean needAllTopics = false;
+                for (Member member : members) {
+                    allTopics.addAll(member.topics);
+                    needAllTopics |= member.needMetadataForAllTopics;
+                }
+                metadata.needMetadataForAllTopics(needAllTopics);
+                if (!needAllTopics && !allTopics.equals(metadata.topics()))
+                    metadata.setTopics(allTopics);
+                if (updateRequested)
+                    metadata.requestUpdate();
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Update the metadata of the member if the shared metadata changed.
+         */
+        private synchronized void maybeUpdateMetadata(long now) {
+            int version = metadata.version();
+            Cluster cluster = metadata.fetch();
+            // the bootstrap cluster is not useful to the member, which starts with it anyway
+            if (version == metadataVersion || cluster.isBootstrapConfigured())
+                return;
+            metadataVersion = version;
+            if (!memberMetadata.needMetadataForAllTopics())
+                cluster = cluster.withTopics(memberMetadata.topics());
+            memberMetadata.update(cluster, now);
+        }
+
+        @Override
+        public boolean isReady(Node node, long now) {
+            Node target = route(node);
+            lock();
+            try {
+                return client.isReady(target, now);
+            } finally {
+                unlock();
+            }
+        }
+
+        @Override
+        public boolean ready(Node node, long now) {
+            Node target = route(node);
+            lock();
+            try {
+                boolean ready = client.ready(target, now);
+                if (!ready)
+                    awaitingConnection = true;
+                return ready;
+            } finally {
+                unlock();
+            }
+        }
+
+        @Override
+        public long connectionDelay(Node node, long now) {
+            Node target = route(node);
+            lock();
+            try {
+                return client.connectionDelay(target, now);
+            } finally {
+                unlock();
+            }
+        }
+
+        @Override
+        public boolean connectionFailed(Node node) {
+            Node target = route(node);
+            lock();
+            try {
+                return client.connectionFailed(target);
+            } finally {
+                unlock();
+            }
+        }
+
+        @Override
+        public void send(ClientRequest request, long now) {
+            Node target = route(request.destination());
+            if (target == null)
+                throw new IllegalStateException("Attempt to send a request to unknown node " + request.destination());
+            ClientRequest routed = new ClientRequest(target.idString(), request.requestBuilder(),
+                    request.correlationId(), memberClientId, request.createdTimeMs(), request.expectResponse(),
+                    new MemberRequestHandler(request));
+            AtomicInteger nodeInFlight = inFlightRequests.get(request.destination());
+            if (nodeInFlight == null) {
+                inFlightRequests.putIfAbsent(request.destination(), new AtomicInteger());
+                nodeInFlight = inFlightRequests.get(request.destination());
+            }
+            nodeInFlight.incrementAndGet();
+            inFlightRequestCount.incrementAndGet();
+
+            // requests are queued since another member may have taken the connection since ready() was called
+            lock();
+            try {
+                List<ClientRequest> nodeUnsent = unsent.get(target);
+                if (nodeUnsent == null) {
+                    nodeUnsent = new LinkedList<>();
+                    unsent.put(target, nodeUnsent);
+                }
+                nodeUnsent.add(routed);
+                sendUnsent(now);
+            } finally {
+                unlock();
+            }
+        }
+
+        @Override
+        public List<ClientResponse> poll(long timeout, long now) {
+            maybeUpdateTopics();
+            long deadlineMs = now + timeout;
+            long remainingMs = timeout;
+            while (true) {
+                if (tryLock()) {
+                    pollAndUnlock(this, remainingMs, now);
+                    break;
+                }
+
+                // rather than queueing for the lock, wait until the holder delivers our responses or releases the
+                // lock, in which case it hands the i/o over to the first waiting member
+                waiters.add(this);
+                if (!lock.isLocked() && !lock.hasQueuedThreads()) {
+                    // released before we were added, so nobody is going to hand over to us
+                    waiters.remove(this);
+                    continue;
+                }
+                await(remainingMs);
+                waiters.remove(this);
+                now = time.milliseconds();
+                remainingMs = deadlineMs - now;
+                boolean takeOver = handoff;
+                handoff = false;
+                if (takeOver && responses.isEmpty() && !wakeupPending && remainingMs > 0)
+                    continue;
+                // somebody has to poll for the remaining members
+                if (takeOver && !waiters.isEmpty() && tryLock())
+                    unlock();
+                break;
+            }
+
+            maybeUpdateMetadata(time.milliseconds());
+            List<ClientResponse> completed = new ArrayList<>();
+            for (ClientResponse response = responses.poll(); response != null; response = responses.poll())
+                completed.add(response);
+            return completed;
+        }
+
+        @Override
+        public void close(String nodeId) {
+            Node alias = privateNodes.remove(nodeId);
+            // connections to brokers are shared with the other members
+            if (alias == null)
+                return;
+            lock();
+            try {
+                client.close(alias.idString());
+            } finally {
+                unlock();
+            }
+        }
+
+        @Override
+        public Node leastLoadedNode(long now) {
+            lock();
+            try {
+                return client.leastLoadedNode(now);
+            } finally {
+                unlock();
+            }
+        }
+
+        @Override
+        public int inFlightRequestCount() {
+            return inFlightRequestCount.get();
+        }
+
+        @Override
+        public int inFlightRequestCount(String nodeId) {
+            AtomicInteger nodeInFlight = inFlightRequests.get(nodeId);
+            return nodeInFlight == null ? 0 : nodeInFlight.get();
+        }
+
+        @Override
+        public void wakeup() {
+            wakeupPending = true;
+            signal();
+            if (pollingMember == this)
+                client.wakeup();
+        }
+
+        @Override
+        public void close() {
+            lock();
+            try {
+                for (List<ClientRequest> requests : unsent.values()) {
+                    Iterator<ClientRequest> iterator = requests.iterator();
+                    while (iterator.hasNext()) {
+                        if (((MemberRequestHandler) iterator.next().callback()).member() == this)
+                            iterator.remove();
+                    }
+                }
+                for (Node alias : privateNodes.values())
+                    client.close(alias.idString());
+                privateNodes.clear();
+            } finally {
+                unlock();
+            }
+            deregister(this);
+        }
+
+        @Override
+        public ClientRequest newClientRequest(String nodeId, AbstractRequest.Builder<?> requestBuilder,
+                                              long createdTimeMs, boolean expectResponse) {
+            return newClientRequest(nodeId, requestBuilder, createdTimeMs, expectResponse, null);
+        }
+
+        @Override
+        public ClientRequest newClientRequest(String nodeId, AbstractRequest.Builder<?> requestBuilder,
+                                              long createdTimeMs, boolean expectResponse,
+                                              RequestCompletionHandler callback) {
+            // responses are matched to requests in order per connection, so the correlation ids only need to be
+            // unique among the in-flight requests of the shared client
+            return new ClientRequest(nodeId, requestBuilder, correlation.getAndIncrement(), memberClientId,
+                    createdTimeMs, expectResponse, callback);
+        }
+
+        /**
+         * Delivers a response to the member with the node id the member sent the request to.
+         */
+        private class MemberRequestHandler implements RequestCompletionHandler {
+            private final ClientRequest request;
+
+            MemberRequestHandler(ClientRequest request) {
+                this.request = request;
+            }
+
+            Member member() {
+                return Member.this;
+            }
+
+            @Override
+            public void onComplete(ClientResponse response) {
+                inFlightRequests.get(request.destination()).decrementAndGet();
+                inFlightRequestCount.decrementAndGet();
+                ClientResponse memberResponse = new ClientResponse(response.requestHeader(), request.callback(),
+                        request.destination(), request.createdTimeMs(), response.receivedTimeMs(),
+                        response.wasDisconnected(), response.versionMismatch(), response.responseBody(),
+                        response.receive());
+                memberResponse.onComplete();
+                responses.add(memberResponse);
+                signal();
+            }
+        }
+    }
+}
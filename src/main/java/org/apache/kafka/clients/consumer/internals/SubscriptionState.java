@@ -16,13 +16,14 @@ import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.consumer.OffsetResetStrategy;
 import org.apache.kafka.common.TopicPartition;
-import org.apache.kafka.common.internals.PartitionStates;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -47,6 +48,10 @@ import java.util.regex.Pattern;
  * This class also maintains a cache of the latest commit position for each of the assigned
  * partitions. This is updated through {@link #committed(TopicPartition, OffsetAndMetadata)} and can be used
  * to set the initial fetch position (e.g. {@link Fetcher#resetOffset(TopicPartition)}.
+ *
+ * The per-partition state is kept in a dense table: each partition is given an int id when it is assigned,
+ * positions and high watermarks live in primitive arrays and the pause and valid-position flags in bitsets,
+ * so that the queries made on every poll do not need to walk a map or allocate per-partition objects.
  */
 public class SubscriptionState {
     private static final String SUBSCRIPTION_EXCEPTION_MESSAGE =
@@ -69,7 +74,7 @@ public class SubscriptionState {
     private final Set<String> groupSubscription;
 
     /* the partitions that are currently assigned, note that the order of partition matters (see FetchBuilder for more details) */
-    private final PartitionStates<TopicPartitionState> assignment;
+    private AssignedPartitions assignment;
 
     /* do we need to request the latest committed offsets from the coordinator? */
     private boolean needsFetchCommittedOffsets;
@@ -86,7 +91,7 @@ public class SubscriptionState {
     public SubscriptionState(OffsetResetStrategy defaultResetStrategy) {
         this.defaultResetStrategy = defaultResetStrategy;
         this.subscription = Collections.emptySet();
-        this.assignment = new PartitionStates<>();
+        this.assignment = AssignedPartitions.EMPTY;
         this.groupSubscription = new HashSet<>();
         this.needsFetchCommittedOffsets = true; // initialize to true for the consumers to fetch offset upon starting up
         this.subscribedPattern = null;
@@ -158,17 +163,11 @@ public class SubscriptionState {
     public void assignFromUser(Set<TopicPartition> partitions) {
         setSubscriptionType(SubscriptionType.USER_ASSIGNED);
 
-        if (!this.assignment.partitionSet().equals(partitions)) {
+        if (!this.assignment.ids.keySet().equals(partitions)) {
             fireOnAssignment(partitions);
 
-            Map<TopicPartition, TopicPartitionState> partitionToState = new HashMap<>();
-            for (TopicPartition partition : partitions) {
-                TopicPartitionState state = assignment.stateValue(partition);
-                if (state == null)
-                    state = new TopicPartitionState();
-                partitionToState.put(partition, state);
-            }
-            this.assignment.set(partitionToState);
+            // the state of partitions which remain assigned is carried over
+            this.assignment = new AssignedPartitions(partitions, this.assignment);
             this.needsFetchCommittedOffsets = true;
         }
     }
@@ -181,8 +180,8 @@ public class SubscriptionState {
         if (!this.partitionsAutoAssigned())
             throw new IllegalArgumentException("Attempt to dynamically assign partitions while manual assignment in use");
 
-        Map<TopicPartition, TopicPartitionState> assignedPartitionStates = partitionToStateMap(assignments);
-        fireOnAssignment(assignedPartitionStates.keySet());
+        Set<TopicPartition> assignedPartitions = new HashSet<>(assignments);
+        fireOnAssignment(assignedPartitions);
 
         if (this.subscribedPattern != null) {
             for (TopicPartition tp : assignments) {
@@ -196,7 +195,7 @@ public class SubscriptionState {
         }
 
         // after rebalancing, we always reinitialize the assignment value
-        this.assignment.set(assignedPartitionStates);
+        this.assignment = new AssignedPartitions(assignedPartitions, AssignedPartitions.EMPTY);
         this.needsFetchCommittedOffsets = true;
     }
 
@@ -220,7 +219,7 @@ public class SubscriptionState {
 
     public void unsubscribe() {
         this.subscription = Collections.emptySet();
-        this.assignment.clear();
+        this.assignment = AssignedPartitions.EMPTY;
         this.subscribedPattern = null;
         this.subscriptionType = SubscriptionType.NONE;
         fireOnAssignment(Collections.<TopicPartition>emptySet());
@@ -236,11 +235,9 @@ public class SubscriptionState {
 
     public Set<TopicPartition> pausedPartitions() {
         HashSet<TopicPartition> paused = new HashSet<>();
-        for (PartitionStates.PartitionState<TopicPartitionState> state : assignment.partitionStates()) {
-            if (state.value().paused) {
-                paused.add(state.topicPartition());
-            }
-        }
+        BitSet pausedIds = assignment.paused;
+        for (int id = pausedIds.nextSetBit(0); id >= 0; id = pausedIds.nextSetBit(id + 1))
+            paused.add(assignment.partitions[id]);
         return paused;
     }
 
@@ -258,19 +255,19 @@ public class SubscriptionState {
         return this.groupSubscription;
     }
 
-    private TopicPartitionState assignedState(TopicPartition tp) {
-        TopicPartitionState state = this.assignment.stateValue(tp);
-        if (state == null)
+    private int assignedId(TopicPartition tp) {
+        Integer id = this.assignment.ids.get(tp);
+        if (id == null)
             throw new IllegalStateException("No current assignment for partition " + tp);
-        return state;
+        return id;
     }
 
     public void committed(TopicPartition tp, OffsetAndMetadata offset) {
-        assignedState(tp).committed(offset);
+        assignment.committed[assignedId(tp)] = offset;
     }
 
     public OffsetAndMetadata committed(TopicPartition tp) {
-        return assignedState(tp).committed;
+        return assignment.committed[assignedId(tp)];
     }
 
     public void needRefreshCommits() {
@@ -286,18 +283,22 @@ public class SubscriptionState {
     }
 
     public void seek(TopicPartition tp, long offset) {
-        assignedState(tp).seek(offset);
+        int id = assignedId(tp);
+        assignment.positions[id] = offset;
+        assignment.validPositions.set(id);
+        assignment.resetStrategies[id] = null;
     }
 
     public Set<TopicPartition> assignedPartitions() {
-        return this.assignment.partitionSet();
+        return new HashSet<>(this.assignment.ids.keySet());
     }
 
     public List<TopicPartition> fetchablePartitions() {
+        AssignedPartitions assignment = this.assignment;
         List<TopicPartition> fetchable = new ArrayList<>(assignment.size());
-        for (PartitionStates.PartitionState<TopicPartitionState> state : assignment.partitionStates()) {
-            if (state.value().isFetchable())
-                fetchable.add(state.topicPartition());
+        for (int id = assignment.head; id >= 0; id = assignment.next[id]) {
+            if (assignment.isFetchable(id))
+                fetchable.add(assignment.partitions[id]);
         }
         return fetchable;
     }
@@ -307,33 +308,41 @@ public class SubscriptionState {
     }
 
     public void position(TopicPartition tp, long offset) {
-        assignedState(tp).position(offset);
+        int id = assignedId(tp);
+        if (!assignment.validPositions.get(id))
+            throw new IllegalStateException("Cannot set a new position without a valid current position");
+        assignment.positions[id] = offset;
     }
 
     public Long position(TopicPartition tp) {
-        return assignedState(tp).position;
+        int id = assignedId(tp);
+        return assignment.validPositions.get(id) ? assignment.positions[id] : null;
     }
 
     public Long partitionLag(TopicPartition tp) {
-        TopicPartitionState topicPartitionState = assignedState(tp);
-        return topicPartitionState.highWatermark == null ? null : topicPartitionState.highWatermark - topicPartitionState.position;
+        int id = assignedId(tp);
+        long highWatermark = assignment.highWatermarks[id];
+        if (highWatermark == AssignedPartitions.UNKNOWN_OFFSET || !assignment.validPositions.get(id))
+            return null;
+        return highWatermark - assignment.positions[id];
     }
 
     public void updateHighWatermark(TopicPartition tp, long highWatermark) {
-        assignedState(tp).highWatermark = highWatermark;
+        assignment.highWatermarks[assignedId(tp)] = highWatermark;
     }
 
     public Map<TopicPartition, OffsetAndMetadata> allConsumed() {
         Map<TopicPartition, OffsetAndMetadata> allConsumed = new HashMap<>();
-        for (PartitionStates.PartitionState<TopicPartitionState> state : assignment.partitionStates()) {
-            if (state.value().hasValidPosition())
-                allConsumed.put(state.topicPartition(), new OffsetAndMetadata(state.value().position));
-        }
+        BitSet validPositions = assignment.validPositions;
+        for (int id = validPositions.nextSetBit(0); id >= 0; id = validPositions.nextSetBit(id + 1))
+            allConsumed.put(assignment.partitions[id], new OffsetAndMetadata(assignment.positions[id]));
         return allConsumed;
     }
 
     public void needOffsetReset(TopicPartition partition, OffsetResetStrategy offsetResetStrategy) {
-        assignedState(partition).awaitReset(offsetResetStrategy);
+        int id = assignedId(partition);
+        assignment.resetStrategies[id] = offsetResetStrategy;
+        assignment.validPositions.clear(id);
     }
 
     public void needOffsetReset(TopicPartition partition) {
@@ -345,11 +354,11 @@ public class SubscriptionState {
     }
 
     public boolean isOffsetResetNeeded(TopicPartition partition) {
-        return assignedState(partition).awaitingReset();
+        return assignment.resetStrategies[assignedId(partition)] != null;
     }
 
     public OffsetResetStrategy resetStrategy(TopicPartition partition) {
-        return assignedState(partition).resetStrategy;
+        return assignment.resetStrategies[assignedId(partition)];
     }
 
     public boolean hasAllFetchPositions(Collection<TopicPartition> partitions) {
@@ -360,44 +369,52 @@ public class SubscriptionState {
     }
 
     public boolean hasAllFetchPositions() {
-        return hasAllFetchPositions(this.assignedPartitions());
+        return assignment.validPositions.cardinality() == assignment.size();
     }
 
     public Set<TopicPartition> missingFetchPositions() {
+        AssignedPartitions assignment = this.assignment;
+        if (assignment.validPositions.cardinality() == assignment.size())
+            return Collections.emptySet();
+
         Set<TopicPartition> missing = new HashSet<>();
-        for (PartitionStates.PartitionState<TopicPartitionState> state : assignment.partitionStates()) {
-            if (!state.value().hasValidPosition())
-                missing.add(state.topicPartition());
-        }
+        BitSet validPositions = assignment.validPositions;
+        for (int id = validPositions.nextClearBit(0); id < assignment.size(); id = validPositions.nextClearBit(id + 1))
+            missing.add(assignment.partitions[id]);
         return missing;
     }
 
     public boolean isAssigned(TopicPartition tp) {
-        return assignment.contains(tp);
+        return assignment.ids.containsKey(tp);
     }
 
     public boolean isPaused(TopicPartition tp) {
-        return isAssigned(tp) && assignedState(tp).paused;
+        Integer id = assignment.ids.get(tp);
+        return id != null && assignment.paused.get(id);
     }
 
     public boolean isFetchable(TopicPartition tp) {
-        return isAssigned(tp) && assignedState(tp).isFetchable();
+        Integer id = assignment.ids.get(tp);
+        return id != null && assignment.isFetchable(id);
     }
 
     public boolean hasValidPosition(TopicPartition tp) {
-        return isAssigned(tp) && assignedState(tp).hasValidPosition();
+        Integer id = assignment.ids.get(tp);
+        return id != null && assignment.validPositions.get(id);
     }
 
     public void pause(TopicPartition tp) {
-        assignedState(tp).pause();
+        assignment.paused.set(assignedId(tp));
     }
 
     public void resume(TopicPartition tp) {
-        assignedState(tp).resume();
+        assignment.paused.clear(assignedId(tp));
     }
 
     public void movePartitionToEnd(TopicPartition tp) {
-        assignment.moveToEnd(tp);
+        Integer id = assignment.ids.get(tp);
+        if (id != null)
+            assignment.moveToEnd(id);
     }
 
     public ConsumerRebalanceListener listener() {
@@ -413,68 +430,107 @@ public class SubscriptionState {
             listener.onAssignment(assignment);
     }
 
-    private static Map<TopicPartition, TopicPartitionState> partitionToStateMap(Collection<TopicPartition> assignments) {
-        Map<TopicPartition, TopicPartitionState> map = new HashMap<>(assignments.size());
-        for (TopicPartition tp : assignments)
-            map.put(tp, new TopicPartitionState());
-        return map;
-    }
-
-    private static class TopicPartitionState {
-        private Long position; // last consumed position
-        private Long highWatermark; // the high watermark from last fetch
-        private OffsetAndMetadata committed;  // last committed position
-        private boolean paused;  // whether this partition has been paused by the user
-        private OffsetResetStrategy resetStrategy;  // the strategy to use if the offset needs resetting
-
-        public TopicPartitionState() {
-            this.paused = false;
-            this.position = null;
-            this.highWatermark = null;
-            this.committed = null;
-            this.resetStrategy = null;
-        }
-
-        private void awaitReset(OffsetResetStrategy strategy) {
-            this.resetStrategy = strategy;
-            this.position = null;
-        }
-
-        public boolean awaitingReset() {
-            return resetStrategy != null;
+    /**
+     * The state of the assigned partitions, indexed by the id given to each partition at assignment time. The
+     * round-robin fetch order is kept as a doubly linked list over the ids, so that moving a partition to the end
+     * does not allocate. Partitions of the same topic are laid out next to each other when the table is built,
+     * since the serialization of fetch requests is more efficient if they are grouped together.
+     */
+    private static final class AssignedPartitions {
+        private static final long UNKNOWN_OFFSET = -1L;
+        private static final AssignedPartitions EMPTY = new AssignedPartitions();
+
+        private final Map<TopicPartition, Integer> ids;
+        private final TopicPartition[] partitions;
+        private final long[] positions; // last consumed position, valid only if set in validPositions
+        private final long[] highWatermarks; // the high watermark from last fetch, or UNKNOWN_OFFSET
+        private final OffsetAndMetadata[] committed; // last committed position
+        private final OffsetResetStrategy[] resetStrategies; // the strategy to use if the offset needs resetting
+        private final BitSet validPositions = new BitSet();
+        private final BitSet paused = new BitSet(); // whether the partition has been paused by the user
+        private final int[] next;
+        private final int[] prev;
+        private int head = -1;
+        private int tail = -1;
+
+        private AssignedPartitions() {
+            this(Collections.<TopicPartition>emptySet(), null);
         }
 
-        public boolean hasValidPosition() {
-            return position != null;
-        }
+        private AssignedPartitions(Set<TopicPartition> assigned, AssignedPartitions previous) {
+            int size = assigned.size();
+            this.ids = new HashMap<>(size * 2);
+            this.partitions = new TopicPartition[size];
+            this.positions = new long[size];
+            this.highWatermarks = new long[size];
+            this.committed = new OffsetAndMetadata[size];
+            this.resetStrategies = new OffsetResetStrategy[size];
+            this.next = new int[size];
+            this.prev = new int[size];
+
+            Map<String, List<TopicPartition>> topicToPartitions = new LinkedHashMap<>();
+            for (TopicPartition tp : assigned) {
+                List<TopicPartition> topicPartitions = topicToPartitions.get(tp.topic());
+                if (topicPartitions == null) {
+                    topicPartitions = new ArrayList<>();
+                    topicToPartitions.put(tp.topic(), topicPartitions);
+                }
+                topicPartitions.add(tp);
+            }
 
-        private void seek(long offset) {
-            this.position = offset;
-            this.resetStrategy = null;
+            int id = 0;
+            for (List<TopicPartition> topicPartitions : topicToPartitions.values()) {
+                for (TopicPartition tp : topicPartitions) {
+                    ids.put(tp, id);
+                    partitions[id] = tp;
+                    highWatermarks[id] = UNKNOWN_OFFSET;
+                    Integer previousId = previous == null ? null : previous.ids.get(tp);
+                    if (previousId != null)
+                        copyState(previous, previousId, id);
+                    append(id);
+                    id++;
+                }
+            }
         }
 
-        private void position(long offset) {
-            if (!hasValidPosition())
-                throw new IllegalStateException("Cannot set a new position without a valid current position");
-            this.position = offset;
+        private void copyState(AssignedPartitions from, int fromId, int toId) {
+            positions[toId] = from.positions[fromId];
+            highWatermarks[toId] = from.highWatermarks[fromId];
+            committed[toId] = from.committed[fromId];
+            resetStrategies[toId] = from.resetStrategies[fromId];
+            validPositions.set(toId, from.validPositions.get(fromId));
+            paused.set(toId, from.paused.get(fromId));
         }
 
-        private void committed(OffsetAndMetadata offset) {
-            this.committed = offset;
+        private int size() {
+            return partitions.length;
         }
 
-        private void pause() {
-            this.paused = true;
+        private boolean isFetchable(int id) {
+            return validPositions.get(id) && !paused.get(id);
         }
 
-        private void resume() {
-            this.paused = false;
+        private void append(int id) {
+            prev[id] = tail;
+            next[id] = -1;
+            if (tail >= 0)
+                next[tail] = id;
+            else
+                head = id;
+            tail = id;
         }
 
-        private boolean isFetchable() {
-            return !paused && hasValidPosition();
+        private void moveToEnd(int id) {
+            if (id == tail)
+                return;
+            // unlink, the partition cannot be the tail here so it always has a successor
+            if (prev[id] >= 0)
+                next[prev[id]] = next[id];
+            else
+                head = next[id];
+            prev[next[id]] = prev[id];
+            append(id);
         }
-
     }
 
     public interface Listener {
@@ -0,0 +1,208 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.clients.consumer.internals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Matches the topics of successive cluster snapshots against a subscription pattern. Only the topics which were
+ * added since the previous snapshot are matched, and the topics which were removed are dropped from the result, so
+ * a metadata update which does not change the topics costs one hash lookup per topic instead of one regex match.
+ *
+ * Patterns which are an alternation of literals and prefixes, e.g. <code>orders|payments-.*|audit\.log</code>, are
+ * compiled to a trie, which matches a topic in a single pass over its characters. Any other pattern falls back to
+ * {@link Pattern#matcher(CharSequence)}.
+ *
+ * This class is not thread-safe. {@link ConsumerCoordinator} updates it from its metadata listener, which runs on
+ * whichever thread completes the metadata request, i.e. the consumer's polling thread or the heartbeat thread, and
+ * from <code>subscribe()</code> on the user's thread. Every access is therefore made while holding the coordinator's
+ * pattern matcher lock.
+ */
+public class TopicPatternMatcher {
+    private static final String META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    private final Pattern pattern;
+    private final TrieNode trie;
+    private final Set<String> knownTopics = new HashSet<>();
+    private final Set<String> matchedTopics = new HashSet<>();
+    private Set<String> lastTopics = null;
+
+    public TopicPatternMatcher(Pattern pattern) {
+        this.pattern = pattern;
+        this.trie = compile(pattern);
+    }
+
+    public Pattern pattern() {
+        return pattern;
+    }
+
+    /**
+     * Return whether the pattern was compiled to a trie
+     */
+    public boolean isCompiled() {
+        return trie != null;
+    }
+
+    /**
+     * Match a single topic against the pattern
+     */
+    public boolean matches(String topic) {
+        if (trie == null)
+            return pattern.matcher(topic).matches();
+
+        TrieNode node = trie;
+        for (int i = 0; i < topic.length(); i++) {
+            if (node.prefix)
+                return true;
+            node = node.child(topic.charAt(i));
+            if (node == null)
+                return false;
+        }
+        return node.prefix || node.literal;
+    }
+
+    /**
+     * Bring the matched topics up to date with the topics of a new cluster snapshot
+     * @param topics The topics of the cluster
+     */
+    public void update(Set<String> topics) {
+        if (topics == lastTopics)
+            return;
+        lastTopics = topics;
+
+        for (String topic : topics) {
+            if (knownTopics.add(topic) && matches(topic))
+                matchedTopics.add(topic);
+        }
+
+        // the known topics are now the union of both snapshots, so any difference in size means topics were removed
+        if (knownTopics.size() != topics.size()) {
+            Iterator<String> iter = knownTopics.iterator();
+            while (iter.hasNext()) {
+                String topic = iter.next();
+                if (!topics.contains(topic)) {
+                    iter.remove();
+                    matchedTopics.remove(topic);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the topics of the last snapshot which match the pattern
+     */
+    public Set<String> matchedTopics() {
+        return matchedTopics;
+    }
+
+    /**
+     * Compile a pattern to a trie if every branch of its top level alternation is a literal, optionally followed
+     * by <code>.*</code>
+     * @return The root of the trie, or null if the pattern cannot be compiled
+     */
+    static TrieNode compile(Pattern pattern) {
+        if (pattern.flags() != 0)
+            return null;
+
+        List<String> branches = new ArrayList<>();
+        String regex = pattern.pattern();
+        int start = 0;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '|') {
+                branches.add(regex.substring(start, i));
+                start = i + 1;
+            }
+        }
+        branches.add(regex.substring(start));
+
+        TrieNode root = new TrieNode();
+        StringBuilder literal = new StringBuilder();
+        for (String branch : branches) {
+            literal.setLength(0);
+            boolean prefix = false;
+            int end = branch.length();
+            if (branch.endsWith(".*") && !isEscaped(branch, end - 2)) {
+                prefix = true;
+                end -= 2;
+            }
+            for (int i = 0; i < end; i++) {
+                char c = branch.charAt(i);
+                if (c == '\\') {
+                    // only escaped punctuation is a literal, escaped letters and digits are character classes
+                    if (i + 1 >= end || Character.isLetterOrDigit(branch.charAt(i + 1)))
+                        return null;
+                    literal.append(branch.charAt(++i));
+                } else if (META_CHARACTERS.indexOf(c) >= 0) {
+                    return null;
+                } else {
+                    literal.append(c);
+                }
+            }
+            root.add(literal, prefix);
+        }
+        return root;
+    }
+
+    private static boolean isEscaped(String regex, int index) {
+        int backslashes = 0;
+        for (int i = index - 1; i >= 0 && regex.charAt(i) == '\\'; i--)
+            backslashes++;
+        return backslashes % 2 == 1;
+    }
+
+    static class TrieNode {
+        private char[] keys = new char[0];
+        private TrieNode[] children = new TrieNode[0];
+        /* a topic ending at this node matches */
+        private boolean literal = false;
+        /* every topic passing through this node matches */
+        private boolean prefix = false;
+
+        private TrieNode child(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c)
+                    return children[i];
+            }
+            return null;
+        }
+
+        private void add(CharSequence chars, boolean isPrefix) {
+            TrieNode node = this;
+            for (int i = 0; i < chars.length(); i++) {
+                char c = chars.charAt(i);
+                TrieNode next = node.child(c);
+                if (next == null) {
+                    next = new TrieNode();
+                    node.keys = Arrays.copyOf(node.keys, node.keys.length + 1);
+                    node.children = Arrays.copyOf(node.children, node.children.length + 1);
+                    node.keys[node.keys.length - 1] = c;
+                    node.children[node.children.length - 1] = next;
+                }
+                node = next;
+            }
+            if (isPrefix)
+                node.prefix = true;
+            else
+                node.literal = true;
+        }
+    }
+}
@@ -13,6 +13,8 @@
 package org.apache.kafka.clients.producer;
 
 import org.apache.kafka.clients.ClientUtils;
+import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.clients.ConnectionStripes;
 import org.apache.kafka.clients.Metadata;
 import org.apache.kafka.clients.NetworkClient;
 import org.apache.kafka.clients.producer.internals.ProducerInterceptors;
@@ -298,7 +300,8 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
                     config.getLong(ProducerConfig.LINGER_MS_CONFIG),
                     retryBackoffMs,
                     metrics,
-                    time);
+                    time,
+                    new ConnectionStripes(config.getInt(CommonClientConfigs.CONNECTIONS_PER_BROKER_CONFIG)));
 
             List<InetSocketAddress> addresses = ClientUtils.parseAndValidateAddresses(config.getList(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG));
             this.metadata.update(Cluster.bootstrap(addresses), time.milliseconds());
@@ -313,7 +316,10 @@ public class KafkaProducer<K, V> implements Producer<K, V> {
                     config.getInt(ProducerConfig.RECEIVE_BUFFER_CONFIG),
                     this.requestTimeoutMs,
                     time,
-                    true);
+                    true,
+                    config.getLong(ProducerConfig.METADATA_MAX_AGE_CONFIG),
+                    this.metrics,
+                    "producer");
             this.sender = new Sender(client,
                     this.metadata,
                     this.accumulator,
@@ -13,6 +13,7 @@
 package org.apache.kafka.clients.producer;
 
 import org.apache.kafka.clients.CommonClientConfigs;
+import org.apache.kafka.clients.ConnectionStripes;
 import org.apache.kafka.clients.producer.internals.DefaultPartitioner;
 import org.apache.kafka.common.config.AbstractConfig;
 import org.apache.kafka.common.config.ConfigDef;
@@ -309,6 +310,18 @@ public class ProducerConfig extends AbstractConfig {
                                         CommonClientConfigs.DEFAULT_SECURITY_PROTOCOL,
                                         Importance.MEDIUM,
                                         CommonClientConfigs.SECURITY_PROTOCOL_DOC)
+                                .define(CommonClientConfigs.HANDSHAKE_EXECUTOR_THREADS_CONFIG,
+                                        Type.INT,
+                                        0,
+                                        atLeast(0),
+                                        Importance.LOW,
+                                        CommonClientConfigs.HANDSHAKE_EXECUTOR_THREADS_DOC)
+                                .define(CommonClientConfigs.CONNECTIONS_PER_BROKER_CONFIG,
+                                        Type.INT,
+                                        1,
+                                        between(1, ConnectionStripes.MAX_CONNECTIONS_PER_BROKER),
+                                        Importance.LOW,
+                                        CommonClientConfigs.CONNECTIONS_PER_BROKER_DOC)
                                 .withClientSslSupport()
                                 .withClientSaslSupport();
 
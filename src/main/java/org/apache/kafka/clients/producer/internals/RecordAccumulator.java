@@ -14,6 +14,7 @@ package org.apache.kafka.clients.producer.internals;
 
 import java.util.Iterator;
 
+import org.apache.kafka.clients.ConnectionStripes;
 import org.apache.kafka.clients.producer.Callback;
 import org.apache.kafka.common.Cluster;
 import org.apache.kafka.common.MetricName;
@@ -74,6 +75,7 @@ public final class RecordAccumulator {
     private final IncompleteRecordBatches incomplete;
     // The following variables are only accessed by the sender thread, so we don't need to protect them.
     private final Set<TopicPartition> muted;
+    private final ConnectionStripes stripes;
     private int drainIndex;
 
     /**
@@ -97,6 +99,22 @@ public final class RecordAccumulator {
                              long retryBackoffMs,
                              Metrics metrics,
                              Time time) {
+        this(batchSize, totalSize, compression, lingerMs, retryBackoffMs, metrics, time, new ConnectionStripes(1));
+    }
+
+    /**
+     * Create a new record accumulator which drains the partitions of a broker over several connections
+     *
+     * @param stripes The connections to send the batches of a partition on
+     */
+    public RecordAccumulator(int batchSize,
+                             long totalSize,
+                             CompressionType compression,
+                             long lingerMs,
+                             long retryBackoffMs,
+                             Metrics metrics,
+                             Time time,
+                             ConnectionStripes stripes) {
         this.drainIndex = 0;
         this.closed = false;
         this.flushesInProgress = new AtomicInteger(0);
@@ -110,6 +128,7 @@ public final class RecordAccumulator {
         this.free = new BufferPool(totalSize, batchSize, metrics, time, metricGrpName);
         this.incomplete = new IncompleteRecordBatches();
         this.muted = new HashSet<>();
+        this.stripes = stripes;
         this.time = time;
         registerMetrics(metrics, metricGrpName);
     }
@@ -311,7 +330,8 @@ public final class RecordAccumulator {
      * 
      * Get a list of nodes whose partitions are ready to be sent, and the earliest time at which any non-sendable
      * partition will be ready; Also return the flag for whether there are any unknown leaders for the accumulated
-     * partition batches.
+     * partition batches. With several connections per broker, a leader is returned as the node of the connection its
+     * partition is sent on, see {@link ConnectionStripes}.
      * <p>
      * A destination node is ready to send data if:
      * <ol>
@@ -340,6 +360,8 @@ public final class RecordAccumulator {
             Deque<RecordBatch> deque = entry.getValue();
 
             Node leader = cluster.leaderFor(part);
+            if (leader != null)
+                leader = stripes.node(leader, part);
             synchronized (deque) {
                 if (leader == null && !deque.isEmpty()) {
                     // This is a partition for which leader is not known, but messages are available to send.
@@ -430,15 +452,15 @@ public final class RecordAccumulator {
          * */
         for (Node node : nodes) {
             int size = 0;
-            List<PartitionInfo> parts = cluster.partitionsForNode(node.id());
+            List<PartitionInfo> parts = cluster.partitionsForNode(ConnectionStripes.brokerId(node.id()));
             List<RecordBatch> ready = new ArrayList<>();
             /* to make starvation less likely this loop doesn't start at 0 */
             int start = drainIndex = drainIndex % parts.size();
             do {
                 PartitionInfo part = parts.get(drainIndex);
                 TopicPartition tp = new TopicPartition(part.topic(), part.partition());
-                // Only proceed if the partition has no in-flight batches.
-                if (!muted.contains(tp)) {
+                // Only proceed if the partition has no in-flight batches and is sent on the connection of the node.
+                if (!muted.contains(tp) && stripes.owns(node, tp)) {
                     Deque<RecordBatch> deque = getDeque(new TopicPartition(part.topic(), part.partition()));
                     if (deque != null) {
                         synchronized (deque) {
@@ -12,14 +12,14 @@
  */
 package org.apache.kafka.common;
 
-import org.apache.kafka.common.utils.Utils;
-
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -33,10 +33,12 @@ public final class Cluster {
     private final List<Node> nodes;
     private final Set<String> unauthorizedTopics;
     private final Set<String> internalTopics;
-    private final Map<TopicPartition, PartitionInfo> partitionsByTopicPartition;
     private final Map<String, List<PartitionInfo>> partitionsByTopic;
     private final Map<String, List<PartitionInfo>> availablePartitionsByTopic;
-    private final Map<Integer, List<PartitionInfo>> partitionsByNode;
+    /* the partitions of each topic indexed by partition id, or null for topics with sparse partition ids */
+    private final Map<String, PartitionInfo[]> partitionIndexByTopic;
+    /* built on first use, since only the producer looks up partitions by node, then updated from cluster to cluster */
+    private volatile Map<Integer, List<PartitionInfo>> partitionsByNode;
     private final Map<Integer, Node> nodesById;
     private final ClusterResource clusterResource;
 
@@ -73,6 +75,16 @@ public final class Cluster {
                     Collection<PartitionInfo> partitions,
                     Set<String> unauthorizedTopics,
                     Set<String> internalTopics) {
+        this(clusterId, isBootstrapConfigured, nodes, groupByTopic(partitions), unauthorizedTopics, internalTopics, null);
+    }
+
+    private Cluster(String clusterId,
+                    boolean isBootstrapConfigured,
+                    Collection<Node> nodes,
+                    Map<String, List<PartitionInfo>> partitionsByTopic,
+                    Set<String> unauthorizedTopics,
+                    Set<String> internalTopics,
+                    Cluster previous) {
         this.isBootstrapConfigured = isBootstrapConfigured;
         this.clusterResource = new ClusterResource(clusterId);
         // make a randomized, unmodifiable copy of the nodes
@@ -83,49 +95,87 @@ public final class Cluster {
         for (Node node : nodes)
             this.nodesById.put(node.id(), node);
 
-        // index the partitions by topic/partition for quick lookup
-        this.partitionsByTopicPartition = new HashMap<>(partitions.size());
-        for (PartitionInfo p : partitions)
-            this.partitionsByTopicPartition.put(new TopicPartition(p.topic(), p.partition()), p);
-
-        // index the partitions by topic and node respectively, and make the lists
-        // unmodifiable so we can hand them out in user-facing apis without risk
-        // of the client modifying the contents
-        HashMap<String, List<PartitionInfo>> partsForTopic = new HashMap<>();
-        HashMap<Integer, List<PartitionInfo>> partsForNode = new HashMap<>();
-        for (Node n : this.nodes) {
-            partsForNode.put(n.id(), new ArrayList<PartitionInfo>());
-        }
-        for (PartitionInfo p : partitions) {
-            if (!partsForTopic.containsKey(p.topic()))
-                partsForTopic.put(p.topic(), new ArrayList<PartitionInfo>());
-            List<PartitionInfo> psTopic = partsForTopic.get(p.topic());
-            psTopic.add(p);
-
-            if (p.leader() != null) {
-                List<PartitionInfo> psNode = Utils.notNull(partsForNode.get(p.leader().id()));
-                psNode.add(p);
-            }
-        }
-        this.partitionsByTopic = new HashMap<>(partsForTopic.size());
-        this.availablePartitionsByTopic = new HashMap<>(partsForTopic.size());
-        for (Map.Entry<String, List<PartitionInfo>> entry : partsForTopic.entrySet()) {
+        // index the partitions by topic, and make the lists unmodifiable so we can hand them out in
+        // user-facing apis without risk of the client modifying the contents. The lists and indexes of
+        // topics which did not change since the previous cluster are shared with it
+        this.partitionsByTopic = new HashMap<>(partitionsByTopic.size());
+        this.availablePartitionsByTopic = new HashMap<>(partitionsByTopic.size());
+        this.partitionIndexByTopic = new HashMap<>(partitionsByTopic.size());
+        for (Map.Entry<String, List<PartitionInfo>> entry : partitionsByTopic.entrySet()) {
             String topic = entry.getKey();
             List<PartitionInfo> partitionList = entry.getValue();
-            this.partitionsByTopic.put(topic, Collections.unmodifiableList(partitionList));
+            if (previous != null && previous.partitionsByTopic.get(topic) == partitionList) {
+                this.partitionsByTopic.put(topic, partitionList);
+                this.availablePartitionsByTopic.put(topic, previous.availablePartitionsByTopic.get(topic));
+                this.partitionIndexByTopic.put(topic, previous.partitionIndexByTopic.get(topic));
+                continue;
+            }
+
+            partitionList = new ArrayList<>(partitionList);
             List<PartitionInfo> availablePartitions = new ArrayList<>();
             for (PartitionInfo part : partitionList) {
                 if (part.leader() != null)
                     availablePartitions.add(part);
             }
+            this.partitionsByTopic.put(topic, Collections.unmodifiableList(partitionList));
             this.availablePartitionsByTopic.put(topic, Collections.unmodifiableList(availablePartitions));
+            this.partitionIndexByTopic.put(topic, indexByPartition(partitionList));
         }
-        this.partitionsByNode = new HashMap<>(partsForNode.size());
-        for (Map.Entry<Integer, List<PartitionInfo>> entry : partsForNode.entrySet())
-            this.partitionsByNode.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
 
         this.unauthorizedTopics = Collections.unmodifiableSet(unauthorizedTopics);
         this.internalTopics = Collections.unmodifiableSet(internalTopics);
+
+        // once the partitions were looked up by node, keep the index up to date rather than building it again
+        // from all partitions on the next lookup
+        if (previous != null && previous.partitionsByNode != null)
+            this.partitionsByNode = updateIndexByNode(previous);
+    }
+
+    /**
+     * Create a new cluster from the partitions of each topic. The partition lists which are the same instances
+     * as the ones returned by {@link #partitionsForTopic(String)} of the previous cluster are shared with it,
+     * so the cost of the update is proportional to the number of topics which changed rather than to the number
+     * of partitions.
+     * @param previous The previous cluster, or null
+     * @param nodes The nodes in the cluster
+     * @param partitionsByTopic The partitions of each topic
+     */
+    public static Cluster update(Cluster previous,
+                                 String clusterId,
+                                 Collection<Node> nodes,
+                                 Map<String, List<PartitionInfo>> partitionsByTopic,
+                                 Set<String> unauthorizedTopics,
+                                 Set<String> internalTopics) {
+        return new Cluster(clusterId, false, nodes, partitionsByTopic, unauthorizedTopics, internalTopics, previous);
+    }
+
+    private static Map<String, List<PartitionInfo>> groupByTopic(Collection<PartitionInfo> partitions) {
+        Map<String, List<PartitionInfo>> partitionsByTopic = new HashMap<>();
+        for (PartitionInfo p : partitions) {
+            List<PartitionInfo> psTopic = partitionsByTopic.get(p.topic());
+            if (psTopic == null) {
+                psTopic = new ArrayList<>();
+                partitionsByTopic.put(p.topic(), psTopic);
+            }
+            psTopic.add(p);
+        }
+        return partitionsByTopic;
+    }
+
+    private static PartitionInfo[] indexByPartition(List<PartitionInfo> partitions) {
+        int maxPartition = -1;
+        for (PartitionInfo p : partitions) {
+            if (p.partition() < 0)
+                return null;
+            maxPartition = Math.max(maxPartition, p.partition());
+        }
+        // partition ids are normally dense, don't allocate a huge array if they are not
+        if (maxPartition >= 2 * partitions.size())
+            return null;
+        PartitionInfo[] index = new PartitionInfo[maxPartition + 1];
+        for (PartitionInfo p : partitions)
+            index[p.partition()] = p;
+        return index;
     }
 
     /**
@@ -153,10 +203,44 @@ public final class Cluster {
      * Return a copy of this cluster combined with `partitions`.
      */
     public Cluster withPartitions(Map<TopicPartition, PartitionInfo> partitions) {
-        Map<TopicPartition, PartitionInfo> combinedPartitions = new HashMap<>(this.partitionsByTopicPartition);
-        combinedPartitions.putAll(partitions);
-        return new Cluster(clusterResource.clusterId(), this.nodes, combinedPartitions.values(),
-                new HashSet<>(this.unauthorizedTopics), new HashSet<>(this.internalTopics));
+        Map<String, Map<Integer, PartitionInfo>> changedTopics = new HashMap<>();
+        for (Map.Entry<TopicPartition, PartitionInfo> entry : partitions.entrySet()) {
+            String topic = entry.getKey().topic();
+            Map<Integer, PartitionInfo> combined = changedTopics.get(topic);
+            if (combined == null) {
+                combined = new LinkedHashMap<>();
+                List<PartitionInfo> current = this.partitionsByTopic.get(topic);
+                if (current != null) {
+                    for (PartitionInfo p : current)
+                        combined.put(p.partition(), p);
+                }
+                changedTopics.put(topic, combined);
+            }
+            combined.put(entry.getKey().partition(), entry.getValue());
+        }
+
+        Map<String, List<PartitionInfo>> combinedPartitions = new HashMap<>(this.partitionsByTopic);
+        for (Map.Entry<String, Map<Integer, PartitionInfo>> entry : changedTopics.entrySet())
+            combinedPartitions.put(entry.getKey(), new ArrayList<>(entry.getValue().values()));
+        return new Cluster(clusterResource.clusterId(), false, this.nodes, combinedPartitions,
+                new HashSet<>(this.unauthorizedTopics), new HashSet<>(this.internalTopics), this);
+    }
+
+    /**
+     * Return a copy of this cluster restricted to the given topics. The partitions of these topics are shared
+     * with this cluster.
+     */
+    public Cluster withTopics(Collection<String> topics) {
+        Map<String, List<PartitionInfo>> partitions = new HashMap<>(topics.size());
+        for (String topic : topics) {
+            List<PartitionInfo> partitionList = this.partitionsByTopic.get(topic);
+            if (partitionList != null)
+                partitions.put(topic, partitionList);
+        }
+        Set<String> unauthorized = new HashSet<>(this.unauthorizedTopics);
+        unauthorized.retainAll(topics);
+        return new Cluster(clusterResource.clusterId(), false, this.nodes, partitions, unauthorized,
+                this.internalTopics, this);
     }
 
     /**
@@ -181,7 +265,7 @@ public final class Cluster {
      * @return The node that is the leader for this topic-partition, or null if there is currently no leader
      */
     public Node leaderFor(TopicPartition topicPartition) {
-        PartitionInfo info = partitionsByTopicPartition.get(topicPartition);
+        PartitionInfo info = partition(topicPartition);
         if (info == null)
             return null;
         else
@@ -194,7 +278,19 @@ public final class Cluster {
      * @return The metadata about the given topic and partition
      */
     public PartitionInfo partition(TopicPartition topicPartition) {
-        return partitionsByTopicPartition.get(topicPartition);
+        int partition = topicPartition.partition();
+        PartitionInfo[] index = this.partitionIndexByTopic.get(topicPartition.topic());
+        if (index != null)
+            return partition >= 0 && partition < index.length ? index[partition] : null;
+
+        List<PartitionInfo> partitions = this.partitionsByTopic.get(topicPartition.topic());
+        if (partitions == null)
+            return null;
+        for (PartitionInfo p : partitions) {
+            if (p.partition() == partition)
+                return p;
+        }
+        return null;
     }
 
     /**
@@ -231,7 +327,96 @@ public final class Cluster {
      * @return A list of partitions
      */
     public List<PartitionInfo> partitionsForNode(int nodeId) {
-        return this.partitionsByNode.get(nodeId);
+        Map<Integer, List<PartitionInfo>> partitionsByNode = this.partitionsByNode;
+        if (partitionsByNode == null) {
+            partitionsByNode = indexByNode();
+            this.partitionsByNode = partitionsByNode;
+        }
+        return partitionsByNode.get(nodeId);
+    }
+
+    private Map<Integer, List<PartitionInfo>> indexByNode() {
+        HashMap<Integer, List<PartitionInfo>> partsForNode = new HashMap<>();
+        for (Node n : this.nodes)
+            partsForNode.put(n.id(), new ArrayList<PartitionInfo>());
+        for (List<PartitionInfo> partitions : this.partitionsByTopic.values()) {
+            for (PartitionInfo p : partitions) {
+                if (p.leader() != null) {
+                    List<PartitionInfo> psNode = partsForNode.get(p.leader().id());
+                    if (psNode == null) {
+                        psNode = new ArrayList<>();
+                        partsForNode.put(p.leader().id(), psNode);
+                    }
+                    psNode.add(p);
+                }
+            }
+        }
+        Map<Integer, List<PartitionInfo>> partitionsByNode = new HashMap<>(partsForNode.size());
+        for (Map.Entry<Integer, List<PartitionInfo>> entry : partsForNode.entrySet())
+            partitionsByNode.put(entry.getKey(), Collections.unmodifiableList(entry.getValue()));
+        return partitionsByNode;
+    }
+
+    /**
+     * Update the partitions by node of the previous cluster with the topics which changed since then. Only the lists
+     * of the nodes which lead partitions of these topics are copied, the others are shared with the previous cluster.
+     */
+    private Map<Integer, List<PartitionInfo>> updateIndexByNode(Cluster previous) {
+        Set<String> changedTopics = new HashSet<>();
+        Set<Integer> changedNodes = new HashSet<>();
+        for (Map.Entry<String, List<PartitionInfo>> entry : previous.partitionsByTopic.entrySet()) {
+            if (this.partitionsByTopic.get(entry.getKey()) != entry.getValue()) {
+                changedTopics.add(entry.getKey());
+                for (PartitionInfo p : entry.getValue()) {
+                    if (p.leader() != null)
+                        changedNodes.add(p.leader().id());
+                }
+            }
+        }
+        Map<Integer, List<PartitionInfo>> added = new HashMap<>();
+        for (Map.Entry<String, List<PartitionInfo>> entry : this.partitionsByTopic.entrySet()) {
+            if (previous.partitionsByTopic.get(entry.getKey()) == entry.getValue())
+                continue;
+            changedTopics.add(entry.getKey());
+            for (PartitionInfo p : entry.getValue()) {
+                if (p.leader() != null) {
+                    List<PartitionInfo> psNode = added.get(p.leader().id());
+                    if (psNode == null) {
+                        psNode = new ArrayList<>();
+                        added.put(p.leader().id(), psNode);
+                    }
+                    psNode.add(p);
+                }
+            }
+        }
+        changedNodes.addAll(added.keySet());
+
+        Map<Integer, List<PartitionInfo>> partitionsByNode = new HashMap<>(previous.partitionsByNode);
+        for (Integer nodeId : changedNodes) {
+            List<PartitionInfo> psNode = new ArrayList<>();
+            List<PartitionInfo> previousPsNode = previous.partitionsByNode.get(nodeId);
+            if (previousPsNode != null) {
+                for (PartitionInfo p : previousPsNode) {
+                    if (!changedTopics.contains(p.topic()))
+                        psNode.add(p);
+                }
+            }
+            List<PartitionInfo> addedPsNode = added.get(nodeId);
+            if (addedPsNode != null)
+                psNode.addAll(addedPsNode);
+            partitionsByNode.put(nodeId, Collections.unmodifiableList(psNode));
+        }
+        // like the index built from all partitions, keep an entry for every node and for every leader
+        for (Iterator<Map.Entry<Integer, List<PartitionInfo>>> it = partitionsByNode.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, List<PartitionInfo>> entry = it.next();
+            if (entry.getValue().isEmpty() && !this.nodesById.containsKey(entry.getKey()))
+                it.remove();
+        }
+        for (Node n : this.nodes) {
+            if (!partitionsByNode.containsKey(n.id()))
+                partitionsByNode.put(n.id(), Collections.<PartitionInfo>emptyList());
+        }
+        return partitionsByNode;
     }
 
     /**
@@ -260,7 +445,10 @@ public final class Cluster {
 
     @Override
     public String toString() {
-        return "Cluster(id = " + clusterResource.clusterId() + ", nodes = " + this.nodes + ", partitions = " + this.partitionsByTopicPartition.values() + ")";
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (List<PartitionInfo> partitionList : this.partitionsByTopic.values())
+            partitions.addAll(partitionList);
+        return "Cluster(id = " + clusterResource.clusterId() + ", nodes = " + this.nodes + ", partitions = " + partitions + ")";
     }
 
 }
@@ -88,6 +88,16 @@ public class SslConfigs {
     public static final String SSL_SECURE_RANDOM_IMPLEMENTATION_CONFIG = "ssl.secure.random.implementation";
     public static final String SSL_SECURE_RANDOM_IMPLEMENTATION_DOC = "The SecureRandom PRNG implementation to use for SSL cryptography operations. ";
 
+    public static final String SSL_BUFFER_POOL_BYTES_CONFIG = "ssl.buffer.pool.bytes";
+    public static final String SSL_BUFFER_POOL_BYTES_DOC = "The total size in bytes of the network and application buffers of SSL connections which are pooled. "
+            + "When positive, a connection borrows its buffers from the pool when it becomes readable or writable and returns them "
+            + "once they are drained, so that idle connections hold no buffers. Buffers needed beyond the size of the pool are "
+            + "allocated and left to the garbage collector after use. When 0, every connection allocates its buffers for its lifetime.";
+
+    public static final String SSL_BUFFER_POOL_DIRECT_CONFIG = "ssl.buffer.pool.direct";
+    public static final String SSL_BUFFER_POOL_DIRECT_DOC = "Whether the pooled buffers of SSL connections are direct buffers, which saves "
+            + "the SSLEngine a copy to and from the socket. Only applies if <code>" + SSL_BUFFER_POOL_BYTES_CONFIG + "</code> is positive.";
+
     public static final String SSL_CLIENT_AUTH_CONFIG = "ssl.client.auth";
     public static final String SSL_CLIENT_AUTH_DOC = "Configures kafka broker to request client authentication."
                                            + " The following settings are common: "
@@ -113,6 +123,8 @@ public class SslConfigs {
                 .define(SslConfigs.SSL_KEYMANAGER_ALGORITHM_CONFIG, ConfigDef.Type.STRING, SslConfigs.DEFAULT_SSL_KEYMANGER_ALGORITHM, ConfigDef.Importance.LOW, SslConfigs.SSL_KEYMANAGER_ALGORITHM_DOC)
                 .define(SslConfigs.SSL_TRUSTMANAGER_ALGORITHM_CONFIG, ConfigDef.Type.STRING, SslConfigs.DEFAULT_SSL_TRUSTMANAGER_ALGORITHM, ConfigDef.Importance.LOW, SslConfigs.SSL_TRUSTMANAGER_ALGORITHM_DOC)
                 .define(SslConfigs.SSL_ENDPOINT_IDENTIFICATION_ALGORITHM_CONFIG, ConfigDef.Type.STRING, null, ConfigDef.Importance.LOW, SslConfigs.SSL_ENDPOINT_IDENTIFICATION_ALGORITHM_DOC)
-                .define(SslConfigs.SSL_SECURE_RANDOM_IMPLEMENTATION_CONFIG, ConfigDef.Type.STRING, null, ConfigDef.Importance.LOW, SslConfigs.SSL_SECURE_RANDOM_IMPLEMENTATION_DOC);
+                .define(SslConfigs.SSL_SECURE_RANDOM_IMPLEMENTATION_CONFIG, ConfigDef.Type.STRING, null, ConfigDef.Importance.LOW, SslConfigs.SSL_SECURE_RANDOM_IMPLEMENTATION_DOC)
+                .define(SslConfigs.SSL_BUFFER_POOL_BYTES_CONFIG, ConfigDef.Type.LONG, 0L, ConfigDef.Range.atLeast(0), ConfigDef.Importance.LOW, SslConfigs.SSL_BUFFER_POOL_BYTES_DOC)
+                .define(SslConfigs.SSL_BUFFER_POOL_DIRECT_CONFIG, ConfigDef.Type.BOOLEAN, false, ConfigDef.Importance.LOW, SslConfigs.SSL_BUFFER_POOL_DIRECT_DOC);
     }
 }
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.common.memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A source of the buffers into which network receives are read. A pool may bound the memory held by its buffers,
+ * in which case {@link #tryAllocate(int)} fails until enough buffers are released, and may reuse released buffers.
+ */
+public interface MemoryPool {
+
+    /**
+     * A pool which allocates a new heap buffer for every request and neither bounds nor reuses them
+     */
+    MemoryPool NONE = new MemoryPool() {
+        @Override
+        public ByteBuffer tryAllocate(int sizeBytes) {
+            return ByteBuffer.allocate(sizeBytes);
+        }
+
+        @Override
+        public void release(ByteBuffer previouslyAllocated) {
+        }
+
+        @Override
+        public void detach(ByteBuffer previouslyAllocated) {
+        }
+
+        @Override
+        public long size() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public long availableMemory() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public boolean isOutOfMemory() {
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "NONE";
+        }
+    };
+
+    /**
+     * Try to allocate a buffer of the given size. The returned buffer has a position of 0 and a limit of
+     * <code>sizeBytes</code>, but its capacity may be larger.
+     * @param sizeBytes The size of the buffer
+     * @return The buffer, or null if the pool does not have enough memory available
+     */
+    ByteBuffer tryAllocate(int sizeBytes);
+
+    /**
+     * Return a buffer to the pool. The buffer must not be accessed afterwards, including through any view of it.
+     * Buffers which were not allocated by this pool are ignored.
+     * @param previouslyAllocated The buffer returned by {@link #tryAllocate(int)}
+     */
+    void release(ByteBuffer previouslyAllocated);
+
+    /**
+     * Stop counting a buffer whose lifetime is no longer controlled by the client, for example because records
+     * handed to the user are read from it in place. The buffer is left to the garbage collector and not reused.
+     * Buffers which were not allocated by this pool are ignored.
+     * @param previouslyAllocated The buffer returned by {@link #tryAllocate(int)}
+     */
+    void detach(ByteBuffer previouslyAllocated);
+
+    /**
+     * The maximum number of bytes the buffers of this pool may hold
+     */
+    long size();
+
+    /**
+     * The number of bytes which can currently be allocated
+     */
+    long availableMemory();
+
+    /**
+     * Return whether allocations may currently fail for lack of memory
+     */
+    boolean isOutOfMemory();
+}
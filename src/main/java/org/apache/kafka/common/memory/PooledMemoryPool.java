@@ -0,0 +1,225 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.kafka.common.memory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A memory pool which bounds the bytes held by its buffers and keeps released buffers for reuse.
+ *
+ * Requested sizes are rounded up to a size class, with four classes between consecutive powers of two, so that
+ * released buffers can serve later requests of similar size while wasting at most a quarter of their capacity.
+ * Released buffers stay pooled as long as the pool has room for them, and are dropped when a request of another
+ * size class would not fit otherwise.
+ *
+ * An allocation succeeds as long as the buffers in use hold less than the size of the pool, so a single receive
+ * larger than the pool can still be read. Buffers which records returned to the user are read from in place are
+ * detached from the pool, and buffers which are neither released nor detached are no longer counted once they are
+ * garbage collected.
+ *
+ * Requests smaller than {@link #MIN_POOLED_BYTES}, i.e. every response except fetch and large metadata
+ * responses, are plain heap buffers which are neither pooled nor counted.
+ *
+ * This class is thread-safe.
+ */
+public class PooledMemoryPool implements MemoryPool {
+    private static final Logger log = LoggerFactory.getLogger(PooledMemoryPool.class);
+
+    public static final int MIN_POOLED_BYTES = 16 * 1024;
+    private static final int SIZE_CLASSES_PER_POWER_OF_TWO = 4;
+
+    private final long poolSize;
+    private final boolean direct;
+    private final Map<Integer, Deque<ByteBuffer>> freeBuffers = new HashMap<>();
+    private final Map<BufferReference, BufferReference> allocatedBuffers = new HashMap<>();
+    private final ReferenceQueue<ByteBuffer> collectedBuffers = new ReferenceQueue<>();
+    private long allocatedBytes = 0;
+    private long freeBytes = 0;
+
+    /**
+     * @param poolSize The maximum number of bytes held by the buffers of the pool
+     * @param direct Whether to allocate direct buffers instead of heap buffers
+     */
+    public PooledMemoryPool(long poolSize, boolean direct) {
+        if (poolSize <= 0)
+            throw new IllegalArgumentException("The size of the pool must be positive: " + poolSize);
+        this.poolSize = poolSize;
+        this.direct = direct;
+    }
+
+    @Override
+    public synchronized ByteBuffer tryAllocate(int sizeBytes) {
+        if (sizeBytes < 0)
+            throw new IllegalArgumentException("Cannot allocate a negative number of bytes: " + sizeBytes);
+        if (sizeBytes < MIN_POOLED_BYTES)
+            return ByteBuffer.allocate(sizeBytes);
+
+        reclaimCollected();
+        if (allocatedBytes >= poolSize)
+            return null;
+
+        int sizeClass = sizeClass(sizeBytes);
+        ByteBuffer buffer = null;
+        Deque<ByteBuffer> free = freeBuffers.get(sizeClass);
+        if (free != null && !free.isEmpty()) {
+            buffer = free.pollLast();
+            freeBytes -= sizeClass;
+        } else {
+            evict(allocatedBytes + freeBytes + sizeClass - poolSize);
+            buffer = direct ? ByteBuffer.allocateDirect(sizeClass) : ByteBuffer.allocate(sizeClass);
+        }
+        allocatedBytes += sizeClass;
+        BufferReference reference = new BufferReference(buffer, sizeClass, collectedBuffers);
+        allocatedBuffers.put(reference, reference);
+
+        buffer.clear();
+        buffer.limit(sizeBytes);
+        return buffer;
+    }
+
+    @Override
+    public synchronized void release(ByteBuffer previouslyAllocated) {
+        BufferReference reference = allocatedBuffers.remove(new BufferReference(previouslyAllocated, 0, null));
+        if (reference == null)
+            return;
+        // a cleared reference is not enqueued, so the buffer is not counted twice if it is collected from the pool
+        reference.clear();
+        allocatedBytes -= reference.sizeClass;
+
+        Deque<ByteBuffer> free = freeBuffers.get(reference.sizeClass);
+        if (free == null) {
+            free = new ArrayDeque<>();
+            freeBuffers.put(reference.sizeClass, free);
+        }
+        free.addLast(previouslyAllocated);
+        freeBytes += reference.sizeClass;
+        // the pool may have been overcommitted by a receive larger than its size
+        evict(allocatedBytes + freeBytes - poolSize);
+    }
+
+    @Override
+    public synchronized void detach(ByteBuffer previouslyAllocated) {
+        BufferReference reference = allocatedBuffers.remove(new BufferReference(previouslyAllocated, 0, null));
+        if (reference == null)
+            return;
+        reference.clear();
+        allocatedBytes -= reference.sizeClass;
+    }
+
+    @Override
+    public long size() {
+        return poolSize;
+    }
+
+    @Override
+    public synchronized long availableMemory() {
+        reclaimCollected();
+        return poolSize - allocatedBytes;
+    }
+
+    @Override
+    public synchronized boolean isOutOfMemory() {
+        return availableMemory() <= 0;
+    }
+
+    /**
+     * The number of bytes held by released buffers which are kept for reuse
+     */
+    public synchronized long pooledBytes() {
+        return freeBytes;
+    }
+
+    /**
+     * Round the size up to the next size class
+     */
+    static int sizeClass(int sizeBytes) {
+        long powerOfTwo = Integer.highestOneBit(sizeBytes);
+        long step = Math.max(1, powerOfTwo / SIZE_CLASSES_PER_POWER_OF_TWO);
+        long sizeClass = (sizeBytes + step - 1) / step * step;
+        return (int) Math.min(sizeClass, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Drop free buffers until they hold at least the given number of bytes less
+     */
+    private void evict(long bytes) {
+        Iterator<Map.Entry<Integer, Deque<ByteBuffer>>> iterator = freeBuffers.entrySet().iterator();
+        while (bytes > 0 && iterator.hasNext()) {
+            Map.Entry<Integer, Deque<ByteBuffer>> entry = iterator.next();
+            Deque<ByteBuffer> free = entry.getValue();
+            while (bytes > 0 && !free.isEmpty()) {
+                free.pollFirst();
+                freeBytes -= entry.getKey();
+                bytes -= entry.getKey();
+            }
+            if (free.isEmpty())
+                iterator.remove();
+        }
+    }
+
+    private void reclaimCollected() {
+        BufferReference reference;
+        while ((reference = (BufferReference) collectedBuffers.poll()) != null) {
+            if (allocatedBuffers.remove(reference) != null) {
+                allocatedBytes -= reference.sizeClass;
+                log.trace("Reclaimed {} bytes of a buffer which was garbage collected without being released",
+                        reference.sizeClass);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PooledMemoryPool(size = " + poolSize + ", direct = " + direct + ")";
+    }
+
+    /**
+     * A weak reference to an allocated buffer which is equal to the references to the same buffer instance, since
+     * the hash code and equality of buffers depend on their contents.
+     */
+    private static class BufferReference extends WeakReference<ByteBuffer> {
+        private final int sizeClass;
+        private final int hashCode;
+
+        private BufferReference(ByteBuffer buffer, int sizeClass, ReferenceQueue<ByteBuffer> queue) {
+            super(buffer, queue);
+            this.sizeClass = sizeClass;
+            this.hashCode = System.identityHashCode(buffer);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof BufferReference))
+                return false;
+            ByteBuffer buffer = get();
+            return buffer != null && buffer == ((BufferReference) o).get();
+        }
+    }
+}
@@ -55,4 +55,10 @@ public interface Authenticator extends Closeable {
      */
     boolean complete();
 
+    /**
+     * Returns true if authentication work was handed to a {@link HandshakeExecutor} and authentication has not resumed
+     * yet. The channel is muted until the first {@link #authenticate()} after the work completed.
+     */
+    boolean hasPendingTask();
+
 }
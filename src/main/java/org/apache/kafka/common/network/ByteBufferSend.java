@@ -60,4 +60,23 @@ public class ByteBufferSend implements Send {
         pending = TransportLayers.hasPendingWrites(channel);
         return written;
     }
+
+    /**
+     * Returns true if some of the bytes of this send were written, so that no other send may be queued before it
+     */
+    boolean started() {
+        return remaining < size;
+    }
+
+    /**
+     * Account for the bytes of this send which were written together with other sends by a single gathering write
+     * @param pending Whether the channel still buffers bytes which were not written to the socket
+     */
+    void onGatheredWrite(boolean pending) {
+        int remaining = 0;
+        for (ByteBuffer buffer : buffers)
+            remaining += buffer.remaining();
+        this.remaining = remaining;
+        this.pending = pending;
+    }
 }
@@ -13,6 +13,7 @@
 
 package org.apache.kafka.common.network;
 
+import org.apache.kafka.clients.CommonClientConfigs;
 import org.apache.kafka.common.config.SslConfigs;
 import org.apache.kafka.common.protocol.SecurityProtocol;
 import org.apache.kafka.common.security.auth.DefaultPrincipalBuilder;
@@ -109,6 +110,16 @@ public class ChannelBuilders {
         return principalBuilder;
     }
 
+    /**
+     * Returns the executor for the handshake work of the channels, or null if it runs on the network thread.
+     */
+    static HandshakeExecutor createHandshakeExecutor(Map<String, ?> configs) {
+        Integer threads = (Integer) configs.get(CommonClientConfigs.HANDSHAKE_EXECUTOR_THREADS_CONFIG);
+        if (threads == null || threads <= 0)
+            return null;
+        return new HandshakeExecutor(threads);
+    }
+
     private static void requireNonNullMode(Mode mode, SecurityProtocol securityProtocol) {
         if (mode == null)
             throw new IllegalArgumentException("`mode` must be non-null if `securityProtocol` is `" + securityProtocol + "`");
@@ -61,4 +61,11 @@ public class DefaultAuthenticator implements Authenticator {
         return true;
     }
 
+    /**
+     * No authentication work, so never a pending task
+     */
+    public boolean hasPendingTask() {
+        return false;
+    }
+
 }
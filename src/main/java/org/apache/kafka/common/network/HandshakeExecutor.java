@@ -0,0 +1,129 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.kafka.common.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.kafka.common.utils.KafkaThread;
+
+/**
+ * Runs the CPU intensive work of SSL handshakes and SASL authentication, such as certificate validation, key exchange
+ * and SCRAM key derivation, on a pool of threads rather than the thread of the selector, so that a burst of new
+ * connections does not hold up the I/O of established ones.
+ *
+ * A transport layer or authenticator which hands work to the executor mutes its channel and reports the task through
+ * {@link TransportLayer#hasPendingTask()} or {@link Authenticator#hasPendingTask()}. When the task completes, the
+ * selector is woken up and continues the handshake of the channel on its own thread.
+ *
+ * This class is thread-safe.
+ */
+public class HandshakeExecutor implements Closeable {
+    private static final AtomicInteger EXECUTOR_ID = new AtomicInteger(1);
+
+    private final ExecutorService executor;
+
+    /**
+     * @param threads The number of threads, which are stopped after a minute without work
+     */
+    public HandshakeExecutor(int threads) {
+        final String namePrefix = "kafka-handshake-executor-" + EXECUTOR_ID.getAndIncrement() + "-";
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger threadId = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new KafkaThread(namePrefix + threadId.getAndIncrement(), runnable, true);
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    /**
+     * Run the work on the executor and wake up the selector of the key once it completed
+     * @param key The selection key of the channel the work is done for
+     * @param work The work
+     * @return The task, which may be polled for completion from the thread of the selector
+     */
+    public <T> Task<T> submit(SelectionKey key, Callable<T> work) {
+        Task<T> task = new Task<>(key, work);
+        executor.execute(task);
+        return task;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Work handed to the executor on behalf of a channel
+     */
+    public static class Task<T> implements Runnable {
+        private final SelectionKey key;
+        private final Callable<T> work;
+        private T result;
+        private Exception exception;
+        // written after the result, so that a thread which sees the task done also sees its result
+        private volatile boolean done = false;
+
+        private Task(SelectionKey key, Callable<T> work) {
+            this.key = key;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                exception = e;
+            } finally {
+                done = true;
+                key.selector().wakeup();
+            }
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        /**
+         * Returns the result of a completed task
+         * @throws IOException If the work failed with an IOException, or with any other exception as its cause
+         */
+        public T result() throws IOException {
+            if (!done)
+                throw new IllegalStateException("The task has not completed yet");
+            if (exception instanceof IOException)
+                throw (IOException) exception;
+            if (exception != null)
+                throw new IOException("Handshake task failed", exception);
+            return result;
+        }
+    }
+}
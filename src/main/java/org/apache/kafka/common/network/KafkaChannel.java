@@ -22,35 +22,74 @@ import java.io.IOException;
 
 import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 
 import java.security.Principal;
-
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.kafka.common.memory.MemoryPool;
+import org.apache.kafka.common.metrics.Sensor;
 import org.apache.kafka.common.utils.Utils;
 
 public class KafkaChannel {
+    // the number of buffers written by one gathering write, which stays below the IOV_MAX of common platforms
+    private static final int MAX_GATHERED_BUFFERS = 64;
+
     private final String id;
     private final TransportLayer transportLayer;
     private final Authenticator authenticator;
     private final int maxReceiveSize;
+    private final MemoryPool memoryPool;
     private NetworkReceive receive;
-    private Send send;
+    // sends in the order they were queued, which are written with a single gathering write where possible
+    private final Deque<Send> sends = new ArrayDeque<>();
+    // the last send queued ahead of others, which later sends queued ahead must follow
+    private Send lastSendAhead;
+    private ByteBuffer[] gatheredBuffers = new ByteBuffer[8];
+    // the sends completed by the last write, reused by every write
+    private final List<Send> completedSends = new ArrayList<>();
+    // receives read but not yet completed by the selector, which completes at most one per channel and poll
+    private final Deque<NetworkReceive> stagedReceives = new ArrayDeque<>();
+    // per-connection sensors, registered once by the selector; null if it records no per-connection metrics
+    private boolean sensorsRegistered;
+    private Sensor bytesSentSensor;
+    private Sensor bytesReceivedSensor;
     // Track connection and mute state of channels to enable outstanding requests on channels to be
     // processed after the channel is disconnected.
     private boolean disconnected;
     private boolean muted;
+    // muted by the selector until the memory pool can allocate the current receive
+    private boolean mutedForMemory;
 
     public KafkaChannel(String id, TransportLayer transportLayer, Authenticator authenticator, int maxReceiveSize) throws IOException {
+        this(id, transportLayer, authenticator, maxReceiveSize, MemoryPool.NONE);
+    }
+
+    public KafkaChannel(String id, TransportLayer transportLayer, Authenticator authenticator, int maxReceiveSize,
+                        MemoryPool memoryPool) throws IOException {
         this.id = id;
         this.transportLayer = transportLayer;
         this.authenticator = authenticator;
         this.maxReceiveSize = maxReceiveSize;
+        this.memoryPool = memoryPool;
         this.disconnected = false;
         this.muted = false;
+        this.mutedForMemory = false;
     }
 
     public void close() throws IOException {
         this.disconnected = true;
+        if (receive != null) {
+            receive.release();
+            receive = null;
+        }
+        for (NetworkReceive staged = stagedReceives.poll(); staged != null; staged = stagedReceives.poll())
+            staged.release();
         Utils.closeAll(transportLayer, authenticator);
     }
 
@@ -96,7 +135,7 @@ public class KafkaChannel {
     }
 
     public void unmute() {
-        if (!disconnected)
+        if (!disconnected && !mutedForMemory)
             transportLayer.addInterestOps(SelectionKey.OP_READ);
         muted = false;
     }
@@ -108,12 +147,49 @@ public class KafkaChannel {
         return muted;
     }
 
+    /**
+     * Stop reading until {@link #unmuteForMemory()}, independently of {@link #mute()}
+     */
+    public void muteForMemory() {
+        if (!disconnected)
+            transportLayer.removeInterestOps(SelectionKey.OP_READ);
+        mutedForMemory = true;
+    }
+
+    public void unmuteForMemory() {
+        if (!disconnected && !muted)
+            transportLayer.addInterestOps(SelectionKey.OP_READ);
+        mutedForMemory = false;
+    }
+
+    /**
+     * Returns true if the size of the current receive is known but the memory pool could not allocate its buffer
+     */
+    public boolean isWaitingForMemory() {
+        return receive != null && receive.requiredMemoryAmountKnown() && !receive.memoryAllocated();
+    }
+
     public boolean ready() {
         return transportLayer.ready() && authenticator.complete();
     }
 
+    /**
+     * Returns true if the channel is muted while handshake or authentication work runs on a {@link HandshakeExecutor}.
+     * It stays true until {@link #prepare()} is called after the work completed, which continues the handshake.
+     */
+    public boolean hasPendingTask() {
+        return transportLayer.hasPendingTask() || authenticator.hasPendingTask();
+    }
+
+    /**
+     * Returns true if the TLS handshake of the channel resumed a cached session.
+     */
+    public boolean sessionResumed() {
+        return transportLayer.sessionResumed();
+    }
+
     public boolean hasSend() {
-        return send != null;
+        return !sends.isEmpty();
     }
 
     /**
@@ -133,18 +209,50 @@ public class KafkaChannel {
         return socket.getInetAddress().toString();
     }
 
+    /**
+     * Queue a send behind the sends which are still in progress
+     */
     public void setSend(Send send) {
-        if (this.send != null)
-            throw new IllegalStateException("Attempt to begin a send operation with prior send operation still in progress.");
-        this.send = send;
+        sends.addLast(send);
+        this.transportLayer.addInterestOps(SelectionKey.OP_WRITE);
+    }
+
+    /**
+     * Queue a send ahead of the sends which have not started to be written, but behind the sends queued ahead before
+     * it. A gathering write may have written the first sends wholly and the next one partly, so the send is queued
+     * behind the last send which has started. The first send is always taken as started.
+     * @return The number of sends the send was queued ahead of
+     */
+    public int setSendAhead(Send send) {
         this.transportLayer.addInterestOps(SelectionKey.OP_WRITE);
+        int index = 0;
+        int i = 0;
+        for (Send queued : sends) {
+            i++;
+            if (i == 1 || queued == lastSendAhead
+                    || (queued instanceof ByteBufferSend && ((ByteBufferSend) queued).started()))
+                index = i;
+        }
+        lastSendAhead = send;
+        int overtaken = sends.size() - index;
+        if (overtaken == 0) {
+            sends.addLast(send);
+        } else {
+            Send[] front = new Send[index];
+            for (int j = 0; j < index; j++)
+                front[j] = sends.pollFirst();
+            sends.addFirst(send);
+            for (int j = index - 1; j >= 0; j--)
+                sends.addFirst(front[j]);
+        }
+        return overtaken;
     }
 
     public NetworkReceive read() throws IOException {
         NetworkReceive result = null;
 
         if (receive == null) {
-            receive = new NetworkReceive(maxReceiveSize, id);
+            receive = new NetworkReceive(maxReceiveSize, id, memoryPool);
         }
 
         receive(receive);
@@ -156,25 +264,105 @@ public class KafkaChannel {
         return result;
     }
 
-    public Send write() throws IOException {
-        Send result = null;
-        if (send != null && send(send)) {
-            result = send;
-            send = null;
+    /**
+     * Write as much of the queued sends as the socket accepts
+     * @return The sends which were completed, in the order they were queued. The list is reused by the next write.
+     */
+    public List<Send> write() throws IOException {
+        List<Send> completed = completedSends;
+        completed.clear();
+        while (!sends.isEmpty()) {
+            Send next = sends.peekFirst();
+            boolean progress = sends.size() > 1 && next instanceof ByteBufferSend ? gatheringWrite() : send(next);
+            while (!sends.isEmpty() && sends.peekFirst().completed()) {
+                Send send = sends.pollFirst();
+                if (send == lastSendAhead)
+                    lastSendAhead = null;
+                completed.add(send);
+            }
+            if (!progress)
+                break;
         }
-        return result;
+        if (sends.isEmpty())
+            transportLayer.removeInterestOps(SelectionKey.OP_WRITE);
+        return completed;
+    }
+
+    /**
+     * The receives read ahead of the one the selector completes in the current poll
+     */
+    Deque<NetworkReceive> stagedReceives() {
+        return stagedReceives;
+    }
+
+    boolean sensorsRegistered() {
+        return sensorsRegistered;
+    }
+
+    void sensors(Sensor bytesSentSensor, Sensor bytesReceivedSensor) {
+        this.bytesSentSensor = bytesSentSensor;
+        this.bytesReceivedSensor = bytesReceivedSensor;
+        this.sensorsRegistered = true;
+    }
+
+    Sensor bytesSentSensor() {
+        return bytesSentSensor;
+    }
+
+    Sensor bytesReceivedSensor() {
+        return bytesReceivedSensor;
     }
 
     private long receive(NetworkReceive receive) throws IOException {
         return receive.readFrom(transportLayer);
     }
 
+    /**
+     * Write the next send on its own
+     * @return Whether the send was completed, so that the next one may be written
+     */
     private boolean send(Send send) throws IOException {
         send.writeTo(transportLayer);
-        if (send.completed())
-            transportLayer.removeInterestOps(SelectionKey.OP_WRITE);
-
         return send.completed();
     }
 
+    /**
+     * Write the buffers of the leading byte buffer sends with a single call, so that small requests queued together
+     * share a syscall and, where they fit, a segment
+     * @return Whether all of the gathered sends were completed
+     */
+    private boolean gatheringWrite() throws IOException {
+        int count = 0;
+        int gatheredSends = 0;
+        for (Send send : sends) {
+            if (!(send instanceof ByteBufferSend))
+                break;
+            ByteBuffer[] buffers = ((ByteBufferSend) send).buffers;
+            if (count > 0 && count + buffers.length > MAX_GATHERED_BUFFERS)
+                break;
+            if (count + buffers.length > gatheredBuffers.length)
+                gatheredBuffers = Arrays.copyOf(gatheredBuffers, Math.max(gatheredBuffers.length * 2, count + buffers.length));
+            System.arraycopy(buffers, 0, gatheredBuffers, count, buffers.length);
+            count += buffers.length;
+            gatheredSends++;
+        }
+
+        try {
+            transportLayer.write(gatheredBuffers, 0, count);
+        } finally {
+            Arrays.fill(gatheredBuffers, 0, count, null);
+        }
+
+        boolean pending = transportLayer.hasPendingWrites();
+        boolean allCompleted = true;
+        int i = 0;
+        for (Send send : sends) {
+            if (i++ == gatheredSends)
+                break;
+            ((ByteBufferSend) send).onGatheredWrite(pending);
+            allCompleted &= send.completed();
+        }
+        return allCompleted;
+    }
+
 }
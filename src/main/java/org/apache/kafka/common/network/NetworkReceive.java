@@ -18,6 +18,10 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.ScatteringByteChannel;
 
+import org.apache.kafka.common.memory.MemoryPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * <p>
  *   每个NetworkReceive就是一个协议包，size是4个字节的包头，表示消息体长度N；buffer是消息体，长度等于N
@@ -29,10 +33,13 @@ public class NetworkReceive implements Receive {
 
     public final static String UNKNOWN_SOURCE = "";
     public final static int UNLIMITED = -1;
+    private static final Logger log = LoggerFactory.getLogger(NetworkReceive.class);
 
     private final String source;
     private final ByteBuffer size;
     private final int maxSize;
+    private final MemoryPool memoryPool;
+    private int requestedBufferSize = -1;
     private ByteBuffer buffer;
 
 
@@ -41,20 +48,28 @@ public class NetworkReceive implements Receive {
         this.buffer = buffer;
         this.size = null;
         this.maxSize = UNLIMITED;
+        this.memoryPool = MemoryPool.NONE;
     }
 
     public NetworkReceive(String source) {
-        this.source = source;
-        this.size = ByteBuffer.allocate(4);
-        this.buffer = null;
-        this.maxSize = UNLIMITED;
+        this(UNLIMITED, source);
     }
 
     public NetworkReceive(int maxSize, String source) {
+        this(maxSize, source, MemoryPool.NONE);
+    }
+
+    /**
+     * @param maxSize The maximum size of the receive, or {@link #UNLIMITED}
+     * @param source The id of the connection
+     * @param memoryPool The pool to allocate the buffer of the receive from once its size is known
+     */
+    public NetworkReceive(int maxSize, String source, MemoryPool memoryPool) {
         this.source = source;
         this.size = ByteBuffer.allocate(4);
         this.buffer = null;
         this.maxSize = maxSize;
+        this.memoryPool = memoryPool;
     }
 
     public NetworkReceive() {
@@ -68,7 +83,7 @@ public class NetworkReceive implements Receive {
 
     @Override
     public boolean complete() {
-        return !size.hasRemaining() && !buffer.hasRemaining();
+        return !size.hasRemaining() && buffer != null && !buffer.hasRemaining();
     }
 
     public long readFrom(ScatteringByteChannel channel) throws IOException {
@@ -94,9 +109,15 @@ public class NetworkReceive implements Receive {
                 if (maxSize != UNLIMITED && receiveSize > maxSize)
                     throw new InvalidReceiveException("Invalid receive (size = " + receiveSize + " larger than " + maxSize + ")");
 
-                this.buffer = ByteBuffer.allocate(receiveSize);
+                requestedBufferSize = receiveSize;
             }
         }
+        if (buffer == null && requestedBufferSize != -1) {
+            buffer = memoryPool.tryAllocate(requestedBufferSize);
+            if (buffer == null)
+                log.trace("Memory pool {} could not allocate {} bytes for the receive from {}", memoryPool,
+                        requestedBufferSize, source);
+        }
         if (buffer != null) {
             int bytesRead = channel.read(buffer);
             if (bytesRead < 0)
@@ -111,4 +132,40 @@ public class NetworkReceive implements Receive {
         return this.buffer;
     }
 
+    /**
+     * Return whether the size of the receive was read
+     */
+    public boolean requiredMemoryAmountKnown() {
+        return requestedBufferSize != -1;
+    }
+
+    /**
+     * Return whether the buffer for the contents of the receive was allocated
+     */
+    public boolean memoryAllocated() {
+        return buffer != null;
+    }
+
+    /**
+     * Return the buffer of the receive to the memory pool it was allocated from. Neither the payload nor any view
+     * of it may be accessed afterwards.
+     */
+    public void release() {
+        if (buffer != null) {
+            memoryPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Stop counting the buffer of the receive against the memory pool it was allocated from, leaving it to the
+     * garbage collector. The payload stays accessible.
+     */
+    public void detach() {
+        if (buffer != null) {
+            memoryPool.detach(buffer);
+            buffer = null;
+        }
+    }
+
 }
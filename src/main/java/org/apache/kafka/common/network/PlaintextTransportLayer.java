@@ -64,6 +64,11 @@ public class PlaintextTransportLayer implements TransportLayer {
         return socketChannel;
     }
 
+    @Override
+    public SelectionKey selectionKey() {
+        return key;
+    }
+
     @Override
     public boolean isOpen() {
         return socketChannel.isOpen();
@@ -182,6 +187,22 @@ public class PlaintextTransportLayer implements TransportLayer {
         return false;
     }
 
+    /**
+     * always returns false as there is no handshake
+     */
+    @Override
+    public boolean hasPendingTask() {
+        return false;
+    }
+
+    /**
+     * always returns false as there is no session
+     */
+    @Override
+    public boolean sessionResumed() {
+        return false;
+    }
+
     /**
      * Returns ANONYMOUS as Principal.
      */
@@ -13,6 +13,7 @@
 package org.apache.kafka.common.network;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.List;
@@ -30,6 +31,7 @@ import org.apache.kafka.common.security.authenticator.SaslServerAuthenticator;
 import org.apache.kafka.common.security.ssl.SslFactory;
 import org.apache.kafka.common.protocol.SecurityProtocol;
 import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.memory.MemoryPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,6 +50,7 @@ public class SaslChannelBuilder implements ChannelBuilder {
     private SslFactory sslFactory;
     private Map<String, ?> configs;
     private KerberosShortNamer kerberosShortNamer;
+    private HandshakeExecutor handshakeExecutor;
 
     public SaslChannelBuilder(Mode mode, LoginType loginType, SecurityProtocol securityProtocol,
             String clientSaslMechanism, boolean handshakeRequestEnable, CredentialCache credentialCache) {
@@ -84,6 +87,7 @@ public class SaslChannelBuilder implements ChannelBuilder {
             }
             this.jaasConfig = JaasUtils.jaasConfig(loginType, configs);
             this.loginManager = LoginManager.acquireLoginManager(loginType, hasKerberos, configs, jaasConfig);
+            this.handshakeExecutor = ChannelBuilders.createHandshakeExecutor(configs);
 
             if (this.securityProtocol == SecurityProtocol.SASL_SSL) {
                 // Disable SSL client authentication as we are using SASL authentication
@@ -95,7 +99,7 @@ public class SaslChannelBuilder implements ChannelBuilder {
         }
     }
 
-    public KafkaChannel buildChannel(String id, SelectionKey key, int maxReceiveSize) throws KafkaException {
+    public KafkaChannel buildChannel(String id, SelectionKey key, int maxReceiveSize, MemoryPool memoryPool) throws KafkaException {
         try {
             SocketChannel socketChannel = (SocketChannel) key.channel();
             TransportLayer transportLayer = buildTransportLayer(id, key, socketChannel);
@@ -105,10 +109,11 @@ public class SaslChannelBuilder implements ChannelBuilder {
                         socketChannel.socket().getLocalAddress().getHostName(), maxReceiveSize, credentialCache);
             else
                 authenticator = new SaslClientAuthenticator(id, loginManager.subject(), loginManager.serviceName(),
-                        socketChannel.socket().getInetAddress().getHostName(), clientSaslMechanism, handshakeRequestEnable);
+                        socketChannel.socket().getInetAddress().getHostName(), clientSaslMechanism, handshakeRequestEnable,
+                        handshakeExecutor);
             // Both authenticators don't use `PrincipalBuilder`, so we pass `null` for now. Reconsider if this changes.
             authenticator.configure(transportLayer, null, this.configs);
-            return new KafkaChannel(id, transportLayer, authenticator, maxReceiveSize);
+            return new KafkaChannel(id, transportLayer, authenticator, maxReceiveSize, memoryPool);
         } catch (Exception e) {
             log.info("Failed to create channel due to ", e);
             throw new KafkaException(e);
@@ -118,12 +123,17 @@ public class SaslChannelBuilder implements ChannelBuilder {
     public void close()  {
         if (this.loginManager != null)
             this.loginManager.release();
+        if (this.handshakeExecutor != null)
+            this.handshakeExecutor.close();
     }
 
     protected TransportLayer buildTransportLayer(String id, SelectionKey key, SocketChannel socketChannel) throws IOException {
         if (this.securityProtocol == SecurityProtocol.SASL_SSL) {
+            // the address passed to connect keeps the broker host name, which keys the session cache of the SSLContext
+            InetSocketAddress peerAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
             return SslTransportLayer.create(id, key,
-                sslFactory.createSslEngine(socketChannel.socket().getInetAddress().getHostName(), socketChannel.socket().getPort()));
+                sslFactory.createSslEngine(peerAddress.getHostString(), peerAddress.getPort()),
+                sslFactory.bufferPool(), sslFactory.directBuffers(), handshakeExecutor);
         } else {
             return new PlaintextTransportLayer(key);
         }
@@ -58,6 +58,14 @@ public interface Selectable {
      */
     public void send(Send send);
 
+    /**
+     * Queue the given request for sending ahead of the sends to the same connection which have not started to be
+     * written, but behind the sends queued ahead of them before
+     * @param send The request to send
+     * @return The number of sends the request was queued ahead of
+     */
+    public int sendAhead(Send send);
+
     /**
      * Do I/O. Reads, writes, connection establishment, etc.
      * @param timeout The amount of time to block if there is nothing to do
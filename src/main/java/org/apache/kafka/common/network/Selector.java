@@ -20,9 +20,7 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.UnresolvedAddressException;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -33,6 +31,7 @@ import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.memory.MemoryPool;
 import org.apache.kafka.common.metrics.Measurable;
 import org.apache.kafka.common.metrics.MetricConfig;
 import org.apache.kafka.common.MetricName;
@@ -70,6 +69,9 @@ import org.slf4j.LoggerFactory;
  * nioSelector.poll(TIMEOUT_MS);
  * </pre>
  *
+ * Sends to the same connection are queued behind each other, and consecutive sends are written with a single
+ * gathering write.
+ *
  * The nioSelector maintains several lists that are reset by each call to <code>poll()</code> which are available via
  * various getters. These are reset by each call to <code>poll()</code>.
  *
@@ -87,7 +89,8 @@ public class Selector implements Selectable {
      */
     private final List<Send> completedSends;
     private final List<NetworkReceive> completedReceives;
-    private final Map<KafkaChannel, Deque<NetworkReceive>> stagedReceives;
+    // channels with staged receives, in the order their first receive was staged
+    private final List<KafkaChannel> channelsWithStagedReceives;
     private final Set<SelectionKey> immediatelyConnectedKeys;
     private final Map<String, KafkaChannel> closingChannels;
     private final List<String> disconnected;
@@ -101,6 +104,13 @@ public class Selector implements Selectable {
     private final int maxReceiveSize;
     private final boolean metricsPerConnection;
     private final IdleExpiryManager idleExpiryManager;
+    private final MemoryPool memoryPool;
+    /* channels which stopped reading since the memory pool could not allocate their current receive */
+    private final Set<KafkaChannel> mutedForMemory;
+    // channels muted while handshake work runs on a HandshakeExecutor, which wakes up the selector when it completes
+    private final Set<KafkaChannel> channelsWithPendingTasks;
+    // when the connection of the channels which are still handshaking or authenticating was established
+    private final Map<KafkaChannel, Long> handshakeStartNanos;
 
     /**
      * Create a new nioSelector
@@ -122,6 +132,25 @@ public class Selector implements Selectable {
                     Map<String, String> metricTags,
                     boolean metricsPerConnection,
                     ChannelBuilder channelBuilder) {
+        this(maxReceiveSize, connectionMaxIdleMs, metrics, time, metricGrpPrefix, metricTags, metricsPerConnection,
+                channelBuilder, MemoryPool.NONE);
+    }
+
+    /**
+     * Create a new nioSelector which reads the receives into buffers of the given memory pool. Channels whose
+     * receive cannot be allocated stop reading until buffers are released to the pool.
+     *
+     * @param memoryPool The pool to allocate the buffers of receives from
+     */
+    public Selector(int maxReceiveSize,
+                    long connectionMaxIdleMs,
+                    Metrics metrics,
+                    Time time,
+                    String metricGrpPrefix,
+                    Map<String, String> metricTags,
+                    boolean metricsPerConnection,
+                    ChannelBuilder channelBuilder,
+                    MemoryPool memoryPool) {
         try {
             this.nioSelector = java.nio.channels.Selector.open();
         } catch (IOException e) {
@@ -134,7 +163,7 @@ public class Selector implements Selectable {
         this.channels = new HashMap<>();
         this.completedSends = new ArrayList<>();
         this.completedReceives = new ArrayList<>();
-        this.stagedReceives = new HashMap<>();
+        this.channelsWithStagedReceives = new ArrayList<>();
         this.immediatelyConnectedKeys = new HashSet<>();
         this.closingChannels = new HashMap<>();
         this.connected = new ArrayList<>();
@@ -144,12 +173,22 @@ public class Selector implements Selectable {
         this.channelBuilder = channelBuilder;
         this.metricsPerConnection = metricsPerConnection;
         this.idleExpiryManager = connectionMaxIdleMs < 0 ? null : new IdleExpiryManager(time, connectionMaxIdleMs);
+        this.memoryPool = memoryPool;
+        this.mutedForMemory = new HashSet<>();
+        this.channelsWithPendingTasks = new HashSet<>();
+        this.handshakeStartNanos = new HashMap<>();
     }
 
     public Selector(long connectionMaxIdleMS, Metrics metrics, Time time, String metricGrpPrefix, ChannelBuilder channelBuilder) {
         this(NetworkReceive.UNLIMITED, connectionMaxIdleMS, metrics, time, metricGrpPrefix, new HashMap<String, String>(), true, channelBuilder);
     }
 
+    public Selector(long connectionMaxIdleMS, Metrics metrics, Time time, String metricGrpPrefix,
+                    ChannelBuilder channelBuilder, MemoryPool memoryPool) {
+        this(NetworkReceive.UNLIMITED, connectionMaxIdleMS, metrics, time, metricGrpPrefix, new HashMap<String, String>(),
+                true, channelBuilder, memoryPool);
+    }
+
     /**
      * Begin connecting to the given address and add the connection to this nioSelector associated with the given id
      * number.
@@ -188,7 +227,7 @@ public class Selector implements Selectable {
             throw e;
         }
         SelectionKey key = socketChannel.register(nioSelector, SelectionKey.OP_CONNECT);
-        KafkaChannel channel = channelBuilder.buildChannel(id, key, maxReceiveSize);
+        KafkaChannel channel = channelBuilder.buildChannel(id, key, maxReceiveSize, memoryPool);
         key.attach(channel);
         this.channels.put(id, channel);
 
@@ -207,7 +246,7 @@ public class Selector implements Selectable {
      */
     public void register(String id, SocketChannel socketChannel) throws ClosedChannelException {
         SelectionKey key = socketChannel.register(nioSelector, SelectionKey.OP_READ);
-        KafkaChannel channel = channelBuilder.buildChannel(id, key, maxReceiveSize);
+        KafkaChannel channel = channelBuilder.buildChannel(id, key, maxReceiveSize, memoryPool);
         key.attach(channel);
         this.channels.put(id, channel);
     }
@@ -238,7 +277,8 @@ public class Selector implements Selectable {
     }
 
     /**
-     * Queue the given request for sending in the subsequent {@link #poll(long)} calls
+     * Queue the given request for sending in the subsequent {@link #poll(long)} calls, behind any sends to the same
+     * connection which are still in progress
      * @param send The request to send
      */
     public void send(Send send) {
@@ -256,6 +296,28 @@ public class Selector implements Selectable {
         }
     }
 
+    /**
+     * Queue the given request for sending in the subsequent {@link #poll(long)} calls, ahead of the sends to the same
+     * connection which have not started to be written
+     * @param send The request to send
+     * @return The number of sends the request was queued ahead of
+     */
+    public int sendAhead(Send send) {
+        String connectionId = send.destination();
+        if (closingChannels.containsKey(connectionId)) {
+            this.failedSends.add(connectionId);
+        } else {
+            KafkaChannel channel = channelOrFail(connectionId, false);
+            try {
+                return channel.setSendAhead(send);
+            } catch (CancelledKeyException e) {
+                this.failedSends.add(connectionId);
+                close(channel, false);
+            }
+        }
+        return 0;
+    }
+
     /**
      * Do whatever I/O can be done on each connection without blocking. This includes completing connections, completing
      * disconnections, initiating new sends, or making progress on in-progress sends or receives.
@@ -271,9 +333,9 @@ public class Selector implements Selectable {
      * we won't be able to read exact no.of bytes as kafka protocol requires. We read as many bytes as we can, up to SSLEngine's
      * application buffer size. This means we might be reading additional bytes than the requested size.
      * If there is no further data to read from socketChannel selector won't invoke that channel and we've have additional bytes
-     * in the buffer. To overcome this issue we added "stagedReceives" map which contains per-channel deque. When we are
+     * in the buffer. To overcome this issue every channel keeps a deque of "stagedReceives". When we are
      * reading a channel we read as many responses as we can and store them into "stagedReceives" and pop one response during
-     * the poll to add the completedReceives. If there are any active channels in the "stagedReceives" we set "timeout" to 0
+     * the poll to add the completedReceives. If there are any active channels with "stagedReceives" we set "timeout" to 0
      * and pop response and add to the completedReceives.
      *
      * Atmost one entry is added to "completedReceives" for a channel in each poll. This is necessary to guarantee that
@@ -283,8 +345,7 @@ public class Selector implements Selectable {
      *
      * @param timeout The amount of time to wait, in milliseconds, which must be non-negative
      * @throws IllegalArgumentException If `timeout` is negative
-     * @throws IllegalStateException If a send is given for which we have no existing connection or for which there is
-     *         already an in-progress send
+     * @throws IllegalStateException If a send is given for which we have no existing connection
      */
     @Override
     public void poll(long timeout) throws IOException {
@@ -293,6 +354,9 @@ public class Selector implements Selectable {
 
         clear();
 
+        if (!mutedForMemory.isEmpty() && !memoryPool.isOutOfMemory())
+            resumeMutedForMemory();
+
         if (hasStagedReceives() || !immediatelyConnectedKeys.isEmpty())
             timeout = 0;
 
@@ -302,10 +366,13 @@ public class Selector implements Selectable {
         long endSelect = time.nanoseconds();
         this.sensors.selectTime.record(endSelect - startSelect, time.milliseconds());
 
-        if (readyKeys > 0 || !immediatelyConnectedKeys.isEmpty()) {
+        if (readyKeys > 0)
             pollSelectionKeys(this.nioSelector.selectedKeys(), false, endSelect);
+        if (!immediatelyConnectedKeys.isEmpty())
             pollSelectionKeys(immediatelyConnectedKeys, true, endSelect);
-        }
+
+        if (!channelsWithPendingTasks.isEmpty())
+            resumeCompletedTasks();
 
         addToCompletedReceives();
 
@@ -327,7 +394,8 @@ public class Selector implements Selectable {
             KafkaChannel channel = channel(key);
 
             // register all per-connection metrics at once
-            sensors.maybeRegisterConnectionMetrics(channel.id());
+            if (!channel.sensorsRegistered())
+                sensors.registerConnectionMetrics(channel);
             if (idleExpiryManager != null)
                 idleExpiryManager.update(channel.id(), currentTimeNanos);
 
@@ -338,6 +406,8 @@ public class Selector implements Selectable {
                     if (channel.finishConnect()) {
                         this.connected.add(channel.id());
                         this.sensors.connectionCreated.record();
+                        if (!channel.ready())
+                            handshakeStartNanos.put(channel, time.nanoseconds());
                         SocketChannel socketChannel = (SocketChannel) key.channel();
                         log.debug("Created socket with SO_RCVBUF = {}, SO_SNDBUF = {}, SO_TIMEOUT = {} to node {}",
                                 socketChannel.socket().getReceiveBufferSize(),
@@ -350,21 +420,19 @@ public class Selector implements Selectable {
 
                 /* if channel is not ready finish prepare */
                 if (channel.isConnected() && !channel.ready())
-                    channel.prepare();
+                    prepare(channel);
 
                 /* if channel is ready read from any connections that have readable data */
-                if (channel.ready() && key.isReadable() && !hasStagedReceive(channel)) {
-                    NetworkReceive networkReceive;
-                    while ((networkReceive = channel.read()) != null)
-                        addToStagedReceives(channel, networkReceive);
-                }
+                if (channel.ready() && key.isReadable() && !hasStagedReceive(channel))
+                    attemptRead(channel);
 
                 /* if channel is ready write to any sockets that have space in their buffer and for which we have data */
                 if (channel.ready() && key.isWritable()) {
-                    Send send = channel.write();
-                    if (send != null) {
+                    List<Send> sends = channel.write();
+                    for (int i = 0; i < sends.size(); i++) {
+                        Send send = sends.get(i);
                         this.completedSends.add(send);
-                        this.sensors.recordBytesSent(channel.id(), send.size());
+                        this.sensors.recordBytesSent(channel, send.size());
                     }
                 }
 
@@ -383,6 +451,76 @@ public class Selector implements Selectable {
         }
     }
 
+    private void attemptRead(KafkaChannel channel) throws IOException {
+        NetworkReceive networkReceive;
+        while ((networkReceive = channel.read()) != null)
+            addToStagedReceives(channel, networkReceive);
+        if (channel.isWaitingForMemory()) {
+            log.trace("Muting channel {} until the memory pool can allocate its receive", channel.id());
+            channel.muteForMemory();
+            mutedForMemory.add(channel);
+        }
+    }
+
+    /**
+     * Continue the handshake and authentication of the channel, and record the handshake once the channel is ready
+     */
+    private void prepare(KafkaChannel channel) throws IOException {
+        channel.prepare();
+        if (channel.hasPendingTask()) {
+            channelsWithPendingTasks.add(channel);
+        } else if (channel.ready()) {
+            Long startNanos = handshakeStartNanos.remove(channel);
+            if (startNanos != null)
+                sensors.recordHandshake(time.nanoseconds() - startNanos, channel.sessionResumed());
+        }
+    }
+
+    /**
+     * Continue the handshake of the channels whose work on the handshake executor completed. Channels whose work is
+     * still running return from prepare right away and stay pending.
+     */
+    private void resumeCompletedTasks() {
+        List<KafkaChannel> pending = new ArrayList<>(channelsWithPendingTasks);
+        for (KafkaChannel channel : pending) {
+            channelsWithPendingTasks.remove(channel);
+            try {
+                prepare(channel);
+            } catch (Exception e) {
+                String desc = channel.socketDescription();
+                if (e instanceof IOException)
+                    log.debug("Connection with {} disconnected", desc, e);
+                else
+                    log.warn("Unexpected error from {}; closing connection", desc, e);
+                close(channel, true);
+            }
+        }
+    }
+
+    /**
+     * Unmute the channels which were waiting for memory and read their receives right away, since the data they
+     * are waiting for may already be buffered by the transport layer rather than the socket.
+     */
+    private void resumeMutedForMemory() {
+        List<KafkaChannel> resumed = new ArrayList<>(mutedForMemory);
+        mutedForMemory.clear();
+        for (KafkaChannel channel : resumed) {
+            channel.unmuteForMemory();
+            if (hasStagedReceive(channel))
+                continue;
+            try {
+                attemptRead(channel);
+            } catch (Exception e) {
+                String desc = channel.socketDescription();
+                if (e instanceof IOException)
+                    log.debug("Connection with {} disconnected", desc, e);
+                else
+                    log.warn("Unexpected error from {}; closing connection", desc, e);
+                close(channel, true);
+            }
+        }
+    }
+
     @Override
     public List<Send> completedSends() {
         return this.completedSends;
@@ -461,17 +599,20 @@ public class Selector implements Selectable {
         this.connected.clear();
         this.disconnected.clear();
         // Remove closed channels after all their staged receives have been processed or if a send was requested
-        for (Iterator<Map.Entry<String, KafkaChannel>> it = closingChannels.entrySet().iterator(); it.hasNext(); ) {
-            KafkaChannel channel = it.next().getValue();
-            Deque<NetworkReceive> deque = this.stagedReceives.get(channel);
-            boolean sendFailed = failedSends.remove(channel.id());
-            if (deque == null || deque.isEmpty() || sendFailed) {
-                doClose(channel, true);
-                it.remove();
+        if (!closingChannels.isEmpty()) {
+            for (Iterator<Map.Entry<String, KafkaChannel>> it = closingChannels.entrySet().iterator(); it.hasNext(); ) {
+                KafkaChannel channel = it.next().getValue();
+                boolean sendFailed = failedSends.remove(channel.id());
+                if (!hasStagedReceive(channel) || sendFailed) {
+                    doClose(channel, true);
+                    it.remove();
+                }
             }
         }
-        this.disconnected.addAll(this.failedSends);
-        this.failedSends.clear();
+        if (!this.failedSends.isEmpty()) {
+            this.disconnected.addAll(this.failedSends);
+            this.failedSends.clear();
+        }
     }
 
     /**
@@ -515,6 +656,9 @@ public class Selector implements Selectable {
     private void close(KafkaChannel channel, boolean processOutstanding) {
 
         channel.disconnect();
+        mutedForMemory.remove(channel);
+        channelsWithPendingTasks.remove(channel);
+        handshakeStartNanos.remove(channel);
 
         // Keep track of closed channels with pending receives so that all received records
         // may be processed. For example, when producer with acks=0 sends some records and
@@ -522,12 +666,11 @@ public class Selector implements Selectable {
         // handle close(). When the remote end closes its connection, the channel is retained until
         // a send fails or all outstanding receives are processed. Mute state of disconnected channels
         // are tracked to ensure that requests are processed one-by-one by the broker to preserve ordering.
-        Deque<NetworkReceive> deque = this.stagedReceives.get(channel);
-        if (processOutstanding && deque != null && !deque.isEmpty()) {
+        if (processOutstanding && hasStagedReceive(channel)) {
             if (!channel.isMute()) {
-                addToCompletedReceives(channel, deque);
-                if (deque.isEmpty())
-                    this.stagedReceives.remove(channel);
+                addToCompletedReceives(channel);
+                if (!hasStagedReceive(channel))
+                    this.channelsWithStagedReceives.remove(channel);
             }
             closingChannels.put(channel.id(), channel);
         } else
@@ -545,7 +688,7 @@ public class Selector implements Selectable {
             log.error("Exception closing connection to node {}:", channel.id(), e);
         }
         this.sensors.connectionClosed.record();
-        this.stagedReceives.remove(channel);
+        this.channelsWithStagedReceives.remove(channel);
         if (notifyDisconnect)
             this.disconnected.add(channel.id());
     }
@@ -602,15 +745,15 @@ public class Selector implements Selectable {
      * Check if given channel has a staged receive
      */
     private boolean hasStagedReceive(KafkaChannel channel) {
-        return stagedReceives.containsKey(channel);
+        return !channel.stagedReceives().isEmpty();
     }
 
     /**
      * check if stagedReceives have unmuted channel
      */
     private boolean hasStagedReceives() {
-        for (KafkaChannel channel : this.stagedReceives.keySet()) {
-            if (!channel.isMute())
+        for (int i = 0; i < channelsWithStagedReceives.size(); i++) {
+            if (!channelsWithStagedReceives.get(i).isMute())
                 return true;
         }
         return false;
@@ -621,36 +764,34 @@ public class Selector implements Selectable {
      * adds a receive to staged receives
      */
     private void addToStagedReceives(KafkaChannel channel, NetworkReceive receive) {
-        if (!stagedReceives.containsKey(channel))
-            stagedReceives.put(channel, new ArrayDeque<NetworkReceive>());
-
-        Deque<NetworkReceive> deque = stagedReceives.get(channel);
-        deque.add(receive);
+        if (!hasStagedReceive(channel))
+            channelsWithStagedReceives.add(channel);
+        channel.stagedReceives().add(receive);
     }
 
     /**
      * checks if there are any staged receives and adds to completedReceives
      */
     private void addToCompletedReceives() {
-        if (!this.stagedReceives.isEmpty()) {
-            Iterator<Map.Entry<KafkaChannel, Deque<NetworkReceive>>> iter = this.stagedReceives.entrySet().iterator();
-            while (iter.hasNext()) {
-                Map.Entry<KafkaChannel, Deque<NetworkReceive>> entry = iter.next();
-                KafkaChannel channel = entry.getKey();
-                if (!channel.isMute()) {
-                    Deque<NetworkReceive> deque = entry.getValue();
-                    addToCompletedReceives(channel, deque);
-                    if (deque.isEmpty())
-                        iter.remove();
-                }
+        if (!this.channelsWithStagedReceives.isEmpty()) {
+            // keep the channels which still have staged receives, in place
+            int remaining = 0;
+            for (int i = 0; i < channelsWithStagedReceives.size(); i++) {
+                KafkaChannel channel = channelsWithStagedReceives.get(i);
+                if (!channel.isMute())
+                    addToCompletedReceives(channel);
+                if (hasStagedReceive(channel))
+                    channelsWithStagedReceives.set(remaining++, channel);
             }
+            for (int i = channelsWithStagedReceives.size() - 1; i >= remaining; i--)
+                channelsWithStagedReceives.remove(i);
         }
     }
 
-    private void addToCompletedReceives(KafkaChannel channel, Deque<NetworkReceive> stagedDeque) {
-        NetworkReceive networkReceive = stagedDeque.poll();
+    private void addToCompletedReceives(KafkaChannel channel) {
+        NetworkReceive networkReceive = channel.stagedReceives().poll();
         this.completedReceives.add(networkReceive);
-        this.sensors.recordBytesReceived(channel.id(), networkReceive.payload().limit());
+        this.sensors.recordBytesReceived(channel, networkReceive.payload().limit());
     }
 
     private class SelectorMetrics {
@@ -662,6 +803,8 @@ public class Selector implements Selectable {
         public final Sensor bytesReceived;
         public final Sensor selectTime;
         public final Sensor ioTime;
+        public final Sensor handshakeTime;
+        public final Sensor handshakesResumed;
 
         /* Names of metrics that are not registered through sensors */
         private final List<MetricName> topLevelMetricNames = new ArrayList<>();
@@ -720,6 +863,18 @@ public class Selector implements Selectable {
             metricName = metrics.metricName("io-ratio", metricGrpName, "The fraction of time the I/O thread spent doing I/O", metricTags);
             this.ioTime.add(metricName, new Rate(TimeUnit.NANOSECONDS));
 
+            this.handshakeTime = sensor("handshake-time:" + tagsSuffix.toString());
+            metricName = metrics.metricName("handshake-rate", metricGrpName, "The number of SSL or SASL handshakes completed per second.", metricTags);
+            this.handshakeTime.add(metricName, new Rate(new Count()));
+            metricName = metrics.metricName("handshake-time-avg", metricGrpName, "The average time in ms from an established connection until its SSL or SASL handshake completed.", metricTags);
+            this.handshakeTime.add(metricName, new Avg());
+            metricName = metrics.metricName("handshake-time-max", metricGrpName, "The maximum time in ms from an established connection until its SSL or SASL handshake completed.", metricTags);
+            this.handshakeTime.add(metricName, new Max());
+
+            this.handshakesResumed = sensor("handshakes-resumed:" + tagsSuffix.toString());
+            metricName = metrics.metricName("handshake-resumed-rate", metricGrpName, "The number of SSL handshakes per second which resumed a cached session.", metricTags);
+            this.handshakesResumed.add(metricName, new Rate(new Count()));
+
             metricName = metrics.metricName("connection-count", metricGrpName, "The current number of active connections.", metricTags);
             topLevelMetricNames.add(metricName);
             this.metrics.addMetric(metricName, new Measurable() {
@@ -735,8 +890,17 @@ public class Selector implements Selectable {
             return sensor;
         }
 
-        public void maybeRegisterConnectionMetrics(String connectionId) {
-            if (!connectionId.isEmpty() && metricsPerConnection) {
+        /**
+         * Register the per-connection sensors of the channel if enabled, and cache them on the channel so that
+         * recording does not look them up by name
+         */
+        public void registerConnectionMetrics(KafkaChannel channel) {
+            String connectionId = channel.id();
+            if (connectionId.isEmpty()) {
+                channel.sensors(null, null);
+                return;
+            }
+            if (metricsPerConnection) {
                 // if one sensor of the metrics has been registered for the connection,
                 // then all other sensors should have been registered; and vice versa
                 String nodeRequestName = "node-" + connectionId + ".bytes-sent";
@@ -772,28 +936,31 @@ public class Selector implements Selectable {
                     nodeRequestTime.add(metricName, new Max());
                 }
             }
+            channel.sensors(this.metrics.getSensor("node-" + connectionId + ".bytes-sent"),
+                    this.metrics.getSensor("node-" + connectionId + ".bytes-received"));
+        }
+
+        public void recordHandshake(long handshakeNanos, boolean resumed) {
+            long now = time.milliseconds();
+            this.handshakeTime.record(handshakeNanos / 1000000.0, now);
+            if (resumed)
+                this.handshakesResumed.record(1, now);
         }
 
-        public void recordBytesSent(String connectionId, long bytes) {
+        public void recordBytesSent(KafkaChannel channel, long bytes) {
             long now = time.milliseconds();
             this.bytesSent.record(bytes, now);
-            if (!connectionId.isEmpty()) {
-                String nodeRequestName = "node-" + connectionId + ".bytes-sent";
-                Sensor nodeRequest = this.metrics.getSensor(nodeRequestName);
-                if (nodeRequest != null)
-                    nodeRequest.record(bytes, now);
-            }
+            Sensor nodeRequest = channel.bytesSentSensor();
+            if (nodeRequest != null)
+                nodeRequest.record(bytes, now);
         }
 
-        public void recordBytesReceived(String connection, int bytes) {
+        public void recordBytesReceived(KafkaChannel channel, int bytes) {
             long now = time.milliseconds();
             this.bytesReceived.record(bytes, now);
-            if (!connection.isEmpty()) {
-                String nodeRequestName = "node-" + connection + ".bytes-received";
-                Sensor nodeRequest = this.metrics.getSensor(nodeRequestName);
-                if (nodeRequest != null)
-                    nodeRequest.record(bytes, now);
-            }
+            Sensor nodeResponse = channel.bytesReceivedSensor();
+            if (nodeResponse != null)
+                nodeResponse.record(bytes, now);
         }
 
         public void close() {
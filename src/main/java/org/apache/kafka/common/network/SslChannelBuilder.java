@@ -13,6 +13,7 @@
 package org.apache.kafka.common.network;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.Map;
@@ -20,6 +21,7 @@ import java.util.Map;
 import org.apache.kafka.common.security.auth.PrincipalBuilder;
 import org.apache.kafka.common.security.ssl.SslFactory;
 import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.memory.MemoryPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +31,7 @@ public class SslChannelBuilder implements ChannelBuilder {
     private PrincipalBuilder principalBuilder;
     private Mode mode;
     private Map<String, ?> configs;
+    private HandshakeExecutor handshakeExecutor;
 
     public SslChannelBuilder(Mode mode) {
         this.mode = mode;
@@ -40,17 +43,18 @@ public class SslChannelBuilder implements ChannelBuilder {
             this.sslFactory = new SslFactory(mode);
             this.sslFactory.configure(this.configs);
             this.principalBuilder = ChannelBuilders.createPrincipalBuilder(configs);
+            this.handshakeExecutor = ChannelBuilders.createHandshakeExecutor(configs);
         } catch (Exception e) {
             throw new KafkaException(e);
         }
     }
 
-    public KafkaChannel buildChannel(String id, SelectionKey key, int maxReceiveSize) throws KafkaException {
+    public KafkaChannel buildChannel(String id, SelectionKey key, int maxReceiveSize, MemoryPool memoryPool) throws KafkaException {
         try {
             SslTransportLayer transportLayer = buildTransportLayer(sslFactory, id, key);
             Authenticator authenticator = new DefaultAuthenticator();
             authenticator.configure(transportLayer, this.principalBuilder, this.configs);
-            return new KafkaChannel(id, transportLayer, authenticator, maxReceiveSize);
+            return new KafkaChannel(id, transportLayer, authenticator, maxReceiveSize, memoryPool);
         } catch (Exception e) {
             log.info("Failed to create channel due to ", e);
             throw new KafkaException(e);
@@ -59,11 +63,16 @@ public class SslChannelBuilder implements ChannelBuilder {
 
     public void close()  {
         this.principalBuilder.close();
+        if (this.handshakeExecutor != null)
+            this.handshakeExecutor.close();
     }
 
     protected SslTransportLayer buildTransportLayer(SslFactory sslFactory, String id, SelectionKey key) throws IOException {
         SocketChannel socketChannel = (SocketChannel) key.channel();
+        // the address passed to connect keeps the broker host name, which keys the session cache of the SSLContext
+        InetSocketAddress peerAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
         return SslTransportLayer.create(id, key,
-            sslFactory.createSslEngine(socketChannel.socket().getInetAddress().getHostName(), socketChannel.socket().getPort()));
+            sslFactory.createSslEngine(peerAddress.getHostString(), peerAddress.getPort()),
+            sslFactory.bufferPool(), sslFactory.directBuffers(), handshakeExecutor);
     }
 }
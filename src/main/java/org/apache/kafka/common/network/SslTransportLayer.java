@@ -26,6 +26,9 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.CancelledKeyException;
 
 import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLEngineResult.HandshakeStatus;
@@ -35,6 +38,7 @@ import javax.net.ssl.SSLHandshakeException;
 import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLPeerUnverifiedException;
 
+import org.apache.kafka.common.memory.MemoryPool;
 import org.apache.kafka.common.security.auth.KafkaPrincipal;
 import org.apache.kafka.common.utils.Utils;
 import org.slf4j.Logger;
@@ -42,6 +46,10 @@ import org.slf4j.LoggerFactory;
 
 /*
  * Transport layer for SSL communication
+ *
+ * Without a buffer pool, the network and application buffers are allocated when the handshake starts and kept for
+ * the lifetime of the connection. With a buffer pool, they are borrowed from the pool when the connection reads,
+ * writes or handshakes, and returned as soon as they are drained, so that idle connections hold no buffers.
  */
 public class SslTransportLayer implements TransportLayer {
     private static final Logger log = LoggerFactory.getLogger(SslTransportLayer.class);
@@ -50,30 +58,62 @@ public class SslTransportLayer implements TransportLayer {
     private final SelectionKey key;
     private final SocketChannel socketChannel;
     private final boolean enableRenegotiation;
+    private final MemoryPool bufferPool;
+    private final boolean directBuffers;
+    private final HandshakeExecutor handshakeExecutor;
 
     private HandshakeStatus handshakeStatus;
     private SSLEngineResult handshakeResult;
     private boolean handshakeComplete = false;
+    // when the handshake started, a session created before was resumed from the session cache of the SSLContext
+    private long handshakeStartMs;
+    private boolean sessionResumed = false;
     private boolean closing = false;
     private ByteBuffer netReadBuffer;
     private ByteBuffer netWriteBuffer;
     private ByteBuffer appReadBuffer;
     private ByteBuffer emptyBuf = ByteBuffer.allocate(0);
+    // delegated tasks running on the handshake executor, and the interest ops to restore once they completed
+    private HandshakeExecutor.Task<Void> delegatedTasks;
+    private int interestOpsBeforeTasks;
 
     public static SslTransportLayer create(String channelId, SelectionKey key, SSLEngine sslEngine) throws IOException {
+        return create(channelId, key, sslEngine, null, false, null);
+    }
+
+    /**
+     * @param bufferPool The pool to borrow the network and application buffers from, or null to allocate them for
+     *                   the lifetime of the connection
+     * @param directBuffers Whether buffers which the pool cannot provide are allocated as direct buffers
+     * @param handshakeExecutor The executor to run the delegated tasks of the SSLEngine on, or null to run them on
+     *                          the thread of the selector
+     */
+    public static SslTransportLayer create(String channelId, SelectionKey key, SSLEngine sslEngine,
+                                           MemoryPool bufferPool, boolean directBuffers,
+                                           HandshakeExecutor handshakeExecutor) throws IOException {
         // Disable renegotiation by default until we have fixed the known issues with the existing implementation
-        SslTransportLayer transportLayer = new SslTransportLayer(channelId, key, sslEngine, false);
+        SslTransportLayer transportLayer = new SslTransportLayer(channelId, key, sslEngine, false, bufferPool,
+                directBuffers, handshakeExecutor);
         transportLayer.startHandshake();
         return transportLayer;
     }
 
     // Prefer `create`, only use this in tests
     SslTransportLayer(String channelId, SelectionKey key, SSLEngine sslEngine, boolean enableRenegotiation) throws IOException {
+        this(channelId, key, sslEngine, enableRenegotiation, null, false, null);
+    }
+
+    private SslTransportLayer(String channelId, SelectionKey key, SSLEngine sslEngine, boolean enableRenegotiation,
+                              MemoryPool bufferPool, boolean directBuffers,
+                              HandshakeExecutor handshakeExecutor) throws IOException {
         this.channelId = channelId;
         this.key = key;
         this.socketChannel = (SocketChannel) key.channel();
         this.sslEngine = sslEngine;
         this.enableRenegotiation = enableRenegotiation;
+        this.bufferPool = bufferPool;
+        this.directBuffers = directBuffers;
+        this.handshakeExecutor = handshakeExecutor;
     }
 
     /**
@@ -81,9 +121,16 @@ public class SslTransportLayer implements TransportLayer {
      */
     protected void startHandshake() throws IOException {
 
-        this.netReadBuffer = ByteBuffer.allocate(netReadBufferSize());
-        this.netWriteBuffer = ByteBuffer.allocate(netWriteBufferSize());
-        this.appReadBuffer = ByteBuffer.allocate(applicationBufferSize());
+        if (bufferPool == null) {
+            this.netReadBuffer = ByteBuffer.allocate(netReadBufferSize());
+            this.netWriteBuffer = ByteBuffer.allocate(netWriteBufferSize());
+            this.appReadBuffer = ByteBuffer.allocate(applicationBufferSize());
+        } else {
+            // borrowed once the handshake makes progress
+            this.netReadBuffer = emptyBuf;
+            this.netWriteBuffer = emptyBuf;
+            this.appReadBuffer = emptyBuf;
+        }
         
         //clear & set netRead & netWrite buffers
         netWriteBuffer.position(0);
@@ -92,6 +139,7 @@ public class SslTransportLayer implements TransportLayer {
         netReadBuffer.limit(0);
         handshakeComplete = false;
         closing = false;
+        handshakeStartMs = System.currentTimeMillis();
         //initiate handshake
         sslEngine.beginHandshake();
         handshakeStatus = sslEngine.getHandshakeStatus();
@@ -126,6 +174,11 @@ public class SslTransportLayer implements TransportLayer {
         return socketChannel;
     }
 
+    @Override
+    public SelectionKey selectionKey() {
+        return key;
+    }
+
     @Override
     public boolean isOpen() {
         return socketChannel.isOpen();
@@ -147,6 +200,7 @@ public class SslTransportLayer implements TransportLayer {
         sslEngine.closeOutbound();
         try {
             if (isConnected()) {
+                borrowWriteBuffer();
                 if (!flush(netWriteBuffer)) {
                     throw new IOException("Remaining data in the network buffer, can't send SSL close message.");
                 }
@@ -171,10 +225,21 @@ public class SslTransportLayer implements TransportLayer {
             } finally {
                 key.attach(null);
                 key.cancel();
+                returnBuffers(true);
             }
         }
     }
 
+    @Override
+    public boolean hasPendingTask() {
+        return delegatedTasks != null;
+    }
+
+    @Override
+    public boolean sessionResumed() {
+        return sessionResumed;
+    }
+
     /**
      * returns true if there are any pending contents in netWriteBuffer
      */
@@ -222,6 +287,36 @@ public class SslTransportLayer implements TransportLayer {
     */
     @Override
     public void handshake() throws IOException {
+        if (delegatedTasks != null) {
+            if (!delegatedTasks.isDone())
+                return;
+            HandshakeExecutor.Task<Void> completed = delegatedTasks;
+            delegatedTasks = null;
+            key.interestOps(interestOpsBeforeTasks);
+            try {
+                completed.result();
+            } catch (IOException e) {
+                handshakeFailure();
+                throw new SSLHandshakeException("Delegated task of the SSL handshake failed: " + e.getCause());
+            }
+        }
+
+        borrowReadBuffers();
+        borrowWriteBuffer();
+        try {
+            doHandshake();
+        } finally {
+            returnBuffers(false);
+        }
+
+        // stay muted until the delegated tasks completed
+        if (delegatedTasks != null) {
+            interestOpsBeforeTasks = key.interestOps();
+            key.interestOps(0);
+        }
+    }
+
+    private void doHandshake() throws IOException {
         boolean read = key.isReadable();
         boolean write = key.isWritable();
         handshakeComplete = false;
@@ -324,10 +419,28 @@ public class SslTransportLayer implements TransportLayer {
 
 
     /**
-     * Executes the SSLEngine tasks needed.
+     * Executes the SSLEngine tasks needed. With a handshake executor, the tasks are handed to it and NEED_TASK is
+     * returned, so that the handshake stops until they completed.
      * @return HandshakeStatus
      */
     private HandshakeStatus runDelegatedTasks() {
+        if (handshakeExecutor != null) {
+            final List<Runnable> tasks = new ArrayList<>();
+            for (Runnable task = delegatedTask(); task != null; task = delegatedTask())
+                tasks.add(task);
+            if (tasks.isEmpty())
+                return sslEngine.getHandshakeStatus();
+            log.trace("SSLHandshake running {} delegated tasks on the handshake executor, channelId {}", tasks.size(), channelId);
+            delegatedTasks = handshakeExecutor.submit(key, new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (Runnable task : tasks)
+                        task.run();
+                    return null;
+                }
+            });
+            return HandshakeStatus.NEED_TASK;
+        }
         for (;;) {
             Runnable task = delegatedTask();
             if (task == null) {
@@ -347,6 +460,7 @@ public class SslTransportLayer implements TransportLayer {
         // It can move from FINISHED status to NOT_HANDSHAKING after the handshake is completed.
         // Hence we also need to check handshakeResult.getHandshakeStatus() if the handshake finished or not
         if (handshakeResult.getHandshakeStatus() == HandshakeStatus.FINISHED) {
+            sessionResumed = sslEngine.getSession().getCreationTime() < handshakeStartMs;
             //we are complete if we have delivered the last package
             handshakeComplete = !netWriteBuffer.hasRemaining();
             //remove OP_WRITE if we are complete, otherwise we still have data to write
@@ -355,8 +469,8 @@ public class SslTransportLayer implements TransportLayer {
             else {
                 key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
                 SSLSession session = sslEngine.getSession();
-                log.debug("SSL handshake completed successfully with peerHost '{}' peerPort {} peerPrincipal '{}' cipherSuite '{}'",
-                        session.getPeerHost(), session.getPeerPort(), peerPrincipal(), session.getCipherSuite());
+                log.debug("SSL handshake completed successfully with peerHost '{}' peerPort {} peerPrincipal '{}' cipherSuite '{}' resumed {}",
+                        session.getPeerHost(), session.getPeerPort(), peerPrincipal(), session.getCipherSuite(), sessionResumed);
             }
 
             log.trace("SSLHandshake FINISHED channelId {}, appReadBuffer pos {}, netReadBuffer pos {}, netWriteBuffer pos {} ",
@@ -435,8 +549,18 @@ public class SslTransportLayer implements TransportLayer {
     @Override
     public int read(ByteBuffer dst) throws IOException {
         if (closing) return -1;
+        if (!handshakeComplete) return 0;
+
+        borrowReadBuffers();
+        try {
+            return doRead(dst);
+        } finally {
+            returnBuffers(false);
+        }
+    }
+
+    private int doRead(ByteBuffer dst) throws IOException {
         int read = 0;
-        if (!handshakeComplete) return read;
 
         //if we have unread decrypted data in appReadBuffer read that into dst buffer.
         if (appReadBuffer.position() > 0) {
@@ -553,9 +677,19 @@ public class SslTransportLayer implements TransportLayer {
     */
     @Override
     public int write(ByteBuffer src) throws IOException {
-        int written = 0;
         if (closing) throw new IllegalStateException("Channel is in closing state");
-        if (!handshakeComplete) return written;
+        if (!handshakeComplete) return 0;
+
+        borrowWriteBuffer();
+        try {
+            return doWrite(src);
+        } finally {
+            returnBuffers(false);
+        }
+    }
+
+    private int doWrite(ByteBuffer src) throws IOException {
+        int written = 0;
 
         if (!flush(netWriteBuffer))
             return written;
@@ -708,6 +842,55 @@ public class SslTransportLayer implements TransportLayer {
         return remaining;
     }
 
+    /**
+     * Borrow the network read and application buffers from the pool if they were returned
+     */
+    private void borrowReadBuffers() {
+        if (netReadBuffer == emptyBuf)
+            netReadBuffer = borrow(netReadBufferSize());
+        if (appReadBuffer == emptyBuf)
+            appReadBuffer = borrow(applicationBufferSize());
+    }
+
+    /**
+     * Borrow the network write buffer from the pool if it was returned, positioned as an empty buffer to flush
+     */
+    private void borrowWriteBuffer() {
+        if (netWriteBuffer == emptyBuf) {
+            netWriteBuffer = borrow(netWriteBufferSize());
+            netWriteBuffer.limit(0);
+        }
+    }
+
+    private ByteBuffer borrow(int size) {
+        ByteBuffer buffer = bufferPool.tryAllocate(size);
+        if (buffer == null)
+            buffer = directBuffers ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        // the pool may hand out a larger buffer
+        buffer.limit(buffer.capacity());
+        return buffer;
+    }
+
+    /**
+     * Return the buffers which hold no data to the pool, or all of them if the connection is closed
+     */
+    private void returnBuffers(boolean all) {
+        if (bufferPool == null)
+            return;
+        if (netReadBuffer != emptyBuf && (all || netReadBuffer.position() == 0)) {
+            bufferPool.release(netReadBuffer);
+            netReadBuffer = emptyBuf;
+        }
+        if (appReadBuffer != emptyBuf && (all || appReadBuffer.position() == 0)) {
+            bufferPool.release(appReadBuffer);
+            appReadBuffer = emptyBuf;
+        }
+        if (netWriteBuffer != emptyBuf && (all || !netWriteBuffer.hasRemaining())) {
+            bufferPool.release(netWriteBuffer);
+            netWriteBuffer = emptyBuf;
+        }
+    }
+
     protected int netReadBufferSize() {
         return sslEngine.getSession().getPacketBufferSize();
     }
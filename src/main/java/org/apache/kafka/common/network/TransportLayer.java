@@ -26,6 +26,7 @@ package org.apache.kafka.common.network;
  */
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.ScatteringByteChannel;
 import java.nio.channels.GatheringByteChannel;
@@ -60,6 +61,11 @@ public interface TransportLayer extends ScatteringByteChannel, GatheringByteChan
      */
     SocketChannel socketChannel();
 
+    /**
+     * returns the selection key of the underlying socketChannel
+     */
+    SelectionKey selectionKey();
+
 
     /**
      * Performs SSL handshake hence is a no-op for the non-secure
@@ -73,6 +79,18 @@ public interface TransportLayer extends ScatteringByteChannel, GatheringByteChan
      */
     boolean hasPendingWrites();
 
+    /**
+     * Returns true if handshake work was handed to a {@link HandshakeExecutor} and the handshake has not resumed yet.
+     * The channel is muted until the first {@link #handshake()} after the work completed.
+     */
+    boolean hasPendingTask();
+
+    /**
+     * Returns true if the completed handshake was abbreviated, because it resumed a session cached for the same peer
+     * host and port.
+     */
+    boolean sessionResumed();
+
     /**
      * Returns `SSLSession.getPeerPrincipal()` if this is a SslTransportLayer and there is an authenticated peer,
      * `KafkaPrincipal.ANONYMOUS` is returned otherwise.
@@ -0,0 +1,313 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ * <p/>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p/>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package org.apache.kafka.common.record;
+
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.errors.CorruptRecordException;
+import org.apache.kafka.common.utils.Utils;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import static org.apache.kafka.common.record.Records.LOG_OVERHEAD;
+import static org.apache.kafka.common.record.Records.OFFSET_OFFSET;
+import static org.apache.kafka.common.record.Records.SIZE_OFFSET;
+
+/**
+ * A flyweight over the log entries of a buffer. Unlike {@link RecordsIterator}, which creates a {@link LogEntry} and
+ * a {@link Record} for every entry, the cursor reads the fields of the entry it points at in place, and the key and
+ * value are returned as views which are reused for every entry. Nothing is allocated while moving from entry to
+ * entry, so the values returned by the cursor are only valid until it is moved.
+ * <p>
+ * The cursor does not look into compressed entries. Their inner entries can be written to another buffer with
+ * {@link #decompressTo(ByteBufferOutputStream, boolean, boolean)}, which applies what {@link RecordsIterator} does
+ * during deep iteration, so that a second cursor can iterate them.
+ */
+public final class LogEntryCursor {
+    private final ByteBuffer buffer;
+    private final ByteBuffer keyView;
+    private final ByteBuffer valueView;
+    private CRC32 crc;
+    private final int start;
+    private final int limit;
+    private int position = -1;
+    private byte[] scratch;
+
+    /**
+     * @param buffer The buffer holding the log entries between its position and limit. The buffer is not modified.
+     */
+    public LogEntryCursor(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.keyView = buffer.asReadOnlyBuffer();
+        this.valueView = buffer.asReadOnlyBuffer();
+        this.start = buffer.position();
+        this.limit = buffer.limit();
+    }
+
+    /**
+     * Move to the next complete entry. A partial entry at the end of the buffer, which the broker may return at the
+     * end of a fetch, is treated as the end.
+     * @return false if there is no next entry, in which case the cursor does not move
+     */
+    public boolean next() {
+        int nextPosition = position < 0 ? start : position + sizeInBytes();
+        if (limit - nextPosition < LOG_OVERHEAD)
+            return false;
+        int recordSize = buffer.getInt(nextPosition + SIZE_OFFSET);
+        if (recordSize < Record.RECORD_OVERHEAD_V0)
+            throw new CorruptRecordException(String.format("Record size is less than the minimum record overhead (%d)", Record.RECORD_OVERHEAD_V0));
+        if (limit - nextPosition < LOG_OVERHEAD + recordSize)
+            return false;
+        position = nextPosition;
+        return true;
+    }
+
+    /**
+     * Move back to the entry at the given position, which must have been returned by {@link #position()}, or before
+     * the first entry if it is negative.
+     */
+    public void moveTo(int position) {
+        this.position = position;
+    }
+
+    /**
+     * The position of the current entry in the buffer
+     */
+    public int position() {
+        return position;
+    }
+
+    public long offset() {
+        return buffer.getLong(position + OFFSET_OFFSET);
+    }
+
+    /**
+     * The size of the current entry, including the log overhead
+     */
+    public int sizeInBytes() {
+        return LOG_OVERHEAD + recordSize();
+    }
+
+    public byte magic() {
+        return buffer.get(record() + Record.MAGIC_OFFSET);
+    }
+
+    public byte attributes() {
+        return buffer.get(record() + Record.ATTRIBUTES_OFFSET);
+    }
+
+    public CompressionType compressionType() {
+        return CompressionType.forId(attributes() & Record.COMPRESSION_CODEC_MASK);
+    }
+
+    public boolean isCompressed() {
+        return compressionType() != CompressionType.NONE;
+    }
+
+    public long timestamp() {
+        if (magic() == Record.MAGIC_VALUE_V0)
+            return Record.NO_TIMESTAMP;
+        return buffer.getLong(record() + Record.TIMESTAMP_OFFSET);
+    }
+
+    public TimestampType timestampType() {
+        if (magic() == Record.MAGIC_VALUE_V0)
+            return TimestampType.NO_TIMESTAMP_TYPE;
+        return TimestampType.forAttributes(attributes());
+    }
+
+    /**
+     * The checksum stored with the current record
+     */
+    public long checksum() {
+        return Utils.readUnsignedInt(buffer, record() + Record.CRC_OFFSET);
+    }
+
+    /**
+     * Compute the checksum of the current record from its contents
+     */
+    public long computeChecksum() {
+        int offset = record() + Record.MAGIC_OFFSET;
+        int size = recordSize() - Record.MAGIC_OFFSET;
+        if (!buffer.hasArray())
+            return Utils.computeChecksum(buffer, offset, size);
+        if (crc == null)
+            crc = new CRC32();
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + offset, size);
+        return crc.getValue();
+    }
+
+    /**
+     * Throw an InvalidRecordException if the stored checksum of the current record does not match its contents
+     */
+    public void ensureValid() {
+        long computed = computeChecksum();
+        if (checksum() != computed)
+            throw new InvalidRecordException("Record is corrupt (stored crc = " + checksum()
+                    + ", computed crc = " + computed + ")");
+    }
+
+    /**
+     * The length of the key, or -1 if the key is null
+     */
+    public int keySize() {
+        return buffer.getInt(keySizePosition());
+    }
+
+    /**
+     * The length of the value, or -1 if the value is null
+     */
+    public int valueSize() {
+        return buffer.getInt(valueSizePosition());
+    }
+
+    /**
+     * A read-only view of the key of the current record, or null if the key is null. The same instance is returned
+     * for every entry.
+     */
+    public ByteBuffer key() {
+        return view(keyView, keySizePosition());
+    }
+
+    /**
+     * A read-only view of the value of the current record, or null if the value is null. The same instance is
+     * returned for every entry.
+     */
+    public ByteBuffer value() {
+        return view(valueView, valueSizePosition());
+    }
+
+    /**
+     * Append the current entry as it is to the output stream
+     */
+    public void writeTo(ByteBufferOutputStream out) {
+        int size = sizeInBytes();
+        try {
+            if (buffer.hasArray()) {
+                out.write(buffer.array(), buffer.arrayOffset() + position, size);
+            } else {
+                if (scratch == null || scratch.length < size)
+                    scratch = new byte[size];
+                ByteBuffer entry = buffer.duplicate();
+                entry.position(position);
+                entry.get(scratch, 0, size);
+                out.write(scratch, 0, size);
+            }
+        } catch (IOException e) {
+            throw new KafkaException(e);
+        }
+    }
+
+    /**
+     * Write the inner entries of the current entry, which must be compressed, to the output stream. Like the deep
+     * iteration of {@link RecordsIterator}, the relative offsets of the inner entries are converted to absolute
+     * offsets and their timestamp type is taken from the wrapper, along with the timestamp for log append time. The
+     * stored checksums are left unchanged, so they are verified before the entries are rewritten.
+     *
+     * @param out The stream to append the entries to
+     * @param ensureMatchingMagic Whether to fail if the magic of an inner entry differs from the wrapper's
+     * @param checkCrcs Whether to verify the checksum of every inner entry
+     */
+    public void decompressTo(ByteBufferOutputStream out, boolean ensureMatchingMagic, boolean checkCrcs) {
+        byte wrapperMagic = magic();
+        long wrapperOffset = offset();
+        long wrapperTimestamp = timestamp();
+        TimestampType wrapperTimestampType = timestampType();
+        int begin = out.buffer().position();
+        long lastInnerOffset = -1;
+
+        DataInputStream stream = MemoryRecordsBuilder.wrapForInput(
+                new ByteBufferInputStream(value().duplicate()), compressionType(), wrapperMagic);
+        try {
+            while (true) {
+                long innerOffset;
+                try {
+                    innerOffset = stream.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                int size = stream.readInt();
+                if (size < Record.RECORD_OVERHEAD_V0)
+                    throw new CorruptRecordException(String.format("Record size is less than the minimum record overhead (%d)", Record.RECORD_OVERHEAD_V0));
+                if (scratch == null || scratch.length < size)
+                    scratch = new byte[Math.max(size, scratch == null ? 0 : 2 * scratch.length)];
+                stream.readFully(scratch, 0, size);
+                LogEntry.writeHeader(out, innerOffset, size);
+                out.write(scratch, 0, size);
+                lastInnerOffset = innerOffset;
+            }
+        } catch (IOException e) {
+            throw new KafkaException(e);
+        } finally {
+            Utils.closeQuietly(stream, "records iterator stream");
+        }
+
+        ByteBuffer expanded = out.buffer();
+        LogEntryCursor inner = new LogEntryCursor(expanded.duplicate());
+        inner.position = begin;
+        long absoluteBaseOffset = wrapperOffset - lastInnerOffset;
+        for (int end = expanded.position(); inner.position < end; inner.position += inner.sizeInBytes()) {
+            byte magic = inner.magic();
+            if (ensureMatchingMagic && magic != wrapperMagic)
+                throw new InvalidRecordException("Compressed message magic does not match wrapper magic");
+            if (inner.isCompressed())
+                throw new InvalidRecordException("Inner messages must not be compressed");
+            if (checkCrcs)
+                inner.ensureValid();
+            if (wrapperMagic > Record.MAGIC_VALUE_V0) {
+                expanded.putLong(inner.position + OFFSET_OFFSET, absoluteBaseOffset + inner.offset());
+                if (magic > Record.MAGIC_VALUE_V0) {
+                    int record = inner.record();
+                    expanded.put(record + Record.ATTRIBUTES_OFFSET, wrapperTimestampType.updateAttributes(inner.attributes()));
+                    if (wrapperTimestampType == TimestampType.LOG_APPEND_TIME)
+                        expanded.putLong(record + Record.TIMESTAMP_OFFSET, wrapperTimestamp);
+                }
+            }
+        }
+    }
+
+    private int recordSize() {
+        return buffer.getInt(position + SIZE_OFFSET);
+    }
+
+    private int record() {
+        return position + LOG_OVERHEAD;
+    }
+
+    private int keySizePosition() {
+        return record() + (magic() == Record.MAGIC_VALUE_V0 ? Record.KEY_SIZE_OFFSET_V0 : Record.KEY_SIZE_OFFSET_V1);
+    }
+
+    private int valueSizePosition() {
+        int keySizePosition = keySizePosition();
+        return keySizePosition + Record.KEY_SIZE_LENGTH + Math.max(0, buffer.getInt(keySizePosition));
+    }
+
+    private ByteBuffer view(ByteBuffer view, int sizePosition) {
+        int size = buffer.getInt(sizePosition);
+        if (size < 0)
+            return null;
+        view.limit(view.capacity());
+        view.position(sizePosition + 4);
+        view.limit(sizePosition + 4 + size);
+        return view;
+    }
+}
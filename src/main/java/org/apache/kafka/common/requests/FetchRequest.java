@@ -120,6 +120,18 @@ public class FetchRequest extends AbstractRequest {
             return this;
         }
 
+        public int maxWait() {
+            return maxWait;
+        }
+
+        public int minBytes() {
+            return minBytes;
+        }
+
+        public int maxBytes() {
+            return maxBytes;
+        }
+
         public LinkedHashMap<TopicPartition, PartitionData> fetchData() {
             return this.fetchData;
         }
@@ -27,6 +27,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 public class MetadataResponse extends AbstractResponse {
@@ -266,23 +267,71 @@ public class MetadataResponse extends AbstractResponse {
      * @return the cluster snapshot
      */
     public Cluster cluster() {
+        return cluster(null);
+    }
+
+    /**
+     * Get a snapshot of the cluster metadata from this response. The topics whose partitions did not change since
+     * the previous snapshot share their partitions and indexes with it, and all topics keep the name instances of
+     * the previous snapshot, so repeated refreshes of a large cluster neither rebuild nor retain copies of them.
+     * @param previous The previous snapshot, or null
+     * @return the cluster snapshot
+     */
+    public Cluster cluster(Cluster previous) {
         Set<String> internalTopics = new HashSet<>();
-        List<PartitionInfo> partitions = new ArrayList<>();
+        Map<String, List<PartitionInfo>> partitionsByTopic = new HashMap<>(topicMetadata.size());
         for (TopicMetadata metadata : topicMetadata) {
             if (metadata.error == Errors.NONE) {
+                List<PartitionInfo> previousPartitions = previous == null ? null : previous.partitionsForTopic(metadata.topic);
+                String topic = metadata.topic;
+                if (previousPartitions != null && !previousPartitions.isEmpty())
+                    topic = previousPartitions.get(0).topic();
                 if (metadata.isInternal)
-                    internalTopics.add(metadata.topic);
-                for (PartitionMetadata partitionMetadata : metadata.partitionMetadata)
-                    partitions.add(new PartitionInfo(
-                            metadata.topic,
-                            partitionMetadata.partition,
-                            partitionMetadata.leader,
-                            partitionMetadata.replicas.toArray(new Node[0]),
-                            partitionMetadata.isr.toArray(new Node[0])));
+                    internalTopics.add(topic);
+
+                if (previousPartitions != null && samePartitions(metadata.partitionMetadata, previousPartitions)) {
+                    partitionsByTopic.put(topic, previousPartitions);
+                } else {
+                    List<PartitionInfo> partitions = new ArrayList<>(metadata.partitionMetadata.size());
+                    for (PartitionMetadata partitionMetadata : metadata.partitionMetadata)
+                        partitions.add(new PartitionInfo(
+                                topic,
+                                partitionMetadata.partition,
+                                partitionMetadata.leader,
+                                partitionMetadata.replicas.toArray(new Node[0]),
+                                partitionMetadata.isr.toArray(new Node[0])));
+                    partitionsByTopic.put(topic, partitions);
+                }
             }
         }
 
-        return new Cluster(this.clusterId, this.brokers, partitions, topicsByError(Errors.TOPIC_AUTHORIZATION_FAILED), internalTopics);
+        return Cluster.update(previous, this.clusterId, this.brokers, partitionsByTopic,
+                topicsByError(Errors.TOPIC_AUTHORIZATION_FAILED), internalTopics);
+    }
+
+    private static boolean samePartitions(List<PartitionMetadata> partitionMetadata, List<PartitionInfo> partitions) {
+        if (partitionMetadata.size() != partitions.size())
+            return false;
+        for (int i = 0; i < partitions.size(); i++) {
+            PartitionMetadata metadata = partitionMetadata.get(i);
+            PartitionInfo partition = partitions.get(i);
+            if (metadata.partition != partition.partition()
+                    || !Objects.equals(metadata.leader, partition.leader())
+                    || !sameNodes(metadata.replicas, partition.replicas())
+                    || !sameNodes(metadata.isr, partition.inSyncReplicas()))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean sameNodes(List<Node> nodes, Node[] nodeArray) {
+        if (nodes.size() != nodeArray.length)
+            return false;
+        for (int i = 0; i < nodeArray.length; i++) {
+            if (!Objects.equals(nodes.get(i), nodeArray[i]))
+                return false;
+        }
+        return true;
     }
 
     /**
@@ -25,6 +25,7 @@ import org.apache.kafka.common.errors.AuthenticationException;
 import org.apache.kafka.common.errors.IllegalSaslStateException;
 import org.apache.kafka.common.errors.UnsupportedSaslMechanismException;
 import org.apache.kafka.common.network.Authenticator;
+import org.apache.kafka.common.network.HandshakeExecutor;
 import org.apache.kafka.common.network.Mode;
 import org.apache.kafka.common.network.NetworkReceive;
 import org.apache.kafka.common.network.NetworkSend;
@@ -55,6 +56,7 @@ import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class SaslClientAuthenticator implements Authenticator {
 
@@ -70,6 +72,7 @@ public class SaslClientAuthenticator implements Authenticator {
     private final String node;
     private final String mechanism;
     private final boolean handshakeRequestEnable;
+    private final HandshakeExecutor handshakeExecutor;
 
     // assigned in `configure`
     private SaslClient saslClient;
@@ -90,14 +93,26 @@ public class SaslClientAuthenticator implements Authenticator {
     private int correlationId;
     // Request header for which response from the server is pending
     private RequestHeader currentRequestHeader;
+    // Evaluation of the last server token running on the handshake executor
+    private HandshakeExecutor.Task<byte[]> pendingSaslToken;
 
     public SaslClientAuthenticator(String node, Subject subject, String servicePrincipal, String host, String mechanism, boolean handshakeRequestEnable) throws IOException {
+        this(node, subject, servicePrincipal, host, mechanism, handshakeRequestEnable, null);
+    }
+
+    /**
+     * @param handshakeExecutor The executor to evaluate server challenges on, such as the key derivation of SCRAM,
+     *                          or null to evaluate them on the thread of the selector
+     */
+    public SaslClientAuthenticator(String node, Subject subject, String servicePrincipal, String host, String mechanism,
+                                   boolean handshakeRequestEnable, HandshakeExecutor handshakeExecutor) throws IOException {
         this.node = node;
         this.subject = subject;
         this.host = host;
         this.servicePrincipal = servicePrincipal;
         this.mechanism = mechanism;
         this.handshakeRequestEnable = handshakeRequestEnable;
+        this.handshakeExecutor = handshakeExecutor;
         this.correlationId = -1;
     }
 
@@ -147,6 +162,19 @@ public class SaslClientAuthenticator implements Authenticator {
      * followed by N bytes representing the opaque payload.
      */
     public void authenticate() throws IOException {
+        if (pendingSaslToken != null) {
+            if (!pendingSaslToken.isDone())
+                return;
+            HandshakeExecutor.Task<byte[]> evaluated = pendingSaslToken;
+            pendingSaslToken = null;
+            transportLayer.addInterestOps(SelectionKey.OP_READ);
+            byte[] saslToken = evaluated.result();
+            if (saslToken != null)
+                send(new NetworkSend(node, ByteBuffer.wrap(saslToken)));
+            maybeComplete();
+            return;
+        }
+
         if (netOutBuffer != null && !flushNetOutBufferAndUpdateInterestOps())
             return;
 
@@ -184,12 +212,13 @@ public class SaslClientAuthenticator implements Authenticator {
             case INTERMEDIATE:
                 byte[] serverToken = receiveResponseOrToken();
                 if (serverToken != null) {
+                    if (handshakeExecutor != null && !saslClient.isComplete()) {
+                        evaluateSaslTokenAsync(serverToken);
+                        break;
+                    }
                     sendSaslToken(serverToken, false);
                 }
-                if (saslClient.isComplete()) {
-                    setSaslState(SaslState.COMPLETE);
-                    transportLayer.removeInterestOps(SelectionKey.OP_WRITE);
-                }
+                maybeComplete();
                 break;
             case COMPLETE:
                 break;
@@ -198,6 +227,27 @@ public class SaslClientAuthenticator implements Authenticator {
         }
     }
 
+    private void maybeComplete() {
+        if (saslClient.isComplete()) {
+            setSaslState(SaslState.COMPLETE);
+            transportLayer.removeInterestOps(SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Evaluate the server token on the handshake executor, muting the channel until the response token is ready
+     */
+    private void evaluateSaslTokenAsync(final byte[] serverToken) {
+        LOG.trace("Evaluating SASL token of node {} on the handshake executor", node);
+        transportLayer.removeInterestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        pendingSaslToken = handshakeExecutor.submit(transportLayer.selectionKey(), new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws SaslException {
+                return createSaslToken(serverToken, false);
+            }
+        });
+    }
+
     private void setSaslState(SaslState saslState) {
         if (netOutBuffer != null && !netOutBuffer.completed())
             pendingSaslState = saslState;
@@ -258,6 +308,10 @@ public class SaslClientAuthenticator implements Authenticator {
         return saslState == SaslState.COMPLETE;
     }
 
+    public boolean hasPendingTask() {
+        return pendingSaslToken != null;
+    }
+
     public void close() throws IOException {
         if (saslClient != null)
             saslClient.dispose();
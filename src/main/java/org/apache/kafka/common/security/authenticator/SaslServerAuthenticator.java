@@ -260,6 +260,10 @@ public class SaslServerAuthenticator implements Authenticator {
         return saslState == SaslState.COMPLETE;
     }
 
+    public boolean hasPendingTask() {
+        return false;
+    }
+
     public void close() throws IOException {
         if (saslServer != null)
             saslServer.dispose();
@@ -19,6 +19,8 @@ package org.apache.kafka.common.security.ssl;
 import org.apache.kafka.common.Configurable;
 import org.apache.kafka.common.KafkaException;
 import org.apache.kafka.common.config.SslConfigs;
+import org.apache.kafka.common.memory.MemoryPool;
+import org.apache.kafka.common.memory.PooledMemoryPool;
 import org.apache.kafka.common.network.Mode;
 import org.apache.kafka.common.config.types.Password;
 
@@ -56,6 +58,8 @@ public class SslFactory implements Configurable {
     private SSLContext sslContext;
     private boolean needClientAuth;
     private boolean wantClientAuth;
+    private MemoryPool bufferPool;
+    private boolean directBuffers;
 
     public SslFactory(Mode mode) {
         this(mode, null);
@@ -104,6 +108,12 @@ public class SslFactory implements Configurable {
                 this.wantClientAuth = true;
         }
 
+        Long bufferPoolBytes = (Long) configs.get(SslConfigs.SSL_BUFFER_POOL_BYTES_CONFIG);
+        Boolean directBuffers = (Boolean) configs.get(SslConfigs.SSL_BUFFER_POOL_DIRECT_CONFIG);
+        this.directBuffers = directBuffers != null && directBuffers;
+        if (bufferPoolBytes != null && bufferPoolBytes > 0)
+            this.bufferPool = new PooledMemoryPool(bufferPoolBytes, this.directBuffers);
+
         this.kmfAlgorithm = (String) configs.get(SslConfigs.SSL_KEYMANAGER_ALGORITHM_CONFIG);
         this.tmfAlgorithm = (String) configs.get(SslConfigs.SSL_TRUSTMANAGER_ALGORITHM_CONFIG);
 
@@ -177,6 +187,21 @@ public class SslFactory implements Configurable {
         return sslContext;
     }
 
+    /**
+     * Returns the pool the buffers of SSL connections are borrowed from, or null if every connection allocates its
+     * buffers for its lifetime
+     */
+    public MemoryPool bufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Returns whether buffers of SSL connections which are allocated beyond the pool are direct buffers
+     */
+    public boolean directBuffers() {
+        return directBuffers;
+    }
+
     private void createKeystore(String type, String path, Password password, Password keyPassword) {
         if (path == null && password != null) {
             throw new KafkaException("SSL key store is not specified, but key store password is specified.");
@@ -12,6 +12,8 @@
  */
 package org.apache.kafka.common.utils;
 
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
 /**
@@ -22,7 +24,9 @@ import java.util.zip.Checksum;
  * This is to avoid the JNI overhead for certain uses of Checksumming where many small pieces of data are checksummed in
  * succession.
  * 
- * The current version is ~10x to 1.8x as fast as Sun's native java.util.zip.CRC32 in Java 1.6
+ * The current version is ~10x to 1.8x as fast as Sun's native java.util.zip.CRC32 in Java 1.6. Since Java 8 the
+ * JDK implementation is a hardware-accelerated intrinsic, so contiguous ranges of a buffer are checksummed with
+ * {@link #crc32(ByteBuffer, int, int)} instead, while this class remains for incremental updates of small fields.
  * 
  * @see java.util.zip.CRC32
  */
@@ -52,6 +56,30 @@ public class Crc32 implements Checksum {
         return crc.getValue();
     }
 
+    /**
+     * Compute the CRC32 of a range of the buffer using {@link java.util.zip.CRC32}, which the JVM replaces with a
+     * hardware-accelerated intrinsic. Heap buffers are checksummed straight from the backing array and direct
+     * buffers through a view of the range, so the data is never copied. The position and limit of the buffer are
+     * not changed.
+     *
+     * @param buffer The buffer holding the bytes to checksum
+     * @param offset The offset in the buffer at which to begin checksumming
+     * @param size The number of bytes to checksum
+     * @return The CRC32
+     */
+    public static long crc32(ByteBuffer buffer, int offset, int size) {
+        CRC32 crc = new CRC32();
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + offset, size);
+        } else {
+            ByteBuffer view = buffer.duplicate();
+            view.limit(offset + size);
+            view.position(offset);
+            crc.update(view);
+        }
+        return crc.getValue();
+    }
+
     /** the current CRC value, bit-flipped */
     private int crc;
 
@@ -801,7 +801,7 @@ public class Utils {
      * @param size The number of bytes to include
      */
     public static long computeChecksum(ByteBuffer buffer, int start, int size) {
-        return Crc32.crc32(buffer.array(), buffer.arrayOffset() + start, size);
+        return Crc32.crc32(buffer, start, size);
     }
 
     /**
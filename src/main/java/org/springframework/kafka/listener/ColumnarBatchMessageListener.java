@@ -0,0 +1,39 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.kafka.listener;
+
+import org.apache.kafka.clients.consumer.ColumnarConsumerRecords;
+
+/**
+ * Listener for handling a batch of incoming Kafka messages in columnar form; the
+ * consumer records object returned by a poll is passed on as is, and records are
+ * only deserialized when the listener accesses them. Requires the consumer property
+ * {@code poll.columnar.records.enable}, and consumer interceptors which return the
+ * columnar records they are given; the container fails with an
+ * {@link IllegalStateException} if a poll returns plain consumer records.
+ * <p>
+ * With container managed commits, the offsets are acknowledged per partition
+ * rather than per record, so {@code AckMode.COUNT} counts partitions.
+ *
+ * @param <K> the key type.
+ * @param <V> the value type.
+ *
+ * @since 1.1
+ */
+public interface ColumnarBatchMessageListener<K, V> extends GenericMessageListener<ColumnarConsumerRecords<K, V>> {
+
+}
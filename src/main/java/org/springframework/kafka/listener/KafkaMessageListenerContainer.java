@@ -37,9 +37,11 @@ import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.kafka.clients.consumer.ColumnarConsumerRecords;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecordColumns;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.consumer.OffsetCommitCallback;
@@ -251,6 +253,8 @@ public class KafkaMessageListenerContainer<K, V> extends AbstractMessageListener
 
 		private final BatchAcknowledgingMessageListener<K, V> batchAcknowledgingMessageListener;
 
+		private final ColumnarBatchMessageListener<K, V> columnarListener;
+
 		private final boolean isBatchListener;
 
 		private final boolean autoCommit = KafkaMessageListenerContainer.this.consumerFactory.isAutoCommit();
@@ -341,11 +345,13 @@ public class KafkaMessageListenerContainer<K, V> extends AbstractMessageListener
 				this.batchListener = null;
 				this.acknowledgingMessageListener = null;
 				this.batchAcknowledgingMessageListener = (BatchAcknowledgingMessageListener<K, V>) this.theListener;
+				this.columnarListener = null;
 				this.isBatchListener = true;
 			}
 			else if (this.theListener instanceof AcknowledgingMessageListener) {
 				this.listener = null;
 				this.acknowledgingMessageListener = (AcknowledgingMessageListener<K, V>) this.theListener;
+				this.columnarListener = null;
 				this.batchListener = null;
 				this.batchAcknowledgingMessageListener = null;
 				this.isBatchListener = false;
@@ -353,21 +359,33 @@ public class KafkaMessageListenerContainer<K, V> extends AbstractMessageListener
 			else if (this.theListener instanceof BatchMessageListener) {
 				this.listener = null;
 				this.batchListener = (BatchMessageListener<K, V>) this.theListener;
+				this.columnarListener = null;
 				this.acknowledgingMessageListener = null;
 				this.batchAcknowledgingMessageListener = null;
 				this.isBatchListener = true;
 			}
 			else if (this.theListener instanceof MessageListener) {
 				this.listener = (MessageListener<K, V>) this.theListener;
+				this.columnarListener = null;
 				this.batchListener = null;
 				this.acknowledgingMessageListener = null;
 				this.batchAcknowledgingMessageListener = null;
 				this.isBatchListener = false;
 			}
+			else if (this.theListener instanceof ColumnarBatchMessageListener) {
+				this.listener = null;
+				this.columnarListener = (ColumnarBatchMessageListener<K, V>) this.theListener;
+				this.batchListener = null;
+				this.acknowledgingMessageListener = null;
+				this.batchAcknowledgingMessageListener = null;
+				this.isBatchListener = true;
+				Assert.state(!this.isAnyManualAck, "Cannot use a manual AckMode with a columnar batch listener");
+			}
 			else {
 				throw new IllegalArgumentException("Listener must be one of 'MessageListener', "
 						+ "'BatchMessageListener', 'AcknowledgingMessageListener', "
-						+ "'BatchAcknowledgingMessageListener', not " + this.theListener.getClass().getName());
+						+ "'BatchAcknowledgingMessageListener', 'ColumnarBatchMessageListener', not "
+						+ this.theListener.getClass().getName());
 			}
 			if (this.isBatchListener) {
 				validateErrorHandler(true);
@@ -735,6 +753,10 @@ public class KafkaMessageListenerContainer<K, V> extends AbstractMessageListener
 		}
 
 		private void invokeBatchListener(final ConsumerRecords<K, V> records) {
+			if (this.columnarListener != null) {
+				invokeColumnarListener(records);
+				return;
+			}
 			List<ConsumerRecord<K, V>> recordList = new LinkedList<ConsumerRecord<K, V>>();
 			Iterator<ConsumerRecord<K, V>> iterator = records.iterator();
 			while (iterator.hasNext()) {
@@ -777,6 +799,54 @@ public class KafkaMessageListenerContainer<K, V> extends AbstractMessageListener
 			}
 		}
 
+		private void invokeColumnarListener(final ConsumerRecords<K, V> records) {
+			if (!(records instanceof ColumnarConsumerRecords)) {
+				// the consumer only returns plain records if columnar polling is disabled, or if an interceptor
+				// replaced the columnar records it was given
+				throw new IllegalStateException("A ColumnarBatchMessageListener requires ColumnarConsumerRecords, but "
+						+ "poll() returned " + records.getClass().getName() + "; the consumer must be configured with "
+						+ "'poll.columnar.records.enable=true', and any consumer interceptor ('interceptor.classes') "
+						+ "must return the ColumnarConsumerRecords it is given, or ColumnarConsumerRecords of its own");
+			}
+			if (records.isEmpty()) {
+				return;
+			}
+			ColumnarConsumerRecords<K, V> columnarRecords = (ColumnarConsumerRecords<K, V>) records;
+			try {
+				this.columnarListener.onMessage(columnarRecords);
+				if (!this.autoCommit) {
+					ackLastOffsets(columnarRecords);
+				}
+			}
+			catch (Exception e) {
+				if (this.containerProperties.isAckOnError() && !this.autoCommit) {
+					ackLastOffsets(columnarRecords);
+				}
+				try {
+					this.batchErrorHandler.handle(e, records);
+				}
+				catch (Exception ee) {
+					this.logger.error("Error handler threw an exception", ee);
+				}
+				catch (Error er) { //NOSONAR
+					this.logger.error("Error handler threw an error", er);
+					throw er;
+				}
+			}
+		}
+
+		/**
+		 * Acknowledge the last offset of each partition without deserializing the records;
+		 * the placeholder records carry no key or value.
+		 */
+		private void ackLastOffsets(ColumnarConsumerRecords<K, V> records) {
+			for (TopicPartition partition : records.partitions()) {
+				ConsumerRecordColumns<K, V> columns = records.columns(partition);
+				this.acks.add(new ConsumerRecord<K, V>(partition.topic(), partition.partition(),
+						columns.offset(columns.size() - 1), null, null));
+			}
+		}
+
 		private void invokeRecordListener(final ConsumerRecords<K, V> records) {
 			Iterator<ConsumerRecord<K, V>> iterator = records.iterator();
 			while (iterator.hasNext() && (this.autoCommit || (this.invoker != null && this.invoker.active))) {